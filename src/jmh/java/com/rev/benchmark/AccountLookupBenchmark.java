@@ -0,0 +1,48 @@
+package com.rev.benchmark;
+
+import com.rev.configuration.EntityManagerContext;
+import com.rev.dao.AccountDao;
+import com.rev.dto.AccountDto;
+import com.rev.repository.AccountRepositoryImpl;
+import com.rev.server.AccountServer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.util.List;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class AccountLookupBenchmark {
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        EntityManagerContext.Scope scope;
+        AccountServer accountServer;
+        AccountRepositoryImpl accountRepository;
+
+        @Setup(Level.Trial)
+        public void setup(LedgerState ledgerState) {
+            scope = EntityManagerContext.openScope(ledgerState.injector.getInstance(EntityManagerFactory.class));
+            accountServer = ledgerState.injector.getInstance(AccountServer.class);
+            accountRepository = ledgerState.injector.getInstance(AccountRepositoryImpl.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            scope.close();
+        }
+    }
+
+    @Benchmark
+    public AccountDao accountRepositoryFindAccountById(LedgerState ledgerState, ThreadState threadState) {
+        return threadState.accountRepository.findAccountById(ledgerState.randomAccountId());
+    }
+
+    @Benchmark
+    public List<AccountDto> accountServerGetAllAccounts(ThreadState threadState) {
+        return threadState.accountServer.getAllAccounts();
+    }
+}
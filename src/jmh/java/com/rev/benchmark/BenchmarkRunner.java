@@ -0,0 +1,26 @@
+package com.rev.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs all benchmarks with the GC profiler attached, so every result carries its allocation rate
+ * (gc.alloc.rate.norm) next to throughput and the sampled latency percentiles (p0.99).
+ * Any regular JMH command line option can be passed, e.g. {@code -t 8 -p hotAccounts=2 TransferBenchmark}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String... args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json")
+                .build();
+        new Runner(options).run();
+    }
+}
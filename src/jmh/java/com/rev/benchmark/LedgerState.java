@@ -0,0 +1,96 @@
+package com.rev.benchmark;
+
+import com.google.inject.Injector;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.EntityManagerContext;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import com.rev.repository.AccountRepositoryImpl;
+import com.rev.repository.TransactionRepositoryImpl;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.sql.Date;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Seeds the rev-db persistence unit once per trial with {@code accountCount} accounts, each of them having
+ * {@code historySize} transactions. Transfers are drawn from the first {@code hotAccounts} accounts only,
+ * so a small value makes all benchmark threads fight over the same rows.
+ */
+@State(Scope.Benchmark)
+public class LedgerState {
+
+    static final String CURRENCY_CODE = "eu";
+    // minor units, 1.00 and 1 000 000 000.00
+    static final long TRANSFER_AMOUNT = 100;
+    private static final long INITIAL_BALANCE = 100_000_000_000L;
+
+    @Param({"1000"})
+    public int accountCount;
+
+    @Param({"2", "1000"})
+    public int hotAccounts;
+
+    @Param({"10"})
+    public int historySize;
+
+    Injector injector;
+    long[] accountIds;
+
+    @Setup(Level.Trial)
+    public void seed() {
+        injector = GuiceInjectorProvider.getGuiceInjector();
+        try (EntityManagerContext.Scope ignored = EntityManagerContext.openScope(injector.getInstance(EntityManagerFactory.class))) {
+            AccountRepositoryImpl accountRepository = injector.getInstance(AccountRepositoryImpl.class);
+            TransactionRepositoryImpl transactionRepository = injector.getInstance(TransactionRepositoryImpl.class);
+
+            String runId = Long.toString(System.nanoTime());
+            accountIds = new long[accountCount];
+            for (int i = 0; i < accountCount; i++) {
+                AccountDao accountDao = accountRepository.createAccount(AccountDao.builder()
+                        .username("bench")
+                        .email("bench" + runId + "_" + i + "@rev.com")
+                        .balance(INITIAL_BALANCE)
+                        .currencyCode(CURRENCY_CODE)
+                        .build());
+                accountIds[i] = accountDao.getAccountId();
+            }
+
+            for (int i = 0; i < accountCount; i++) {
+                for (int j = 0; j < historySize; j++) {
+                    transactionRepository.addTransaction(TransactionDao.builder()
+                            .fromAccountId(accountIds[i])
+                            .toAccountId(accountIds[(i + j + 1) % accountCount])
+                            .amount(TRANSFER_AMOUNT)
+                            .currencyCode(CURRENCY_CODE)
+                            .status(TransactionStatus.SUCCESS)
+                            .date(new Date(Instant.now().toEpochMilli()))
+                            .message("")
+                            .build());
+                }
+            }
+        }
+    }
+
+    long randomAccountId() {
+        return accountIds[ThreadLocalRandom.current().nextInt(accountCount)];
+    }
+
+    int randomHotAccountIndex() {
+        return ThreadLocalRandom.current().nextInt(Math.min(hotAccounts, accountCount));
+    }
+
+    /**
+     * Picks two different hot accounts, source first.
+     */
+    int[] randomTransferPair() {
+        int limit = Math.min(hotAccounts, accountCount);
+        int from = randomHotAccountIndex();
+        int to = limit < 2 ? (from + 1) % accountCount : (from + 1 + ThreadLocalRandom.current().nextInt(limit - 1)) % limit;
+        return new int[]{from, to};
+    }
+}
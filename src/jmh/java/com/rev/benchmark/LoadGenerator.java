@@ -0,0 +1,311 @@
+package com.rev.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.configuration.jersey.JerseyBootstrapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * End-to-end load test: starts the server, seeds {@code rev.load.accounts} accounts through the bulk import and sends
+ * a mix of transfers, account lookups and history reads at a fixed rate of {@code rev.load.rate} requests per second.
+ * <p>
+ * The load is open-loop: request n is due at {@code start + n / rate} whether or not earlier requests have been
+ * answered, and its latency is measured from that intended start, not from when it was actually sent. A server that
+ * stalls for a second therefore shows a second of latency on every request due during the stall instead of on the one
+ * request that happened to wait (coordinated omission). The service time measured from the actual send is reported
+ * next to it, so the difference between the two shows how far the generator fell behind.
+ * Failed requests, error statuses included, are recorded like answered ones and also counted as errors, and requests
+ * still unanswered when the run ends are recorded with the latency they had reached by then; leaving either out would
+ * hide exactly the slowest requests. Throughput counts successful answers over the time from the start of the
+ * measurement to the last answer, not over the planned duration.
+ * <p>
+ * Latency percentiles and throughput of every operation are written to {@code rev.load.report}.
+ */
+public class LoadGenerator {
+
+    private static final String CURRENCY_CODE = LedgerState.CURRENCY_CODE;
+    private static final String ACCOUNTS_ENDPOINT = JerseyBootstrapper.BASE_URI + "/account";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    // percentile distributions in milliseconds
+    private static final double NANOS_PER_MILLI = 1_000_000d;
+
+    private final int accountCount = ApplicationProperties.getInt("rev.load.accounts", 1000);
+    private final int rate = ApplicationProperties.getInt("rev.load.rate", 500);
+    private final int warmupSeconds = ApplicationProperties.getInt("rev.load.warmup-seconds", 10);
+    private final int durationSeconds = ApplicationProperties.getInt("rev.load.duration-seconds", 60);
+    private final int maxInFlight = ApplicationProperties.getInt("rev.load.max-in-flight", 10_000);
+    private final String mix = ApplicationProperties.getString("rev.load.mix", "transfer:50,lookup:40,history:10");
+    private final Path report = Paths.get(ApplicationProperties.getString("rev.load.report", "target/load-report.txt"));
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+    private final SplittableRandom random = new SplittableRandom();
+    private final List<Operation> operations = new ArrayList<>();
+    // measured requests not answered yet, by request number; whoever removes one records it
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final LongAccumulator lastAnswer = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private long[] accountIds;
+
+    public static void main(String... args) throws Exception {
+        // every request logs at info, which would measure the console instead of the server
+        if (System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+            System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        }
+        JerseyBootstrapper jerseyBootstrapper = new JerseyBootstrapper();
+        jerseyBootstrapper.setupServer();
+        jerseyBootstrapper.startServerForTest();
+        try {
+            new LoadGenerator().run();
+        } finally {
+            jerseyBootstrapper.stopServer();
+        }
+    }
+
+    private void run() throws Exception {
+        if (rate <= 0 || durationSeconds <= 0) {
+            throw new IllegalArgumentException("rev.load.rate and rev.load.duration-seconds must be positive");
+        }
+        parseMix();
+        seedAccounts();
+        System.out.printf("seeded %d accounts, sending %d requests/s for %d s of warm-up and %d s of measurement%n",
+                accountIds.length, rate, warmupSeconds, durationSeconds);
+
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long totalRequests = (long) rate * (warmupSeconds + durationSeconds);
+        long start = System.nanoTime();
+        long measurementStart = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        for (long n = 0; n < totalRequests; n++) {
+            long intendedStart = start + n * periodNanos;
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+            // waiting for a free slot delays this request, and that delay counts against its latency
+            inFlight.acquire();
+            send(pickOperation(), n, intendedStart, intendedStart >= measurementStart, inFlight);
+        }
+        if (!inFlight.tryAcquire(maxInFlight, REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            System.out.printf("%d requests were not answered in time, they are reported as errors%n", pending.size());
+            for (Long n : pending.keySet()) {
+                Pending unanswered = pending.remove(n);
+                if (unanswered != null) {
+                    record(unanswered.operation, unanswered.intendedStart, now, true);
+                }
+            }
+        }
+        long lagMillis = Math.max(0, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                - TimeUnit.SECONDS.toMillis(warmupSeconds + durationSeconds));
+        writeReport(lagMillis, Math.max(1, lastAnswer.get() - measurementStart));
+        System.out.println("report written to " + report.toAbsolutePath());
+    }
+
+    private void send(Operation operation, long n, long intendedStart, boolean measured, Semaphore inFlight) {
+        if (measured) {
+            pending.put(n, new Pending(operation, intendedStart));
+        }
+        long sent = System.nanoTime();
+        client.sendAsync(operation.request.apply(random), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, failure) -> {
+                    long end = System.nanoTime();
+                    inFlight.release();
+                    if (measured && pending.remove(n) != null) {
+                        record(operation, intendedStart, end, failure != null || response.statusCode() >= 300);
+                        operation.serviceTime.recordValue(end - sent);
+                    }
+                });
+    }
+
+    private void record(Operation operation, long intendedStart, long end, boolean failed) {
+        operation.latency.recordValue(end - intendedStart);
+        if (failed) {
+            operation.errors.increment();
+        }
+        lastAnswer.accumulate(end);
+    }
+
+    private Operation pickOperation() {
+        int totalWeight = operations.get(operations.size() - 1).cumulativeWeight;
+        int pick = random.nextInt(totalWeight);
+        for (Operation operation : operations) {
+            if (pick < operation.cumulativeWeight) {
+                return operation;
+            }
+        }
+        throw new IllegalStateException("no operation for weight " + pick);
+    }
+
+    /**
+     * Reads {@code rev.load.mix}: comma separated {@code operation:weight} pairs of transfer, lookup and history.
+     */
+    private void parseMix() {
+        int cumulativeWeight = 0;
+        for (String entry : mix.split(",")) {
+            String[] nameAndWeight = entry.trim().split(":");
+            int weight = Integer.parseInt(nameAndWeight[1].trim());
+            if (weight <= 0) {
+                continue;
+            }
+            cumulativeWeight += weight;
+            String name = nameAndWeight[0].trim();
+            operations.add(new Operation(name, cumulativeWeight, requestOf(name)));
+        }
+        if (operations.isEmpty()) {
+            throw new IllegalArgumentException("rev.load.mix has no operation with a positive weight: " + mix);
+        }
+    }
+
+    private Function<SplittableRandom, HttpRequest> requestOf(String operation) {
+        switch (operation) {
+            case "transfer":
+                return random -> {
+                    long from = randomAccountId(random);
+                    long to = randomAccountId(random);
+                    return HttpRequest.newBuilder(URI.create(ACCOUNTS_ENDPOINT + "/transaction"))
+                            .timeout(REQUEST_TIMEOUT)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"fromAccountId\": " + from + ", \"toAccountId\": " + to
+                                    + ", \"amount\": \"0.01\", \"currencyCode\": \"" + CURRENCY_CODE + "\"}"))
+                            .build();
+                };
+            case "lookup":
+                return random -> HttpRequest.newBuilder(URI.create(ACCOUNTS_ENDPOINT + "/" + randomAccountId(random)))
+                        .timeout(REQUEST_TIMEOUT)
+                        .build();
+            case "history":
+                return random -> HttpRequest.newBuilder(URI.create(ACCOUNTS_ENDPOINT + "/" + randomAccountId(random)
+                        + "/transaction?direction=both&limit=20"))
+                        .timeout(REQUEST_TIMEOUT)
+                        .build();
+            default:
+                throw new IllegalArgumentException("unknown operation in rev.load.mix: " + operation);
+        }
+    }
+
+    private long randomAccountId(SplittableRandom random) {
+        return accountIds[random.nextInt(accountIds.length)];
+    }
+
+    /**
+     * Creates the accounts with one bulk import, then reads their ids back from the account list.
+     */
+    private void seedAccounts() throws IOException, InterruptedException {
+        String emailSuffix = "." + System.nanoTime() + "@load.rev.com";
+        StringBuilder csv = new StringBuilder("username,email,balance,currencyCode\n");
+        for (int i = 0; i < accountCount; i++) {
+            csv.append("load,").append(i).append(emailSuffix).append(",1000000.00,").append(CURRENCY_CODE).append('\n');
+        }
+        HttpResponse<String> imported = client.send(HttpRequest.newBuilder(URI.create(ACCOUNTS_ENDPOINT + "/bulk"))
+                .header("Content-Type", "text/csv")
+                .POST(HttpRequest.BodyPublishers.ofString(csv.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (imported.statusCode() != 200) {
+            throw new IllegalStateException("seeding accounts failed with " + imported.statusCode() + ": " + imported.body());
+        }
+
+        HttpResponse<byte[]> accounts = client.send(HttpRequest.newBuilder(URI.create(ACCOUNTS_ENDPOINT)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        List<Long> seeded = new ArrayList<>(accountCount);
+        for (JsonNode account : new ObjectMapper().readTree(accounts.body())) {
+            if (account.path("email").asText().endsWith(emailSuffix)) {
+                seeded.add(account.path("accountId").asLong());
+            }
+        }
+        if (seeded.isEmpty()) {
+            throw new IllegalStateException("no account was seeded: " + imported.body());
+        }
+        accountIds = seeded.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private void writeReport(long lagMillis, long measuredNanos) throws IOException {
+        double measuredSeconds = measuredNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(report), true, StandardCharsets.UTF_8)) {
+            out.printf("# %s, %d accounts, target rate %d requests/s, mix %s%n", Instant.now(), accountIds.length, rate, mix);
+            out.printf("# %d s warm-up, %d s measured, last answer after %.1f s, generator finished %d ms late%n",
+                    warmupSeconds, durationSeconds, measuredSeconds, lagMillis);
+            Histogram total = new Histogram(3);
+            long errors = 0;
+            for (Operation operation : operations) {
+                total.add(operation.latency);
+                errors += operation.errors.sum();
+            }
+            writeSummary(out, "all", total, errors, measuredSeconds);
+            for (Operation operation : operations) {
+                writeSummary(out, operation.name, operation.latency, operation.errors.sum(), measuredSeconds);
+            }
+            for (Operation operation : operations) {
+                out.printf("%n# %s latency from intended start (ms), errors included, corrected for coordinated omission%n", operation.name);
+                operation.latency.outputPercentileDistribution(out, NANOS_PER_MILLI);
+                out.printf("%n# %s service time from actual send (ms), not corrected%n", operation.name);
+                operation.serviceTime.outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+        }
+    }
+
+    private void writeSummary(PrintStream out, String name, Histogram latency, long errors, double measuredSeconds) {
+        out.printf("%-8s throughput %10.1f/s  errors %8d  p50 %9.3f ms  p99 %9.3f ms  p99.9 %9.3f ms  max %9.3f ms%n",
+                name, (latency.getTotalCount() - errors) / measuredSeconds, errors,
+                latency.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                latency.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                latency.getMaxValue() / NANOS_PER_MILLI);
+    }
+
+    private static class Operation {
+        private final String name;
+        private final int cumulativeWeight;
+        private final Function<SplittableRandom, HttpRequest> request;
+        // 3 significant digits, auto-resizing up to whatever the slowest request takes
+        private final Histogram latency = new ConcurrentHistogram(3);
+        private final Histogram serviceTime = new ConcurrentHistogram(3);
+        private final LongAdder errors = new LongAdder();
+
+        private Operation(String name, int cumulativeWeight, Function<SplittableRandom, HttpRequest> request) {
+            this.name = name;
+            this.cumulativeWeight = cumulativeWeight;
+            this.request = request;
+        }
+    }
+
+    private static class Pending {
+        private final Operation operation;
+        private final long intendedStart;
+
+        private Pending(Operation operation, long intendedStart) {
+            this.operation = operation;
+            this.intendedStart = intendedStart;
+        }
+    }
+}
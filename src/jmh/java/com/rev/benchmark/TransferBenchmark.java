@@ -0,0 +1,84 @@
+package com.rev.benchmark;
+
+import com.rev.configuration.EntityManagerContext;
+import com.rev.common.Money;
+import com.rev.common.TransactionStatus;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import com.rev.dto.TransactionDto;
+import com.rev.repository.AccountRepositoryImpl;
+import com.rev.repository.TransactionRepositoryImpl;
+import com.rev.server.TransactionServer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.sql.Date;
+import java.time.Instant;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class TransferBenchmark {
+
+    /**
+     * Repositories hold the entity manager of the scope they were created in, so every benchmark thread opens its own.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+        EntityManagerContext.Scope scope;
+        TransactionServer transactionServer;
+        TransactionRepositoryImpl transactionRepository;
+        AccountRepositoryImpl accountRepository;
+        AccountDao[] managedAccounts;
+
+        @Setup(Level.Trial)
+        public void setup(LedgerState ledgerState) {
+            scope = EntityManagerContext.openScope(ledgerState.injector.getInstance(EntityManagerFactory.class));
+            transactionServer = ledgerState.injector.getInstance(TransactionServer.class);
+            transactionRepository = ledgerState.injector.getInstance(TransactionRepositoryImpl.class);
+            accountRepository = ledgerState.injector.getInstance(AccountRepositoryImpl.class);
+            managedAccounts = new AccountDao[ledgerState.accountCount];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            scope.close();
+        }
+
+        AccountDao managedAccount(LedgerState ledgerState, int index) {
+            if (managedAccounts[index] == null) {
+                managedAccounts[index] = accountRepository.findAccountById(ledgerState.accountIds[index]);
+            }
+            return managedAccounts[index];
+        }
+    }
+
+    @Benchmark
+    public void transactionServerAddTransaction(LedgerState ledgerState, ThreadState threadState) throws Exception {
+        int[] pair = ledgerState.randomTransferPair();
+        threadState.transactionServer.addTransaction(TransactionDto.builder()
+                .fromAccountId(ledgerState.accountIds[pair[0]])
+                .toAccountId(ledgerState.accountIds[pair[1]])
+                .amount(Money.of(LedgerState.TRANSFER_AMOUNT, LedgerState.CURRENCY_CODE))
+                .currencyCode(LedgerState.CURRENCY_CODE)
+                .build());
+    }
+
+    @Benchmark
+    public TransactionDao transactionRepositoryAddTransaction(LedgerState ledgerState, ThreadState threadState) throws Exception {
+        int[] pair = ledgerState.randomTransferPair();
+        AccountDao accountFrom = threadState.managedAccount(ledgerState, pair[0]);
+        AccountDao accountTo = threadState.managedAccount(ledgerState, pair[1]);
+        return threadState.transactionRepository.addTransaction(accountFrom, accountTo, TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(LedgerState.TRANSFER_AMOUNT)
+                .currencyCode(LedgerState.CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(new Date(Instant.now().toEpochMilli()))
+                .message("")
+                .build());
+    }
+}
@@ -1,21 +1,90 @@
 package com.rev;
 
+import com.rev.configuration.ApplicationProperties;
+import com.rev.configuration.ConfigurationModule;
+import com.rev.configuration.StartupTimer;
 import com.rev.configuration.jersey.JerseyBootstrapper;
+import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+@Slf4j
 public class MainApplication {
 
 private static JerseyBootstrapper jerseyBootstrapper;
 
     public static void main(String... args) {
+        StartupTimer startupTimer = new StartupTimer();
+        // in fast start mode hibernate boots on its own thread from here on
+        ConfigurationModule.startPersistence();
+        startupTimer.phase("persistence");
         jerseyBootstrapper = new JerseyBootstrapper();
+        startupTimer.phase("guice");
         jerseyBootstrapper.setupServer();
+        startupTimer.phase("jetty setup");
 
         try {
             jerseyBootstrapper.startServer();
+            startupTimer.phase("jetty start");
+            // otherwise hibernate booted within the persistence phase and is already up
+            if (ConfigurationModule.isFastStart()) {
+                long persistenceBootstrapMillis = ConfigurationModule.awaitPersistence();
+                startupTimer.phase("waiting for hibernate");
+                startupTimer.phase("hibernate bootstrap", persistenceBootstrapMillis);
+            }
+            startupTimer.logReady();
+
+            if (ApplicationProperties.getBoolean("rev.startup.exit-after-start", false)) {
+                warmUp();
+                jerseyBootstrapper.stopServer();
+            } else {
+                jerseyBootstrapper.joinServer();
+            }
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
             jerseyBootstrapper.destroyServer();
         }
+        if (ApplicationProperties.getBoolean("rev.startup.exit-after-start", false)) {
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Sends one request of each common kind so a training run for the class data sharing archive also loads the
+     * classes of the request path.
+     */
+    private static void warmUp() throws IOException {
+        for (int i = 1; i <= 2; i++) {
+            request("POST", "/account", "{\"username\":\"warmup" + i + "\",\"email\":\"warmup" + i + "@rev.com\",\"balance\":10,\"currencyCode\":\"usd\"}");
+        }
+        request("POST", "/account/transaction", "{\"fromAccountId\":1,\"toAccountId\":2,\"amount\":\"1\",\"currencyCode\":\"usd\"}");
+        request("GET", "/account/1", null);
+        request("GET", "/account/1/transaction", null);
+        request("GET", "/metrics", null);
+    }
+
+    private static void request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(JerseyBootstrapper.BASE_URI + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (inputStream != null) {
+                inputStream.readAllBytes();
+            }
+        }
+        log.info("warm-up {} {}: {}", method, path, status);
     }
-}
\ No newline at end of file
+}
@@ -9,6 +9,13 @@ public enum ErrorsCode {
     ACCOUNT_CREATION_FAILED("account creation failed"),
     NOT_ENOUGH_BALANCE("not enough balance"),
     ACCOUNT_UPDATE_BALANCE_FAILED("account update balance failed"),
+    INVALID_PARAMETER("invalid request parameter"),
+    BALANCE_OVERFLOW("balance out of range"),
+    EMAIL_TAKEN("email already taken"),
+    BALANCE_STRIPES_NOT_SUPPORTED("balance stripes are not supported by this balance store"),
+    STATEMENTS_NOT_SUPPORTED("statements are not supported by this transaction repository"),
+    SERVER_BUSY("server is busy"),
+    IDEMPOTENCY_KEY_REUSED("idempotency key already used for a different request"),
     UNEXPECTED_ERROR("unexpected error");
 
     private String message;
@@ -20,4 +27,13 @@ public enum ErrorsCode {
     public String getMessage() {
         return message;
     }
+
+    public static ErrorsCode fromMessage(String message) {
+        for (ErrorsCode errorsCode : values()) {
+            if (errorsCode.message.equals(message) || errorsCode.name().equals(message)) {
+                return errorsCode;
+            }
+        }
+        return UNEXPECTED_ERROR;
+    }
 }
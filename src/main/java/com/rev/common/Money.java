@@ -0,0 +1,158 @@
+package com.rev.common;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Currency;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Amount of money as a count of minor units (cents for EUR) and the number of decimal places it was written with.
+ * Accounts and transactions keep plain {@code long} minor units in the scale of their currency, this type only
+ * carries amounts across the JSON boundary. Conversions fail with {@link ArithmeticException} rather than round
+ * or overflow.
+ */
+@Getter
+@EqualsAndHashCode
+@JsonSerialize(using = MoneySerializer.class)
+@JsonDeserialize(using = MoneyDeserializer.class)
+public final class Money {
+
+    /** decimal places of currency codes unknown to ISO 4217 */
+    private static final int DEFAULT_SCALE = 2;
+    private static final int MAX_SCALE = 18;
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    private static final Map<String, Integer> CURRENCY_SCALES = new ConcurrentHashMap<>();
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final long minorUnits;
+    private final int scale;
+
+    public Money(long minorUnits, int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("scale out of range: " + scale);
+        }
+        this.minorUnits = minorUnits;
+        this.scale = scale;
+    }
+
+    public static Money of(long minorUnits, String currencyCode) {
+        return new Money(minorUnits, scaleOf(currencyCode));
+    }
+
+    public static Money valueOf(String amount) {
+        return parse(amount.toCharArray(), 0, amount.length());
+    }
+
+    /**
+     * @return decimal places of the currency, {@value #DEFAULT_SCALE} for codes that are not ISO 4217
+     */
+    public static int scaleOf(String currencyCode) {
+        Integer scale = CURRENCY_SCALES.get(currencyCode);
+        return scale != null ? scale : CURRENCY_SCALES.computeIfAbsent(currencyCode, Money::lookupScale);
+    }
+
+    /**
+     * @return the amount in minor units of {@code currencyCode}
+     * @throws ArithmeticException if the amount has more decimal places than the currency or does not fit a long
+     */
+    public long toMinorUnits(String currencyCode) {
+        return toMinorUnits(scaleOf(currencyCode));
+    }
+
+    public long toMinorUnits(int targetScale) {
+        if (targetScale >= scale) {
+            return Math.multiplyExact(minorUnits, POWERS_OF_TEN[targetScale - scale]);
+        }
+        long divisor = POWERS_OF_TEN[scale - targetScale];
+        if (minorUnits % divisor != 0) {
+            throw new ArithmeticException("amount has more than " + targetScale + " decimal places");
+        }
+        return minorUnits / divisor;
+    }
+
+    /**
+     * Parses a plain decimal such as {@code -12.50}, keeping the number of decimal places as written.
+     *
+     * @throws NumberFormatException if the text is not a plain decimal
+     * @throws ArithmeticException if the amount does not fit a long
+     */
+    public static Money parse(char[] text, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+        boolean negative = position < end && text[position] == '-';
+        if (negative || (position < end && text[position] == '+')) {
+            position++;
+        }
+        // accumulated negatively so Long.MIN_VALUE minor units can be parsed as well
+        long value = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; position < end; position++) {
+            char character = text[position];
+            if (character == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            }
+            if (character < '0' || character > '9') {
+                throw new NumberFormatException("not a decimal amount: " + new String(text, offset, length));
+            }
+            value = Math.subtractExact(Math.multiplyExact(value, 10), character - '0');
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        if (digits == 0 || scale > MAX_SCALE) {
+            throw new NumberFormatException("not a decimal amount: " + new String(text, offset, length));
+        }
+        return new Money(negative ? value : Math.negateExact(value), Math.max(scale, 0));
+    }
+
+    /**
+     * Writes the amount as a plain decimal to the end of {@code buffer}, which needs room for 21 characters.
+     *
+     * @return index of the first character written
+     */
+    int write(char[] buffer) {
+        int position = buffer.length;
+        // negative space again, see parse
+        long value = minorUnits < 0 ? minorUnits : -minorUnits;
+        int digits = 0;
+        do {
+            buffer[--position] = (char) ('0' - value % 10);
+            value /= 10;
+            if (++digits == scale) {
+                buffer[--position] = '.';
+            }
+        } while (value != 0 || digits <= scale);
+        if (minorUnits < 0) {
+            buffer[--position] = '-';
+        }
+        return position;
+    }
+
+    @Override
+    public String toString() {
+        char[] buffer = new char[MoneySerializer.BUFFER_SIZE];
+        int start = write(buffer);
+        return new String(buffer, start, buffer.length - start);
+    }
+
+    private static Integer lookupScale(String currencyCode) {
+        try {
+            return Math.max(Currency.getInstance(currencyCode.toUpperCase()).getDefaultFractionDigits(), 0);
+        } catch (IllegalArgumentException e) {
+            return DEFAULT_SCALE;
+        }
+    }
+}
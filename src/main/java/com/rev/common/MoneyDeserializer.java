@@ -0,0 +1,31 @@
+package com.rev.common;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads {@link Money} from a JSON number or numeric string straight from the parser's buffer.
+ */
+public class MoneyDeserializer extends StdDeserializer<Money> {
+
+    public MoneyDeserializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.getCurrentToken();
+        if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT && token != JsonToken.VALUE_STRING) {
+            return (Money) context.handleUnexpectedToken(Money.class, parser);
+        }
+        try {
+            return Money.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } catch (NumberFormatException | ArithmeticException e) {
+            return (Money) context.handleWeirdStringValue(Money.class, parser.getText(), e.getMessage());
+        }
+    }
+}
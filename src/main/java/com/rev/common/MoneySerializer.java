@@ -0,0 +1,26 @@
+package com.rev.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link Money} as a JSON number with its decimal places, without going through {@link java.math.BigDecimal}.
+ */
+public class MoneySerializer extends StdSerializer<Money> {
+
+    static final int BUFFER_SIZE = 24;
+
+    public MoneySerializer() {
+        super(Money.class);
+    }
+
+    @Override
+    public void serialize(Money money, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        int start = money.write(buffer);
+        generator.writeRawValue(buffer, start, BUFFER_SIZE - start);
+    }
+}
@@ -0,0 +1,5 @@
+package com.rev.common;
+
+public enum TransactionDirection {
+    IN, OUT, BOTH
+}
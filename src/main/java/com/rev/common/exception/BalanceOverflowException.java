@@ -0,0 +1,11 @@
+package com.rev.common.exception;
+
+public class BalanceOverflowException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public BalanceOverflowException(String message) {
+        super(message);
+    }
+
+}
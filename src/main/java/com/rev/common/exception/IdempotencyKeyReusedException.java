@@ -0,0 +1,11 @@
+package com.rev.common.exception;
+
+public class IdempotencyKeyReusedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public IdempotencyKeyReusedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,10 @@
+package com.rev.common.exception;
+
+public class InvalidParameterException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public InvalidParameterException(String message) {
+        super(message);
+    }
+}
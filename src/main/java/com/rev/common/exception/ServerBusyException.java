@@ -0,0 +1,15 @@
+package com.rev.common.exception;
+
+/**
+ * The server can not take the request right now, e.g. a queue stayed full; the request did not change anything and
+ * can be retried. Unchecked, it is thrown from deep inside the transfer engines.
+ */
+public class ServerBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServerBusyException(String message) {
+        super(message);
+    }
+
+}
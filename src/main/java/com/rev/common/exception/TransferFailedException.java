@@ -0,0 +1,15 @@
+package com.rev.common.exception;
+
+/**
+ * A transfer failed for a reason the client can not fix, e.g. the database gave up; nothing was moved and the
+ * transfer may be retried.
+ */
+public class TransferFailedException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public TransferFailedException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.rev.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Application settings read from {@code application.properties} on the classpath. Every key can be overridden
+ * with a system property of the same name, e.g. {@code -Drev.transaction.repository=ledger}.
+ */
+@Slf4j
+public final class ApplicationProperties {
+
+    private static final String PROPERTIES_FILE = "/application.properties";
+    private static final Properties PROPERTIES = load();
+
+    private ApplicationProperties() {
+    }
+
+    public static String getString(String key, String defaultValue) {
+        return System.getProperty(key, PROPERTIES.getProperty(key, defaultValue)).trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        return Integer.parseInt(getString(key, Integer.toString(defaultValue)));
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        return Long.parseLong(getString(key, Long.toString(defaultValue)));
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(key, Boolean.toString(defaultValue)));
+    }
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream inputStream = ApplicationProperties.class.getResourceAsStream(PROPERTIES_FILE)) {
+            if (inputStream != null) {
+                properties.load(inputStream);
+            }
+        } catch (IOException e) {
+            log.info("could not read {}: {}", PROPERTIES_FILE, e.getMessage());
+        }
+        return properties;
+    }
+}
@@ -3,19 +3,171 @@ package com.rev.configuration;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import com.google.inject.name.Names;
+import com.rev.repository.AccountRepository;
+import com.rev.repository.AccountRepositoryImpl;
+import com.rev.repository.BalanceSnapshotter;
+import com.rev.repository.BalanceStore;
+import com.rev.repository.ColumnBalanceStore;
+import com.rev.repository.EventSourcedBalanceStore;
+import com.rev.repository.GroupCommitTransactionRepository;
+import com.rev.repository.JdbcAccountRepository;
+import com.rev.repository.JdbcTransactionRepository;
+import com.rev.repository.LedgerAccountRepository;
+import com.rev.repository.LedgerTransactionRepository;
+import com.rev.repository.StripedBalanceStore;
+import com.rev.repository.TimedAccountRepository;
+import com.rev.repository.TimedTransactionRepository;
+import com.rev.repository.TransactionRepository;
+import com.rev.repository.TransactionRepositoryImpl;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class ConfigurationModule extends AbstractModule {
 
-    private static final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("rev-db");
-    private static final ThreadLocal<EntityManager> ENTITY_MANAGER = ThreadLocal.withInitial(() -> entityManagerFactory.createEntityManager());
+    private static final boolean FAST_START = "fast".equals(ApplicationProperties.getString("rev.startup.mode", "standard"));
+    private static volatile long persistenceBootstrapMillis;
+    private static final CompletableFuture<EntityManagerFactory> entityManagerFactoryFuture = bootstrapPersistence();
+    private static final EntityManagerFactory entityManagerFactory = FAST_START
+            ? new DeferredEntityManagerFactory(entityManagerFactoryFuture)
+            : entityManagerFactoryFuture.join();
 
-        @Provides
-        public EntityManager createEntityManager() {
-           return ENTITY_MANAGER.get();
+    @Override
+    protected void configure() {
+        String transactionRepository = ApplicationProperties.getString("rev.transaction.repository", "jpa");
+        Named untimed = Names.named(TimedTransactionRepository.DELEGATE);
+        if ("ledger".equals(transactionRepository)) {
+            bind(TransactionRepository.class).annotatedWith(untimed).to(LedgerTransactionRepository.class);
+        } else if ("group".equals(transactionRepository)) {
+            bind(TransactionRepository.class).annotatedWith(untimed).to(GroupCommitTransactionRepository.class);
+        } else if ("jdbc".equals(transactionRepository)) {
+            bind(TransactionRepository.class).annotatedWith(untimed).to(JdbcTransactionRepository.class);
+        } else {
+            bind(TransactionRepository.class).annotatedWith(untimed).to(TransactionRepositoryImpl.class);
         }
+        bind(TransactionRepository.class).to(TimedTransactionRepository.class);
+
+        String accountRepository = ApplicationProperties.getString("rev.account.repository", "jpa");
+        // with the ledger engine balance changes go through the ledger, everything else to the configured repository
+        Named accounts = "ledger".equals(transactionRepository) ? Names.named(LedgerAccountRepository.DELEGATE) : untimed;
+        if ("jdbc".equals(accountRepository)) {
+            bind(AccountRepository.class).annotatedWith(accounts).to(JdbcAccountRepository.class);
+        } else {
+            bind(AccountRepository.class).annotatedWith(accounts).to(AccountRepositoryImpl.class);
+        }
+        if ("ledger".equals(transactionRepository)) {
+            bind(AccountRepository.class).annotatedWith(untimed).to(LedgerAccountRepository.class);
+        }
+        bind(AccountRepository.class).to(TimedAccountRepository.class);
+
+        String balanceStore = ApplicationProperties.getString("rev.account.balance-store", "column");
+        if ("events".equals(balanceStore)) {
+            if ("ledger".equals(transactionRepository)) {
+                throw new IllegalStateException("the ledger keeps balances itself, rev.account.balance-store=events needs another rev.transaction.repository");
+            }
+            if ("jdbc".equals(transactionRepository) || "jdbc".equals(accountRepository)) {
+                throw new IllegalStateException("the jdbc repositories keep balances in the account row, rev.account.balance-store=events needs the jpa ones");
+            }
+            bind(BalanceStore.class).to(EventSourcedBalanceStore.class);
+            bind(BalanceSnapshotter.class).asEagerSingleton();
+        } else if ("striped".equals(balanceStore)) {
+            if ("ledger".equals(transactionRepository)) {
+                throw new IllegalStateException("the ledger keeps balances itself, rev.account.balance-store=striped needs another rev.transaction.repository");
+            }
+            if ("jdbc".equals(transactionRepository) || "jdbc".equals(accountRepository)) {
+                throw new IllegalStateException("the jdbc repositories keep balances in the account row, rev.account.balance-store=striped needs the jpa ones");
+            }
+            bind(BalanceStore.class).to(StripedBalanceStore.class);
+        } else {
+            bind(BalanceStore.class).to(ColumnBalanceStore.class);
+        }
+    }
+
+    @Provides
+    public EntityManager createEntityManager() {
+        return EntityManagerContext.current();
+    }
+
+    @Provides
+    @Singleton
+    public EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactory;
+    }
+
+    /**
+     * Starts building the entity manager factory; called before the injector is created so that in fast start mode
+     * Hibernate boots while Guice and Jetty start.
+     */
+    public static void startPersistence() {
+        // bootstrapping starts when this class is initialised
     }
 
+    /**
+     * @return whether Hibernate boots on its own thread, see {@link #startPersistence()}
+     */
+    public static boolean isFastStart() {
+        return FAST_START;
+    }
+
+    /**
+     * Waits until Hibernate is up.
+     *
+     * @return how long building the entity manager factory took
+     */
+    public static long awaitPersistence() {
+        entityManagerFactoryFuture.join();
+        return persistenceBootstrapMillis;
+    }
+
+    /**
+     * In fast start mode the factory is built on its own thread and components get a {@link DeferredEntityManagerFactory}
+     * until it is done.
+     */
+    private static CompletableFuture<EntityManagerFactory> bootstrapPersistence() {
+        if (!FAST_START) {
+            return CompletableFuture.completedFuture(createEntityManagerFactory());
+        }
+        CompletableFuture<EntityManagerFactory> future = new CompletableFuture<>();
+        Thread bootstrap = new Thread(() -> {
+            try {
+                future.complete(createEntityManagerFactory());
+            } catch (Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        }, "persistence-bootstrap");
+        bootstrap.setDaemon(true);
+        bootstrap.start();
+        return future;
+    }
+
+    private static EntityManagerFactory createEntityManagerFactory() {
+        long start = System.nanoTime();
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("rev-db", persistenceProperties());
+        persistenceBootstrapMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return factory;
+    }
+
+    private static Map<String, Object> persistenceProperties() {
+        Map<String, Object> properties = new HashMap<>();
+        // fast start only checks the schema left by an earlier run instead of generating it
+        properties.put("hibernate.hbm2ddl.auto", ApplicationProperties.getString("rev.db.schema", FAST_START ? "validate" : "create-drop"));
+        String url = ApplicationProperties.getString("rev.db.url", "");
+        if (!url.isEmpty()) {
+            properties.put("javax.persistence.jdbc.url", url);
+        }
+        properties.put("hibernate.hikari.maximumPoolSize", ApplicationProperties.getString("rev.db.pool.size", "10"));
+        properties.put("hibernate.hikari.minimumIdle", ApplicationProperties.getString("rev.db.pool.min-idle", "2"));
+        properties.put("hibernate.hikari.connectionTimeout", ApplicationProperties.getString("rev.db.pool.connection-timeout-ms", "30000"));
+        properties.put("hibernate.hikari.idleTimeout", ApplicationProperties.getString("rev.db.pool.idle-timeout-ms", "600000"));
+        properties.put("hibernate.hikari.maxLifetime", ApplicationProperties.getString("rev.db.pool.max-lifetime-ms", "1800000"));
+        properties.put("hibernate.hikari.poolName", "rev-db");
+        return properties;
+    }
+}
@@ -0,0 +1,105 @@
+package com.rev.configuration;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.Query;
+import javax.persistence.SynchronizationType;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.metamodel.Metamodel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * {@link EntityManagerFactory} standing in for one still being built on another thread, so components holding it can
+ * be created before Hibernate is up. Every call waits for the real factory.
+ */
+class DeferredEntityManagerFactory implements EntityManagerFactory {
+
+    private final CompletableFuture<EntityManagerFactory> entityManagerFactory;
+
+    DeferredEntityManagerFactory(CompletableFuture<EntityManagerFactory> entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    EntityManagerFactory get() {
+        try {
+            return entityManagerFactory.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public EntityManager createEntityManager() {
+        return get().createEntityManager();
+    }
+
+    @Override
+    public EntityManager createEntityManager(Map map) {
+        return get().createEntityManager(map);
+    }
+
+    @Override
+    public EntityManager createEntityManager(SynchronizationType synchronizationType) {
+        return get().createEntityManager(synchronizationType);
+    }
+
+    @Override
+    public EntityManager createEntityManager(SynchronizationType synchronizationType, Map map) {
+        return get().createEntityManager(synchronizationType, map);
+    }
+
+    @Override
+    public CriteriaBuilder getCriteriaBuilder() {
+        return get().getCriteriaBuilder();
+    }
+
+    @Override
+    public Metamodel getMetamodel() {
+        return get().getMetamodel();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !entityManagerFactory.isDone() || get().isOpen();
+    }
+
+    @Override
+    public void close() {
+        get().close();
+    }
+
+    @Override
+    public Map<String, Object> getProperties() {
+        return get().getProperties();
+    }
+
+    @Override
+    public Cache getCache() {
+        return get().getCache();
+    }
+
+    @Override
+    public PersistenceUnitUtil getPersistenceUnitUtil() {
+        return get().getPersistenceUnitUtil();
+    }
+
+    @Override
+    public void addNamedQuery(String name, Query query) {
+        get().addNamedQuery(name, query);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> cls) {
+        return get().unwrap(cls);
+    }
+
+    @Override
+    public <T> void addNamedEntityGraph(String graphName, EntityGraph<T> entityGraph) {
+        get().addNamedEntityGraph(graphName, entityGraph);
+    }
+}
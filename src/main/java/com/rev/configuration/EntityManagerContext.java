@@ -0,0 +1,107 @@
+package com.rev.configuration;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds the entity manager of the request being served by the current thread. Requests open and close it through
+ * {@link EntityManagerFilter}, so the persistence context and its pooled connection live only as long as the request.
+ * Work handed to another thread on behalf of the request {@link #retain() retains} it, the entity manager is closed
+ * once the request and all of that work are done.
+ * Code running outside of a request (benchmarks, tools) has to {@link #openScope(EntityManagerFactory) open a scope}
+ * first, injecting an entity manager without a request or a scope fails.
+ */
+public final class EntityManagerContext {
+
+    private static final ThreadLocal<RequestEntityManager> REQUEST_ENTITY_MANAGER = new ThreadLocal<>();
+
+    private EntityManagerContext() {
+    }
+
+    /**
+     * @return releases the request's reference to the entity manager
+     */
+    static Runnable open(EntityManagerFactory entityManagerFactory) {
+        RequestEntityManager requestEntityManager = new RequestEntityManager(entityManagerFactory.createEntityManager());
+        REQUEST_ENTITY_MANAGER.set(requestEntityManager);
+        return requestEntityManager::release;
+    }
+
+    /**
+     * Unbinds the request's entity manager from the current thread without closing it.
+     */
+    static void detach() {
+        REQUEST_ENTITY_MANAGER.remove();
+    }
+
+    /**
+     * Keeps the current request's entity manager open until the returned action is run.
+     */
+    public static Runnable retain() {
+        RequestEntityManager requestEntityManager = REQUEST_ENTITY_MANAGER.get();
+        if (requestEntityManager == null) {
+            return () -> {
+            };
+        }
+        requestEntityManager.references.incrementAndGet();
+        return requestEntityManager::release;
+    }
+
+    /**
+     * Binds a new entity manager to the current thread for work done outside of a request, closing the scope closes
+     * it. Repositories created inside the scope must not be used after it is closed.
+     */
+    public static Scope openScope(EntityManagerFactory entityManagerFactory) {
+        if (REQUEST_ENTITY_MANAGER.get() != null) {
+            throw new IllegalStateException("an entity manager is already bound to this thread");
+        }
+        return new Scope(open(entityManagerFactory));
+    }
+
+    static EntityManager current() {
+        RequestEntityManager requestEntityManager = REQUEST_ENTITY_MANAGER.get();
+        if (requestEntityManager == null) {
+            throw new IllegalStateException("no entity manager bound to this thread, open a scope outside of requests");
+        }
+        return requestEntityManager.entityManager;
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private final Runnable release;
+
+        private Scope(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void close() {
+            detach();
+            release.run();
+        }
+    }
+
+    private static final class RequestEntityManager {
+
+        private final EntityManager entityManager;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private RequestEntityManager(EntityManager entityManager) {
+            this.entityManager = entityManager;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                if (entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+            } finally {
+                entityManager.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.rev.configuration;
+
+import javax.persistence.EntityManagerFactory;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+
+/**
+ * Opens an entity manager for every request and closes it once the response, streamed bodies included, is written.
+ * For asynchronous requests that is when the async context completes.
+ */
+public class EntityManagerFilter implements Filter {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public EntityManagerFilter() {
+        this.entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        Runnable release = EntityManagerContext.open(entityManagerFactory);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            EntityManagerContext.detach();
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseOnComplete(release));
+            } else {
+                release.run();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static final class ReleaseOnComplete implements AsyncListener {
+
+        private final Runnable release;
+
+        private ReleaseOnComplete(Runnable release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release.run();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
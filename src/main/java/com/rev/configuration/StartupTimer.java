@@ -0,0 +1,42 @@
+package com.rev.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects how long each startup phase took and logs them as one line, together with the time from JVM start until
+ * the server accepts its first request.
+ */
+@Slf4j
+public class StartupTimer {
+
+    private final StringJoiner phases = new StringJoiner(", ");
+    private long phaseStart = System.nanoTime();
+
+    public StartupTimer() {
+        phases.add("jvm " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+    }
+
+    /**
+     * Ends the running phase.
+     */
+    public void phase(String name) {
+        long now = System.nanoTime();
+        phase(name, TimeUnit.NANOSECONDS.toMillis(now - phaseStart));
+        phaseStart = now;
+    }
+
+    /**
+     * Records a phase that ran alongside the others.
+     */
+    public void phase(String name, long millis) {
+        phases.add(name + " " + millis + " ms");
+    }
+
+    public void logReady() {
+        log.info("startup: {}; ready for requests {} ms after JVM start", phases, ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+}
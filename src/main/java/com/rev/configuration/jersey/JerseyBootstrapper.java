@@ -3,31 +3,44 @@ package com.rev.configuration.jersey;
 import com.google.inject.servlet.GuiceFilter;
 import org.eclipse.jetty.server.*;
 import org.eclipse.jetty.server.handler.HandlerCollection;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.glassfish.jersey.servlet.ServletContainer;
+import com.rev.configuration.EntityManagerFilter;
 import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.metrics.Metrics;
 
+import javax.inject.Inject;
 import javax.servlet.DispatcherType;
 import java.util.EnumSet;
 
 public class JerseyBootstrapper {
 
-    private static final int PORT = 8086;
+    public static final int PORT = 8086;
+    public static final String BASE_URI = "http://localhost:" + PORT + "/rev";
     private Server jettyServer;
 
+    @Inject
+    private Metrics metrics;
+
     public JerseyBootstrapper() {
         GuiceInjectorProvider.getGuiceInjector().injectMembers(this);
     }
 
     public void setupServer() {
         jettyServer = new Server(PORT);
+        registerThreadPoolGauges((QueuedThreadPool) jettyServer.getThreadPool());
 
         WebAppContext webAppContext = new WebAppContext();
         webAppContext.setServer(jettyServer);
-        webAppContext.addFilter(GuiceFilter.class, "/*", EnumSet.allOf(DispatcherType.class));
+        webAppContext.addFilter(GuiceFilter.class, "/*", EnumSet.allOf(DispatcherType.class)).setAsyncSupported(true);
+        webAppContext.addFilter(EntityManagerFilter.class, "/*", EnumSet.of(DispatcherType.REQUEST)).setAsyncSupported(true);
 
         ServletHolder holder = new ServletHolder(ServletContainer.class);
+        holder.setAsyncSupported(true);
+        // jersey starts with the server instead of on the first request
+        holder.setInitOrder(0);
         holder.setInitParameter("javax.ws.rs.Application", JerseyConfiguration.class.getCanonicalName());
 
         webAppContext.addServlet(holder, "/*");
@@ -40,8 +53,19 @@ public class JerseyBootstrapper {
         jettyServer.setHandler(handlerCollection);
     }
 
+    private void registerThreadPoolGauges(QueuedThreadPool threadPool) {
+        metrics.registerGauge("rev_jetty_threads", "Jetty threads", threadPool::getThreads);
+        metrics.registerGauge("rev_jetty_threads_busy", "Busy Jetty threads", threadPool::getBusyThreads);
+        metrics.registerGauge("rev_jetty_threads_idle", "Idle Jetty threads", threadPool::getIdleThreads);
+        metrics.registerGauge("rev_jetty_threads_max", "Maximum Jetty threads", threadPool::getMaxThreads);
+        metrics.registerGauge("rev_jetty_queue_size", "Jobs waiting for a Jetty thread", threadPool::getQueueSize);
+    }
+
     public void startServer() throws Exception {
         jettyServer.start();
+    }
+
+    public void joinServer() throws InterruptedException {
         jettyServer.join();
     }
 
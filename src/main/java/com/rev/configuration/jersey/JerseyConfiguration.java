@@ -1,6 +1,8 @@
 package com.rev.configuration.jersey;
 
 import com.rev.controller.AccountTransactionController;
+import com.rev.controller.MetricsController;
+import com.rev.controller.ReconciliationController;
 import com.rev.controller.handler.*;
 import com.rev.repository.AccountRepositoryImpl;
 import com.rev.repository.TransactionRepositoryImpl;
@@ -26,6 +28,8 @@ class JerseyConfiguration extends ResourceConfig {
 
         // controllers
         register(AccountTransactionController.class);
+        register(MetricsController.class);
+        register(ReconciliationController.class);
 
         //services
         register(AccountServer.class);
@@ -41,6 +45,10 @@ class JerseyConfiguration extends ResourceConfig {
         register(AccountNotExistsExceptionHandler.class);
         register(InvalidCurrencyExceptionHandler.class);
         register(NotEnoughBalanceExceptionHandler.class);
+        register(BalanceOverflowExceptionHandler.class);
+        register(InvalidParameterExceptionHandler.class);
+        register(ServerBusyExceptionHandler.class);
+        register(IdempotencyKeyReusedExceptionHandler.class);
         register(GeneralExceptionHandler.class);
     }
 }
\ No newline at end of file
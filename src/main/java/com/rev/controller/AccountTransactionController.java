@@ -1,89 +1,225 @@
 package com.rev.controller;
 
-import com.rev.common.exception.AccountBalanceUpdateException;
-import com.rev.common.exception.AccountCreationException;
-import com.rev.common.exception.AccountNotExistsException;
 import com.rev.dto.AccountDto;
+import com.rev.common.exception.InvalidParameterException;
 import com.rev.dto.TransactionDto;
+import com.rev.server.AccountImportServer;
 import com.rev.server.AccountServer;
+import com.rev.server.TransactionExportServer;
 import com.rev.server.TransactionServer;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import java.io.InputStream;
+import java.util.List;
 
+import static com.rev.common.ErrorsCode.INVALID_PARAMETER;
 import static javax.ws.rs.core.Response.Status.CREATED;
 
 @Path("")
 public class AccountTransactionController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private final AccountServer accountServer;
     private final TransactionServer transactionServer;
+    private final AccountImportServer accountImportServer;
+    private final TransactionExportServer transactionExportServer;
+    private final RequestExecutor requestExecutor;
 
     @Inject
-    public AccountTransactionController(AccountServer accountServer, TransactionServer transactionServer) {
+    public AccountTransactionController(AccountServer accountServer, TransactionServer transactionServer,
+                                        AccountImportServer accountImportServer, TransactionExportServer transactionExportServer,
+                                        RequestExecutor requestExecutor) {
         this.accountServer = accountServer;
         this.transactionServer = transactionServer;
+        this.accountImportServer = accountImportServer;
+        this.transactionExportServer = transactionExportServer;
+        this.requestExecutor = requestExecutor;
     }
 
     @POST
     @Path("/account")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public Response createAccount(AccountDto accountDto) throws AccountCreationException {
-        return Response.status(CREATED)
+    public void createAccount(AccountDto accountDto, @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.executeMutation(asyncResponse, "create-account", () ->
+                Response.status(CREATED)
                         .entity(accountServer.createAccount(accountDto))
-                        .build();
+                        .build());
+    }
+
+    /**
+     * Creates one account per line of an NDJSON or CSV body; rows that fail are listed in the result and do not stop
+     * the import.
+     */
+    @POST
+    @Path("/account/bulk")
+    @Consumes({AccountImportServer.NDJSON, AccountImportServer.CSV})
+    @Produces(MediaType.APPLICATION_JSON)
+    public void importAccounts(InputStream upload, @HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType,
+                               @Suspended AsyncResponse asyncResponse) {
+        boolean csv = contentType.startsWith(AccountImportServer.CSV);
+        requestExecutor.executeMutation(asyncResponse, "import-accounts", () ->
+                Response.ok()
+                        .entity(accountImportServer.importAccounts(upload, csv))
+                        .build());
     }
+
     @PUT
     @Path("/account")
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response updateAccount(AccountDto accountDto) throws AccountNotExistsException, AccountBalanceUpdateException {
-        accountServer.updateAccountBalance(accountDto);
-        return Response.noContent()
-                .build();
+    public void updateAccount(AccountDto accountDto, @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.executeMutation(asyncResponse, "update-account", () -> {
+            accountServer.updateAccountBalance(accountDto);
+            return Response.noContent()
+                    .build();
+        });
     }
 
     @GET
     @Path("/account/{accountId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAccount(@PathParam("accountId") String accountId) throws AccountNotExistsException {
-        return Response.ok()
+    public void getAccount(@PathParam("accountId") String accountId, @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.execute(asyncResponse, "get-account", () ->
+                Response.ok()
                         .entity(accountServer.findAccountById(Long.parseLong(accountId)))
-                        .build();
+                        .build());
     }
 
     @GET
     @Path("/account")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getAllAccounts() {
-        return Response.ok()
-                        .entity(accountServer.getAllAccounts())
-                        .build();
+    public void getAllAccounts(@Suspended AsyncResponse asyncResponse) {
+        requestExecutor.execute(asyncResponse, "get-all-accounts", () ->
+                Response.ok()
+                        .entity(new JsonArrayStreamingOutput<>(accountServer::forEachAccount))
+                        .build());
+    }
+
+    /**
+     * Spreads the credits of a hot account over {@code count} balance stripes, 0 makes it an ordinary account again.
+     */
+    @PUT
+    @Path("/account/{accountId}/stripes")
+    public void setBalanceStripes(@PathParam("accountId") String accountId, @QueryParam("count") Integer count,
+                                  @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.executeMutation(asyncResponse, "set-balance-stripes", () -> {
+            accountServer.setBalanceStripes(Long.parseLong(accountId), count);
+            return Response.noContent().build();
+        });
     }
 
     @DELETE
     @Path("/account/{accountId}")
-    public Response deleteAccount(@PathParam("accountId") String accountId) throws AccountNotExistsException {
-         accountServer.deleteAccount(Long.parseLong(accountId));
-         return Response.noContent().build();
+    public void deleteAccount(@PathParam("accountId") String accountId, @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.executeMutation(asyncResponse, "delete-account", () -> {
+            accountServer.deleteAccount(Long.parseLong(accountId));
+            return Response.noContent().build();
+        });
     }
 
+    /**
+     * A retry carrying the same {@value #IDEMPOTENCY_KEY_HEADER} header as an earlier transfer gets that transfer's
+     * response and is not executed again.
+     */
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     @Path("/account/transaction")
-    public Response addTransaction(TransactionDto transactionDto) throws Exception {
-        transactionServer.addTransaction(transactionDto);
-        return Response.status(CREATED).build();
+    public void addTransaction(TransactionDto transactionDto,
+                               @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+                               @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.executeMutation(asyncResponse, "add-transaction", () -> {
+            transactionServer.addTransaction(transactionDto, idempotencyKey);
+            return Response.status(CREATED).build();
+        });
     }
 
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/account/transaction/batch")
+    public void addTransactions(List<TransactionDto> transactionDtos, @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.executeMutation(asyncResponse, "add-transactions", () ->
+                Response.ok()
+                        .entity(transactionServer.addTransactions(transactionDtos))
+                        .build());
+    }
+
+    /**
+     * Keyset paginated history; when a full page is returned the {@value #NEXT_CURSOR_HEADER} header holds the
+     * value to pass as {@code after} for the next page.
+     */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/account/{accountId}/transaction")
-    public Response getTransactionsForAccount(@PathParam("accountId") String accountId) throws AccountNotExistsException {
-        return Response.ok()
-                .entity(transactionServer.getTransactionsForAccount(Long.parseLong(accountId)))
-                .build();
+    public void getTransactionsForAccount(@PathParam("accountId") String accountId,
+                                          @QueryParam("after") Long afterTransactionId,
+                                          @QueryParam("direction") @DefaultValue("both") String direction,
+                                          @QueryParam("limit") @DefaultValue("100") int limit,
+                                          @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.execute(asyncResponse, "get-transactions", () -> {
+            List<TransactionDto> transactions = transactionServer.getTransactionsForAccount(Long.parseLong(accountId), afterTransactionId, direction, limit);
+            Response.ResponseBuilder response = Response.ok().entity(transactions);
+            if (!transactions.isEmpty() && transactions.size() == Math.min(limit, TransactionServer.PAGE_MAX_SIZE)) {
+                response.header(NEXT_CURSOR_HEADER, transactions.get(transactions.size() - 1).getTransactionId());
+            }
+            return response.build();
+        });
+    }
+
+    /**
+     * Daily debit and credit totals and counts of the account between {@code from} and {@code to}
+     * ({@code yyyy-MM-dd}, both inclusive), read from per day rollups.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/account/{accountId}/statement")
+    public void getStatement(@PathParam("accountId") String accountId,
+                             @QueryParam("from") String from,
+                             @QueryParam("to") String to,
+                             @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.execute(asyncResponse, "get-statement", () ->
+                Response.ok()
+                        .entity(transactionServer.getStatement(Long.parseLong(accountId), from, to))
+                        .build());
+    }
+
+    /**
+     * Streams every matching transaction in transaction id order, one per line as NDJSON or CSV, gzipped when the
+     * client accepts it. An interrupted export is resumed by passing the id of the last transaction received as
+     * {@code after}.
+     */
+    @GET
+    @Produces({TransactionExportStreamingOutput.NDJSON, TransactionExportStreamingOutput.CSV})
+    @Path("/transaction/export")
+    public void exportTransactions(@QueryParam("accountId") Long accountId,
+                                   @QueryParam("from") String from,
+                                   @QueryParam("to") String to,
+                                   @QueryParam("after") Long afterTransactionId,
+                                   @QueryParam("format") @DefaultValue("ndjson") String format,
+                                   @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding,
+                                   @Suspended AsyncResponse asyncResponse) {
+        requestExecutor.execute(asyncResponse, "export-transactions", () -> {
+            if (!"ndjson".equalsIgnoreCase(format) && !"csv".equalsIgnoreCase(format)) {
+                throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+            }
+            boolean csv = "csv".equalsIgnoreCase(format);
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            TransactionExportServer.Filter filter = transactionExportServer.filter(accountId, from, to, afterTransactionId);
+            Response.ResponseBuilder response = Response.ok()
+                    .entity(new TransactionExportStreamingOutput(consumer -> transactionExportServer.forEachTransaction(filter, consumer), csv, gzip))
+                    .type(csv ? TransactionExportStreamingOutput.CSV : TransactionExportStreamingOutput.NDJSON);
+            if (gzip) {
+                response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return response.build();
+        });
     }
 }
@@ -0,0 +1,51 @@
+package com.rev.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes rows as a JSON array while they are read from the database, so the response never has to be held in memory.
+ */
+public class JsonArrayStreamingOutput<T> implements StreamingOutput {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .disable(SerializationFeature.CLOSE_CLOSEABLE);
+
+    private final RowSource<T> rowSource;
+
+    public JsonArrayStreamingOutput(RowSource<T> rowSource) {
+        this.rowSource = rowSource;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            try {
+                rowSource.forEach(row -> {
+                    try {
+                        OBJECT_MAPPER.writeValue(generator, row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    @FunctionalInterface
+    public interface RowSource<T> {
+        void forEach(Consumer<T> consumer);
+    }
+}
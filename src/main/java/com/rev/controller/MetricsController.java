@@ -0,0 +1,158 @@
+package com.rev.controller;
+
+import com.rev.metrics.Metrics;
+import com.rev.metrics.PrometheusWriter;
+import com.rev.repository.AccountCache;
+import com.rev.repository.AccountLocks;
+import com.rev.repository.IdempotencyStore;
+import com.rev.repository.JdbcConnections;
+import com.rev.repository.TransferLockMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prometheus scrape endpoint: the application {@link Metrics} plus the statistics kept by the account cache,
+ * the transfer locking, the account locks, the idempotency store, the JDBC statement cache and the database connection pool.
+ */
+@Slf4j
+@Path("")
+public class MetricsController {
+
+    private final Metrics metrics;
+    private final AccountCache accountCache;
+    private final TransferLockMetrics transferLockMetrics;
+    private final AccountLocks accountLocks;
+    private final IdempotencyStore idempotencyStore;
+    private final JdbcConnections jdbcConnections;
+    private final EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    public MetricsController(Metrics metrics, AccountCache accountCache, TransferLockMetrics transferLockMetrics, AccountLocks accountLocks,
+                             IdempotencyStore idempotencyStore, JdbcConnections jdbcConnections, EntityManagerFactory entityManagerFactory) {
+        this.metrics = metrics;
+        this.accountCache = accountCache;
+        this.transferLockMetrics = transferLockMetrics;
+        this.accountLocks = accountLocks;
+        this.idempotencyStore = idempotencyStore;
+        this.jdbcConnections = jdbcConnections;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @GET
+    @Path("/metrics")
+    @Produces(PrometheusWriter.CONTENT_TYPE)
+    public Response getMetrics() {
+        StreamingOutput output = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            PrometheusWriter prometheusWriter = new PrometheusWriter(writer);
+            metrics.write(prometheusWriter);
+            writeComponents(prometheusWriter);
+            writer.flush();
+        };
+        return Response.ok(output).build();
+    }
+
+    private void writeComponents(PrometheusWriter writer) throws IOException {
+        counter(writer, "rev_account_cache_hits_total", "Account cache hits", accountCache.getHits());
+        counter(writer, "rev_account_cache_misses_total", "Account cache misses", accountCache.getMisses());
+        counter(writer, "rev_account_cache_evictions_total", "Account cache evictions", accountCache.getEvictions());
+        gauge(writer, "rev_account_cache_size", "Accounts in the account cache", accountCache.size());
+
+        counter(writer, "rev_transfer_lock_conflicts_total", "Transfers that hit a lock timeout or deadlock", transferLockMetrics.getLockConflicts());
+        counter(writer, "rev_transfer_lock_retries_total", "Transfers retried after a lock conflict", transferLockMetrics.getRetries());
+        counter(writer, "rev_transfer_lock_exhausted_retries_total", "Transfers failed after the last retry", transferLockMetrics.getExhaustedRetries());
+        counter(writer, "rev_transfer_row_locks_total", "Transfers and batches that locked their account rows", transferLockMetrics.getRowLocks());
+        writer.family("rev_transfer_row_lock_seconds_total", "counter", "Time spent in statements locking account rows, guarded balance updates included");
+        writer.sample("rev_transfer_row_lock_seconds_total", transferLockMetrics.getRowLockNanos() / 1_000_000_000d);
+
+        writeAccountLocks(writer);
+
+        counter(writer, "rev_idempotency_replays_total", "Requests answered from the idempotency store", idempotencyStore.getReplays());
+        gauge(writer, "rev_idempotency_keys", "Idempotency keys held in memory", idempotencyStore.size());
+
+        counter(writer, "rev_jdbc_statement_cache_hits_total", "Prepared statements reused by the JDBC repositories", jdbcConnections.getHits());
+        counter(writer, "rev_jdbc_statement_cache_misses_total", "Prepared statements created by the JDBC repositories", jdbcConnections.getMisses());
+
+        HikariPoolMXBean connectionPool = connectionPool();
+        if (connectionPool != null) {
+            gauge(writer, "rev_db_connections_active", "Database connections in use", connectionPool.getActiveConnections());
+            gauge(writer, "rev_db_connections_idle", "Idle database connections", connectionPool.getIdleConnections());
+            gauge(writer, "rev_db_connections_total", "Open database connections", connectionPool.getTotalConnections());
+            gauge(writer, "rev_db_connections_pending", "Threads waiting for a database connection", connectionPool.getThreadsAwaitingConnection());
+        }
+    }
+
+    /**
+     * One sample per stripe that was ever used, the others would only repeat zeros.
+     */
+    private void writeAccountLocks(PrometheusWriter writer) throws IOException {
+        List<Integer> used = new ArrayList<>();
+        for (int i = 0; i < accountLocks.getStripeCount(); i++) {
+            AccountLocks.Stripe stripe = accountLocks.getStripe(i);
+            if (stripe.getAcquisitions() > 0 || stripe.getTimeouts() > 0 || stripe.getQueueDepth() > 0) {
+                used.add(i);
+            }
+        }
+        writer.family("rev_account_lock_acquisitions_total", "counter", "Account lock acquisitions per stripe");
+        for (int i : used) {
+            writer.sample("rev_account_lock_acquisitions_total", "stripe", String.valueOf(i), accountLocks.getStripe(i).getAcquisitions());
+        }
+        writer.family("rev_account_lock_wait_seconds_total", "counter", "Time spent waiting for account locks per stripe");
+        for (int i : used) {
+            writer.sample("rev_account_lock_wait_seconds_total", "stripe", String.valueOf(i), accountLocks.getStripe(i).getWaitNanos() / 1_000_000_000d);
+        }
+        writer.family("rev_account_lock_timeouts_total", "counter", "Account locks not acquired in time per stripe");
+        for (int i : used) {
+            writer.sample("rev_account_lock_timeouts_total", "stripe", String.valueOf(i), accountLocks.getStripe(i).getTimeouts());
+        }
+        writer.family("rev_account_lock_queue_depth", "gauge", "Transfers waiting for an account lock per stripe");
+        for (int i : used) {
+            writer.sample("rev_account_lock_queue_depth", "stripe", String.valueOf(i), accountLocks.getStripe(i).getQueueDepth());
+        }
+        writer.family("rev_account_lock_max_queue_depth", "gauge", "Most transfers found waiting for an account lock per stripe");
+        for (int i : used) {
+            writer.sample("rev_account_lock_max_queue_depth", "stripe", String.valueOf(i), accountLocks.getStripe(i).getMaxQueueDepth());
+        }
+    }
+
+    private HikariPoolMXBean connectionPool() {
+        try {
+            return entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry()
+                    .getService(ConnectionProvider.class)
+                    .unwrap(HikariDataSource.class)
+                    .getHikariPoolMXBean();
+        } catch (Exception exception) {
+            log.info("{}", exception.getMessage());
+            return null;
+        }
+    }
+
+    private static void counter(PrometheusWriter writer, String name, String help, long value) throws IOException {
+        writer.family(name, "counter", help);
+        writer.sample(name, value);
+    }
+
+    private static void gauge(PrometheusWriter writer, String name, String help, long value) throws IOException {
+        writer.family(name, "gauge", help);
+        writer.sample(name, value);
+    }
+}
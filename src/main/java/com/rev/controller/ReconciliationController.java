@@ -0,0 +1,47 @@
+package com.rev.controller;
+
+import com.rev.server.ReconciliationServer;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+
+/**
+ * Admin endpoints of the balance reconciliation. Starting one returns at once; the report is polled until it is no
+ * longer RUNNING.
+ */
+@Path("")
+public class ReconciliationController {
+
+    private final ReconciliationServer reconciliationServer;
+
+    @Inject
+    public ReconciliationController(ReconciliationServer reconciliationServer) {
+        this.reconciliationServer = reconciliationServer;
+    }
+
+    @POST
+    @Path("/admin/reconciliation")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response startReconciliation() {
+        return Response.status(reconciliationServer.start() ? ACCEPTED : CONFLICT)
+                .entity(reconciliationServer.getReport())
+                .build();
+    }
+
+    @GET
+    @Path("/admin/reconciliation")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getReconciliation() {
+        return Response.ok()
+                .entity(reconciliationServer.getReport())
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+package com.rev.controller;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rev.common.ErrorsCode;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.configuration.EntityManagerContext;
+import com.rev.metrics.LatencyTimer;
+import com.rev.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+/**
+ * Runs controller work off the Jetty worker threads and resumes the suspended response with its result.
+ * {@code rev.request.executor} selects the executor: {@code virtual} (one virtual thread per request, falls back to
+ * {@code fixed} on a JVM without virtual threads) or {@code fixed} ({@code rev.request.executor.threads} threads).
+ * A read not answered within {@code rev.request.timeout-ms.<endpoint>}, or {@code rev.request.timeout-ms} when the
+ * endpoint has no own value, gets 503. Mutations are never timed out: the handler can not be stopped once it runs, so a
+ * 503 would not mean the change was not made.
+ * The latency of a streamed response is recorded once its body is written, not when the handler returns.
+ */
+@Slf4j
+@Singleton
+public class RequestExecutor {
+
+    private static final long DEFAULT_TIMEOUT_MILLIS = ApplicationProperties.getLong("rev.request.timeout-ms", 30_000);
+
+    private final ExecutorService executorService;
+    private final Metrics metrics;
+
+    @Inject
+    public RequestExecutor(Metrics metrics) {
+        this(createExecutorService(ApplicationProperties.getString("rev.request.executor", "virtual"),
+                ApplicationProperties.getInt("rev.request.executor.threads", 200)), metrics);
+    }
+
+    RequestExecutor(ExecutorService executorService, Metrics metrics) {
+        this.executorService = executorService;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Resumes {@code asyncResponse} with the response built by {@code handler}, or with 503 when it takes longer than
+     * the endpoint's timeout; exceptions it throws go through the registered exception handlers.
+     */
+    public void execute(AsyncResponse asyncResponse, String endpoint, Callable<Response> handler) {
+        asyncResponse.setTimeoutHandler(response -> {
+            metrics.countRequestTimeout();
+            response.resume(serviceUnavailable("Request timed out."));
+        });
+        asyncResponse.setTimeout(ApplicationProperties.getLong("rev.request.timeout-ms." + endpoint, DEFAULT_TIMEOUT_MILLIS), TimeUnit.MILLISECONDS);
+        run(asyncResponse, endpoint, handler);
+    }
+
+    /**
+     * Like {@link #execute(AsyncResponse, String, Callable)} but without a timeout, for handlers that change state.
+     * A client that gives up waiting does not know whether the change was made; retrying it is only safe with an
+     * idempotency key, otherwise it may be applied twice.
+     */
+    public void executeMutation(AsyncResponse asyncResponse, String endpoint, Callable<Response> handler) {
+        run(asyncResponse, endpoint, handler);
+    }
+
+    private void run(AsyncResponse asyncResponse, String endpoint, Callable<Response> handler) {
+        long start = System.nanoTime();
+        LatencyTimer timer = metrics.requestTimer(endpoint);
+
+        // the request's entity manager stays open until the handler is done, even if the request times out first
+        Runnable release = EntityManagerContext.retain();
+        try {
+            executorService.execute(() -> {
+                boolean streaming = false;
+                try {
+                    Response response = handler.call();
+                    if (response.getEntity() instanceof StreamingOutput) {
+                        streaming = asyncResponse.resume(recordedWhenWritten(response, timer, start));
+                    } else {
+                        asyncResponse.resume(response);
+                    }
+                } catch (Exception exception) {
+                    metrics.countErrorResponse(ErrorsCode.fromMessage(exception.getMessage()));
+                    asyncResponse.resume(exception);
+                } finally {
+                    if (!streaming) {
+                        timer.record(start);
+                    }
+                    release.run();
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            release.run();
+            metrics.countRejectedRequest();
+            log.info("{}", exception.getMessage());
+            asyncResponse.resume(serviceUnavailable("Server is busy."));
+        }
+    }
+
+    private static Response recordedWhenWritten(Response response, LatencyTimer timer, long start) {
+        StreamingOutput output = (StreamingOutput) response.getEntity();
+        StreamingOutput recorded = outputStream -> {
+            try {
+                output.write(outputStream);
+            } finally {
+                timer.record(start);
+            }
+        };
+        return Response.fromResponse(response).entity(recorded).build();
+    }
+
+    private static Response serviceUnavailable(String message) {
+        return Response.status(SERVICE_UNAVAILABLE)
+                .entity(message)
+                .type(MediaType.TEXT_XML)
+                .build();
+    }
+
+    private static ExecutorService createExecutorService(String type, int threads) {
+        if ("virtual".equals(type)) {
+            try {
+                // looked up reflectively so the application still runs on JVMs older than 21
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException exception) {
+                log.info("virtual threads not available, using {} request threads", threads);
+            }
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "rev-request-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
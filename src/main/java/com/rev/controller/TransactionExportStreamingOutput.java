@@ -0,0 +1,100 @@
+package com.rev.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.rev.dto.TransactionDto;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes exported transactions one per line, as NDJSON or CSV, while they are read from the database.
+ */
+public class TransactionExportStreamingOutput implements StreamingOutput {
+
+    static final String NDJSON = "application/x-ndjson";
+    static final String CSV = "text/csv";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+            .disable(SerializationFeature.CLOSE_CLOSEABLE);
+    private static final String CSV_HEADER = "transactionId,fromAccountId,toAccountId,amount,currencyCode,date,status,message";
+
+    private final JsonArrayStreamingOutput.RowSource<TransactionDto> rowSource;
+    private final boolean csv;
+    private final boolean gzip;
+
+    public TransactionExportStreamingOutput(JsonArrayStreamingOutput.RowSource<TransactionDto> rowSource, boolean csv, boolean gzip) {
+        this.rowSource = rowSource;
+        this.csv = csv;
+        this.gzip = gzip;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        GZIPOutputStream gzipOutput = gzip ? new GZIPOutputStream(output, 8192) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(gzip ? gzipOutput : output, StandardCharsets.UTF_8));
+        try {
+            if (csv) {
+                writeCsv(writer);
+            } else {
+                writeNdjson(writer);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        if (gzipOutput != null) {
+            gzipOutput.finish();
+        }
+    }
+
+    private void writeNdjson(Writer writer) throws IOException {
+        JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(writer);
+        rowSource.forEach(transaction -> {
+            try {
+                OBJECT_MAPPER.writeValue(generator, transaction);
+                generator.writeRaw('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.flush();
+    }
+
+    private void writeCsv(Writer writer) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        rowSource.forEach(transaction -> {
+            try {
+                writer.write(transaction.getTransactionId() + "," + transaction.getFromAccountId() + "," + transaction.getToAccountId()
+                        + "," + transaction.getAmount() + "," + csvValue(transaction.getCurrencyCode())
+                        + "," + (transaction.getDate() == null ? "" : dateFormat.format(transaction.getDate()))
+                        + "," + transaction.getStatus() + "," + csvValue(transaction.getMessage()));
+                writer.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private static String csvValue(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
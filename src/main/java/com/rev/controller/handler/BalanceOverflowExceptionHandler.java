@@ -0,0 +1,20 @@
+package com.rev.controller.handler;
+
+import com.rev.common.exception.BalanceOverflowException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+public class BalanceOverflowExceptionHandler implements ExceptionMapper<BalanceOverflowException> {
+
+    @Override
+    public Response toResponse(BalanceOverflowException exception) {
+        return Response.status(BAD_REQUEST)
+                .entity(exception.getMessage())
+                .type(MediaType.TEXT_XML)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package com.rev.controller.handler;
+
+import com.rev.common.exception.IdempotencyKeyReusedException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+public class IdempotencyKeyReusedExceptionHandler implements ExceptionMapper<IdempotencyKeyReusedException> {
+
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    @Override
+    public Response toResponse(IdempotencyKeyReusedException exception) {
+        return Response.status(UNPROCESSABLE_ENTITY)
+                .entity(exception.getMessage())
+                .type(MediaType.TEXT_XML)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package com.rev.controller.handler;
+
+import com.rev.common.exception.InvalidParameterException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+public class InvalidParameterExceptionHandler implements ExceptionMapper<InvalidParameterException> {
+
+    @Override
+    public Response toResponse(InvalidParameterException exception) {
+        return Response.status(BAD_REQUEST)
+                .entity(exception.getMessage())
+                .type(MediaType.TEXT_XML)
+                .build();
+    }
+}
@@ -0,0 +1,20 @@
+package com.rev.controller.handler;
+
+import com.rev.common.exception.ServerBusyException;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+public class ServerBusyExceptionHandler implements ExceptionMapper<ServerBusyException> {
+
+    @Override
+    public Response toResponse(ServerBusyException exception) {
+        return Response.status(SERVICE_UNAVAILABLE)
+                .entity(exception.getMessage())
+                .type(MediaType.TEXT_XML)
+                .build();
+    }
+}
@@ -5,7 +5,6 @@ import lombok.*;
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Email;
-import java.math.BigDecimal;
 
 @Getter
 @Setter
@@ -25,20 +24,50 @@ public class AccountDao {
     @Column(name="email", unique = true)
     private String email;
 
+    // minor units of the currency, see Money
     @Column(name= "balance")
-    private BigDecimal balance;
+    private long balance;
 
     @Column(name= "currencyCode")
     private String currencyCode;
 
+    // last balance event folded into balance, only used with event-sourced balances
+    @Column(name = "balanceEventId")
+    private long balanceEventId;
+
+    // balance the account was created with, moved along by balance updates; transfers explain the rest of the balance
+    @Column(name = "openingBalance")
+    private long openingBalance;
+
+    // credit stripes of a hot account, 0 for an ordinary one, only used with striped balances
+    @Column(name = "balanceStripes")
+    private int balanceStripes;
+
     public AccountDao() {
     }
 
-    public AccountDao(long accountId, String username, String email, BigDecimal balance, String currencyCode) {
+    public AccountDao(long accountId, String username, String email, long balance, String currencyCode) {
         this.accountId = accountId;
         this.username = username;
         this.email = email;
         this.balance = balance;
         this.currencyCode = currencyCode;
     }
+
+    public AccountDao(long accountId, String username, String email, long balance, String currencyCode, long balanceEventId) {
+        this(accountId, username, email, balance, currencyCode);
+        this.balanceEventId = balanceEventId;
+    }
+
+    public AccountDao(long accountId, String username, String email, long balance, String currencyCode, long balanceEventId,
+                      long openingBalance) {
+        this(accountId, username, email, balance, currencyCode, balanceEventId);
+        this.openingBalance = openingBalance;
+    }
+
+    public AccountDao(long accountId, String username, String email, long balance, String currencyCode, long balanceEventId,
+                      long openingBalance, int balanceStripes) {
+        this(accountId, username, email, balance, currencyCode, balanceEventId, openingBalance);
+        this.balanceStripes = balanceStripes;
+    }
 }
@@ -0,0 +1,44 @@
+package com.rev.dao;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+@Builder
+@Getter
+@Setter
+@Entity(name = "balance_event")
+@Table(name = "balance_event", indexes = @Index(name = "balance_event_account_idx", columnList = "accountId, eventId"))
+public class BalanceEventDao {
+
+    @Id
+    @GeneratedValue
+    private Long eventId;
+
+    @Column(name = "accountId")
+    private long accountId;
+
+    // minor units added to the balance, negative for debits
+    @Column(name = "delta")
+    private long delta;
+
+    @Column(name = "createdAt")
+    private long createdAt;
+
+    public BalanceEventDao() {
+    }
+
+    public BalanceEventDao(Long eventId, long accountId, long delta, long createdAt) {
+        this.eventId = eventId;
+        this.accountId = accountId;
+        this.delta = delta;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,62 @@
+package com.rev.dao;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * One credit stripe of a hot account: a share of its balance that credits can add to without touching the account row.
+ */
+@Getter
+@Setter
+@Entity(name = "account_balance_stripe")
+@Table(name = "account_balance_stripe")
+@IdClass(BalanceStripeDao.Key.class)
+public class BalanceStripeDao {
+
+    @Id
+    @Column(name = "accountId")
+    private long accountId;
+
+    @Id
+    @Column(name = "stripe")
+    private int stripe;
+
+    // minor units, added to the balance of the account row
+    @Column(name = "balance")
+    private long balance;
+
+    public BalanceStripeDao() {
+    }
+
+    public BalanceStripeDao(long accountId, int stripe, long balance) {
+        this.accountId = accountId;
+        this.stripe = stripe;
+        this.balance = balance;
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long accountId;
+        private int stripe;
+
+        public Key() {
+        }
+
+        public Key(long accountId, int stripe) {
+            this.accountId = accountId;
+            this.stripe = stripe;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.rev.dao;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+
+/**
+ * Totals of one account's transfers on one day. Written in the same transaction as the transfers themselves.
+ */
+@Builder
+@Getter
+@Setter
+@Entity(name = "account_daily_rollup")
+@Table(name = "account_daily_rollup")
+@IdClass(DailyRollupDao.Key.class)
+public class DailyRollupDao {
+
+    @Id
+    @Column(name = "accountId")
+    private long accountId;
+
+    @Id
+    @Column(name = "day")
+    private java.sql.Date day;
+
+    @Id
+    @Column(name = "currencyCode")
+    private String currencyCode;
+
+    // minor units sent by successful transfers
+    @Column(name = "debitAmount")
+    private long debitAmount;
+
+    @Column(name = "debitCount")
+    private long debitCount;
+
+    // minor units received by successful transfers
+    @Column(name = "creditAmount")
+    private long creditAmount;
+
+    @Column(name = "creditCount")
+    private long creditCount;
+
+    // transfers from the account that were refused
+    @Column(name = "failedCount")
+    private long failedCount;
+
+    public DailyRollupDao() {
+    }
+
+    public DailyRollupDao(long accountId, java.sql.Date day, String currencyCode, long debitAmount, long debitCount,
+                          long creditAmount, long creditCount, long failedCount) {
+        this.accountId = accountId;
+        this.day = day;
+        this.currencyCode = currencyCode;
+        this.debitAmount = debitAmount;
+        this.debitCount = debitCount;
+        this.creditAmount = creditAmount;
+        this.creditCount = creditCount;
+        this.failedCount = failedCount;
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private long accountId;
+        private java.sql.Date day;
+        private String currencyCode;
+
+        public Key() {
+        }
+
+        public Key(long accountId, java.sql.Date day, String currencyCode) {
+            this.accountId = accountId;
+            this.day = day;
+            this.currencyCode = currencyCode;
+        }
+    }
+}
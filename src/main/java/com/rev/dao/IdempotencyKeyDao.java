@@ -0,0 +1,43 @@
+package com.rev.dao;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Builder
+@Getter
+@Setter
+@Entity(name = "idempotency_key")
+@Table(name = "idempotency_key")
+public class IdempotencyKeyDao {
+
+    @Id
+    @Column(name = "idempotencyKey")
+    private String idempotencyKey;
+
+    // null when the request succeeded
+    @Column(name = "errorCode")
+    private String errorCode;
+
+    // the request the key was first used with
+    @Column(name = "fingerprint")
+    private String fingerprint;
+
+    @Column(name = "createdAt")
+    private long createdAt;
+
+    public IdempotencyKeyDao() {
+    }
+
+    public IdempotencyKeyDao(String idempotencyKey, String errorCode, String fingerprint, long createdAt) {
+        this.idempotencyKey = idempotencyKey;
+        this.errorCode = errorCode;
+        this.fingerprint = fingerprint;
+        this.createdAt = createdAt;
+    }
+}
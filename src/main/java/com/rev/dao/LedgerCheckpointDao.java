@@ -0,0 +1,37 @@
+package com.rev.dao;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Last journal sequence of a ledger partition whose changes are in the database. Written in the same transaction
+ * as the changes themselves.
+ */
+@Builder
+@Getter
+@Setter
+@Entity(name = "ledger_checkpoint")
+@Table(name = "ledger_checkpoint")
+public class LedgerCheckpointDao {
+
+    @Id
+    @Column(name = "partitionIndex")
+    private int partitionIndex;
+
+    @Column(name = "sequence")
+    private long sequence;
+
+    public LedgerCheckpointDao() {
+    }
+
+    public LedgerCheckpointDao(int partitionIndex, long sequence) {
+        this.partitionIndex = partitionIndex;
+        this.sequence = sequence;
+    }
+}
@@ -7,13 +7,14 @@ import lombok.Setter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
-import java.math.BigDecimal;
 
 @Builder
 @Getter
 @Setter
 @Entity(name = "transaction")
-@Table(name = "transaction")
+@Table(name = "transaction", indexes = {
+        @Index(name = "transaction_from_account_idx", columnList = "fromAccountId, transactionId"),
+        @Index(name = "transaction_to_account_idx", columnList = "toAccountId, transactionId")})
 public class TransactionDao {
 
     @Id
@@ -28,9 +29,9 @@ public class TransactionDao {
     @Column(name = "toAccountId")
     private Long toAccountId;
 
-    @NotNull(message = "Transaction amount is required.")
+    // minor units of the currency, see Money
     @Column(name ="amount")
-    private BigDecimal amount;
+    private long amount;
 
     @NotNull(message = "Currency code is required")
     @Column(name = "currencyCode")
@@ -50,7 +51,7 @@ public class TransactionDao {
     public TransactionDao() {
     }
 
-    public TransactionDao(Long transactionId, Long fromAccountId, Long toAccountId, BigDecimal amount, String currencyCode, TransactionStatus status,
+    public TransactionDao(Long transactionId, Long fromAccountId, Long toAccountId, long amount, String currencyCode, TransactionStatus status,
                           java.sql.Date date, String message) {
         this.transactionId = transactionId;
         this.fromAccountId = fromAccountId;
@@ -1,10 +1,9 @@
 package com.rev.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.rev.common.Money;
 import lombok.*;
 
-import java.math.BigDecimal;
-
 @Setter
 @Getter
 @EqualsAndHashCode
@@ -21,7 +20,7 @@ public class AccountDto {
     private String email;
 
     @JsonProperty(required = true)
-    private BigDecimal balance;
+    private Money balance;
 
     @JsonProperty(required = true)
     private String currencyCode;
@@ -29,7 +28,7 @@ public class AccountDto {
     public AccountDto() {
     }
 
-    public AccountDto(long accountId, String username, String email, BigDecimal balance, String currencyCode) {
+    public AccountDto(long accountId, String username, String email, Money balance, String currencyCode) {
         this.accountId = accountId;
         this.username = username;
         this.email = email;
@@ -0,0 +1,31 @@
+package com.rev.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class AccountImportFailureDto {
+
+    // line of the upload, counting from 1 and including a CSV header
+    private long line;
+
+    private String email;
+
+    private String errorCode;
+
+    public AccountImportFailureDto() {
+    }
+
+    public AccountImportFailureDto(long line, String email, String errorCode) {
+        this.line = line;
+        this.email = email;
+        this.errorCode = errorCode;
+    }
+}
@@ -0,0 +1,39 @@
+package com.rev.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class AccountImportResultDto {
+
+    private long imported;
+
+    private long failed;
+
+    private long elapsedMillis;
+
+    private long rowsPerSecond;
+
+    // the first failed rows only, failed counts all of them
+    private List<AccountImportFailureDto> failures;
+
+    public AccountImportResultDto() {
+    }
+
+    public AccountImportResultDto(long imported, long failed, long elapsedMillis, long rowsPerSecond, List<AccountImportFailureDto> failures) {
+        this.imported = imported;
+        this.failed = failed;
+        this.elapsedMillis = elapsedMillis;
+        this.rowsPerSecond = rowsPerSecond;
+        this.failures = failures;
+    }
+}
@@ -0,0 +1,35 @@
+package com.rev.dto;
+
+import com.rev.common.Money;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class DiscrepancyDto {
+
+    private long accountId;
+
+    private String currencyCode;
+
+    private Money balance;
+
+    // opening balance plus successful transfers in minus successful transfers out
+    private Money expectedBalance;
+
+    public DiscrepancyDto() {
+    }
+
+    public DiscrepancyDto(long accountId, String currencyCode, Money balance, Money expectedBalance) {
+        this.accountId = accountId;
+        this.currencyCode = currencyCode;
+        this.balance = balance;
+        this.expectedBalance = expectedBalance;
+    }
+}
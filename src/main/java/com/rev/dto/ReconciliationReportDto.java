@@ -0,0 +1,50 @@
+package com.rev.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class ReconciliationReportDto {
+
+    // NOT_STARTED, RUNNING, FINISHED or FAILED
+    private String status;
+
+    private String startedAt;
+
+    private long elapsedMillis;
+
+    private long partitions;
+
+    private long partitionsDone;
+
+    private long accountsChecked;
+
+    private long discrepancyCount;
+
+    // the first discrepancies only, discrepancyCount counts all of them
+    private List<DiscrepancyDto> discrepancies;
+
+    public ReconciliationReportDto() {
+    }
+
+    public ReconciliationReportDto(String status, String startedAt, long elapsedMillis, long partitions, long partitionsDone,
+                                   long accountsChecked, long discrepancyCount, List<DiscrepancyDto> discrepancies) {
+        this.status = status;
+        this.startedAt = startedAt;
+        this.elapsedMillis = elapsedMillis;
+        this.partitions = partitions;
+        this.partitionsDone = partitionsDone;
+        this.accountsChecked = accountsChecked;
+        this.discrepancyCount = discrepancyCount;
+        this.discrepancies = discrepancies;
+    }
+}
@@ -0,0 +1,45 @@
+package com.rev.dto;
+
+import com.rev.common.Money;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class StatementDayDto {
+
+    // yyyy-MM-dd
+    private String day;
+
+    private String currencyCode;
+
+    private Money debitAmount;
+
+    private long debitCount;
+
+    private Money creditAmount;
+
+    private long creditCount;
+
+    private long failedCount;
+
+    public StatementDayDto() {
+    }
+
+    public StatementDayDto(String day, String currencyCode, Money debitAmount, long debitCount, Money creditAmount,
+                           long creditCount, long failedCount) {
+        this.day = day;
+        this.currencyCode = currencyCode;
+        this.debitAmount = debitAmount;
+        this.debitCount = debitCount;
+        this.creditAmount = creditAmount;
+        this.creditCount = creditCount;
+        this.failedCount = failedCount;
+    }
+}
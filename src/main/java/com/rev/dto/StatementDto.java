@@ -0,0 +1,37 @@
+package com.rev.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class StatementDto {
+
+    private long accountId;
+
+    // yyyy-MM-dd, both inclusive
+    private String from;
+
+    private String to;
+
+    // days with transfers only, in day order
+    private List<StatementDayDto> days;
+
+    public StatementDto() {
+    }
+
+    public StatementDto(long accountId, String from, String to, List<StatementDayDto> days) {
+        this.accountId = accountId;
+        this.from = from;
+        this.to = to;
+        this.days = days;
+    }
+}
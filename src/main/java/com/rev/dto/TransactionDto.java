@@ -2,12 +2,12 @@ package com.rev.dto;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.rev.common.Money;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.math.BigDecimal;
 import java.util.Date;
 
 @Getter
@@ -25,7 +25,7 @@ public class TransactionDto {
     private long toAccountId;
 
     @JsonProperty(required = true)
-    private BigDecimal amount;
+    private Money amount;
 
     @JsonProperty(required = true)
     private String currencyCode;
@@ -40,7 +40,7 @@ public class TransactionDto {
     public TransactionDto() {
     }
 
-    public TransactionDto(long transactionId, long fromAccountId, long toAccountId, BigDecimal amount, String currencyCode,
+    public TransactionDto(long transactionId, long fromAccountId, long toAccountId, Money amount, String currencyCode,
                           Date date, String status, String message) {
         this.fromAccountId = fromAccountId;
         this.toAccountId = toAccountId;
@@ -0,0 +1,30 @@
+package com.rev.dto;
+
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@EqualsAndHashCode
+@ToString
+@Builder
+public class TransactionResultDto {
+
+    private Long transactionId;
+
+    private String status;
+
+    private String errorCode;
+
+    public TransactionResultDto() {
+    }
+
+    public TransactionResultDto(Long transactionId, String status, String errorCode) {
+        this.transactionId = transactionId;
+        this.status = status;
+        this.errorCode = errorCode;
+    }
+}
@@ -0,0 +1,42 @@
+package com.rev.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency distribution of one operation. Recording goes to an HdrHistogram {@link Recorder} and does not allocate;
+ * readers fold the recorded interval into the running total, so quantiles cover everything since startup.
+ * Values are kept with two significant digits up to ten minutes, longer operations are recorded as ten minutes.
+ */
+public class LatencyTimer {
+
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE_NANOS, SIGNIFICANT_DIGITS);
+    private final LongAdder sumNanos = new LongAdder();
+    private Histogram interval;
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the operation started
+     */
+    public void record(long startNanos) {
+        long nanos = Math.max(0, System.nanoTime() - startNanos);
+        recorder.recordValue(Math.min(nanos, HIGHEST_TRACKABLE_NANOS));
+        sumNanos.add(nanos);
+    }
+
+    synchronized Histogram snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return total.copy();
+    }
+
+    long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
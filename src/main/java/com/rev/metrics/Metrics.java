@@ -0,0 +1,154 @@
+package com.rev.metrics;
+
+import com.google.inject.Singleton;
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Application metrics: latency of every endpoint and repository call, outcome counters and gauges registered by the
+ * components owning the measured resource. Timers and counters are created up front or once per name, recording
+ * into them does not allocate.
+ */
+@Singleton
+public class Metrics {
+
+    private static final String REQUEST_DURATION = "rev_http_request_duration_seconds";
+    private static final String REPOSITORY_DURATION = "rev_repository_call_duration_seconds";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final Map<String, LatencyTimer> requestTimers = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyTimer> repositoryTimers = new ConcurrentSkipListMap<>();
+    private final Map<ErrorsCode, LongAdder> errorResponses = counters(ErrorsCode.class);
+    private final Map<ErrorsCode, LongAdder> transferErrors = counters(ErrorsCode.class);
+    private final Map<TransactionStatus, LongAdder> transfers = counters(TransactionStatus.class);
+    private final LongAdder requestTimeouts = new LongAdder();
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder importedAccounts = new LongAdder();
+    private final LongAdder failedAccountImports = new LongAdder();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param endpoint name of the controller endpoint
+     */
+    public LatencyTimer requestTimer(String endpoint) {
+        return timer(requestTimers, endpoint);
+    }
+
+    /**
+     * @param method repository and method name, e.g. account.findAccountById
+     */
+    public LatencyTimer repositoryTimer(String method) {
+        return timer(repositoryTimers, method);
+    }
+
+    public void countErrorResponse(ErrorsCode errorsCode) {
+        errorResponses.get(errorsCode).increment();
+    }
+
+    /**
+     * @param errorsCode reason of a failed transfer, null for a successful one
+     */
+    public void countTransfer(TransactionStatus status, ErrorsCode errorsCode) {
+        transfers.get(status).increment();
+        if (errorsCode != null) {
+            transferErrors.get(errorsCode).increment();
+        }
+    }
+
+    public void countRequestTimeout() {
+        requestTimeouts.increment();
+    }
+
+    public void countRejectedRequest() {
+        rejectedRequests.increment();
+    }
+
+    public void countAccountImport(long imported, long failed) {
+        importedAccounts.add(imported);
+        failedAccountImports.add(failed);
+    }
+
+    /**
+     * Registers, or replaces, a gauge read on every scrape.
+     */
+    public void registerGauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    public void write(PrometheusWriter writer) throws IOException {
+        writeTimers(writer, REQUEST_DURATION, "Latency of REST endpoints", "endpoint", requestTimers);
+        writeTimers(writer, REPOSITORY_DURATION, "Latency of repository calls", "method", repositoryTimers);
+        writeCounters(writer, "rev_error_responses_total", "Requests answered with an error, by error code", "code", errorResponses);
+        writeCounters(writer, "rev_transfers_total", "Processed transfers, by status", "status", transfers);
+        writeCounters(writer, "rev_transfer_errors_total", "Failed transfers, by error code", "code", transferErrors);
+        writer.family("rev_request_timeouts_total", "counter", "Requests answered with 503 because they timed out");
+        writer.sample("rev_request_timeouts_total", requestTimeouts.sum());
+        writer.family("rev_rejected_requests_total", "counter", "Requests answered with 503 because the request executor was saturated");
+        writer.sample("rev_rejected_requests_total", rejectedRequests.sum());
+        writer.family("rev_account_import_rows_total", "counter", "Rows of bulk account imports, by outcome");
+        writer.sample("rev_account_import_rows_total", "outcome", "imported", importedAccounts.sum());
+        writer.sample("rev_account_import_rows_total", "outcome", "failed", failedAccountImports.sum());
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            writer.family(gauge.getKey(), "gauge", gauge.getValue().help);
+            writer.sample(gauge.getKey(), gauge.getValue().value.getAsLong());
+        }
+    }
+
+    private static LatencyTimer timer(Map<String, LatencyTimer> timers, String name) {
+        LatencyTimer timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, key -> new LatencyTimer());
+    }
+
+    private static void writeTimers(PrometheusWriter writer, String family, String help, String labelName, Map<String, LatencyTimer> timers)
+            throws IOException {
+        writer.family(family, "summary", help);
+        for (Map.Entry<String, LatencyTimer> timer : timers.entrySet()) {
+            Histogram histogram = timer.getValue().snapshot();
+            for (double quantile : QUANTILES) {
+                writer.sample(family, labelName, timer.getKey(), "quantile", Double.toString(quantile),
+                        histogram.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+            }
+            writer.sample(family + "_sum", labelName, timer.getKey(), timer.getValue().getSumNanos() / NANOS_PER_SECOND);
+            writer.sample(family + "_count", labelName, timer.getKey(), histogram.getTotalCount());
+        }
+        writer.family(family + "_max", "gauge", help + ", maximum");
+        for (Map.Entry<String, LatencyTimer> timer : timers.entrySet()) {
+            writer.sample(family + "_max", labelName, timer.getKey(), timer.getValue().snapshot().getMaxValue() / NANOS_PER_SECOND);
+        }
+    }
+
+    private static <E extends Enum<E>> void writeCounters(PrometheusWriter writer, String family, String help, String labelName, Map<E, LongAdder> counters)
+            throws IOException {
+        writer.family(family, "counter", help);
+        for (Map.Entry<E, LongAdder> counter : counters.entrySet()) {
+            writer.sample(family, labelName, counter.getKey().name(), counter.getValue().sum());
+        }
+    }
+
+    private static <E extends Enum<E>> Map<E, LongAdder> counters(Class<E> type) {
+        Map<E, LongAdder> counters = new EnumMap<>(type);
+        for (E constant : type.getEnumConstants()) {
+            counters.put(constant, new LongAdder());
+        }
+        return counters;
+    }
+
+    private static class Gauge {
+        private final String help;
+        private final LongSupplier value;
+
+        private Gauge(String help, LongSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
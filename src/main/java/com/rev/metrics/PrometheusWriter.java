@@ -0,0 +1,53 @@
+package com.rev.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes samples in the Prometheus text exposition format, version 0.0.4. Every family is announced with
+ * {@link #family(String, String, String)} before its samples.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // whole doubles up to this magnitude are printed as integers, larger ones in exponent notation
+    private static final double MAX_EXACT_INTEGER = 1L << 53;
+
+    private final Writer writer;
+
+    public PrometheusWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * @param type counter, gauge or summary
+     */
+    public void family(String name, String type, String help) throws IOException {
+        writer.write("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+        writer.write("# TYPE " + name + " " + type + "\n");
+    }
+
+    public void sample(String name, double value) throws IOException {
+        writer.write(name + " " + format(value) + "\n");
+    }
+
+    public void sample(String name, String labelName, String labelValue, double value) throws IOException {
+        writer.write(name + "{" + label(labelName, labelValue) + "} " + format(value) + "\n");
+    }
+
+    public void sample(String name, String labelName, String labelValue, String secondLabelName, String secondLabelValue, double value)
+            throws IOException {
+        writer.write(name + "{" + label(labelName, labelValue) + "," + label(secondLabelName, secondLabelValue) + "} " + format(value) + "\n");
+    }
+
+    private static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) <= MAX_EXACT_INTEGER ? Long.toString((long) value) : Double.toString(value);
+    }
+}
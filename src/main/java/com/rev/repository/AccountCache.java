@@ -0,0 +1,122 @@
+package com.rev.repository;
+
+import com.google.inject.Singleton;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of account metadata used to validate transfers: id and currency, which never change for an
+ * existing account. Balances are deliberately not cached, they are always read from the database.
+ * Entries expire after {@code rev.account.cache.ttl-ms}; when {@code rev.account.cache.max-size} is reached expired
+ * entries are dropped first, then arbitrary ones.
+ */
+@Singleton
+public class AccountCache {
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AccountCache() {
+        this(ApplicationProperties.getInt("rev.account.cache.max-size", 10_000),
+                ApplicationProperties.getLong("rev.account.cache.ttl-ms", 60_000));
+    }
+
+    AccountCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlMillis * 1_000_000;
+    }
+
+    /**
+     * @return the cached account with only id and currency set, or null
+     */
+    public AccountDao get(long accountId) {
+        Entry entry = entries.get(accountId);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            if (entries.remove(accountId, entry)) {
+                evictions.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.account;
+    }
+
+    public void put(AccountDao accountDao) {
+        if (maxSize <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        AccountDao metadata = AccountDao.builder()
+                .accountId(accountDao.getAccountId())
+                .currencyCode(accountDao.getCurrencyCode())
+                .build();
+        entries.put(accountDao.getAccountId(), new Entry(metadata, System.nanoTime() + ttlNanos));
+    }
+
+    public void invalidate(long accountId) {
+        entries.remove(accountId);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops expired entries and, if that is not enough, arbitrary ones down to 90% of the capacity, so the scan
+     * is paid once per many inserts.
+     */
+    private void evict() {
+        long now = System.nanoTime();
+        int target = maxSize - Math.max(1, maxSize / 10);
+        entries.entrySet().removeIf(entry -> {
+            boolean expired = entry.getValue().expiresAt - now < 0;
+            if (expired) {
+                evictions.increment();
+            }
+            return expired;
+        });
+        for (Iterator<Long> iterator = entries.keySet().iterator(); iterator.hasNext() && entries.size() > target; ) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    private static class Entry {
+        private final AccountDao account;
+        private final long expiresAt;
+
+        private Entry(AccountDao account, long expiresAt) {
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
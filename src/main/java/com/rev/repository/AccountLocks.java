@@ -0,0 +1,155 @@
+package com.rev.repository;
+
+import com.google.inject.Singleton;
+import com.rev.configuration.ApplicationProperties;
+
+import javax.persistence.LockTimeoutException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory account locks taken before a transfer opens its database transaction, so transfers of the same accounts
+ * queue here instead of colliding on row locks and rolling back. Account ids hash onto {@code
+ * rev.transfer.account-locks.stripes} fair locks; a transfer takes the stripes of all its accounts in stripe order, so
+ * two transfers never wait for each other in a cycle. A stripe not acquired within {@code
+ * rev.transfer.account-locks.timeout-ms} fails with a {@link LockTimeoutException}, which the repositories retry like a
+ * database lock conflict.
+ */
+@Singleton
+public class AccountLocks {
+
+    private static final Locked UNLOCKED = () -> {
+    };
+
+    private final Stripe[] stripes;
+    private final long timeoutNanos;
+
+    public AccountLocks() {
+        this(ApplicationProperties.getBoolean("rev.transfer.account-locks.enabled", true)
+                        ? ApplicationProperties.getInt("rev.transfer.account-locks.stripes", 256)
+                        : 0,
+                ApplicationProperties.getLong("rev.transfer.account-locks.timeout-ms", 1000));
+    }
+
+    /**
+     * @param stripes number of locks, 0 turns locking off
+     */
+    AccountLocks(int stripes, long timeoutMillis) {
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Locks the stripes of all the accounts, each stripe once and in stripe order.
+     *
+     * @return releases the stripes when closed
+     * @throws LockTimeoutException when a stripe could not be acquired in time, nothing is held then
+     */
+    public Locked lock(Collection<Long> accountIds) {
+        if (stripes.length == 0 || accountIds.isEmpty()) {
+            return UNLOCKED;
+        }
+        int[] indexes = accountIds.stream()
+                .mapToInt(this::stripeIndex)
+                .sorted()
+                .distinct()
+                .toArray();
+        int acquired = 0;
+        try {
+            for (; acquired < indexes.length; acquired++) {
+                stripes[indexes[acquired]].acquire(timeoutNanos);
+            }
+        } finally {
+            if (acquired < indexes.length) {
+                unlock(indexes, acquired);
+            }
+        }
+        return () -> unlock(indexes, indexes.length);
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    public Stripe getStripe(int index) {
+        return stripes[index];
+    }
+
+    int stripeIndex(long accountId) {
+        return Math.floorMod(Long.hashCode(accountId), stripes.length);
+    }
+
+    private void unlock(int[] indexes, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[indexes[i]].lock.unlock();
+        }
+    }
+
+    /**
+     * Held account locks; closing releases them and does not throw.
+     */
+    public interface Locked extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * One fair lock and how transfers waited for it.
+     */
+    public static class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private final LongAdder acquisitions = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+        private void acquire(long timeoutNanos) {
+            long start = System.nanoTime();
+            if (lock.isLocked()) {
+                maxQueueDepth.accumulate(lock.getQueueLength() + 1);
+            }
+            boolean locked;
+            try {
+                // the timed tryLock queues behind waiting transfers, the untimed one would barge ahead of them
+                locked = lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                locked = false;
+            }
+            waitNanos.add(System.nanoTime() - start);
+            if (!locked) {
+                timeouts.increment();
+                throw new LockTimeoutException("account lock not acquired in " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+            }
+            acquisitions.increment();
+        }
+
+        public long getAcquisitions() {
+            return acquisitions.sum();
+        }
+
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        // transfers waiting for this stripe right now
+        public int getQueueDepth() {
+            return lock.getQueueLength();
+        }
+
+        public long getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+    }
+}
@@ -1,15 +1,43 @@
 package com.rev.repository;
 
 import com.rev.common.exception.AccountBalanceUpdateException;
+import com.rev.common.exception.InvalidParameterException;
 import com.rev.dao.AccountDao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface AccountRepository {
 
     AccountDao createAccount(AccountDao accountDao);
     List<AccountDao> getAllAccounts();
+
+    /**
+     * Passes every account to the consumer while it is read from a forward only cursor. The accounts are not managed
+     * by the persistence context, so memory use does not depend on the table size.
+     */
+    void forEachAccount(Consumer<AccountDao> consumer);
     AccountDao findAccountById(Long accountId);
+
+    /**
+     * Cheap lookup for validation: only id and currency are set and they may come from the {@link AccountCache}.
+     * Returns an account with id 0 when it does not exist, like {@link #findAccountById(Long)}.
+     */
+    AccountDao findAccountReferenceById(Long accountId);
+    List<AccountDao> findAccountsByIds(Collection<Long> accountIds);
     void deleteAccount(Long accountId);
     void updateAccountBalance(AccountDao accountDao) throws AccountBalanceUpdateException;
+
+    /**
+     * @return whether {@link #setBalanceStripes} can flag accounts as hot, see {@link BalanceStore#supportsBalanceStripes()}
+     */
+    boolean supportsBalanceStripes();
+
+    /**
+     * Flags the account as hot with {@code stripes} credit stripes, or as ordinary with 0, see {@link StripedBalanceStore}.
+     *
+     * @throws InvalidParameterException when the balance store does not stripe balances
+     */
+    void setBalanceStripes(Long accountId, int stripes) throws InvalidParameterException;
 }
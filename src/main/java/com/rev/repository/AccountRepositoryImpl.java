@@ -1,23 +1,37 @@
 package com.rev.repository;
 
+import com.rev.common.ErrorsCode;
+import com.rev.common.exception.InvalidParameterException;
 import com.rev.dao.AccountDao;
+import com.rev.configuration.ApplicationProperties;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Slf4j
 public class AccountRepositoryImpl implements AccountRepository {
 
     private static final String ACCOUNT_TABLE = "account";
+    private static final int FETCH_SIZE = ApplicationProperties.getInt("rev.jdbc.fetch-size", 500);
     private final EntityManager entityManager;
+    private final AccountCache accountCache;
+    private final BalanceStore balanceStore;
 
     @Inject
-    public AccountRepositoryImpl(EntityManager entityManager) {
+    public AccountRepositoryImpl(EntityManager entityManager, AccountCache accountCache, BalanceStore balanceStore) {
         this.entityManager = entityManager;
+        this.accountCache = accountCache;
+        this.balanceStore = balanceStore;
     }
 
     @Override
@@ -25,11 +39,13 @@ public class AccountRepositoryImpl implements AccountRepository {
 
         try {
             entityManager.getTransaction().begin();
-            entityManager.persist(accountDao);
+            balanceStore.createAccount(entityManager, accountDao);
             entityManager.getTransaction().commit();
         } catch (Exception e) {
             log.info("{}", e.getMessage());
             entityManager.getTransaction().rollback();
+            // the rejected account would otherwise be flushed again by the next transaction on this entity manager
+            entityManager.clear();
             throw e;
         }
         return accountDao;
@@ -40,11 +56,9 @@ public class AccountRepositoryImpl implements AccountRepository {
         try {
             entityManager.getTransaction().begin();
             log.info("start updating account id {} balance to {}", accountDao.getAccountId(), accountDao.getBalance());
-            Query query = entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance=?1 where accountId=?2");
-            query.setParameter(1, accountDao.getBalance());
-            query.setParameter(2, accountDao.getAccountId());
-            query.executeUpdate();
+            balanceStore.setBalance(entityManager, accountDao.getAccountId(), accountDao.getBalance());
             entityManager.getTransaction().commit();
+            accountCache.invalidate(accountDao.getAccountId());
             log.info("finish updating account id {} balance to {}", accountDao.getAccountId(), accountDao.getBalance());
         } catch (Exception e) {
             log.info("{}", e.getMessage());
@@ -52,29 +66,96 @@ public class AccountRepositoryImpl implements AccountRepository {
         }
     }
 
+    @Override
+    public boolean supportsBalanceStripes() {
+        return balanceStore.supportsBalanceStripes();
+    }
+
+    @Override
+    public void setBalanceStripes(Long accountId, int stripes) throws InvalidParameterException {
+        if (!balanceStore.supportsBalanceStripes()) {
+            throw new InvalidParameterException(ErrorsCode.BALANCE_STRIPES_NOT_SUPPORTED.getMessage());
+        }
+        try {
+            entityManager.getTransaction().begin();
+            log.info("start setting account id {} balance stripes to {}", accountId, stripes);
+            int updated = balanceStore.setBalanceStripes(entityManager, accountId, stripes);
+            entityManager.getTransaction().commit();
+            if (updated > 0) {
+                balanceStore.balanceStripesCommitted(accountId, stripes);
+            }
+            log.info("finish setting account id {} balance stripes to {}", accountId, stripes);
+        } catch (Exception e) {
+            log.info("{}", e.getMessage());
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            throw e;
+        }
+    }
+
     @Override
     public List<AccountDao> getAllAccounts() {
         try {
-            Query query = entityManager.createQuery("from " + ACCOUNT_TABLE);
-            return (List<AccountDao>) query.getResultList();
+            return toAccounts(entityManager.createQuery(selectAccounts()).getResultList());
         } catch (Exception ex) {
             log.info("{}", ex.getMessage());
             return Collections.emptyList();
         }
     }
 
+    @Override
+    public void forEachAccount(Consumer<AccountDao> consumer) {
+        try (ScrollableResults rows = entityManager.unwrap(Session.class)
+                .createQuery(selectAccounts() + " order by a.accountId")
+                .setFetchSize(FETCH_SIZE)
+                .setReadOnly(true)
+                .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                consumer.accept(toAccount(rows.get()));
+            }
+        }
+    }
+
     @Override
     public AccountDao findAccountById(Long accountId) {
         try {
-            Query query = entityManager.createQuery("from " + ACCOUNT_TABLE + " where accountId = ?1");
+            Query query = entityManager.createQuery(selectAccounts() + " where a.accountId = ?1");
             query.setParameter(1, accountId);
-            return (AccountDao) query.getSingleResult();
+            return toAccount((Object[]) query.getSingleResult());
         } catch (Exception ex) {
             log.info("{}", ex.getMessage());
             return new AccountDao();
         }
     }
 
+    @Override
+    public AccountDao findAccountReferenceById(Long accountId) {
+        AccountDao accountDao = accountCache.get(accountId);
+        if (accountDao == null) {
+            accountDao = findAccountById(accountId);
+            if (accountDao.getAccountId() != 0) {
+                accountCache.put(accountDao);
+            }
+        }
+        return accountDao;
+    }
+
+    @Override
+    public List<AccountDao> findAccountsByIds(Collection<Long> accountIds) {
+        if (accountIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            Query query = entityManager.createQuery(selectAccounts() + " where a.accountId in ?1");
+            query.setParameter(1, accountIds);
+            return toAccounts(query.getResultList());
+        } catch (Exception ex) {
+            log.info("{}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
     @Override
     public void deleteAccount(Long accountId) {
         try {
@@ -83,9 +164,27 @@ public class AccountRepositoryImpl implements AccountRepository {
             query.setParameter(1, accountId);
             query.executeUpdate();
             entityManager.getTransaction().commit();
+            accountCache.invalidate(accountId);
         } catch (Exception e) {
             log.info("{}", e.getMessage());
             entityManager.getTransaction().rollback();
         }
     }
+
+    /**
+     * Accounts are read as rows rather than entities, their balance is whatever the {@link BalanceStore} says it is.
+     */
+    private String selectAccounts() {
+        return "select a.accountId, a.username, a.email, " + balanceStore.currentBalance("a") + ", a.currencyCode from " + ACCOUNT_TABLE + " a";
+    }
+
+    private static List<AccountDao> toAccounts(List<?> rows) {
+        List<AccountDao> accounts = new ArrayList<>(rows.size());
+        rows.forEach(row -> accounts.add(toAccount((Object[]) row)));
+        return accounts;
+    }
+
+    private static AccountDao toAccount(Object[] row) {
+        return new AccountDao((Long) row[0], (String) row[1], (String) row[2], ((Number) row[3]).longValue(), (String) row[4]);
+    }
 }
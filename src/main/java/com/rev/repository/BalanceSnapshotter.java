@@ -0,0 +1,130 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Folds the balance events of {@link EventSourcedBalanceStore} into the account's snapshot every
+ * {@code rev.balance.snapshot.interval-ms}, for accounts with at least {@code rev.balance.snapshot.min-events} events
+ * after their snapshot. Reading a balance then sums only the few events since, and rebuilding it never replays more
+ * than one interval. Folded events stay in the table as history unless {@code rev.balance.events.keep-folded} is false.
+ */
+@Slf4j
+@Singleton
+public class BalanceSnapshotter {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final String BALANCE_EVENT_TABLE = "balance_event";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final long minEvents;
+    private final boolean keepFoldedEvents;
+    private final LongAdder snapshots = new LongAdder();
+
+    @Inject
+    public BalanceSnapshotter(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory,
+                ApplicationProperties.getLong("rev.balance.snapshot.min-events", 1),
+                ApplicationProperties.getBoolean("rev.balance.events.keep-folded", true));
+
+        long intervalMillis = ApplicationProperties.getLong("rev.balance.snapshot.interval-ms", 60_000);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "balance-snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::snapshotSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    BalanceSnapshotter(EntityManagerFactory entityManagerFactory, long minEvents, boolean keepFoldedEvents) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.minEvents = minEvents;
+        this.keepFoldedEvents = keepFoldedEvents;
+    }
+
+    public long getSnapshots() {
+        return snapshots.sum();
+    }
+
+    /**
+     * @return number of accounts whose snapshot moved
+     */
+    @SuppressWarnings("unchecked")
+    int snapshot() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            List<Long> accountIds = entityManager.createQuery("select e.accountId from " + BALANCE_EVENT_TABLE + " e, " + ACCOUNT_TABLE + " a"
+                    + " where a.accountId = e.accountId and e.eventId > a.balanceEventId group by e.accountId having count(e) >= ?1")
+                    .setParameter(1, minEvents)
+                    .getResultList();
+            int snapshotted = 0;
+            for (Long accountId : accountIds) {
+                if (snapshot(entityManager, accountId)) {
+                    snapshotted++;
+                }
+            }
+            snapshots.add(snapshotted);
+            return snapshotted;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Holds the account row lock while folding, transfers append events for the account only under that lock.
+     */
+    private boolean snapshot(EntityManager entityManager, long accountId) {
+        try {
+            entityManager.getTransaction().begin();
+            AccountDao accountDao = entityManager.find(AccountDao.class, accountId, LockModeType.PESSIMISTIC_WRITE);
+            Object[] events = accountDao == null ? null : (Object[]) entityManager.createQuery("select sum(e.delta), max(e.eventId) from "
+                    + BALANCE_EVENT_TABLE + " e where e.accountId = ?1 and e.eventId > ?2")
+                    .setParameter(1, accountId)
+                    .setParameter(2, accountDao.getBalanceEventId())
+                    .getSingleResult();
+            if (events == null || events[1] == null) {
+                entityManager.getTransaction().rollback();
+                return false;
+            }
+            long lastEventId = (Long) events[1];
+            accountDao.setBalance(Math.addExact(accountDao.getBalance(), ((Number) events[0]).longValue()));
+            accountDao.setBalanceEventId(lastEventId);
+            if (!keepFoldedEvents) {
+                entityManager.createQuery("delete from " + BALANCE_EVENT_TABLE + " where accountId = ?1 and eventId <= ?2")
+                        .setParameter(1, accountId)
+                        .setParameter(2, lastEventId)
+                        .executeUpdate();
+            }
+            entityManager.getTransaction().commit();
+            return true;
+        } catch (Exception exception) {
+            log.info("balance snapshot of account {} failed: {}", accountId, exception.getMessage());
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            return false;
+        } finally {
+            entityManager.clear();
+        }
+    }
+
+    private void snapshotSafely() {
+        try {
+            snapshot();
+        } catch (Exception exception) {
+            log.info("balance snapshot failed: {}", exception.getMessage());
+        }
+    }
+}
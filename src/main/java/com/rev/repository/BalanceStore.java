@@ -0,0 +1,75 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.dao.AccountDao;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+
+/**
+ * Where account balances live: the balance column ({@link ColumnBalanceStore}), the balance column plus the credit
+ * stripes of hot accounts ({@link StripedBalanceStore}) or a snapshot plus balance events
+ * ({@link EventSourcedBalanceStore}), selected by {@code rev.account.balance-store}. Every method runs inside the
+ * caller's database transaction.
+ */
+public interface BalanceStore {
+
+    /**
+     * @param account alias of the account entity in the query
+     * @return JPQL expression of the current balance of that account
+     */
+    String currentBalance(String account);
+
+    /**
+     * Persists a new account with the balance it was created with.
+     */
+    void createAccount(EntityManager entityManager, AccountDao accountDao);
+
+    /**
+     * @return number of accounts updated, 0 when the account does not exist
+     */
+    int setBalance(EntityManager entityManager, long accountId, long balance);
+
+    /**
+     * Applies both legs of a transfer, locking the account rows lowest account id first.
+     *
+     * @return null when both legs were applied, otherwise the reason the transfer has to be rolled back
+     */
+    ErrorsCode transfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount);
+
+    /**
+     * Prepares accounts read under lock for {@link #recordTransfer}: afterwards their balance is the current one and
+     * changing it in memory only changes the database if this store keeps balances in the column.
+     */
+    void loadBalances(EntityManager entityManager, Collection<AccountDao> lockedAccounts);
+
+    /**
+     * Records a transfer already applied to accounts prepared by {@link #loadBalances}.
+     */
+    void recordTransfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount);
+
+    /**
+     * @return whether credits to the account go to stripes instead of its row, so transfers into it need not queue on
+     * its {@link AccountLocks account lock}
+     */
+    boolean spreadsCredits(EntityManager entityManager, long accountId);
+
+    /**
+     * @return whether {@link #setBalanceStripes} can flag accounts as hot
+     */
+    boolean supportsBalanceStripes();
+
+    /**
+     * Splits the balance of a hot account over {@code stripes} credit stripes, or folds it back into one balance with 0.
+     * Only called when {@link #supportsBalanceStripes()}.
+     *
+     * @return number of accounts updated, 0 when the account does not exist
+     */
+    int setBalanceStripes(EntityManager entityManager, long accountId, int stripes);
+
+    /**
+     * Called once the transaction of {@link #setBalanceStripes} committed, from then on credits to the account are
+     * spread over its stripes or go to its row again.
+     */
+    void balanceStripesCommitted(long accountId, int stripes);
+}
@@ -0,0 +1,106 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.dao.AccountDao;
+
+import javax.persistence.EntityManager;
+import java.util.Collection;
+
+/**
+ * Keeps the current balance in the account row and changes it in place.
+ */
+public class ColumnBalanceStore implements BalanceStore {
+
+    private static final String ACCOUNT_TABLE = "account";
+
+    @Override
+    public String currentBalance(String account) {
+        return account + ".balance";
+    }
+
+    @Override
+    public void createAccount(EntityManager entityManager, AccountDao accountDao) {
+        accountDao.setOpeningBalance(accountDao.getBalance());
+        entityManager.persist(accountDao);
+    }
+
+    @Override
+    public int setBalance(EntityManager entityManager, long accountId, long balance) {
+        // the opening balance takes the change, transfers still explain the rest of the balance
+        return entityManager.createQuery("update " + ACCOUNT_TABLE + " set openingBalance = openingBalance + (?1 - balance), balance = ?1 where accountId = ?2")
+                .setParameter(1, balance)
+                .setParameter(2, accountId)
+                .executeUpdate();
+    }
+
+    /**
+     * Debits with a single guarded update, so the balance check and the write are one statement and no account row
+     * is read first. An update count of zero means the source balance was not sufficient.
+     */
+    @Override
+    public ErrorsCode transfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount) {
+        if (fromAccountId <= toAccountId) {
+            if (debit(entityManager, fromAccountId, amount) == 0) {
+                return debitFailure(entityManager, fromAccountId);
+            }
+            return credit(entityManager, toAccountId, amount) == 0 ? creditFailure(entityManager, toAccountId) : null;
+        }
+        if (credit(entityManager, toAccountId, amount) == 0) {
+            return creditFailure(entityManager, toAccountId);
+        }
+        return debit(entityManager, fromAccountId, amount) == 0 ? debitFailure(entityManager, fromAccountId) : null;
+    }
+
+    @Override
+    public void loadBalances(EntityManager entityManager, Collection<AccountDao> lockedAccounts) {
+        // managed accounts already hold the current balance and changes to it are flushed on commit
+    }
+
+    @Override
+    public void recordTransfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount) {
+    }
+
+    @Override
+    public boolean spreadsCredits(EntityManager entityManager, long accountId) {
+        return false;
+    }
+
+    @Override
+    public boolean supportsBalanceStripes() {
+        return false;
+    }
+
+    @Override
+    public int setBalanceStripes(EntityManager entityManager, long accountId, int stripes) {
+        throw new IllegalStateException("balance stripes need rev.account.balance-store=striped");
+    }
+
+    @Override
+    public void balanceStripesCommitted(long accountId, int stripes) {
+        throw new IllegalStateException("balance stripes need rev.account.balance-store=striped");
+    }
+
+    private static ErrorsCode debitFailure(EntityManager entityManager, long fromAccountId) {
+        return entityManager.find(AccountDao.class, fromAccountId) == null ? ErrorsCode.SRC_ACCOUNT_NOT_EXISTS : ErrorsCode.NOT_ENOUGH_BALANCE;
+    }
+
+    private static ErrorsCode creditFailure(EntityManager entityManager, long toAccountId) {
+        return entityManager.find(AccountDao.class, toAccountId) == null ? ErrorsCode.DES_ACCOUNT_NOT_EXISTS : ErrorsCode.BALANCE_OVERFLOW;
+    }
+
+    int debit(EntityManager entityManager, long accountId, long amount) {
+        return entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance = balance - ?1 where accountId = ?2 and balance >= ?1")
+                .setParameter(1, amount)
+                .setParameter(2, accountId)
+                .executeUpdate();
+    }
+
+    int credit(EntityManager entityManager, long accountId, long amount) {
+        // guarded like the debit, a balance that would overflow is left alone
+        return entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance = balance + ?1 where accountId = ?2 and balance <= ?3")
+                .setParameter(1, amount)
+                .setParameter(2, accountId)
+                .setParameter(3, Long.MAX_VALUE - amount)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,136 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.rev.common.TransactionStatus;
+import com.rev.dao.DailyRollupDao;
+import com.rev.dao.TransactionDao;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.sql.Date;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Daily transfer totals per account in the account_daily_rollup table, so a statement reads one row per day instead of
+ * every transaction. Transfers are added to their day in their own database transaction. A credit to a hot account only
+ * holds one of its balance stripes, so the rollup row of a day is created with the account row locked: two transfers
+ * never race to create the same rollup row, and a hot account takes that lock once a day, not on every credit.
+ * A MERGE would not do instead, H2 still fails one of two concurrent merges creating the same row.
+ */
+public class DailyRollupRepository {
+
+    private static final String ROLLUP_TABLE = "account_daily_rollup";
+    private static final String ACCOUNT_TABLE = "account";
+
+    private final EntityManager entityManager;
+
+    @Inject
+    public DailyRollupRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * @return rollups of the days from {@code from} to {@code to}, both inclusive, in day order; days without
+     * transfers have none
+     */
+    public List<DailyRollupDao> getRollups(long accountId, Date from, Date to) {
+        return entityManager.createQuery("from " + ROLLUP_TABLE + " where accountId = ?1 and day between ?2 and ?3 order by day, currencyCode",
+                DailyRollupDao.class)
+                .setParameter(1, accountId)
+                .setParameter(2, from)
+                .setParameter(3, to)
+                .getResultList();
+    }
+
+    /**
+     * Adds the transfers to their accounts' rollups, one write per account and day. The caller holds the locks of
+     * all accounts involved: both accounts of successful transfers, the source account of failed ones.
+     */
+    static void record(EntityManager entityManager, Collection<TransactionDao> transactionDaos) {
+        Map<DailyRollupDao.Key, DailyRollupDao> changes = new LinkedHashMap<>();
+        for (TransactionDao transactionDao : transactionDaos) {
+            if (transactionDao.getDate() == null) {
+                // no day to add it to, no statement could show it either
+                continue;
+            }
+            DailyRollupDao from = change(changes, transactionDao.getFromAccountId(), transactionDao);
+            if (transactionDao.getStatus() == TransactionStatus.SUCCESS) {
+                from.setDebitAmount(from.getDebitAmount() + transactionDao.getAmount());
+                from.setDebitCount(from.getDebitCount() + 1);
+                DailyRollupDao to = change(changes, transactionDao.getToAccountId(), transactionDao);
+                to.setCreditAmount(to.getCreditAmount() + transactionDao.getAmount());
+                to.setCreditCount(to.getCreditCount() + 1);
+            } else {
+                from.setFailedCount(from.getFailedCount() + 1);
+            }
+        }
+        changes.values().forEach(change -> add(entityManager, change));
+    }
+
+    /**
+     * Adds a failed transfer stored without any account lock: locks its source account first and skips the rollup
+     * when that account does not exist.
+     */
+    static void recordFailure(EntityManager entityManager, TransactionDao transactionDao) {
+        if (lockAccount(entityManager, transactionDao.getFromAccountId())) {
+            record(entityManager, List.of(transactionDao));
+        }
+    }
+
+    private static boolean lockAccount(EntityManager entityManager, long accountId) {
+        return !entityManager.createQuery("select accountId from " + ACCOUNT_TABLE + " where accountId = ?1")
+                .setParameter(1, accountId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList()
+                .isEmpty();
+    }
+
+    private static DailyRollupDao change(Map<DailyRollupDao.Key, DailyRollupDao> changes, long accountId, TransactionDao transactionDao) {
+        return changes.computeIfAbsent(new DailyRollupDao.Key(accountId, transactionDao.getDate(), transactionDao.getCurrencyCode()),
+                key -> DailyRollupDao.builder()
+                        .accountId(accountId)
+                        .day(transactionDao.getDate())
+                        .currencyCode(transactionDao.getCurrencyCode())
+                        .build());
+    }
+
+    private static void add(EntityManager entityManager, DailyRollupDao change) {
+        if (update(entityManager, change) > 0) {
+            return;
+        }
+        // a transfer creating the row concurrently holds the account lock until it commits, then the row is there
+        lockAccount(entityManager, change.getAccountId());
+        if (update(entityManager, change) == 0) {
+            // a statement, not a persist: a managed rollup would go stale with the next update of its row
+            entityManager.createNativeQuery("insert into " + ROLLUP_TABLE + " (accountId, day, currencyCode, debitAmount, debitCount,"
+                    + " creditAmount, creditCount, failedCount) values (?1, ?2, ?3, ?4, ?5, ?6, ?7, ?8)")
+                    .setParameter(1, change.getAccountId())
+                    .setParameter(2, change.getDay())
+                    .setParameter(3, change.getCurrencyCode())
+                    .setParameter(4, change.getDebitAmount())
+                    .setParameter(5, change.getDebitCount())
+                    .setParameter(6, change.getCreditAmount())
+                    .setParameter(7, change.getCreditCount())
+                    .setParameter(8, change.getFailedCount())
+                    .executeUpdate();
+        }
+    }
+
+    private static int update(EntityManager entityManager, DailyRollupDao change) {
+        return entityManager.createQuery("update " + ROLLUP_TABLE + " set debitAmount = debitAmount + ?1, debitCount = debitCount + ?2,"
+                + " creditAmount = creditAmount + ?3, creditCount = creditCount + ?4, failedCount = failedCount + ?5"
+                + " where accountId = ?6 and day = ?7 and currencyCode = ?8")
+                .setParameter(1, change.getDebitAmount())
+                .setParameter(2, change.getDebitCount())
+                .setParameter(3, change.getCreditAmount())
+                .setParameter(4, change.getCreditCount())
+                .setParameter(5, change.getFailedCount())
+                .setParameter(6, change.getAccountId())
+                .setParameter(7, change.getDay())
+                .setParameter(8, change.getCurrencyCode())
+                .executeUpdate();
+    }
+}
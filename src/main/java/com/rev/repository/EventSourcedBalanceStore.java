@@ -0,0 +1,149 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.dao.AccountDao;
+import com.rev.dao.BalanceEventDao;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Never changes a balance in place: every change is appended to the balance_event table and the current balance is
+ * the account's balance column, a snapshot maintained by the {@link BalanceSnapshotter}, plus the events after
+ * {@code balanceEventId}. Events of an account are only appended while its row is locked, so the snapshotter can
+ * fold them under the same lock without missing one.
+ */
+public class EventSourcedBalanceStore implements BalanceStore {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final String BALANCE_EVENT_TABLE = "balance_event";
+
+    @Override
+    public String currentBalance(String account) {
+        return account + ".balance + coalesce((select sum(e.delta) from " + BALANCE_EVENT_TABLE + " e where e.accountId = " + account
+                + ".accountId and e.eventId > " + account + ".balanceEventId), 0)";
+    }
+
+    /**
+     * The account starts with a zero snapshot and an event holding its opening balance.
+     */
+    @Override
+    public void createAccount(EntityManager entityManager, AccountDao accountDao) {
+        long openingBalance = accountDao.getBalance();
+        accountDao.setBalance(0);
+        accountDao.setOpeningBalance(openingBalance);
+        entityManager.persist(accountDao);
+        entityManager.flush();
+        // the caller gets the opening balance back, it must not be flushed into the snapshot
+        entityManager.detach(accountDao);
+        accountDao.setBalance(openingBalance);
+        append(entityManager, accountDao.getAccountId(), openingBalance);
+    }
+
+    @Override
+    public int setBalance(EntityManager entityManager, long accountId, long balance) {
+        Long currentBalance = currentBalances(entityManager, lock(entityManager, List.of(accountId))).get(accountId);
+        if (currentBalance == null) {
+            return 0;
+        }
+        long delta = Math.subtractExact(balance, currentBalance);
+        append(entityManager, accountId, delta);
+        entityManager.createQuery("update " + ACCOUNT_TABLE + " set openingBalance = openingBalance + ?1 where accountId = ?2")
+                .setParameter(1, delta)
+                .setParameter(2, accountId)
+                .executeUpdate();
+        return 1;
+    }
+
+    @Override
+    public ErrorsCode transfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount) {
+        Map<Long, Long> balances = currentBalances(entityManager, lock(entityManager, List.of(fromAccountId, toAccountId)));
+        Long fromBalance = balances.get(fromAccountId);
+        Long toBalance = balances.get(toAccountId);
+        if (fromBalance == null) {
+            return ErrorsCode.SRC_ACCOUNT_NOT_EXISTS;
+        }
+        if (toBalance == null) {
+            return ErrorsCode.DES_ACCOUNT_NOT_EXISTS;
+        }
+        if (fromBalance < amount) {
+            return ErrorsCode.NOT_ENOUGH_BALANCE;
+        }
+        if (fromAccountId != toAccountId && toBalance > Long.MAX_VALUE - amount) {
+            return ErrorsCode.BALANCE_OVERFLOW;
+        }
+        recordTransfer(entityManager, fromAccountId, toAccountId, amount);
+        return null;
+    }
+
+    @Override
+    public void loadBalances(EntityManager entityManager, Collection<AccountDao> lockedAccounts) {
+        if (lockedAccounts.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> balances = currentBalances(entityManager, lockedAccounts);
+        for (AccountDao accountDao : lockedAccounts) {
+            entityManager.detach(accountDao);
+            accountDao.setBalance(balances.get(accountDao.getAccountId()));
+        }
+    }
+
+    @Override
+    public void recordTransfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount) {
+        append(entityManager, fromAccountId, -amount);
+        append(entityManager, toAccountId, amount);
+    }
+
+    @Override
+    public boolean spreadsCredits(EntityManager entityManager, long accountId) {
+        return false;
+    }
+
+    @Override
+    public boolean supportsBalanceStripes() {
+        return false;
+    }
+
+    @Override
+    public int setBalanceStripes(EntityManager entityManager, long accountId, int stripes) {
+        throw new IllegalStateException("balance stripes need rev.account.balance-store=striped");
+    }
+
+    @Override
+    public void balanceStripesCommitted(long accountId, int stripes) {
+        throw new IllegalStateException("balance stripes need rev.account.balance-store=striped");
+    }
+
+    private static void append(EntityManager entityManager, long accountId, long delta) {
+        entityManager.persist(new BalanceEventDao(null, accountId, delta, System.currentTimeMillis()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<AccountDao> lock(EntityManager entityManager, List<Long> accountIds) {
+        return entityManager.createQuery("from " + ACCOUNT_TABLE + " where accountId in ?1 order by accountId")
+                .setParameter(1, accountIds)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Long> currentBalances(EntityManager entityManager, Collection<AccountDao> accounts) {
+        if (accounts.isEmpty()) {
+            return Map.of();
+        }
+        List<Long> accountIds = accounts.stream().map(AccountDao::getAccountId).collect(Collectors.toList());
+        // events appended earlier in this transaction have to be part of the sum
+        entityManager.flush();
+        List<Object[]> rows = entityManager.createQuery("select a.accountId, " + currentBalance("a") + " from " + ACCOUNT_TABLE + " a where a.accountId in ?1")
+                .setParameter(1, accountIds)
+                .getResultList();
+        Map<Long, Long> balances = new HashMap<>();
+        rows.forEach(row -> balances.put((Long) row[0], ((Number) row[1]).longValue()));
+        return balances;
+    }
+}
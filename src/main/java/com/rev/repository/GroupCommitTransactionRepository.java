@@ -0,0 +1,254 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionDirection;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TransactionRepository} committing concurrent transfers together. Callers queue their transfer and wait;
+ * a single committer thread takes everything queued, up to {@code rev.transfer.group-commit.max-size} transfers,
+ * optionally waiting {@code rev.transfer.group-commit.max-wait-micros} for more, and applies the group in one
+ * database transaction. A transfer rejected for its balance or accounts is rolled back to its own savepoint without
+ * affecting the rest of the group; if the group fails as a whole every transfer is retried in its own transaction,
+ * and again after lock conflicts like {@link TransactionRepositoryImpl} does.
+ * Callers are released once the transaction holding their transfer commits.
+ * Everything but single transfers is delegated to {@link TransactionRepositoryImpl}.
+ */
+@Slf4j
+@Singleton
+public class GroupCommitTransactionRepository implements TransactionRepository {
+
+    private final BlockingQueue<PendingTransfer> pendingTransfers = new LinkedBlockingQueue<>();
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransferLockMetrics transferLockMetrics;
+    private final BalanceStore balanceStore;
+    private final Provider<TransactionRepositoryImpl> transactionRepositoryProvider;
+    private final int maxGroupSize;
+    private final long maxWaitNanos;
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder groupedTransfers = new LongAdder();
+    // only used by the committer thread, replaced after a failed transaction
+    private EntityManager entityManager;
+    private TransactionRepositoryImpl transactionRepository;
+
+    @Inject
+    public GroupCommitTransactionRepository(EntityManagerFactory entityManagerFactory, TransferLockMetrics transferLockMetrics,
+                                            BalanceStore balanceStore, Provider<TransactionRepositoryImpl> transactionRepositoryProvider) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.transferLockMetrics = transferLockMetrics;
+        this.balanceStore = balanceStore;
+        this.transactionRepositoryProvider = transactionRepositoryProvider;
+        this.maxGroupSize = ApplicationProperties.getInt("rev.transfer.group-commit.max-size", 64);
+        this.maxWaitNanos = TimeUnit.MICROSECONDS.toNanos(ApplicationProperties.getLong("rev.transfer.group-commit.max-wait-micros", 0));
+
+        Thread committer = new Thread(this::commitGroups, "transfer-group-commit");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @Override
+    public TransactionDao addTransaction(AccountDao accountFrom, AccountDao accountTo, TransactionDao transactionDao) {
+        PendingTransfer pendingTransfer = new PendingTransfer(accountFrom.getAccountId(), accountTo.getAccountId(), transactionDao);
+        pendingTransfers.add(pendingTransfer);
+        try {
+            return pendingTransfer.result.join();
+        } catch (Exception exception) {
+            log.info("{}", exception.getMessage());
+            transactionDao.setTransactionId(null);
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+            return transactionDao;
+        }
+    }
+
+    @Override
+    public void addTransaction(TransactionDao transactionDao) {
+        transactionRepositoryProvider.get().addTransaction(transactionDao);
+    }
+
+    @Override
+    public List<TransactionDao> addTransactions(List<TransactionDao> transactionDaos) {
+        return transactionRepositoryProvider.get().addTransactions(transactionDaos);
+    }
+
+    @Override
+    public List<TransactionDao> getTransactionsForAccount(Long accountId, Long afterTransactionId, TransactionDirection direction, int limit) {
+        return transactionRepositoryProvider.get().getTransactionsForAccount(accountId, afterTransactionId, direction, limit);
+    }
+
+    @Override
+    public boolean maintainsDailyRollups() {
+        return true;
+    }
+
+    public long getGroups() {
+        return groups.sum();
+    }
+
+    public long getGroupedTransfers() {
+        return groupedTransfers.sum();
+    }
+
+    private void commitGroups() {
+        openEntityManager();
+        List<PendingTransfer> group = new ArrayList<>(maxGroupSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                group.add(pendingTransfers.take());
+                pendingTransfers.drainTo(group, maxGroupSize - group.size());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (group.size() < maxGroupSize && deadline - System.nanoTime() > 0) {
+                    PendingTransfer pendingTransfer = pendingTransfers.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (pendingTransfer == null) {
+                        break;
+                    }
+                    group.add(pendingTransfer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            Exception failure = commit(group);
+            if (failure != null) {
+                // one bad transfer must not fail the others, retry each of them on its own
+                for (PendingTransfer pendingTransfer : group) {
+                    // a group of one already was the first attempt of its transfer
+                    if (!commitAlone(pendingTransfer, group.size() == 1 ? failure : null)) {
+                        pendingTransfer.transactionDao.setStatus(TransactionStatus.FAILED);
+                        pendingTransfer.transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+                    }
+                }
+            }
+            group.forEach(pendingTransfer -> pendingTransfer.result.complete(pendingTransfer.transactionDao));
+            group.clear();
+        }
+        entityManager.close();
+    }
+
+    /**
+     * Commits the transfer in a transaction of its own, retrying it with a backoff while it loses lock conflicts.
+     *
+     * @param failure why the first attempt failed when it was already made, null otherwise
+     * @return false when the transfer could not be committed
+     */
+    private boolean commitAlone(PendingTransfer pendingTransfer, Exception failure) {
+        if (failure == null) {
+            failure = commit(List.of(pendingTransfer));
+        }
+        for (int attempt = 1; failure != null; attempt++) {
+            if (!TransactionRepositoryImpl.retryAfterLockConflict(transferLockMetrics, failure, attempt)) {
+                return false;
+            }
+            failure = commit(List.of(pendingTransfer));
+        }
+        return true;
+    }
+
+    /**
+     * @return null when the group committed, otherwise why the transaction was rolled back; the transfers are then
+     * back in their submitted state
+     */
+    private Exception commit(List<PendingTransfer> group) {
+        Session session = entityManager.unwrap(Session.class);
+        try {
+            entityManager.getTransaction().begin();
+            for (PendingTransfer pendingTransfer : group) {
+                TransactionDao transactionDao = pendingTransfer.transactionDao;
+                // earlier inserts must run before the savepoint, a rollback to it would undo them otherwise
+                entityManager.flush();
+                Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+                ErrorsCode errorsCode = transactionRepository.transfer(pendingTransfer.fromAccountId, pendingTransfer.toAccountId, transactionDao.getAmount());
+                if (errorsCode != null) {
+                    session.doWork(connection -> connection.rollback(savepoint));
+                    log.info("transaction failed: {}", errorsCode.getMessage());
+                    transactionDao.setStatus(TransactionStatus.FAILED);
+                    transactionDao.setMessage(errorsCode.getMessage());
+                    entityManager.persist(transactionDao);
+                    DailyRollupRepository.recordFailure(entityManager, transactionDao);
+                } else {
+                    entityManager.persist(transactionDao);
+                    DailyRollupRepository.record(entityManager, List.of(transactionDao));
+                }
+            }
+            entityManager.getTransaction().commit();
+            entityManager.clear();
+            groups.increment();
+            groupedTransfers.add(group.size());
+            return null;
+        } catch (Exception exception) {
+            log.info("group of {} transfers failed: {}", group.size(), exception.getMessage());
+            rollback();
+            group.forEach(PendingTransfer::reset);
+            return exception;
+        }
+    }
+
+    /**
+     * Rolls back the failed transaction and continues with a new entity manager: the pool closes a connection whose
+     * statement timed out waiting for a lock, so the rollback itself may fail and the old one must not be reused.
+     */
+    private void rollback() {
+        try {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        } catch (Exception exception) {
+            log.info("rollback failed: {}", exception.getMessage());
+        }
+        try {
+            entityManager.close();
+        } catch (Exception exception) {
+            log.info("{}", exception.getMessage());
+        }
+        openEntityManager();
+    }
+
+    private void openEntityManager() {
+        entityManager = entityManagerFactory.createEntityManager();
+        transactionRepository = new TransactionRepositoryImpl(entityManager, transferLockMetrics, balanceStore);
+    }
+
+    private static class PendingTransfer {
+        private final long fromAccountId;
+        private final long toAccountId;
+        private final TransactionDao transactionDao;
+        private final TransactionStatus submittedStatus;
+        private final String submittedMessage;
+        private final CompletableFuture<TransactionDao> result = new CompletableFuture<>();
+
+        private PendingTransfer(long fromAccountId, long toAccountId, TransactionDao transactionDao) {
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.transactionDao = transactionDao;
+            this.submittedStatus = transactionDao.getStatus();
+            this.submittedMessage = transactionDao.getMessage();
+        }
+
+        private void reset() {
+            transactionDao.setTransactionId(null);
+            transactionDao.setStatus(submittedStatus);
+            transactionDao.setMessage(submittedMessage);
+        }
+    }
+}
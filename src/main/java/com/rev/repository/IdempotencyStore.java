@@ -0,0 +1,190 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rev.common.ErrorsCode;
+import com.rev.common.exception.IdempotencyKeyReusedException;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.IdempotencyKeyDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outcomes of requests carrying an idempotency key, so a retried request gets the original outcome without being
+ * executed again. Concurrent requests with the same key wait for the first one instead of running in parallel.
+ * An outcome is the {@link ErrorsCode} the request failed with, or null when it succeeded; requests ending with any
+ * other exception are not remembered and run again on retry.
+ * A key is bound to the fingerprint of the request it was first used with; reusing it for a different request fails
+ * with {@link IdempotencyKeyReusedException} instead of replaying an outcome that belongs to another request.
+ * Entries expire after {@code rev.idempotency.ttl-ms} and at most {@code rev.idempotency.max-size} are kept in memory.
+ * With {@code rev.idempotency.persistent} outcomes are also written to the idempotency_key table, which is consulted
+ * on a memory miss, so keys survive eviction and restarts. The outcome is written after the request's own
+ * transaction, a crash in between still allows one more execution.
+ */
+@Slf4j
+@Singleton
+public class IdempotencyStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final EntityManagerFactory entityManagerFactory;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final boolean persistent;
+    private final LongAdder replays = new LongAdder();
+
+    @Inject
+    public IdempotencyStore(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory,
+                ApplicationProperties.getInt("rev.idempotency.max-size", 100_000),
+                ApplicationProperties.getLong("rev.idempotency.ttl-ms", 86_400_000),
+                ApplicationProperties.getBoolean("rev.idempotency.persistent", false));
+    }
+
+    IdempotencyStore(EntityManagerFactory entityManagerFactory, int maxSize, long ttlMillis, boolean persistent) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.persistent = persistent;
+    }
+
+    /**
+     * Runs {@code request} unless an outcome for {@code idempotencyKey} is known or being produced.
+     *
+     * @param fingerprint identifies what the request does, requests with the same key must have the same fingerprint
+     * @return the outcome of the first request with this key
+     * @throws IdempotencyKeyReusedException when the key was first used with another fingerprint
+     */
+    public ErrorsCode execute(String idempotencyKey, String fingerprint, Callable<ErrorsCode> request) throws Exception {
+        Entry entry = new Entry(fingerprint, System.currentTimeMillis() + ttlMillis);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(idempotencyKey, entry)) != null && existing.isExpired()) {
+            entries.remove(idempotencyKey, existing);
+        }
+        if (existing != null) {
+            checkFingerprint(existing.fingerprint, fingerprint);
+            replays.increment();
+            return await(existing.outcome);
+        }
+        evictIfFull();
+
+        try {
+            IdempotencyKeyDao stored = persistent ? load(idempotencyKey) : null;
+            ErrorsCode outcome;
+            if (stored != null) {
+                checkFingerprint(stored.getFingerprint(), fingerprint);
+                replays.increment();
+                outcome = stored.getErrorCode() == null ? null : ErrorsCode.valueOf(stored.getErrorCode());
+            } else {
+                outcome = request.call();
+                if (persistent) {
+                    save(idempotencyKey, fingerprint, outcome);
+                }
+            }
+            entry.outcome.complete(outcome);
+            return outcome;
+        } catch (Exception exception) {
+            entries.remove(idempotencyKey, entry);
+            entry.outcome.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static void checkFingerprint(String first, String fingerprint) throws IdempotencyKeyReusedException {
+        if (!fingerprint.equals(first)) {
+            throw new IdempotencyKeyReusedException(ErrorsCode.IDEMPOTENCY_KEY_REUSED.getMessage());
+        }
+    }
+
+    private static ErrorsCode await(CompletableFuture<ErrorsCode> outcome) throws Exception {
+        try {
+            return outcome.join();
+        } catch (CompletionException exception) {
+            if (exception.getCause() instanceof Exception) {
+                throw (Exception) exception.getCause();
+            }
+            throw exception;
+        }
+    }
+
+    private void evictIfFull() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        entries.values().removeIf(Entry::isExpired);
+        // completed entries only, requests in flight must keep collapsing duplicates
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxSize * 9 / 10 && iterator.hasNext()) {
+            if (iterator.next().outcome.isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private IdempotencyKeyDao load(String idempotencyKey) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            IdempotencyKeyDao idempotencyKeyDao = entityManager.find(IdempotencyKeyDao.class, idempotencyKey);
+            if (idempotencyKeyDao == null || idempotencyKeyDao.getCreatedAt() + ttlMillis < System.currentTimeMillis()) {
+                return null;
+            }
+            return idempotencyKeyDao;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private void save(String idempotencyKey, String fingerprint, ErrorsCode outcome) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.merge(IdempotencyKeyDao.builder()
+                    .idempotencyKey(idempotencyKey)
+                    .errorCode(outcome == null ? null : outcome.name())
+                    .fingerprint(fingerprint)
+                    .createdAt(System.currentTimeMillis())
+                    .build());
+            entityManager.getTransaction().commit();
+        } catch (Exception exception) {
+            // the in-memory entry still protects retries reaching this node
+            log.info("{}", exception.getMessage());
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static final class Entry {
+
+        private final CompletableFuture<ErrorsCode> outcome = new CompletableFuture<>();
+        private final String fingerprint;
+        private final long expiresAt;
+
+        private Entry(String fingerprint, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return outcome.isDone() && expiresAt < System.currentTimeMillis();
+        }
+    }
+}
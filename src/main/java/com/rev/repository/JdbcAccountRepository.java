@@ -0,0 +1,274 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * {@link AccountRepository} on plain JDBC: fixed SQL run through the {@link JdbcConnections} statement cache and rows
+ * mapped straight to accounts, without a persistence context. Keeps balances in the account row, like
+ * {@link ColumnBalanceStore}.
+ */
+@Slf4j
+public class JdbcAccountRepository implements AccountRepository {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final String SELECT_ACCOUNTS = "select accountId, username, email, balance, currencyCode from " + ACCOUNT_TABLE;
+    private static final String INSERT_ACCOUNT = "insert into " + ACCOUNT_TABLE
+            + " (accountId, username, email, balance, currencyCode, balanceEventId, openingBalance, balanceStripes) values (?, ?, ?, ?, ?, 0, ?, 0)";
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final int FETCH_SIZE = ApplicationProperties.getInt("rev.jdbc.fetch-size", 500);
+
+    private final JdbcConnections jdbcConnections;
+    private final AccountCache accountCache;
+
+    @Inject
+    public JdbcAccountRepository(JdbcConnections jdbcConnections, AccountCache accountCache) {
+        this.jdbcConnections = jdbcConnections;
+        this.accountCache = accountCache;
+    }
+
+    @Override
+    public AccountDao createAccount(AccountDao accountDao) {
+        try {
+            return jdbcConnections.inTransaction(connection -> {
+                long accountId = jdbcConnections.nextIds(connection, 1)[0];
+                PreparedStatement insert = jdbcConnections.prepare(connection, INSERT_ACCOUNT);
+                insert.setLong(1, accountId);
+                insert.setString(2, accountDao.getUsername());
+                insert.setString(3, accountDao.getEmail());
+                insert.setLong(4, accountDao.getBalance());
+                insert.setString(5, accountDao.getCurrencyCode());
+                insert.setLong(6, accountDao.getBalance());
+                insert.executeUpdate();
+                accountDao.setAccountId(accountId);
+                return accountDao;
+            });
+        } catch (SQLException e) {
+            log.info("{}", e.getMessage());
+            throw new PersistenceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates the accounts with one JDBC batch and one sequence round trip for all their ids. An account whose email
+     * is taken, in the database or by an earlier account of the list, is skipped. If the batch fails anyway, e.g.
+     * because another request took an email meanwhile, the accounts are created one by one instead.
+     *
+     * @return for every account null when it was created, otherwise why it was not
+     */
+    public List<ErrorsCode> createAccounts(List<AccountDao> accountDaos) {
+        List<ErrorsCode> results = new ArrayList<>(Collections.nCopies(accountDaos.size(), (ErrorsCode) null));
+        try {
+            jdbcConnections.inTransaction(connection -> {
+                Set<String> takenEmails = takenEmails(connection, accountDaos);
+                List<AccountDao> newAccounts = new ArrayList<>(accountDaos.size());
+                for (int i = 0; i < accountDaos.size(); i++) {
+                    if (!takenEmails.add(accountDaos.get(i).getEmail())) {
+                        results.set(i, ErrorsCode.EMAIL_TAKEN);
+                    } else {
+                        newAccounts.add(accountDaos.get(i));
+                    }
+                }
+                if (newAccounts.isEmpty()) {
+                    return null;
+                }
+                long[] accountIds = jdbcConnections.nextIds(connection, newAccounts.size());
+                PreparedStatement insert = jdbcConnections.prepare(connection, INSERT_ACCOUNT);
+                for (int i = 0; i < newAccounts.size(); i++) {
+                    AccountDao accountDao = newAccounts.get(i);
+                    insert.setLong(1, accountIds[i]);
+                    insert.setString(2, accountDao.getUsername());
+                    insert.setString(3, accountDao.getEmail());
+                    insert.setLong(4, accountDao.getBalance());
+                    insert.setString(5, accountDao.getCurrencyCode());
+                    insert.setLong(6, accountDao.getBalance());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                for (int i = 0; i < newAccounts.size(); i++) {
+                    newAccounts.get(i).setAccountId(accountIds[i]);
+                }
+                return null;
+            });
+            return results;
+        } catch (SQLException e) {
+            log.info("batch of {} accounts failed, creating them one by one: {}", accountDaos.size(), e.getMessage());
+            for (int i = 0; i < accountDaos.size(); i++) {
+                results.set(i, createAccountAlone(accountDaos.get(i)));
+            }
+            return results;
+        }
+    }
+
+    private Set<String> takenEmails(Connection connection, List<AccountDao> accountDaos) throws SQLException {
+        PreparedStatement select = jdbcConnections.prepare(connection, "select email from " + ACCOUNT_TABLE + " where email = any(?)");
+        select.setObject(1, accountDaos.stream().map(AccountDao::getEmail).toArray(String[]::new));
+        Set<String> emails = new HashSet<>();
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                emails.add(rows.getString(1));
+            }
+        }
+        return emails;
+    }
+
+    private ErrorsCode createAccountAlone(AccountDao accountDao) {
+        accountDao.setAccountId(0);
+        try {
+            createAccount(accountDao);
+            return null;
+        } catch (PersistenceException e) {
+            return e.getCause() instanceof SQLException && UNIQUE_VIOLATION.equals(((SQLException) e.getCause()).getSQLState())
+                    ? ErrorsCode.EMAIL_TAKEN
+                    : ErrorsCode.ACCOUNT_CREATION_FAILED;
+        }
+    }
+
+    @Override
+    public void updateAccountBalance(AccountDao accountDao) {
+        try {
+            log.info("start updating account id {} balance to {}", accountDao.getAccountId(), accountDao.getBalance());
+            jdbcConnections.inTransaction(connection -> {
+                PreparedStatement update = jdbcConnections.prepare(connection,
+                        "update " + ACCOUNT_TABLE + " set openingBalance = openingBalance + (? - balance), balance = ? where accountId = ?");
+                update.setLong(1, accountDao.getBalance());
+                update.setLong(2, accountDao.getBalance());
+                update.setLong(3, accountDao.getAccountId());
+                return update.executeUpdate();
+            });
+            accountCache.invalidate(accountDao.getAccountId());
+            log.info("finish updating account id {} balance to {}", accountDao.getAccountId(), accountDao.getBalance());
+        } catch (SQLException e) {
+            log.info("{}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supportsBalanceStripes() {
+        // balances stay in the account row, see the class comment
+        return false;
+    }
+
+    @Override
+    public void setBalanceStripes(Long accountId, int stripes) throws InvalidParameterException {
+        throw new InvalidParameterException(ErrorsCode.BALANCE_STRIPES_NOT_SUPPORTED.getMessage());
+    }
+
+    @Override
+    public List<AccountDao> getAllAccounts() {
+        try {
+            return jdbcConnections.inTransaction(connection -> toAccounts(jdbcConnections.prepare(connection, SELECT_ACCOUNTS)));
+        } catch (SQLException ex) {
+            log.info("{}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void forEachAccount(Consumer<AccountDao> consumer) {
+        try {
+            jdbcConnections.inTransaction(connection -> {
+                PreparedStatement select = jdbcConnections.prepare(connection, SELECT_ACCOUNTS + " order by accountId");
+                select.setFetchSize(FETCH_SIZE);
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        consumer.accept(toAccount(rows));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new PersistenceException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public AccountDao findAccountById(Long accountId) {
+        try {
+            List<AccountDao> accounts = jdbcConnections.inTransaction(connection -> {
+                PreparedStatement select = jdbcConnections.prepare(connection, SELECT_ACCOUNTS + " where accountId = ?");
+                select.setLong(1, accountId);
+                return toAccounts(select);
+            });
+            return accounts.isEmpty() ? new AccountDao() : accounts.get(0);
+        } catch (SQLException ex) {
+            log.info("{}", ex.getMessage());
+            return new AccountDao();
+        }
+    }
+
+    @Override
+    public AccountDao findAccountReferenceById(Long accountId) {
+        AccountDao accountDao = accountCache.get(accountId);
+        if (accountDao == null) {
+            accountDao = findAccountById(accountId);
+            if (accountDao.getAccountId() != 0) {
+                accountCache.put(accountDao);
+            }
+        }
+        return accountDao;
+    }
+
+    @Override
+    public List<AccountDao> findAccountsByIds(Collection<Long> accountIds) {
+        if (accountIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            return jdbcConnections.inTransaction(connection -> {
+                // one array parameter keeps a single cached statement for any number of ids
+                PreparedStatement select = jdbcConnections.prepare(connection, SELECT_ACCOUNTS + " where accountId = any(?)");
+                select.setObject(1, accountIds.toArray(new Long[0]));
+                return toAccounts(select);
+            });
+        } catch (SQLException ex) {
+            log.info("{}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void deleteAccount(Long accountId) {
+        try {
+            jdbcConnections.inTransaction(connection -> {
+                PreparedStatement delete = jdbcConnections.prepare(connection, "delete from " + ACCOUNT_TABLE + " where accountId = ?");
+                delete.setLong(1, accountId);
+                return delete.executeUpdate();
+            });
+            accountCache.invalidate(accountId);
+        } catch (SQLException e) {
+            log.info("{}", e.getMessage());
+        }
+    }
+
+    private static List<AccountDao> toAccounts(PreparedStatement select) throws SQLException {
+        List<AccountDao> accounts = new ArrayList<>();
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                accounts.add(toAccount(rows));
+            }
+        }
+        return accounts;
+    }
+
+    private static AccountDao toAccount(ResultSet row) throws SQLException {
+        return new AccountDao(row.getLong(1), row.getString(2), row.getString(3), row.getLong(4), row.getString(5));
+    }
+}
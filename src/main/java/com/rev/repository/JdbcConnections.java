@@ -0,0 +1,162 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rev.configuration.ApplicationProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connections for the JDBC repositories, taken from the same pool Hibernate uses, and the prepared statements of each
+ * physical connection. The pool closes every statement opened through its connection proxy when the connection is
+ * returned, so statements are prepared on the underlying connection instead and kept for as long as it lives, at most
+ * {@code rev.jdbc.statement-cache.size} per connection, least recently used out first.
+ */
+@Slf4j
+@Singleton
+public class JdbcConnections {
+
+    private static final String NEXT_IDS = "select next value for hibernate_sequence from system_range(1, ?)";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int statementCacheSize;
+    // a connection is only used by the thread that borrowed it, so its own statement map needs no locking
+    private final Map<Connection, Map<String, PreparedStatement>> statements = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile DataSource dataSource;
+
+    @Inject
+    public JdbcConnections(EntityManagerFactory entityManagerFactory) {
+        this(entityManagerFactory, ApplicationProperties.getInt("rev.jdbc.statement-cache.size", 64));
+    }
+
+    JdbcConnections(EntityManagerFactory entityManagerFactory, int statementCacheSize) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Runs {@code work} in its own transaction on a pooled connection, committed when it returns and rolled back when
+     * it throws. Statements run on the underlying connection, which the pool can not see, so no transaction may be
+     * left open when the connection goes back.
+     */
+    public <T> T inTransaction(Work<T> work) throws SQLException {
+        try (Connection connection = dataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return a cached statement of the connection; callers close its result sets but never the statement itself
+     */
+    public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        Connection physicalConnection = connection.unwrap(Connection.class);
+        Map<String, PreparedStatement> cache = statements.get(physicalConnection);
+        if (cache == null) {
+            // a new physical connection usually replaces one the pool retired
+            statements.keySet().removeIf(JdbcConnections::isClosed);
+            cache = new StatementCache(statementCacheSize);
+            statements.put(physicalConnection, cache);
+        }
+        PreparedStatement statement = cache.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            hits.increment();
+            return statement;
+        }
+        misses.increment();
+        statement = physicalConnection.prepareStatement(sql);
+        cache.put(sql, statement);
+        return statement;
+    }
+
+    /**
+     * Ids come from the sequence Hibernate generates ids from, so JPA and JDBC repositories can share the tables.
+     */
+    public long[] nextIds(Connection connection, int count) throws SQLException {
+        PreparedStatement nextIds = prepare(connection, NEXT_IDS);
+        nextIds.setInt(1, count);
+        long[] ids = new long[count];
+        try (ResultSet rows = nextIds.executeQuery()) {
+            for (int i = 0; i < count && rows.next(); i++) {
+                ids[i] = rows.getLong(1);
+            }
+        }
+        return ids;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private DataSource dataSource() {
+        if (dataSource == null) {
+            // resolved on first use, the entity manager factory may still be starting when this is created
+            dataSource = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry()
+                    .getService(ConnectionProvider.class)
+                    .unwrap(DataSource.class);
+        }
+        return dataSource;
+    }
+
+    private static boolean isClosed(Connection connection) {
+        try {
+            return connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private static class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+
+        private final int maxSize;
+
+        private StatementCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= maxSize) {
+                return false;
+            }
+            try {
+                eldest.getValue().close();
+            } catch (SQLException e) {
+                log.info("{}", e.getMessage());
+            }
+            return true;
+        }
+    }
+}
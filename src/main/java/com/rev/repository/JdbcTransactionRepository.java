@@ -0,0 +1,377 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionDirection;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.PersistenceException;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * {@link TransactionRepository} on plain JDBC with the locking and retry behaviour of {@link TransactionRepositoryImpl}:
+ * transfers first queue on the {@link AccountLocks} of their accounts, single transfers then use the guarded updates
+ * of {@link ColumnBalanceStore}, batches lock their accounts in id order and write balances and transactions as JDBC
+ * batches. Balances always live in the account row here, so unlike with the striped balance store the destination of
+ * a transfer is always locked too. Statements come from the {@link JdbcConnections} cache.
+ */
+@Slf4j
+public class JdbcTransactionRepository implements TransactionRepository {
+
+    private static final String TRANSACTION_TABLE = "transaction";
+    private static final String ACCOUNT_TABLE = "account";
+    private static final String INSERT_TRANSACTION = "insert into " + TRANSACTION_TABLE
+            + " (transactionId, fromAccountId, toAccountId, amount, currencyCode, status, date, message) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_TRANSACTIONS = "select transactionId, fromAccountId, toAccountId, amount, currencyCode, status, date, message from "
+            + TRANSACTION_TABLE;
+    private static final String DEBIT = "update " + ACCOUNT_TABLE + " set balance = balance - ? where accountId = ? and balance >= ?";
+    // guarded like the debit, a balance that would overflow is left alone
+    private static final String CREDIT = "update " + ACCOUNT_TABLE + " set balance = balance + ? where accountId = ? and balance <= ?";
+    private static final String ACCOUNT_EXISTS = "select count(*) from " + ACCOUNT_TABLE + " where accountId = ?";
+    private static final String LOCK_ACCOUNTS = "select accountId, balance from " + ACCOUNT_TABLE + " where accountId = any(?) order by accountId for update";
+    private static final String UPDATE_BALANCE = "update " + ACCOUNT_TABLE + " set balance = ? where accountId = ?";
+    private static final int FETCH_SIZE = ApplicationProperties.getInt("rev.jdbc.fetch-size", 500);
+
+    private final JdbcConnections jdbcConnections;
+    private final TransferLockMetrics transferLockMetrics;
+    private final AccountLocks accountLocks;
+
+    @Inject
+    public JdbcTransactionRepository(JdbcConnections jdbcConnections, TransferLockMetrics transferLockMetrics, AccountLocks accountLocks) {
+        this.jdbcConnections = jdbcConnections;
+        this.transferLockMetrics = transferLockMetrics;
+        this.accountLocks = accountLocks;
+    }
+
+    @Override
+    public TransactionDao addTransaction(AccountDao accountFrom, AccountDao accountTo, TransactionDao transactionDao) {
+        log.info("Starting account transaction");
+        for (int attempt = 1; ; attempt++) {
+            try (AccountLocks.Locked locked = accountLocks.lock(List.of(accountFrom.getAccountId(), accountTo.getAccountId()))) {
+                ErrorsCode errorsCode = jdbcConnections.inTransaction(connection -> {
+                    ErrorsCode failure = transfer(connection, accountFrom.getAccountId(), accountTo.getAccountId(), transactionDao.getAmount());
+                    if (failure != null) {
+                        connection.rollback();
+                        return failure;
+                    }
+                    insertTransactions(connection, List.of(transactionDao));
+                    return null;
+                });
+                if (errorsCode != null) {
+                    log.info("transaction failed: {}", errorsCode.getMessage());
+                    transactionDao.setStatus(TransactionStatus.FAILED);
+                    transactionDao.setMessage(errorsCode.getMessage());
+                    return transactionDao;
+                }
+                log.info("ending transaction");
+                return transactionDao;
+            } catch (SQLException | RuntimeException exception) {
+                transactionDao.setTransactionId(null);
+                if (!TransactionRepositoryImpl.retryAfterLockConflict(transferLockMetrics, exception, attempt)) {
+                    log.info("{}", exception.getMessage());
+                    transactionDao.setStatus(TransactionStatus.FAILED);
+                    transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+                    return transactionDao;
+                }
+            }
+        }
+    }
+
+    /**
+     * Debits and credits lowest account id first, see {@link ColumnBalanceStore#transfer}.
+     */
+    private ErrorsCode transfer(Connection connection, long fromAccountId, long toAccountId, long amount) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            if (fromAccountId <= toAccountId) {
+                if (update(connection, DEBIT, fromAccountId, amount, amount) == 0) {
+                    return exists(connection, fromAccountId) ? ErrorsCode.NOT_ENOUGH_BALANCE : ErrorsCode.SRC_ACCOUNT_NOT_EXISTS;
+                }
+                return update(connection, CREDIT, toAccountId, amount, Long.MAX_VALUE - amount) == 0 ? creditFailure(connection, toAccountId) : null;
+            }
+            if (update(connection, CREDIT, toAccountId, amount, Long.MAX_VALUE - amount) == 0) {
+                return creditFailure(connection, toAccountId);
+            }
+            if (update(connection, DEBIT, fromAccountId, amount, amount) == 0) {
+                return exists(connection, fromAccountId) ? ErrorsCode.NOT_ENOUGH_BALANCE : ErrorsCode.SRC_ACCOUNT_NOT_EXISTS;
+            }
+            return null;
+        } finally {
+            transferLockMetrics.recordRowLocking(System.nanoTime() - start);
+        }
+    }
+
+    private ErrorsCode creditFailure(Connection connection, long toAccountId) throws SQLException {
+        return exists(connection, toAccountId) ? ErrorsCode.BALANCE_OVERFLOW : ErrorsCode.DES_ACCOUNT_NOT_EXISTS;
+    }
+
+    private int update(Connection connection, String sql, long accountId, long amount, long bound) throws SQLException {
+        PreparedStatement update = jdbcConnections.prepare(connection, sql);
+        update.setLong(1, amount);
+        update.setLong(2, accountId);
+        update.setLong(3, bound);
+        return update.executeUpdate();
+    }
+
+    private boolean exists(Connection connection, long accountId) throws SQLException {
+        PreparedStatement select = jdbcConnections.prepare(connection, ACCOUNT_EXISTS);
+        select.setLong(1, accountId);
+        try (ResultSet rows = select.executeQuery()) {
+            return rows.next() && rows.getLong(1) > 0;
+        }
+    }
+
+    @Override
+    public void addTransaction(TransactionDao transactionDao) {
+        try {
+            jdbcConnections.inTransaction(connection -> {
+                insertTransactions(connection, List.of(transactionDao));
+                return null;
+            });
+        } catch (SQLException e) {
+            log.info("{}", e.getMessage());
+            transactionDao.setTransactionId(null);
+        }
+    }
+
+    @Override
+    public List<TransactionDao> addTransactions(List<TransactionDao> transactionDaos) {
+        log.info("Starting batch of {} account transactions", transactionDaos.size());
+        List<TransactionStatus> statuses = transactionDaos.stream().map(TransactionDao::getStatus).collect(Collectors.toList());
+        List<String> messages = transactionDaos.stream().map(TransactionDao::getMessage).collect(Collectors.toList());
+        for (int attempt = 1; ; attempt++) {
+            try (AccountLocks.Locked locked = accountLocks.lock(TransactionRepositoryImpl.accountIds(transactionDaos))) {
+                jdbcConnections.inTransaction(connection -> {
+                    long start = System.nanoTime();
+                    Map<Long, Long> balances = lockAccounts(connection, transactionDaos);
+                    transferLockMetrics.recordRowLocking(System.nanoTime() - start);
+                    Set<Long> changedAccounts = new HashSet<>();
+                    for (TransactionDao transactionDao : transactionDaos) {
+                        if (transactionDao.getStatus() == TransactionStatus.SUCCESS) {
+                            applyTransfer(balances, changedAccounts, transactionDao);
+                        }
+                    }
+                    updateBalances(connection, balances, changedAccounts);
+                    insertTransactions(connection, transactionDaos);
+                    return null;
+                });
+                log.info("ending batch of account transactions");
+                return transactionDaos;
+            } catch (SQLException | RuntimeException exception) {
+                for (int i = 0; i < transactionDaos.size(); i++) {
+                    TransactionDao transactionDao = transactionDaos.get(i);
+                    transactionDao.setTransactionId(null);
+                    transactionDao.setStatus(statuses.get(i));
+                    transactionDao.setMessage(messages.get(i));
+                }
+                if (!TransactionRepositoryImpl.retryAfterLockConflict(transferLockMetrics, exception, attempt)) {
+                    log.info("{}", exception.getMessage());
+                    transactionDaos.stream()
+                            .filter(transactionDao -> transactionDao.getStatus() == TransactionStatus.SUCCESS)
+                            .forEach(transactionDao -> {
+                                transactionDao.setStatus(TransactionStatus.FAILED);
+                                transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+                            });
+                    return transactionDaos;
+                }
+            }
+        }
+    }
+
+    /**
+     * Locks all accounts touched by successful transfers with one query, in account id order.
+     *
+     * @return balance by account id
+     */
+    private Map<Long, Long> lockAccounts(Connection connection, List<TransactionDao> transactionDaos) throws SQLException {
+        Set<Long> accountIds = new HashSet<>();
+        transactionDaos.stream()
+                .filter(transactionDao -> transactionDao.getStatus() == TransactionStatus.SUCCESS)
+                .forEach(transactionDao -> {
+                    accountIds.add(transactionDao.getFromAccountId());
+                    accountIds.add(transactionDao.getToAccountId());
+                });
+        if (accountIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        PreparedStatement select = jdbcConnections.prepare(connection, LOCK_ACCOUNTS);
+        select.setObject(1, accountIds.toArray(new Long[0]));
+        Map<Long, Long> balances = new HashMap<>();
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                balances.put(rows.getLong(1), rows.getLong(2));
+            }
+        }
+        return balances;
+    }
+
+    private static void applyTransfer(Map<Long, Long> balances, Set<Long> changedAccounts, TransactionDao transactionDao) {
+        Long fromBalance = balances.get(transactionDao.getFromAccountId());
+        Long toBalance = balances.get(transactionDao.getToAccountId());
+        if (fromBalance == null || toBalance == null) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage((fromBalance == null ? ErrorsCode.SRC_ACCOUNT_NOT_EXISTS : ErrorsCode.DES_ACCOUNT_NOT_EXISTS).getMessage());
+        } else if (fromBalance < transactionDao.getAmount()) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        } else if (toBalance > Long.MAX_VALUE - transactionDao.getAmount()) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(ErrorsCode.BALANCE_OVERFLOW.getMessage());
+        } else {
+            balances.put(transactionDao.getFromAccountId(), fromBalance - transactionDao.getAmount());
+            balances.merge(transactionDao.getToAccountId(), transactionDao.getAmount(), Long::sum);
+            changedAccounts.add(transactionDao.getFromAccountId());
+            changedAccounts.add(transactionDao.getToAccountId());
+        }
+    }
+
+    private void updateBalances(Connection connection, Map<Long, Long> balances, Set<Long> changedAccounts) throws SQLException {
+        if (changedAccounts.isEmpty()) {
+            return;
+        }
+        PreparedStatement update = jdbcConnections.prepare(connection, UPDATE_BALANCE);
+        for (Long accountId : changedAccounts) {
+            update.setLong(1, balances.get(accountId));
+            update.setLong(2, accountId);
+            update.addBatch();
+        }
+        update.executeBatch();
+    }
+
+    private void insertTransactions(Connection connection, List<TransactionDao> transactionDaos) throws SQLException {
+        long[] transactionIds = jdbcConnections.nextIds(connection, transactionDaos.size());
+        PreparedStatement insert = jdbcConnections.prepare(connection, INSERT_TRANSACTION);
+        for (int i = 0; i < transactionDaos.size(); i++) {
+            TransactionDao transactionDao = transactionDaos.get(i);
+            transactionDao.setTransactionId(transactionIds[i]);
+            insert.setLong(1, transactionIds[i]);
+            insert.setLong(2, transactionDao.getFromAccountId());
+            insert.setLong(3, transactionDao.getToAccountId());
+            insert.setLong(4, transactionDao.getAmount());
+            insert.setString(5, transactionDao.getCurrencyCode());
+            insert.setString(6, transactionDao.getStatus().name());
+            if (transactionDao.getDate() == null) {
+                insert.setNull(7, Types.DATE);
+            } else {
+                insert.setDate(7, transactionDao.getDate());
+            }
+            insert.setString(8, transactionDao.getMessage());
+            insert.addBatch();
+        }
+        insert.executeBatch();
+    }
+
+    @Override
+    public List<TransactionDao> getTransactionsForAccount(final Long accountId, final Long afterTransactionId,
+                                                          final TransactionDirection direction, final int limit) {
+        try {
+            return jdbcConnections.inTransaction(connection -> {
+                if (direction == TransactionDirection.OUT) {
+                    return getPage(connection, "fromAccountId", accountId, afterTransactionId, limit);
+                }
+                if (direction == TransactionDirection.IN) {
+                    return getPage(connection, "toAccountId", accountId, afterTransactionId, limit);
+                }
+                return TransactionRepositoryImpl.merge(getPage(connection, "fromAccountId", accountId, afterTransactionId, limit),
+                        getPage(connection, "toAccountId", accountId, afterTransactionId, limit), limit);
+            });
+        } catch (SQLException ex) {
+            log.info("{}", ex.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public boolean maintainsDailyRollups() {
+        // fixed SQL without rollups
+        return false;
+    }
+
+    /**
+     * Reads the matching transactions in transaction id order from one result set, so any number of them can be passed
+     * to {@code consumer} without holding them in memory.
+     *
+     * @param accountId only transactions from or to this account, null for all accounts
+     * @param from      first day, null for no lower bound
+     * @param to        last day, null for no upper bound
+     * @param afterTransactionId only transactions with a bigger id
+     */
+    public void forEachTransaction(Long accountId, Date from, Date to, long afterTransactionId, Consumer<TransactionDao> consumer) {
+        StringBuilder sql = new StringBuilder(SELECT_TRANSACTIONS).append(" where transactionId > ?");
+        if (accountId != null) {
+            sql.append(" and (fromAccountId = ? or toAccountId = ?)");
+        }
+        if (from != null) {
+            sql.append(" and date >= ?");
+        }
+        if (to != null) {
+            sql.append(" and date <= ?");
+        }
+        sql.append(" order by transactionId");
+        try {
+            jdbcConnections.inTransaction(connection -> {
+                PreparedStatement select = jdbcConnections.prepare(connection, sql.toString());
+                int parameter = 1;
+                select.setLong(parameter++, afterTransactionId);
+                if (accountId != null) {
+                    select.setLong(parameter++, accountId);
+                    select.setLong(parameter++, accountId);
+                }
+                if (from != null) {
+                    select.setDate(parameter++, from);
+                }
+                if (to != null) {
+                    select.setDate(parameter, to);
+                }
+                select.setFetchSize(FETCH_SIZE);
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        consumer.accept(toTransaction(rows));
+                    }
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new PersistenceException(e.getMessage(), e);
+        }
+    }
+
+    private List<TransactionDao> getPage(Connection connection, String accountColumn, Long accountId, Long afterTransactionId, int limit) throws SQLException {
+        PreparedStatement select = jdbcConnections.prepare(connection,
+                SELECT_TRANSACTIONS + " where " + accountColumn + " = ? and transactionId > ? order by transactionId limit ?");
+        select.setLong(1, accountId);
+        select.setLong(2, afterTransactionId == null ? 0L : afterTransactionId);
+        select.setInt(3, limit);
+        List<TransactionDao> transactions = new ArrayList<>();
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                transactions.add(toTransaction(rows));
+            }
+        }
+        return transactions;
+    }
+
+    private static TransactionDao toTransaction(ResultSet rows) throws SQLException {
+        return new TransactionDao(rows.getLong(1), rows.getLong(2), rows.getLong(3), rows.getLong(4), rows.getString(5),
+                TransactionStatus.valueOf(rows.getString(6)), rows.getDate(7), rows.getString(8));
+    }
+}
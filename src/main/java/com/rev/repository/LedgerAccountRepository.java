@@ -0,0 +1,94 @@
+package com.rev.repository;
+
+import com.google.inject.name.Named;
+import com.rev.common.exception.AccountBalanceUpdateException;
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.dao.AccountDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.rev.common.ErrorsCode.ACCOUNT_UPDATE_BALANCE_FAILED;
+
+/**
+ * The configured {@link AccountRepository} for use with the {@link LedgerTransactionRepository}: the ledger keeps the
+ * balances in memory, so setting a balance and deleting an account go through the ledger partition owning the account
+ * instead of writing the account row behind its back.
+ */
+@Slf4j
+public class LedgerAccountRepository implements AccountRepository {
+
+    public static final String DELEGATE = "ledger-delegate";
+
+    private final AccountRepository accountRepository;
+    private final LedgerTransactionRepository ledgerTransactionRepository;
+    private final AccountCache accountCache;
+
+    @Inject
+    public LedgerAccountRepository(@Named(DELEGATE) AccountRepository accountRepository, LedgerTransactionRepository ledgerTransactionRepository,
+                                   AccountCache accountCache) {
+        this.accountRepository = accountRepository;
+        this.ledgerTransactionRepository = ledgerTransactionRepository;
+        this.accountCache = accountCache;
+    }
+
+    @Override
+    public AccountDao createAccount(AccountDao accountDao) {
+        return accountRepository.createAccount(accountDao);
+    }
+
+    @Override
+    public List<AccountDao> getAllAccounts() {
+        return accountRepository.getAllAccounts();
+    }
+
+    @Override
+    public void forEachAccount(Consumer<AccountDao> consumer) {
+        accountRepository.forEachAccount(consumer);
+    }
+
+    @Override
+    public AccountDao findAccountById(Long accountId) {
+        return accountRepository.findAccountById(accountId);
+    }
+
+    @Override
+    public AccountDao findAccountReferenceById(Long accountId) {
+        return accountRepository.findAccountReferenceById(accountId);
+    }
+
+    @Override
+    public List<AccountDao> findAccountsByIds(Collection<Long> accountIds) {
+        return accountRepository.findAccountsByIds(accountIds);
+    }
+
+    @Override
+    public void deleteAccount(Long accountId) {
+        try {
+            ledgerTransactionRepository.deleteAccount(accountId);
+        } catch (Exception e) {
+            log.info("{}", e.getMessage());
+        }
+        accountCache.invalidate(accountId);
+    }
+
+    @Override
+    public void updateAccountBalance(AccountDao accountDao) throws AccountBalanceUpdateException {
+        if (!ledgerTransactionRepository.setBalance(accountDao.getAccountId(), accountDao.getBalance())) {
+            throw new AccountBalanceUpdateException(ACCOUNT_UPDATE_BALANCE_FAILED.getMessage());
+        }
+    }
+
+    @Override
+    public boolean supportsBalanceStripes() {
+        return accountRepository.supportsBalanceStripes();
+    }
+
+    @Override
+    public void setBalanceStripes(Long accountId, int stripes) throws InvalidParameterException {
+        accountRepository.setBalanceStripes(accountId, stripes);
+    }
+}
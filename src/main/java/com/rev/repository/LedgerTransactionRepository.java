@@ -0,0 +1,140 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionDirection;
+import com.rev.common.TransactionStatus;
+import com.rev.common.exception.NotEnoughBalanceException;
+import com.rev.common.exception.ServerBusyException;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import com.rev.repository.ledger.LedgerJournal;
+import com.rev.repository.ledger.LedgerJournalSettings;
+import com.rev.repository.ledger.LedgerTransactionEngine;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * {@link TransactionRepository} backed by the in-memory {@link LedgerTransactionEngine}. Balances are authoritative
+ * in the engine; transaction rows and balances reach the database asynchronously.
+ */
+@Slf4j
+@Singleton
+public class LedgerTransactionRepository implements TransactionRepository {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransferLockMetrics transferLockMetrics;
+    private final LedgerTransactionEngine engine;
+
+    @Inject
+    public LedgerTransactionRepository(EntityManagerFactory entityManagerFactory, TransferLockMetrics transferLockMetrics) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.transferLockMetrics = transferLockMetrics;
+        this.engine = new LedgerTransactionEngine(entityManagerFactory,
+                ApplicationProperties.getInt("rev.ledger.partitions", Runtime.getRuntime().availableProcessors()),
+                ApplicationProperties.getInt("rev.ledger.ring-capacity", 1024),
+                ApplicationProperties.getInt("rev.ledger.projection-batch-size", 256),
+                journalSettings());
+        this.engine.start();
+    }
+
+    private static LedgerJournalSettings journalSettings() {
+        if (!ApplicationProperties.getBoolean("rev.journal.enabled", false)) {
+            return null;
+        }
+        return LedgerJournalSettings.builder()
+                .directory(Paths.get(ApplicationProperties.getString("rev.journal.directory", System.getProperty("user.home") + "/moneydb-journal")))
+                .segmentSize(ApplicationProperties.getInt("rev.journal.segment-size-bytes", 64 * 1024 * 1024))
+                .fsyncPolicy(LedgerJournal.FsyncPolicy.valueOf(ApplicationProperties.getString("rev.journal.fsync", "group").toUpperCase()))
+                .fsyncIntervalMillis(ApplicationProperties.getLong("rev.journal.fsync-interval-ms", 10))
+                .build();
+    }
+
+    @Override
+    public TransactionDao addTransaction(AccountDao accountFrom, AccountDao accountTo, TransactionDao transactionDao) throws NotEnoughBalanceException {
+        return engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transactionDao).join();
+    }
+
+    @Override
+    public void addTransaction(TransactionDao transactionDao) {
+        engine.record(transactionDao);
+    }
+
+    @Override
+    public List<TransactionDao> addTransactions(List<TransactionDao> transactionDaos) {
+        List<CompletableFuture<TransactionDao>> results = transactionDaos.stream()
+                .map(transactionDao -> transactionDao.getStatus() == TransactionStatus.SUCCESS
+                        ? transfer(transactionDao)
+                        : CompletableFuture.completedFuture(transactionDao))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < transactionDaos.size(); i++) {
+            TransactionDao transactionDao = transactionDaos.get(i);
+            try {
+                results.get(i).join();
+            } catch (Exception exception) {
+                log.info("{}", exception.getMessage());
+                transactionDao.setStatus(TransactionStatus.FAILED);
+                transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+            }
+            if (transactionDao.getStatus() == TransactionStatus.FAILED && !ErrorsCode.SERVER_BUSY.getMessage().equals(transactionDao.getMessage())) {
+                engine.record(transactionDao);
+            }
+        }
+        return transactionDaos;
+    }
+
+    /**
+     * Sets the balance through the engine, which owns it.
+     *
+     * @return false when the account does not exist
+     */
+    public boolean setBalance(long accountId, long balance) {
+        return engine.setBalance(accountId, balance).join();
+    }
+
+    /**
+     * Deletes the account through the engine, which owns its balance.
+     *
+     * @return false when the account does not exist
+     */
+    public boolean deleteAccount(long accountId) {
+        return engine.deleteAccount(accountId).join();
+    }
+
+    // a transfer finding its partition full fails on its own instead of failing the whole batch
+    private CompletableFuture<TransactionDao> transfer(TransactionDao transactionDao) {
+        try {
+            return engine.transfer(transactionDao.getFromAccountId(), transactionDao.getToAccountId(), transactionDao);
+        } catch (ServerBusyException exception) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(ErrorsCode.SERVER_BUSY.getMessage());
+            return CompletableFuture.completedFuture(transactionDao);
+        }
+    }
+
+    @Override
+    public List<TransactionDao> getTransactionsForAccount(Long accountId, Long afterTransactionId, TransactionDirection direction, int limit) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return new TransactionRepositoryImpl(entityManager, transferLockMetrics, new ColumnBalanceStore())
+                    .getTransactionsForAccount(accountId, afterTransactionId, direction, limit);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Override
+    public boolean maintainsDailyRollups() {
+        // the projector writes no rollups
+        return false;
+    }
+}
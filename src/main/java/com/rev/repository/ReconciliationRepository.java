@@ -0,0 +1,114 @@
+package com.rev.repository;
+
+import com.google.inject.Inject;
+import com.rev.dao.AccountDao;
+
+import javax.persistence.PersistenceException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads what reconciliation compares: the current balance of every account and the balance its opening balance and
+ * successful transfers add up to. Each read is one plain JDBC statement, so it sees one consistent snapshot of the
+ * database without locking a row and live transfers are never blocked by it.
+ */
+public class ReconciliationRepository {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final String TRANSACTION_TABLE = "transaction";
+    private static final String ACCOUNT_ID_RANGE = "select min(accountId), max(accountId) from " + ACCOUNT_TABLE;
+
+    private final JdbcConnections jdbcConnections;
+    private final String reconcileAccounts;
+
+    @Inject
+    public ReconciliationRepository(JdbcConnections jdbcConnections, BalanceStore balanceStore) {
+        this.jdbcConnections = jdbcConnections;
+        // credits and debits are range scans of the transaction indexes on toAccountId and fromAccountId
+        this.reconcileAccounts = "select a.accountId, a.currencyCode, " + balanceStore.currentBalance("a") + ", a.openingBalance"
+                + " + coalesce((select sum(t.amount) from " + TRANSACTION_TABLE + " t where t.toAccountId = a.accountId and t.status = 'SUCCESS'), 0)"
+                + " - coalesce((select sum(t.amount) from " + TRANSACTION_TABLE + " t where t.fromAccountId = a.accountId and t.status = 'SUCCESS'), 0)"
+                + " from " + ACCOUNT_TABLE + " a where a.accountId between ? and ?";
+    }
+
+    /**
+     * @return lowest and highest account id, null when there are no accounts
+     */
+    public long[] getAccountIdRange() {
+        try {
+            return jdbcConnections.inTransaction(connection -> {
+                try (ResultSet rows = jdbcConnections.prepare(connection, ACCOUNT_ID_RANGE).executeQuery()) {
+                    rows.next();
+                    long max = rows.getLong(2);
+                    return rows.wasNull() ? null : new long[]{rows.getLong(1), max};
+                }
+            });
+        } catch (SQLException e) {
+            throw new PersistenceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reconciles the accounts with ids from {@code fromAccountId} to {@code toAccountId}, both inclusive.
+     *
+     * @return number of accounts checked
+     */
+    public int reconcile(long fromAccountId, long toAccountId, List<Discrepancy> discrepancies) {
+        try {
+            return jdbcConnections.inTransaction(connection -> {
+                PreparedStatement select = jdbcConnections.prepare(connection, reconcileAccounts);
+                select.setLong(1, fromAccountId);
+                select.setLong(2, toAccountId);
+                int accounts = 0;
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        accounts++;
+                        if (rows.getLong(3) != rows.getLong(4)) {
+                            discrepancies.add(new Discrepancy(AccountDao.builder()
+                                    .accountId(rows.getLong(1))
+                                    .currencyCode(rows.getString(2))
+                                    .balance(rows.getLong(3))
+                                    .build(), rows.getLong(4)));
+                        }
+                    }
+                }
+                return accounts;
+            });
+        } catch (SQLException e) {
+            throw new PersistenceException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reconciles one account again, to confirm a discrepancy with a fresh read before it is reported.
+     *
+     * @return the discrepancy, null when the account agrees with its transactions or no longer exists
+     */
+    public Discrepancy reconcile(long accountId) {
+        List<Discrepancy> discrepancies = new ArrayList<>(1);
+        reconcile(accountId, accountId, discrepancies);
+        return discrepancies.isEmpty() ? null : discrepancies.get(0);
+    }
+
+    public static class Discrepancy {
+        private final AccountDao account;
+        private final long expectedBalance;
+
+        Discrepancy(AccountDao account, long expectedBalance) {
+            this.account = account;
+            this.expectedBalance = expectedBalance;
+        }
+
+        public AccountDao getAccount() {
+            return account;
+        }
+
+        // opening balance plus successful transfers in minus successful transfers out
+        public long getExpectedBalance() {
+            return expectedBalance;
+        }
+    }
+}
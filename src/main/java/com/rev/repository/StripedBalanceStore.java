@@ -0,0 +1,199 @@
+package com.rev.repository;
+
+import com.google.inject.Singleton;
+import com.rev.dao.AccountDao;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The balance column, plus credit stripes for hot accounts: an account flagged with N stripes has N rows in the
+ * account_balance_stripe table and its balance is the account row plus all of them. Credits to a hot account add to one
+ * stripe chosen by hashing the thread, so concurrent credits lock different rows instead of queuing on the account row.
+ * Debits still come out of the account row; when it does not hold enough, all stripes are swept into it first.
+ * <p>
+ * Locks of a hot account are taken account row first, then its stripes, and a credit takes a single stripe only, so
+ * stripes never reverse the lowest account id first order of transfers. For the same reason transfers into a hot account
+ * do not take its {@link AccountLocks account lock}, only the one of the paying account.
+ */
+@Singleton
+public class StripedBalanceStore extends ColumnBalanceStore {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final String STRIPE_TABLE = "account_balance_stripe";
+
+    // stripe count of every hot account, loaded on first use and kept up to date by balanceStripesCommitted
+    private volatile Map<Long, Integer> hotAccounts;
+
+    @Override
+    public String currentBalance(String account) {
+        return account + ".balance + coalesce((select sum(s.balance) from " + STRIPE_TABLE + " s where s.accountId = " + account
+                + ".accountId), 0)";
+    }
+
+    @Override
+    public int setBalance(EntityManager entityManager, long accountId, long balance) {
+        if (hotAccounts(entityManager).containsKey(accountId)) {
+            // the opening balance is moved by the difference to the whole balance, so the row has to hold all of it
+            lockAccount(entityManager, accountId);
+            sweep(entityManager, accountId);
+        }
+        return super.setBalance(entityManager, accountId, balance);
+    }
+
+    @Override
+    public void loadBalances(EntityManager entityManager, Collection<AccountDao> lockedAccounts) {
+        // the batch works on the balance of the managed account, which has to be the whole balance
+        for (AccountDao accountDao : lockedAccounts) {
+            if (hotAccounts(entityManager).containsKey(accountDao.getAccountId())) {
+                accountDao.setBalance(accountDao.getBalance() + takeStripes(entityManager, accountDao.getAccountId()));
+            }
+        }
+    }
+
+    @Override
+    public boolean spreadsCredits(EntityManager entityManager, long accountId) {
+        return hotAccounts(entityManager).containsKey(accountId);
+    }
+
+    @Override
+    public boolean supportsBalanceStripes() {
+        return true;
+    }
+
+    @Override
+    public int setBalanceStripes(EntityManager entityManager, long accountId, int stripes) {
+        if (!lockAccount(entityManager, accountId)) {
+            return 0;
+        }
+        sweep(entityManager, accountId);
+        entityManager.createQuery("delete from " + STRIPE_TABLE + " where accountId = ?1")
+                .setParameter(1, accountId)
+                .executeUpdate();
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            entityManager.createNativeQuery("insert into " + STRIPE_TABLE + " (accountId, stripe, balance) values (?1, ?2, 0)")
+                    .setParameter(1, accountId)
+                    .setParameter(2, stripe)
+                    .executeUpdate();
+        }
+        entityManager.createQuery("update " + ACCOUNT_TABLE + " set balanceStripes = ?1 where accountId = ?2")
+                .setParameter(1, stripes)
+                .setParameter(2, accountId)
+                .executeUpdate();
+        return 1;
+    }
+
+    @Override
+    public synchronized void balanceStripesCommitted(long accountId, int stripes) {
+        // a credit still seeing the old stripe count and finding no stripe row falls back to the account row
+        if (hotAccounts == null) {
+            // not loaded yet, the first use reads the committed stripes
+            return;
+        }
+        if (stripes > 0) {
+            hotAccounts.put(accountId, stripes);
+        } else {
+            hotAccounts.remove(accountId);
+        }
+    }
+
+    @Override
+    int debit(EntityManager entityManager, long accountId, long amount) {
+        int debited = super.debit(entityManager, accountId, amount);
+        if (debited == 0 && hotAccounts(entityManager).containsKey(accountId) && lockAccount(entityManager, accountId)
+                && sweep(entityManager, accountId) > 0) {
+            debited = super.debit(entityManager, accountId, amount);
+        }
+        return debited;
+    }
+
+    @Override
+    int credit(EntityManager entityManager, long accountId, long amount) {
+        Integer stripes = hotAccounts(entityManager).get(accountId);
+        if (stripes != null) {
+            // concurrent transfers run on different threads, so hashing the thread spreads them over the stripes
+            int credited = entityManager.createQuery("update " + STRIPE_TABLE + " set balance = balance + ?1"
+                    + " where accountId = ?2 and stripe = ?3 and balance <= ?4")
+                    .setParameter(1, amount)
+                    .setParameter(2, accountId)
+                    .setParameter(3, (int) Math.floorMod(Thread.currentThread().getId(), (long) stripes))
+                    .setParameter(4, Long.MAX_VALUE - amount)
+                    .executeUpdate();
+            if (credited > 0) {
+                return credited;
+            }
+        }
+        return super.credit(entityManager, accountId, amount);
+    }
+
+    /**
+     * Moves the stripes of a locked account into its row.
+     *
+     * @return the amount moved
+     */
+    private static long sweep(EntityManager entityManager, long accountId) {
+        long amount = takeStripes(entityManager, accountId);
+        if (amount != 0) {
+            entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance = balance + ?1 where accountId = ?2")
+                    .setParameter(1, amount)
+                    .setParameter(2, accountId)
+                    .executeUpdate();
+        }
+        return amount;
+    }
+
+    /**
+     * Locks the stripes of a locked account and empties them.
+     *
+     * @return what they held
+     */
+    @SuppressWarnings("unchecked")
+    private static long takeStripes(EntityManager entityManager, long accountId) {
+        List<Long> balances = entityManager.createQuery("select balance from " + STRIPE_TABLE + " where accountId = ?1 order by stripe")
+                .setParameter(1, accountId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        long amount = 0;
+        for (Long balance : balances) {
+            amount = Math.addExact(amount, balance);
+        }
+        if (amount != 0) {
+            entityManager.createQuery("update " + STRIPE_TABLE + " set balance = 0 where accountId = ?1")
+                    .setParameter(1, accountId)
+                    .executeUpdate();
+        }
+        return amount;
+    }
+
+    private static boolean lockAccount(EntityManager entityManager, long accountId) {
+        return !entityManager.createQuery("select accountId from " + ACCOUNT_TABLE + " where accountId = ?1")
+                .setParameter(1, accountId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList()
+                .isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Integer> hotAccounts(EntityManager entityManager) {
+        Map<Long, Integer> accounts = hotAccounts;
+        if (accounts == null) {
+            synchronized (this) {
+                accounts = hotAccounts;
+                if (accounts == null) {
+                    accounts = new ConcurrentHashMap<>();
+                    List<Object[]> rows = entityManager.createQuery("select accountId, balanceStripes from " + ACCOUNT_TABLE + " where balanceStripes > 0")
+                            .getResultList();
+                    for (Object[] row : rows) {
+                        accounts.put((Long) row[0], (Integer) row[1]);
+                    }
+                    hotAccounts = accounts;
+                }
+            }
+        }
+        return accounts;
+    }
+}
@@ -0,0 +1,141 @@
+package com.rev.repository;
+
+import com.google.inject.name.Named;
+import com.rev.common.exception.AccountBalanceUpdateException;
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.dao.AccountDao;
+import com.rev.metrics.LatencyTimer;
+import com.rev.metrics.Metrics;
+
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Records the latency of every call to the configured {@link AccountRepository}.
+ */
+public class TimedAccountRepository implements AccountRepository {
+
+    public static final String DELEGATE = TimedTransactionRepository.DELEGATE;
+
+    private final AccountRepository accountRepository;
+    private final LatencyTimer createAccount;
+    private final LatencyTimer getAllAccounts;
+    private final LatencyTimer forEachAccount;
+    private final LatencyTimer findAccountById;
+    private final LatencyTimer findAccountReferenceById;
+    private final LatencyTimer findAccountsByIds;
+    private final LatencyTimer deleteAccount;
+    private final LatencyTimer updateAccountBalance;
+    private final LatencyTimer setBalanceStripes;
+
+    @Inject
+    public TimedAccountRepository(@Named(DELEGATE) AccountRepository accountRepository, Metrics metrics) {
+        this.accountRepository = accountRepository;
+        this.createAccount = metrics.repositoryTimer("account.createAccount");
+        this.getAllAccounts = metrics.repositoryTimer("account.getAllAccounts");
+        this.forEachAccount = metrics.repositoryTimer("account.forEachAccount");
+        this.findAccountById = metrics.repositoryTimer("account.findAccountById");
+        this.findAccountReferenceById = metrics.repositoryTimer("account.findAccountReferenceById");
+        this.findAccountsByIds = metrics.repositoryTimer("account.findAccountsByIds");
+        this.deleteAccount = metrics.repositoryTimer("account.deleteAccount");
+        this.updateAccountBalance = metrics.repositoryTimer("account.updateAccountBalance");
+        this.setBalanceStripes = metrics.repositoryTimer("account.setBalanceStripes");
+    }
+
+    @Override
+    public AccountDao createAccount(AccountDao accountDao) {
+        long start = System.nanoTime();
+        try {
+            return accountRepository.createAccount(accountDao);
+        } finally {
+            createAccount.record(start);
+        }
+    }
+
+    @Override
+    public List<AccountDao> getAllAccounts() {
+        long start = System.nanoTime();
+        try {
+            return accountRepository.getAllAccounts();
+        } finally {
+            getAllAccounts.record(start);
+        }
+    }
+
+    @Override
+    public void forEachAccount(Consumer<AccountDao> consumer) {
+        long start = System.nanoTime();
+        try {
+            accountRepository.forEachAccount(consumer);
+        } finally {
+            forEachAccount.record(start);
+        }
+    }
+
+    @Override
+    public AccountDao findAccountById(Long accountId) {
+        long start = System.nanoTime();
+        try {
+            return accountRepository.findAccountById(accountId);
+        } finally {
+            findAccountById.record(start);
+        }
+    }
+
+    @Override
+    public AccountDao findAccountReferenceById(Long accountId) {
+        long start = System.nanoTime();
+        try {
+            return accountRepository.findAccountReferenceById(accountId);
+        } finally {
+            findAccountReferenceById.record(start);
+        }
+    }
+
+    @Override
+    public List<AccountDao> findAccountsByIds(Collection<Long> accountIds) {
+        long start = System.nanoTime();
+        try {
+            return accountRepository.findAccountsByIds(accountIds);
+        } finally {
+            findAccountsByIds.record(start);
+        }
+    }
+
+    @Override
+    public void deleteAccount(Long accountId) {
+        long start = System.nanoTime();
+        try {
+            accountRepository.deleteAccount(accountId);
+        } finally {
+            deleteAccount.record(start);
+        }
+    }
+
+    @Override
+    public void updateAccountBalance(AccountDao accountDao) throws AccountBalanceUpdateException {
+        long start = System.nanoTime();
+        try {
+            accountRepository.updateAccountBalance(accountDao);
+        } finally {
+            updateAccountBalance.record(start);
+        }
+    }
+
+    @Override
+    public boolean supportsBalanceStripes() {
+        return accountRepository.supportsBalanceStripes();
+    }
+
+    @Override
+    public void setBalanceStripes(Long accountId, int stripes) throws InvalidParameterException {
+        long start = System.nanoTime();
+        try {
+            accountRepository.setBalanceStripes(accountId, stripes);
+        } finally {
+            setBalanceStripes.record(start);
+        }
+    }
+}
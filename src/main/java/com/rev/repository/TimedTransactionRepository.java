@@ -0,0 +1,80 @@
+package com.rev.repository;
+
+import com.google.inject.name.Named;
+import com.rev.common.TransactionDirection;
+import com.rev.common.exception.NotEnoughBalanceException;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import com.rev.metrics.LatencyTimer;
+import com.rev.metrics.Metrics;
+
+import javax.inject.Inject;
+import java.util.List;
+
+/**
+ * Records the latency of every call to the configured {@link TransactionRepository}.
+ */
+public class TimedTransactionRepository implements TransactionRepository {
+
+    public static final String DELEGATE = "untimed";
+
+    private final TransactionRepository transactionRepository;
+    private final LatencyTimer addTransfer;
+    private final LatencyTimer addTransaction;
+    private final LatencyTimer addTransactions;
+    private final LatencyTimer getTransactionsForAccount;
+
+    @Inject
+    public TimedTransactionRepository(@Named(DELEGATE) TransactionRepository transactionRepository, Metrics metrics) {
+        this.transactionRepository = transactionRepository;
+        this.addTransfer = metrics.repositoryTimer("transaction.addTransfer");
+        this.addTransaction = metrics.repositoryTimer("transaction.addTransaction");
+        this.addTransactions = metrics.repositoryTimer("transaction.addTransactions");
+        this.getTransactionsForAccount = metrics.repositoryTimer("transaction.getTransactionsForAccount");
+    }
+
+    @Override
+    public TransactionDao addTransaction(AccountDao accountFrom, AccountDao accountTo, TransactionDao transactionDao) throws NotEnoughBalanceException {
+        long start = System.nanoTime();
+        try {
+            return transactionRepository.addTransaction(accountFrom, accountTo, transactionDao);
+        } finally {
+            addTransfer.record(start);
+        }
+    }
+
+    @Override
+    public void addTransaction(TransactionDao transactionDao) {
+        long start = System.nanoTime();
+        try {
+            transactionRepository.addTransaction(transactionDao);
+        } finally {
+            addTransaction.record(start);
+        }
+    }
+
+    @Override
+    public List<TransactionDao> addTransactions(List<TransactionDao> transactionDaos) {
+        long start = System.nanoTime();
+        try {
+            return transactionRepository.addTransactions(transactionDaos);
+        } finally {
+            addTransactions.record(start);
+        }
+    }
+
+    @Override
+    public List<TransactionDao> getTransactionsForAccount(Long accountId, Long afterTransactionId, TransactionDirection direction, int limit) {
+        long start = System.nanoTime();
+        try {
+            return transactionRepository.getTransactionsForAccount(accountId, afterTransactionId, direction, limit);
+        } finally {
+            getTransactionsForAccount.record(start);
+        }
+    }
+
+    @Override
+    public boolean maintainsDailyRollups() {
+        return transactionRepository.maintainsDailyRollups();
+    }
+}
@@ -1,5 +1,6 @@
 package com.rev.repository;
 
+import com.rev.common.TransactionDirection;
 import com.rev.common.exception.NotEnoughBalanceException;
 import com.rev.dao.AccountDao;
 import com.rev.dao.TransactionDao;
@@ -12,6 +13,22 @@ public interface TransactionRepository {
 
     void addTransaction(TransactionDao transactionDao);
 
-    List<TransactionDao> getTransactionsForAccount(Long accountId);
+    /**
+     * Applies the given transfers in order within as few database transactions as possible. Transfers already marked
+     * as {@link com.rev.common.TransactionStatus#FAILED} are only stored. Every returned transaction carries its own outcome.
+     */
+    List<TransactionDao> addTransactions(List<TransactionDao> transactionDaos);
+
+    /**
+     * Keyset page of the account history ordered by transaction id.
+     *
+     * @param afterTransactionId only transactions with a bigger id are returned, null for the first page
+     */
+    List<TransactionDao> getTransactionsForAccount(Long accountId, Long afterTransactionId, TransactionDirection direction, int limit);
+
+    /**
+     * @return whether every stored transaction is also counted in the daily rollups statements are read from
+     */
+    boolean maintainsDailyRollups();
 
 }
@@ -3,58 +3,173 @@ package com.rev.repository;
 
 import com.google.inject.Inject;
 import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionDirection;
 import com.rev.common.TransactionStatus;
 import com.rev.common.exception.NotEnoughBalanceException;
+import com.rev.configuration.ApplicationProperties;
 import com.rev.dao.AccountDao;
 import com.rev.dao.TransactionDao;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.LockTimeoutException;
+import javax.persistence.PessimisticLockException;
 import javax.persistence.Query;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 public class TransactionRepositoryImpl implements TransactionRepository {
 
     private static final String TRANSACTION_TABLE = "transaction";
+    private static final String ACCOUNT_TABLE = "account";
+    private static final int MAX_ATTEMPTS = ApplicationProperties.getInt("rev.transfer.retry.max-attempts", 5);
+    private static final long BASE_BACKOFF_MILLIS = ApplicationProperties.getLong("rev.transfer.retry.base-backoff-ms", 5);
+    private static final long MAX_BACKOFF_MILLIS = ApplicationProperties.getLong("rev.transfer.retry.max-backoff-ms", 200);
+    // H2 lock timeout and concurrent update of the same row
+    private static final Set<Integer> LOCK_ERROR_CODES = Set.of(50200, 90131);
+
     private final EntityManager entityManager;
+    private final TransferLockMetrics transferLockMetrics;
+    private final BalanceStore balanceStore;
+    private final AccountLocks accountLocks;
+
+    /**
+     * Without in-memory account locks, for callers that already serialize their transfers.
+     */
+    public TransactionRepositoryImpl(EntityManager entityManager, TransferLockMetrics transferLockMetrics, BalanceStore balanceStore) {
+        this(entityManager, transferLockMetrics, balanceStore, new AccountLocks(0, 0));
+    }
 
     @Inject
-    public TransactionRepositoryImpl(EntityManager entityManager) {
+    public TransactionRepositoryImpl(EntityManager entityManager, TransferLockMetrics transferLockMetrics, BalanceStore balanceStore,
+                                     AccountLocks accountLocks) {
         this.entityManager = entityManager;
+        this.transferLockMetrics = transferLockMetrics;
+        this.balanceStore = balanceStore;
+        this.accountLocks = accountLocks;
     }
 
+    /**
+     * Transfers of the same accounts first queue on the {@link AccountLocks}, so they mostly reach the database one
+     * after the other. The {@link BalanceStore} then locks both account rows lowest account id first, so two opposite
+     * transfers always lock in the same order and can not deadlock; a transfer losing a lock conflict anyway, or timing
+     * out on the account locks, is retried with a bounded backoff. A hot account whose credits the store spreads over
+     * stripes is not locked as destination, otherwise its account lock would queue the credits the stripes keep apart.
+     */
     @Override
     public TransactionDao addTransaction(AccountDao accountFrom, AccountDao accountTo, TransactionDao transactionDao) throws NotEnoughBalanceException {
         log.info("Starting account transaction");
-        try {
-            entityManager.getTransaction().begin();
-            log.info("checking balance, from Account balance {} amount to subtruct {}", accountFrom.getBalance(), transactionDao.getAmount());
-
-            entityManager.refresh(accountFrom);
-            log.info("refreshing accountFrom {}", accountFrom.getBalance());
-            if (accountFrom.getBalance().compareTo(transactionDao.getAmount()) >= 0) {
-                accountFrom.setBalance(accountFrom.getBalance().subtract(transactionDao.getAmount()));
-                entityManager.refresh(accountTo);
-                accountTo.setBalance(accountTo.getBalance().add(transactionDao.getAmount()));
-
-                log.info("proceed transaction");
-                entityManager.persist(accountFrom);
-                entityManager.persist(accountTo);
+        for (int attempt = 1; ; attempt++) {
+            try (AccountLocks.Locked locked = accountLocks.lock(transferLocks(accountFrom.getAccountId(), accountTo.getAccountId()))) {
+                entityManager.getTransaction().begin();
+                ErrorsCode errorsCode = transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transactionDao.getAmount());
+                if (errorsCode != null) {
+                    entityManager.getTransaction().rollback();
+                    log.info("transaction failed: {}", errorsCode.getMessage());
+                    transactionDao.setStatus(TransactionStatus.FAILED);
+                    transactionDao.setMessage(errorsCode.getMessage());
+                    return transactionDao;
+                }
                 entityManager.persist(transactionDao);
+                DailyRollupRepository.record(entityManager, List.of(transactionDao));
                 entityManager.getTransaction().commit();
                 log.info("ending transaction");
-            } else {
-                log.info("not enough money on source account");
-                transactionDao.setStatus(TransactionStatus.FAILED);
-                transactionDao.setMessage(ErrorsCode.NOT_ENOUGH_BALANCE.name());
+                return transactionDao;
+            } catch (Exception exception) {
+                rollback();
+                transactionDao.setTransactionId(null);
+                if (!retryAfterLockConflict(transferLockMetrics, exception, attempt)) {
+                    log.info("{}", exception.getMessage());
+                    transactionDao.setStatus(TransactionStatus.FAILED);
+                    transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+                    return transactionDao;
+                }
             }
-        } catch (Exception exception) {
-            log.info("{}", exception.getMessage());
+        }
+    }
+
+    private List<Long> transferLocks(long fromAccountId, long toAccountId) {
+        return balanceStore.spreadsCredits(entityManager, toAccountId) ? List.of(fromAccountId) : List.of(fromAccountId, toAccountId);
+    }
+
+    /**
+     * Applies both legs inside the caller's database transaction. The guarded updates lock the account rows
+     * themselves, so the time recorded covers the row locks and the balance updates together.
+     *
+     * @return null when both legs were applied, otherwise the reason the transfer has to be rolled back
+     */
+    ErrorsCode transfer(long fromAccountId, long toAccountId, long amount) {
+        long start = System.nanoTime();
+        try {
+            return balanceStore.transfer(entityManager, fromAccountId, toAccountId, amount);
+        } finally {
+            transferLockMetrics.recordRowLocking(System.nanoTime() - start);
+        }
+    }
+
+    private void rollback() {
+        if (entityManager.getTransaction().isActive()) {
             entityManager.getTransaction().rollback();
         }
-        return transactionDao;
+        entityManager.clear();
+    }
+
+    /**
+     * Backs off before the next attempt when the failure was a lock timeout or deadlock and attempts are left.
+     */
+    static boolean retryAfterLockConflict(TransferLockMetrics transferLockMetrics, Exception exception, int attempt) {
+        if (!isLockConflict(exception)) {
+            return false;
+        }
+        boolean retrying = attempt < MAX_ATTEMPTS;
+        transferLockMetrics.recordConflict(retrying);
+        if (!retrying) {
+            return false;
+        }
+        long backoff = backoffMillis(attempt);
+        log.info("lock conflict on attempt {}, retrying in up to {} ms", attempt, backoff);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the backoff with every attempt up to {@code rev.transfer.retry.max-backoff-ms}; the shift stops before
+     * the base backoff would overflow.
+     */
+    static long backoffMillis(int attempt) {
+        int shift = Math.max(0, Math.min(attempt - 1, Long.numberOfLeadingZeros(BASE_BACKOFF_MILLIS) - 1));
+        return Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << shift);
+    }
+
+    private static boolean isLockConflict(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof PessimisticLockException || cause instanceof LockTimeoutException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                SQLException sqlException = (SQLException) cause;
+                String sqlState = sqlException.getSQLState();
+                if ((sqlState != null && sqlState.startsWith("40")) || LOCK_ERROR_CODES.contains(sqlException.getErrorCode())) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
 
@@ -62,22 +177,170 @@ public class TransactionRepositoryImpl implements TransactionRepository {
         try {
             entityManager.getTransaction().begin();
             entityManager.persist(transactionDao);
+            if (transactionDao.getStatus() == TransactionStatus.SUCCESS) {
+                DailyRollupRepository.record(entityManager, List.of(transactionDao));
+            } else {
+                DailyRollupRepository.recordFailure(entityManager, transactionDao);
+            }
             entityManager.getTransaction().commit();
         } catch (Exception e) {
             log.info("{}", e.getMessage());
-            entityManager.getTransaction().rollback();
+            rollback();
         }
     }
 
     @Override
-    public List<TransactionDao> getTransactionsForAccount(final Long accountId) {
+    public List<TransactionDao> addTransactions(List<TransactionDao> transactionDaos) {
+        log.info("Starting batch of {} account transactions", transactionDaos.size());
+        List<TransactionStatus> statuses = transactionDaos.stream().map(TransactionDao::getStatus).collect(Collectors.toList());
+        List<String> messages = transactionDaos.stream().map(TransactionDao::getMessage).collect(Collectors.toList());
+        for (int attempt = 1; ; attempt++) {
+            try (AccountLocks.Locked locked = accountLocks.lock(accountIds(transactionDaos))) {
+                // drop stale entities, the accounts below have to be read under lock anyway
+                entityManager.clear();
+                entityManager.getTransaction().begin();
+                long start = System.nanoTime();
+                Map<Long, AccountDao> accounts = lockAccounts(transactionDaos);
+                transferLockMetrics.recordRowLocking(System.nanoTime() - start);
+                balanceStore.loadBalances(entityManager, accounts.values());
+
+                for (TransactionDao transactionDao : transactionDaos) {
+                    if (transactionDao.getStatus() == TransactionStatus.SUCCESS) {
+                        applyTransfer(accounts.get(transactionDao.getFromAccountId()), accounts.get(transactionDao.getToAccountId()), transactionDao);
+                    }
+                    entityManager.persist(transactionDao);
+                }
+                DailyRollupRepository.record(entityManager, transactionDaos.stream()
+                        .filter(transactionDao -> accounts.containsKey(transactionDao.getFromAccountId()))
+                        .collect(Collectors.toList()));
+                entityManager.getTransaction().commit();
+                log.info("ending batch of account transactions");
+                return transactionDaos;
+            } catch (Exception exception) {
+                rollback();
+                for (int i = 0; i < transactionDaos.size(); i++) {
+                    TransactionDao transactionDao = transactionDaos.get(i);
+                    transactionDao.setTransactionId(null);
+                    transactionDao.setStatus(statuses.get(i));
+                    transactionDao.setMessage(messages.get(i));
+                }
+                if (!retryAfterLockConflict(transferLockMetrics, exception, attempt)) {
+                    log.info("{}", exception.getMessage());
+                    transactionDaos.stream()
+                            .filter(transactionDao -> transactionDao.getStatus() == TransactionStatus.SUCCESS)
+                            .forEach(transactionDao -> {
+                                transactionDao.setStatus(TransactionStatus.FAILED);
+                                transactionDao.setMessage(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+                            });
+                    return transactionDaos;
+                }
+            }
+        }
+    }
 
+    /**
+     * Reads all accounts touched by successful transfers, and the source accounts of failed ones whose daily rollup
+     * is written too, with one query, locking them in account id order.
+     */
+    private Map<Long, AccountDao> lockAccounts(List<TransactionDao> transactionDaos) {
+        Set<Long> accountIds = accountIds(transactionDaos);
+        if (accountIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Query query = entityManager.createQuery("from " + ACCOUNT_TABLE + " where accountId in ?1 order by accountId");
+        query.setParameter(1, accountIds);
+        query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        return ((List<AccountDao>) query.getResultList())
+                .stream()
+                .collect(Collectors.toMap(AccountDao::getAccountId, Function.identity()));
+    }
+
+    /**
+     * @return the accounts a batch takes the {@link AccountLocks} of: every source and the destinations of transfers
+     * still to be applied
+     */
+    static Set<Long> accountIds(List<TransactionDao> transactionDaos) {
+        Set<Long> accountIds = new HashSet<>();
+        transactionDaos.forEach(transactionDao -> {
+            accountIds.add(transactionDao.getFromAccountId());
+            if (transactionDao.getStatus() == TransactionStatus.SUCCESS) {
+                accountIds.add(transactionDao.getToAccountId());
+            }
+        });
+        return accountIds;
+    }
+
+    private void applyTransfer(AccountDao accountFrom, AccountDao accountTo, TransactionDao transactionDao) {
+        if (accountFrom == null || accountTo == null) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage((accountFrom == null ? ErrorsCode.SRC_ACCOUNT_NOT_EXISTS : ErrorsCode.DES_ACCOUNT_NOT_EXISTS).getMessage());
+        } else if (accountFrom.getBalance() < transactionDao.getAmount()) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        } else if (accountTo.getBalance() > Long.MAX_VALUE - transactionDao.getAmount()) {
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(ErrorsCode.BALANCE_OVERFLOW.getMessage());
+        } else {
+            accountFrom.setBalance(accountFrom.getBalance() - transactionDao.getAmount());
+            accountTo.setBalance(accountTo.getBalance() + transactionDao.getAmount());
+            balanceStore.recordTransfer(entityManager, accountFrom.getAccountId(), accountTo.getAccountId(), transactionDao.getAmount());
+        }
+    }
+
+    @Override
+    public List<TransactionDao> getTransactionsForAccount(final Long accountId, final Long afterTransactionId,
+                                                          final TransactionDirection direction, final int limit) {
         try {
-            Query query = entityManager.createQuery("from " + TRANSACTION_TABLE + " where fromAccountId = ?1");
-            query.setParameter(1, accountId);
-            return (List<TransactionDao>) query.getResultList();
+            if (direction == TransactionDirection.OUT) {
+                return getPage("fromAccountId", accountId, afterTransactionId, limit);
+            }
+            if (direction == TransactionDirection.IN) {
+                return getPage("toAccountId", accountId, afterTransactionId, limit);
+            }
+            // two index range scans merged here instead of one OR query the database can not serve from an index
+            return merge(getPage("fromAccountId", accountId, afterTransactionId, limit),
+                    getPage("toAccountId", accountId, afterTransactionId, limit), limit);
         } catch (Exception ex) {
+            log.info("{}", ex.getMessage());
             return Collections.emptyList();
         }
     }
+
+    @Override
+    public boolean maintainsDailyRollups() {
+        return true;
+    }
+
+    private List<TransactionDao> getPage(String accountColumn, Long accountId, Long afterTransactionId, int limit) {
+        Query query = entityManager.createQuery("from " + TRANSACTION_TABLE + " where " + accountColumn + " = ?1 and transactionId > ?2 order by transactionId");
+        query.setParameter(1, accountId);
+        query.setParameter(2, afterTransactionId == null ? 0L : afterTransactionId);
+        query.setMaxResults(limit);
+        return (List<TransactionDao>) query.getResultList();
+    }
+
+    static List<TransactionDao> merge(List<TransactionDao> outgoing, List<TransactionDao> incoming, int limit) {
+        List<TransactionDao> merged = new ArrayList<>(Math.min(limit, outgoing.size() + incoming.size()));
+        int out = 0;
+        int in = 0;
+        while (merged.size() < limit && (out < outgoing.size() || in < incoming.size())) {
+            if (in == incoming.size()) {
+                merged.add(outgoing.get(out++));
+            } else if (out == outgoing.size()) {
+                merged.add(incoming.get(in++));
+            } else {
+                long outId = outgoing.get(out).getTransactionId();
+                long inId = incoming.get(in).getTransactionId();
+                if (outId == inId) {
+                    // transfer to itself
+                    in++;
+                } else if (outId < inId) {
+                    merged.add(outgoing.get(out++));
+                } else {
+                    merged.add(incoming.get(in++));
+                }
+            }
+        }
+        return merged;
+    }
 }
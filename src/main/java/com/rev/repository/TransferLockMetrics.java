@@ -0,0 +1,56 @@
+package com.rev.repository;
+
+import com.google.inject.Singleton;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing how transfers compete for account row locks.
+ */
+@Singleton
+public class TransferLockMetrics {
+
+    private final LongAdder lockConflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhaustedRetries = new LongAdder();
+    private final LongAdder rowLockNanos = new LongAdder();
+    private final LongAdder rowLocks = new LongAdder();
+
+    /**
+     * Records the statements that lock a transfer's account rows. Single transfers lock them with their guarded
+     * balance updates, so for them this is the time of the updates, waiting for the row locks included.
+     */
+    void recordRowLocking(long nanos) {
+        rowLockNanos.add(nanos);
+        rowLocks.increment();
+    }
+
+    void recordConflict(boolean retrying) {
+        lockConflicts.increment();
+        if (retrying) {
+            retries.increment();
+        } else {
+            exhaustedRetries.increment();
+        }
+    }
+
+    public long getLockConflicts() {
+        return lockConflicts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getExhaustedRetries() {
+        return exhaustedRetries.sum();
+    }
+
+    public long getRowLockNanos() {
+        return rowLockNanos.sum();
+    }
+
+    public long getRowLocks() {
+        return rowLocks.sum();
+    }
+}
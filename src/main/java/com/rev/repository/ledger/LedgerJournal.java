@@ -0,0 +1,321 @@
+package com.rev.repository.ledger;
+
+import com.rev.common.TransactionStatus;
+import com.rev.dao.TransactionDao;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of one {@link LedgerPartition}. Records are appended to memory-mapped segment files of
+ * a fixed size, named after the sequence number of their first record, and carry a CRC so a torn tail written
+ * during a crash is detected and dropped. Only the owning partition thread appends; the projector only reports
+ * which sequence numbers reached the database so fully projected segments can be deleted.
+ *
+ * <pre>
+ * record: int payload length | int crc32 of payload | payload
+ * payload: long sequence | byte kind | byte status | long from | long to | long amount | long date | short length | currency | short length | message
+ * </pre>
+ */
+@Slf4j
+public class LedgerJournal {
+
+    public enum FsyncPolicy {
+        /** every record is forced before its transfer is acknowledged */
+        RECORD,
+        /** records appended in one partition loop iteration are forced together, then acknowledged */
+        GROUP,
+        /** transfers are acknowledged right away and the journal is forced every fsync interval */
+        INTERVAL
+    }
+
+    static final byte TRANSFER = 1;
+    static final byte RECORD = 2;
+    // balance set or account deleted through the owning partition, the account is the source of the record
+    static final byte ADJUSTMENT = 3;
+    static final byte DELETION = 4;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private volatile long projectedSequence;
+    private MappedByteBuffer buffer;
+    private long nextSequence;
+    private int forcedPosition;
+    private long lastForce = System.nanoTime();
+
+    LedgerJournal(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = fsyncIntervalMillis * 1_000_000;
+    }
+
+    /**
+     * Positions the journal after its last intact record. Sequence numbers continue after that record, or after
+     * {@code projectedSequence} if the database is ahead of the journal.
+     */
+    void open(long projectedSequence) {
+        this.projectedSequence = projectedSequence;
+        try {
+            Files.createDirectories(directory);
+            for (Path path : segmentPaths(directory)) {
+                segments.add(new Segment(path, firstSequenceOf(path)));
+            }
+            long lastSequence = projectedSequence;
+            if (!segments.isEmpty()) {
+                buffer = map(segments.getLast().path);
+                lastSequence = Math.max(lastSequence, segments.getLast().firstSequence - 1);
+                lastSequence = Math.max(lastSequence, readRecords(buffer, 0, (sequence, kind, transactionDao) -> {
+                }));
+                // drop whatever a crash left behind the last intact record
+                ByteBuffer tail = buffer.duplicate();
+                while (tail.hasRemaining()) {
+                    tail.put((byte) 0);
+                }
+                forcedPosition = buffer.position();
+            }
+            nextSequence = lastSequence + 1;
+            if (buffer == null) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the sequence number of the appended record
+     */
+    long append(byte kind, TransactionDao transactionDao) {
+        byte[] payload = encode(nextSequence, kind, transactionDao);
+        if (buffer.remaining() < HEADER_SIZE + payload.length) {
+            roll();
+            if (buffer.remaining() < HEADER_SIZE + payload.length) {
+                throw new IllegalStateException("journal record of " + payload.length + " bytes does not fit a segment");
+            }
+        }
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        if (fsyncPolicy == FsyncPolicy.RECORD) {
+            force();
+        }
+        return nextSequence++;
+    }
+
+    /**
+     * @return whether acknowledgements have to wait for {@link #force()}
+     */
+    boolean isGroupCommit() {
+        return fsyncPolicy == FsyncPolicy.GROUP;
+    }
+
+    void force() {
+        if (buffer.position() > forcedPosition) {
+            buffer.force(forcedPosition, buffer.position() - forcedPosition);
+            forcedPosition = buffer.position();
+        }
+        lastForce = System.nanoTime();
+    }
+
+    void forceIfDue() {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && System.nanoTime() - lastForce >= fsyncIntervalNanos) {
+            force();
+        }
+    }
+
+    /**
+     * Called by the projector once every record up to {@code sequence} is in the database.
+     */
+    void markProjected(long sequence) {
+        projectedSequence = sequence;
+    }
+
+    private void roll() {
+        if (buffer != null) {
+            force();
+        }
+        deleteProjectedSegments();
+        Path path = directory.resolve(String.format("%020d%s", nextSequence, SEGMENT_SUFFIX));
+        try {
+            buffer = map(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.add(new Segment(path, nextSequence));
+        forcedPosition = 0;
+    }
+
+    private void deleteProjectedSegments() {
+        // a segment is fully projected once the segment after it starts beyond the projected sequence
+        while (segments.size() > 1) {
+            Segment oldest = segments.removeFirst();
+            if (segments.getFirst().firstSequence - 1 > projectedSequence) {
+                segments.addFirst(oldest);
+                return;
+            }
+            try {
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                log.info("{}", e.getMessage());
+            }
+        }
+    }
+
+    private MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    /**
+     * Reads every intact record of the journal in {@code directory} with a sequence number above {@code afterSequence}.
+     *
+     * @return the sequence number of the last intact record, or {@code afterSequence} if there is none
+     */
+    static long read(Path directory, long afterSequence, RecordConsumer consumer) {
+        long lastSequence = afterSequence;
+        try {
+            for (Path path : segmentPaths(directory)) {
+                ByteBuffer segment = ByteBuffer.wrap(Files.readAllBytes(path));
+                lastSequence = Math.max(lastSequence, readRecords(segment, afterSequence, consumer));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lastSequence;
+    }
+
+    /**
+     * Leaves {@code segment} positioned after its last intact record.
+     */
+    private static long readRecords(ByteBuffer segment, long afterSequence, RecordConsumer consumer) {
+        long lastSequence = 0;
+        CRC32 crc = new CRC32();
+        while (segment.remaining() >= HEADER_SIZE) {
+            int start = segment.position();
+            int length = segment.getInt();
+            int checksum = segment.getInt();
+            if (length <= 0 || length > segment.remaining()) {
+                segment.position(start);
+                break;
+            }
+            byte[] payload = new byte[length];
+            segment.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                segment.position(start);
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            long sequence = record.getLong();
+            byte kind = record.get();
+            lastSequence = sequence;
+            if (sequence > afterSequence) {
+                consumer.accept(sequence, kind, decode(record));
+            }
+        }
+        return lastSequence;
+    }
+
+    static List<Path> segmentPaths(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static long firstSequenceOf(Path path) {
+        String fileName = path.getFileName().toString();
+        return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static byte[] encode(long sequence, byte kind, TransactionDao transactionDao) {
+        byte[] currency = bytes(transactionDao.getCurrencyCode());
+        byte[] message = bytes(transactionDao.getMessage());
+        ByteBuffer payload = ByteBuffer.allocate(8 + 1 + 1 + 8 + 8 + 8 + 8 + 2 + currency.length + 2 + message.length);
+        payload.putLong(sequence);
+        payload.put(kind);
+        payload.put((byte) transactionDao.getStatus().ordinal());
+        payload.putLong(transactionDao.getFromAccountId());
+        payload.putLong(transactionDao.getToAccountId());
+        payload.putLong(transactionDao.getAmount());
+        payload.putLong(transactionDao.getDate() == null ? -1 : transactionDao.getDate().getTime());
+        payload.putShort((short) currency.length).put(currency);
+        payload.putShort((short) message.length).put(message);
+        return payload.array();
+    }
+
+    private static TransactionDao decode(ByteBuffer record) {
+        TransactionStatus status = TransactionStatus.values()[record.get()];
+        long fromAccountId = record.getLong();
+        long toAccountId = record.getLong();
+        long amount = record.getLong();
+        long date = record.getLong();
+        String currencyCode = string(record);
+        String message = string(record);
+        return TransactionDao.builder()
+                .fromAccountId(fromAccountId)
+                .toAccountId(toAccountId)
+                .amount(amount)
+                .date(date == -1 ? null : new java.sql.Date(date))
+                .currencyCode(currencyCode)
+                .message(message)
+                .status(status)
+                .build();
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer record) {
+        byte[] value = new byte[record.getShort()];
+        record.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long sequence, byte kind, TransactionDao transactionDao);
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long firstSequence;
+
+        private Segment(Path path, long firstSequence) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+        }
+    }
+}
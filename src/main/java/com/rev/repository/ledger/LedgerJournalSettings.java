@@ -0,0 +1,19 @@
+package com.rev.repository.ledger;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * Where and how the {@link LedgerJournal} of every partition is written.
+ */
+@Builder
+@Getter
+public class LedgerJournalSettings {
+
+    private final Path directory;
+    private final int segmentSize;
+    private final LedgerJournal.FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+}
@@ -0,0 +1,405 @@
+package com.rev.repository.ledger;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import com.rev.common.exception.ServerBusyException;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.TransactionDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Owns the balances of every account whose id hashes onto it. Only the partition thread reads or writes those
+ * balances, so transfers are applied without any locking. Balances are loaded from the database on first use
+ * and from then on the partition is the authority, the database only follows through the {@link LedgerProjector};
+ * setting a balance or deleting an account therefore goes through the partition as well.
+ * A submit waits at most {@code rev.ledger.submit-timeout-ms} for room in a full ring and then fails with a
+ * {@link ServerBusyException}.
+ * With a {@link LedgerJournal} every accepted transfer is appended to it before it changes any balance and is
+ * acknowledged according to the journal's fsync policy. A journal that fails to force stops the partition: transfers
+ * already applied are still acknowledged, since their debit and credit are under way, everything submitted
+ * afterwards fails, while credits for transfers other partitions debited are still applied.
+ * A transfer is debited by the partition owning the source account and credited by the one owning the destination,
+ * which also submits its projection. Until then neither leg reaches the database, so a destination balance loaded
+ * from the database never already holds a credit the partition is about to apply. A credit the destination can not
+ * take is handed back to the source partition and the transfer fails.
+ */
+@Slf4j
+public class LedgerPartition implements Runnable {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int MAX_TRANSFERS_PER_LOOP = 256;
+    private static final long SUBMIT_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(ApplicationProperties.getLong("rev.ledger.submit-timeout-ms", 1000));
+    // balance of a deleted account, it is not loaded again while its deletion may still be on its way to the database
+    private static final Balance DELETED = new Balance(0);
+
+    private final int index;
+    private final RingBuffer<Transfer> transfers;
+    // credits and refunds coming from other partitions; unbounded so two partitions can never block on each other
+    private final Queue<Credit> credits = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Balance> balances = new HashMap<>();
+    private final EntityManagerFactory entityManagerFactory;
+    private final LedgerProjector projector;
+    // null without journal
+    private final LedgerJournal journal;
+    // transfers waiting for the group fsync of the journal before they are acknowledged
+    private final List<Transfer> unforced = new ArrayList<>();
+    // set once the journal failed to force, the partition takes no transfers from then on
+    private volatile IllegalStateException stopped;
+    private LedgerPartition[] partitions;
+    private EntityManager entityManager;
+
+    LedgerPartition(int index, int capacity, EntityManagerFactory entityManagerFactory, LedgerProjector projector, LedgerJournal journal) {
+        this.index = index;
+        this.transfers = new RingBuffer<>(capacity);
+        this.entityManagerFactory = entityManagerFactory;
+        this.projector = projector;
+        this.journal = journal;
+    }
+
+    void setPartitions(LedgerPartition[] partitions) {
+        this.partitions = partitions;
+    }
+
+    CompletableFuture<TransactionDao> submit(long fromAccountId, long toAccountId, TransactionDao transactionDao) {
+        return submit(new Transfer(fromAccountId, toAccountId, transactionDao, LedgerJournal.TRANSFER));
+    }
+
+    /**
+     * Journals and projects a transaction that does not move any money.
+     */
+    CompletableFuture<TransactionDao> submitRecord(TransactionDao transactionDao) {
+        return submit(new Transfer(transactionDao.getFromAccountId(), transactionDao.getToAccountId(), transactionDao, LedgerJournal.RECORD));
+    }
+
+    /**
+     * Sets the balance of an account owned by this partition.
+     *
+     * @return the change, failed when the account does not exist
+     */
+    CompletableFuture<TransactionDao> submitBalance(long accountId, long balance) {
+        return submit(new Transfer(accountId, accountId, change(accountId, balance), LedgerJournal.ADJUSTMENT));
+    }
+
+    /**
+     * Deletes an account owned by this partition, transfers from it fail from then on and transfers to it are lost.
+     *
+     * @return the change, failed when the account does not exist
+     */
+    CompletableFuture<TransactionDao> submitDeletion(long accountId) {
+        return submit(new Transfer(accountId, accountId, change(accountId, 0), LedgerJournal.DELETION));
+    }
+
+    private CompletableFuture<TransactionDao> submit(Transfer transfer) {
+        if (stopped != null) {
+            return CompletableFuture.failedFuture(stopped);
+        }
+        if (!transfers.offer(transfer)) {
+            long deadline = System.nanoTime() + SUBMIT_TIMEOUT_NANOS;
+            while (!transfers.offer(transfer)) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new ServerBusyException(ErrorsCode.SERVER_BUSY.getMessage());
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        return transfer.result;
+    }
+
+    @Override
+    public void run() {
+        entityManager = entityManagerFactory.createEntityManager();
+        int idleSpins = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            boolean worked = false;
+            Credit credit;
+            while ((credit = credits.poll()) != null) {
+                applyCredit(credit);
+                worked = true;
+            }
+            Transfer transfer;
+            for (int i = 0; i < MAX_TRANSFERS_PER_LOOP && (transfer = transfers.poll()) != null; i++) {
+                if (stopped != null) {
+                    // submitted before the partition stopped, it was not applied
+                    transfer.result.completeExceptionally(stopped);
+                } else if (transfer.kind == LedgerJournal.TRANSFER) {
+                    applyTransfer(transfer);
+                } else if (transfer.kind == LedgerJournal.RECORD) {
+                    applyRecord(transfer);
+                } else {
+                    applyChange(transfer);
+                }
+                worked = true;
+            }
+            if (journal != null && stopped == null) {
+                forceJournal();
+            }
+
+            if (worked) {
+                idleSpins = 0;
+            } else if (++idleSpins < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        entityManager.close();
+    }
+
+    private void applyTransfer(Transfer transfer) {
+        TransactionDao transactionDao = transfer.transactionDao;
+        try {
+            Balance balance = getBalance(transfer.fromAccountId);
+            if (balance == null) {
+                fail(transactionDao, ErrorsCode.SRC_ACCOUNT_NOT_EXISTS);
+            } else if (balance.minorUnits < transactionDao.getAmount()) {
+                log.info("not enough money on source account");
+                fail(transactionDao, ErrorsCode.NOT_ENOUGH_BALANCE);
+            } else {
+                // journaled before any state changes, a failing append leaves the partition untouched
+                long sequence = journal == null ? 0 : journal.append(LedgerJournal.TRANSFER, transactionDao);
+                balance.minorUnits -= transactionDao.getAmount();
+                acknowledge(transfer);
+
+                Credit credit = new Credit(transfer, index, sequence);
+                LedgerPartition destination = partitions[LedgerTransactionEngine.partitionOf(transfer.toAccountId, partitions.length)];
+                if (destination == this) {
+                    applyCredit(credit);
+                } else {
+                    destination.credits.add(credit);
+                }
+                return;
+            }
+            transfer.result.complete(transactionDao);
+        } catch (Exception exception) {
+            log.info("ledger partition {} failed to apply transfer: {}", index, exception.getMessage());
+            transfer.result.completeExceptionally(exception);
+        }
+    }
+
+    private void applyRecord(Transfer transfer) {
+        try {
+            long sequence = journal.append(LedgerJournal.RECORD, transfer.transactionDao);
+            projector.submit(LedgerProjection.transaction(transfer.transactionDao, index, sequence));
+            acknowledge(transfer);
+        } catch (Exception exception) {
+            log.info("ledger partition {} failed to record transaction: {}", index, exception.getMessage());
+            transfer.result.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * Sets the balance or deletes the account; the change is journaled and projected with the account as its source
+     * and, for a balance, the difference to the old balance as its amount.
+     */
+    private void applyChange(Transfer transfer) {
+        TransactionDao change = transfer.transactionDao;
+        try {
+            Balance balance = getBalance(transfer.fromAccountId);
+            if (balance == null) {
+                fail(change, ErrorsCode.ACCOUNT_NOT_EXISTS);
+                transfer.result.complete(change);
+                return;
+            }
+            if (transfer.kind == LedgerJournal.ADJUSTMENT) {
+                change.setAmount(change.getAmount() - balance.minorUnits);
+            }
+            long sequence = journal == null ? 0 : journal.append(transfer.kind, change);
+            if (transfer.kind == LedgerJournal.ADJUSTMENT) {
+                balance.minorUnits += change.getAmount();
+            } else {
+                balances.put(transfer.fromAccountId, DELETED);
+            }
+            projector.submit(LedgerProjection.of(transfer.kind, change, index, sequence));
+            acknowledge(transfer);
+        } catch (Exception exception) {
+            log.info("ledger partition {} failed to change account {}: {}", index, transfer.fromAccountId, exception.getMessage());
+            transfer.result.completeExceptionally(exception);
+        }
+    }
+
+    private void acknowledge(Transfer transfer) {
+        if (journal != null && journal.isGroupCommit()) {
+            unforced.add(transfer);
+        } else {
+            transfer.done();
+        }
+    }
+
+    private void forceJournal() {
+        try {
+            if (!unforced.isEmpty()) {
+                journal.force();
+            } else {
+                journal.forceIfDue();
+            }
+        } catch (Exception exception) {
+            log.info("ledger partition {} failed to force journal and stops: {}", index, exception.getMessage());
+            stopped = new IllegalStateException("ledger partition " + index + " stopped after its journal failed to force", exception);
+        }
+        // applied either way, their credits may already be on the destination
+        unforced.forEach(Transfer::done);
+        unforced.clear();
+    }
+
+    /**
+     * Credits the destination of a transfer debited by {@code credit.partition} and projects both legs, or fails the
+     * transfer and hands the amount back to the source when the destination can not take it.
+     */
+    private void applyCredit(Credit credit) {
+        if (credit.transfer == null) {
+            refund(credit);
+            return;
+        }
+        Transfer transfer = credit.transfer;
+        TransactionDao transactionDao = transfer.transactionDao;
+        ErrorsCode failure;
+        try {
+            Balance balance = getBalance(transfer.toAccountId);
+            if (balance == null) {
+                failure = ErrorsCode.DES_ACCOUNT_NOT_EXISTS;
+            } else if (balance.minorUnits > Long.MAX_VALUE - transactionDao.getAmount()) {
+                failure = ErrorsCode.BALANCE_OVERFLOW;
+            } else {
+                balance.minorUnits += transactionDao.getAmount();
+                failure = null;
+            }
+        } catch (Exception exception) {
+            log.info("ledger partition {} failed to credit account {}: {}", index, transfer.toAccountId, exception.getMessage());
+            failure = ErrorsCode.UNEXPECTED_ERROR;
+        }
+        if (failure != null) {
+            log.info("transfer from account {} to account {} failed: {}", transfer.fromAccountId, transfer.toAccountId, failure.getMessage());
+            fail(transactionDao, failure);
+            Credit refund = new Credit(transfer.fromAccountId, transactionDao.getAmount());
+            if (credit.partition == index) {
+                refund(refund);
+            } else {
+                partitions[credit.partition].credits.add(refund);
+            }
+            projector.submit(LedgerProjection.rejectedTransfer(transactionDao, credit.partition, credit.sequence));
+        } else {
+            projector.submit(LedgerProjection.transfer(transactionDao, credit.partition, credit.sequence));
+        }
+        transfer.done();
+    }
+
+    private void refund(Credit refund) {
+        Balance balance = balances.get(refund.accountId);
+        if (balance == null || balance == DELETED || balance.minorUnits > Long.MAX_VALUE - refund.amount) {
+            log.info("refund of {} to account {} lost, the account is gone or full", refund.amount, refund.accountId);
+        } else {
+            balance.minorUnits += refund.amount;
+        }
+    }
+
+    private Balance getBalance(long accountId) {
+        Balance balance = balances.get(accountId);
+        if (balance == DELETED) {
+            return null;
+        }
+        if (balance == null) {
+            List<?> result = entityManager.createQuery("select balance from " + ACCOUNT_TABLE + " where accountId = ?1")
+                    .setParameter(1, accountId)
+                    .getResultList();
+            if (result.isEmpty()) {
+                return null;
+            }
+            balance = new Balance((Long) result.get(0));
+            balances.put(accountId, balance);
+        }
+        return balance;
+    }
+
+    private static TransactionDao change(long accountId, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(accountId)
+                .toAccountId(accountId)
+                .amount(amount)
+                .currencyCode("")
+                .message("")
+                .status(TransactionStatus.SUCCESS)
+                .build();
+    }
+
+    private static void fail(TransactionDao transactionDao, ErrorsCode errorsCode) {
+        transactionDao.setStatus(TransactionStatus.FAILED);
+        transactionDao.setMessage(errorsCode.getMessage());
+    }
+
+    private static class Transfer {
+        private final long fromAccountId;
+        private final long toAccountId;
+        private final TransactionDao transactionDao;
+        // one of the journal record kinds
+        private final byte kind;
+        private final CompletableFuture<TransactionDao> result = new CompletableFuture<>();
+        // a transfer is answered once it is durable and its destination took or refused the credit
+        private final AtomicInteger pending;
+
+        private Transfer(long fromAccountId, long toAccountId, TransactionDao transactionDao, byte kind) {
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.transactionDao = transactionDao;
+            this.kind = kind;
+            this.pending = new AtomicInteger(kind == LedgerJournal.TRANSFER ? 2 : 1);
+        }
+
+        private void done() {
+            if (pending.decrementAndGet() == 0) {
+                result.complete(transactionDao);
+            }
+        }
+    }
+
+    // mutable so applying a transfer does not allocate
+    private static class Balance {
+        private long minorUnits;
+
+        private Balance(long minorUnits) {
+            this.minorUnits = minorUnits;
+        }
+    }
+
+    /**
+     * The credit leg of a debited transfer, with the partition and journal sequence of its debit, or, without a
+     * transfer, a refund of a credit the destination refused.
+     */
+    private static class Credit {
+        private final Transfer transfer;
+        private final long accountId;
+        private final long amount;
+        private final int partition;
+        private final long sequence;
+
+        private Credit(Transfer transfer, int partition, long sequence) {
+            this.transfer = transfer;
+            this.accountId = transfer.toAccountId;
+            this.amount = transfer.transactionDao.getAmount();
+            this.partition = partition;
+            this.sequence = sequence;
+        }
+
+        private Credit(long accountId, long amount) {
+            this.transfer = null;
+            this.accountId = accountId;
+            this.amount = amount;
+            this.partition = -1;
+            this.sequence = 0;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.rev.repository.ledger;
+
+import com.rev.dao.TransactionDao;
+import lombok.Getter;
+
+/**
+ * A change already applied in memory by a {@link LedgerPartition} that still has to be written to the database, of one
+ * of the {@link LedgerJournal} record kinds: a transaction row, together with the debit and credit when it is a
+ * transfer, or a balance adjustment or deletion of one account, which then is {@code fromAccountId} of the
+ * transaction and for an adjustment {@code amount} is the change of its balance.
+ * With the journal enabled {@code sequence} is the journal record of the change, otherwise 0.
+ * A transfer is projected by the partition owning its destination once it credited it, so the journal record it belongs
+ * to is the one of the source partition {@code partition}. A transfer the destination refused is {@code rejected}: its
+ * row is recorded by whoever submitted it and only its journal record is projected.
+ */
+@Getter
+class LedgerProjection {
+
+    private final TransactionDao transactionDao;
+    private final byte kind;
+    private final int partition;
+    private final long sequence;
+    private final boolean rejected;
+
+    private LedgerProjection(TransactionDao transactionDao, byte kind, int partition, long sequence, boolean rejected) {
+        this.transactionDao = transactionDao;
+        this.kind = kind;
+        this.partition = partition;
+        this.sequence = sequence;
+        this.rejected = rejected;
+    }
+
+    static LedgerProjection of(byte kind, TransactionDao transactionDao, int partition, long sequence) {
+        return new LedgerProjection(transactionDao, kind, partition, sequence, false);
+    }
+
+    static LedgerProjection transaction(TransactionDao transactionDao, int partition, long sequence) {
+        return new LedgerProjection(transactionDao, LedgerJournal.RECORD, partition, sequence, false);
+    }
+
+    static LedgerProjection transfer(TransactionDao transactionDao, int partition, long sequence) {
+        return new LedgerProjection(transactionDao, LedgerJournal.TRANSFER, partition, sequence, false);
+    }
+
+    static LedgerProjection rejectedTransfer(TransactionDao transactionDao, int partition, long sequence) {
+        return new LedgerProjection(transactionDao, LedgerJournal.TRANSFER, partition, sequence, true);
+    }
+}
@@ -0,0 +1,249 @@
+package com.rev.repository.ledger;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import com.rev.dao.LedgerCheckpointDao;
+import com.rev.dao.TransactionDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer keeping the account and transaction tables up to date with the in-memory ledger.
+ * Projections are drained in batches and every batch is written in a single database transaction.
+ * With the journal enabled the batch also advances the per partition checkpoint, so a restart replays exactly the
+ * journal records that never reached the database. Transfers are projected by the partition owning their destination,
+ * so the records of one journal may arrive out of order; a checkpoint only advances over records that are all written.
+ * A batch failing {@code rev.ledger.projection-max-attempts} times is split in halves that are written on their own, so
+ * one projection the database keeps rejecting only holds up itself; after as many attempts of its own it is logged as
+ * a dead letter and skipped, leaving the database behind the ledger for that change until it is repaired by hand.
+ */
+@Slf4j
+public class LedgerProjector implements Runnable {
+
+    private static final String ACCOUNT_TABLE = "account";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long RETRY_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int MAX_ATTEMPTS = ApplicationProperties.getInt("rev.ledger.projection-max-attempts", 5);
+
+    private final RingBuffer<LedgerProjection> projections;
+    private final EntityManagerFactory entityManagerFactory;
+    private final int batchSize;
+    // indexed by partition, null without journal
+    private final LedgerJournal[] journals;
+    private final LongAdder deadLetters = new LongAdder();
+    // by partition, only used by the projecting thread once the engine started
+    private final Map<Integer, Progress> progress = new HashMap<>();
+
+    LedgerProjector(EntityManagerFactory entityManagerFactory, int capacity, int batchSize, LedgerJournal[] journals) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.projections = new RingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.journals = journals;
+    }
+
+    void submit(LedgerProjection projection) {
+        while (!projections.offer(projection)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public void run() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        List<LedgerProjection> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            LedgerProjection projection;
+            while (batch.size() < batchSize && (projection = projections.poll()) != null) {
+                batch.add(projection);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            project(entityManager, batch);
+            batch.clear();
+        }
+        entityManager.close();
+    }
+
+    /**
+     * Sets the checkpoint of a partition, every record of its journal up to {@code sequence} is in the database.
+     */
+    void resumeFrom(int partition, long sequence) {
+        progress.put(partition, new Progress(sequence));
+    }
+
+    long getDeadLetters() {
+        return deadLetters.sum();
+    }
+
+    /**
+     * Writes the batch, retrying it and then its halves, until every projection is written or dead-lettered.
+     */
+    void project(EntityManager entityManager, List<LedgerProjection> batch) {
+        for (int attempt = 1; !write(entityManager, batch); attempt++) {
+            if (attempt < MAX_ATTEMPTS) {
+                LockSupport.parkNanos(RETRY_PARK_NANOS);
+            } else if (batch.size() > 1) {
+                project(entityManager, new ArrayList<>(batch.subList(0, batch.size() / 2)));
+                project(entityManager, new ArrayList<>(batch.subList(batch.size() / 2, batch.size())));
+                return;
+            } else {
+                deadLetter(batch.get(0));
+                return;
+            }
+        }
+    }
+
+    private void deadLetter(LedgerProjection projection) {
+        TransactionDao transactionDao = projection.getTransactionDao();
+        deadLetters.increment();
+        log.info("ledger projection of kind {} from partition {} sequence {} dead-lettered: {} -> {} amount {} {} status {}",
+                projection.getKind(), projection.getPartition(), projection.getSequence(), transactionDao.getFromAccountId(),
+                transactionDao.getToAccountId(), transactionDao.getAmount(), transactionDao.getCurrencyCode(), transactionDao.getStatus());
+        if (projection.getSequence() > 0) {
+            progressOf(projection.getPartition()).complete(Set.of(projection.getSequence()));
+        }
+    }
+
+    /**
+     * Writes the batch and, for journaled changes, the checkpoint of every partition in one database transaction.
+     */
+    boolean write(EntityManager entityManager, List<LedgerProjection> batch) {
+        Map<Integer, Set<Long>> written = new HashMap<>();
+        Map<Integer, Long> checkpoints = new HashMap<>();
+        try {
+            entityManager.getTransaction().begin();
+            for (LedgerProjection projection : batch) {
+                TransactionDao transactionDao = projection.getTransactionDao();
+                if (projection.getKind() == LedgerJournal.ADJUSTMENT) {
+                    adjustBalance(entityManager, transactionDao.getFromAccountId(), transactionDao.getAmount());
+                } else if (projection.getKind() == LedgerJournal.DELETION) {
+                    deleteAccount(entityManager, transactionDao.getFromAccountId());
+                } else if (projection.getKind() == LedgerJournal.RECORD) {
+                    entityManager.persist(transactionDao);
+                } else if (!projection.isRejected()) {
+                    projectTransfer(entityManager, transactionDao);
+                }
+                if (projection.getSequence() > 0) {
+                    written.computeIfAbsent(projection.getPartition(), partition -> new HashSet<>()).add(projection.getSequence());
+                }
+            }
+            written.forEach((partition, sequences) -> {
+                long checkpoint = progressOf(partition).advancedBy(sequences);
+                if (checkpoint > progressOf(partition).projected) {
+                    checkpoints.put(partition, checkpoint);
+                    entityManager.merge(new LedgerCheckpointDao(partition, checkpoint));
+                }
+            });
+            entityManager.getTransaction().commit();
+            entityManager.clear();
+        } catch (Exception exception) {
+            log.info("ledger projection of {} changes failed: {}", batch.size(), exception.getMessage());
+            entityManager.getTransaction().rollback();
+            entityManager.clear();
+            batch.forEach(projection -> projection.getTransactionDao().setTransactionId(null));
+            return false;
+        }
+        written.forEach((partition, sequences) -> progressOf(partition).complete(sequences));
+        if (journals != null) {
+            checkpoints.forEach((partition, sequence) -> {
+                if (partition < journals.length) {
+                    journals[partition].markProjected(sequence);
+                }
+            });
+        }
+        return true;
+    }
+
+    private Progress progressOf(int partition) {
+        return progress.computeIfAbsent(partition, index -> new Progress(0));
+    }
+
+    /**
+     * Credits the destination unless it is gone or full, which only happens when a transfer is replayed after its
+     * destination changed, and then debits the source; a transfer that can not be credited is stored as failed.
+     */
+    private static void projectTransfer(EntityManager entityManager, TransactionDao transactionDao) {
+        int credited = entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance = balance + ?1 where accountId = ?2 and balance <= ?3")
+                .setParameter(1, transactionDao.getAmount())
+                .setParameter(2, transactionDao.getToAccountId())
+                .setParameter(3, Long.MAX_VALUE - transactionDao.getAmount())
+                .executeUpdate();
+        if (credited == 0) {
+            ErrorsCode errorsCode = entityManager.find(AccountDao.class, transactionDao.getToAccountId()) == null
+                    ? ErrorsCode.DES_ACCOUNT_NOT_EXISTS
+                    : ErrorsCode.BALANCE_OVERFLOW;
+            log.info("replayed transfer from account {} to account {} failed: {}", transactionDao.getFromAccountId(),
+                    transactionDao.getToAccountId(), errorsCode.getMessage());
+            transactionDao.setStatus(TransactionStatus.FAILED);
+            transactionDao.setMessage(errorsCode.getMessage());
+        } else {
+            updateBalance(entityManager, transactionDao.getFromAccountId(), -transactionDao.getAmount());
+        }
+        entityManager.persist(transactionDao);
+    }
+
+    private static void adjustBalance(EntityManager entityManager, long accountId, long delta) {
+        // like a balance update of the other engines, the opening balance takes the change
+        entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance = balance + ?1, openingBalance = openingBalance + ?1 where accountId = ?2")
+                .setParameter(1, delta)
+                .setParameter(2, accountId)
+                .executeUpdate();
+    }
+
+    private static void deleteAccount(EntityManager entityManager, long accountId) {
+        entityManager.createQuery("delete from " + ACCOUNT_TABLE + " where accountId = ?1")
+                .setParameter(1, accountId)
+                .executeUpdate();
+    }
+
+    private static void updateBalance(EntityManager entityManager, long accountId, long delta) {
+        entityManager.createQuery("update " + ACCOUNT_TABLE + " set balance = balance + ?1 where accountId = ?2")
+                .setParameter(1, delta)
+                .setParameter(2, accountId)
+                .executeUpdate();
+    }
+
+    /**
+     * The checkpoint of one partition's journal and the records written beyond it while an earlier one is still on its
+     * way.
+     */
+    private static class Progress {
+        private long projected;
+        private final TreeSet<Long> ahead = new TreeSet<>();
+
+        private Progress(long projected) {
+            this.projected = projected;
+        }
+
+        private long advancedBy(Set<Long> written) {
+            long checkpoint = projected;
+            while (ahead.contains(checkpoint + 1) || written.contains(checkpoint + 1)) {
+                checkpoint++;
+            }
+            return checkpoint;
+        }
+
+        private void complete(Set<Long> written) {
+            ahead.addAll(written);
+            while (!ahead.isEmpty() && ahead.first() <= projected + 1) {
+                projected = Math.max(projected, ahead.pollFirst());
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.rev.repository.ledger;
+
+import com.rev.common.TransactionStatus;
+import com.rev.dao.LedgerCheckpointDao;
+import com.rev.dao.TransactionDao;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Partitioned single-writer transfer engine. Accounts are sharded by id onto {@link LedgerPartition} threads;
+ * a transfer is executed by the partition owning the source account, which then hands the credit over to the
+ * partition owning the destination account. That one credits the account and projects the transfer, or refuses the
+ * credit and hands the amount back, so the database never holds a credit its partition has not applied yet.
+ * With journal settings every partition writes a {@link LedgerJournal}; records that did not reach the database
+ * before a shutdown or crash are replayed when the engine starts.
+ */
+@Slf4j
+public class LedgerTransactionEngine {
+
+    private static final String PARTITION_DIRECTORY_PREFIX = "partition-";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final LedgerPartition[] partitions;
+    private final LedgerProjector projector;
+    private final LedgerJournalSettings journalSettings;
+    private final LedgerJournal[] journals;
+    private final int projectionBatchSize;
+    private final List<Thread> threads = new ArrayList<>();
+
+    public LedgerTransactionEngine(EntityManagerFactory entityManagerFactory, int partitionCount, int ringCapacity, int projectionBatchSize) {
+        this(entityManagerFactory, partitionCount, ringCapacity, projectionBatchSize, null);
+    }
+
+    /**
+     * @param journalSettings null to run without journal
+     */
+    public LedgerTransactionEngine(EntityManagerFactory entityManagerFactory, int partitionCount, int ringCapacity, int projectionBatchSize,
+                                   LedgerJournalSettings journalSettings) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.projectionBatchSize = projectionBatchSize;
+        this.journalSettings = journalSettings;
+        if (journalSettings != null) {
+            this.journals = new LedgerJournal[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                journals[i] = new LedgerJournal(journalSettings.getDirectory().resolve(PARTITION_DIRECTORY_PREFIX + i),
+                        journalSettings.getSegmentSize(), journalSettings.getFsyncPolicy(), journalSettings.getFsyncIntervalMillis());
+            }
+        } else {
+            this.journals = null;
+        }
+        this.projector = new LedgerProjector(entityManagerFactory, ringCapacity * partitionCount, projectionBatchSize, journals);
+        this.partitions = new LedgerPartition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new LedgerPartition(i, ringCapacity, entityManagerFactory, projector, journals == null ? null : journals[i]);
+        }
+        for (LedgerPartition partition : partitions) {
+            partition.setPartitions(partitions);
+        }
+    }
+
+    public void start() {
+        if (journals != null) {
+            Map<Integer, Long> checkpoints = replayJournals();
+            for (int i = 0; i < journals.length; i++) {
+                journals[i].open(checkpoints.getOrDefault(i, 0L));
+                projector.resumeFrom(i, checkpoints.getOrDefault(i, 0L));
+            }
+        }
+        startDaemon(projector, "ledger-projector");
+        for (int i = 0; i < partitions.length; i++) {
+            startDaemon(partitions[i], "ledger-partition-" + i);
+        }
+    }
+
+    /**
+     * Stops the partition and projector threads; changes not yet projected stay in the journal, if there is one.
+     */
+    public void stop() {
+        threads.forEach(Thread::interrupt);
+    }
+
+    public CompletableFuture<TransactionDao> transfer(long fromAccountId, long toAccountId, TransactionDao transactionDao) {
+        return partitions[partitionOf(fromAccountId, partitions.length)].submit(fromAccountId, toAccountId, transactionDao);
+    }
+
+    /**
+     * Sets the balance in the partition owning the account, the database follows like it does for transfers.
+     *
+     * @return completes with false when the account does not exist
+     */
+    public CompletableFuture<Boolean> setBalance(long accountId, long balance) {
+        return partitions[partitionOf(accountId, partitions.length)].submitBalance(accountId, balance)
+                .thenApply(change -> change.getStatus() == TransactionStatus.SUCCESS);
+    }
+
+    /**
+     * Deletes the account in the partition owning it, the database follows like it does for transfers.
+     *
+     * @return completes with false when the account does not exist
+     */
+    public CompletableFuture<Boolean> deleteAccount(long accountId) {
+        return partitions[partitionOf(accountId, partitions.length)].submitDeletion(accountId)
+                .thenApply(change -> change.getStatus() == TransactionStatus.SUCCESS);
+    }
+
+    /**
+     * Stores a transaction that did not move any money, e.g. a rejected transfer.
+     */
+    public void record(TransactionDao transactionDao) {
+        if (journals == null) {
+            projector.submit(LedgerProjection.transaction(transactionDao, 0, 0));
+        } else {
+            partitions[partitionOf(transactionDao.getFromAccountId(), partitions.length)].submitRecord(transactionDao);
+        }
+    }
+
+    static int partitionOf(long accountId, int partitionCount) {
+        return (int) Math.floorMod(accountId ^ (accountId >>> 32), (long) partitionCount);
+    }
+
+    /**
+     * Projects every journal record above its partition's checkpoint, including journals of partitions that no
+     * longer exist because the partition count changed; those are deleted afterwards.
+     *
+     * @return the checkpoint of every partition after the replay
+     */
+    private Map<Integer, Long> replayJournals() {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            Map<Integer, Long> checkpoints = new HashMap<>();
+            entityManager.createQuery("from ledger_checkpoint", LedgerCheckpointDao.class)
+                    .getResultList()
+                    .forEach(checkpoint -> checkpoints.put(checkpoint.getPartitionIndex(), checkpoint.getSequence()));
+
+            for (Path directory : partitionDirectories()) {
+                int partition = Integer.parseInt(directory.getFileName().toString().substring(PARTITION_DIRECTORY_PREFIX.length()));
+                List<LedgerProjection> batch = new ArrayList<>(projectionBatchSize);
+                long[] replayed = new long[1];
+                long lastSequence = LedgerJournal.read(directory, checkpoints.getOrDefault(partition, 0L), (sequence, kind, transactionDao) -> {
+                    if (replayed[0] == 0) {
+                        projector.resumeFrom(partition, sequence - 1);
+                    }
+                    batch.add(LedgerProjection.of(kind, transactionDao, partition, sequence));
+                    replayed[0]++;
+                    if (batch.size() == projectionBatchSize) {
+                        writeReplayed(entityManager, batch);
+                    }
+                });
+                writeReplayed(entityManager, batch);
+                checkpoints.put(partition, lastSequence);
+                if (replayed[0] > 0) {
+                    log.info("replayed {} journal records of ledger partition {}", replayed[0], partition);
+                }
+                if (partition >= partitions.length) {
+                    deleteJournal(directory);
+                }
+            }
+            return checkpoints;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private void writeReplayed(EntityManager entityManager, List<LedgerProjection> batch) {
+        if (!batch.isEmpty()) {
+            projector.project(entityManager, batch);
+        }
+        batch.clear();
+    }
+
+    private List<Path> partitionDirectories() {
+        if (!Files.isDirectory(journalSettings.getDirectory())) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(journalSettings.getDirectory())) {
+            return paths.filter(path -> Files.isDirectory(path) && path.getFileName().toString().startsWith(PARTITION_DIRECTORY_PREFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteJournal(Path directory) {
+        try {
+            for (Path segment : LedgerJournal.segmentPaths(directory)) {
+                Files.delete(segment);
+            }
+            Files.delete(directory);
+        } catch (IOException e) {
+            log.info("{}", e.getMessage());
+        }
+    }
+
+    private void startDaemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+    }
+}
@@ -0,0 +1,71 @@
+package com.rev.repository.ledger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free multi-producer queue with a power of two capacity. Every slot carries a sequence number,
+ * producers claim a slot with a CAS on the tail and publish it by bumping the slot sequence, so a single consumer
+ * thread never has to take a lock.
+ */
+class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    RingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false when the buffer is full
+     */
+    boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Single consumer only.
+     *
+     * @return null when the buffer is empty
+     */
+    E poll() {
+        long position = head.get();
+        int index = (int) (position & mask);
+        if (sequences.get(index) - (position + 1) < 0) {
+            return null;
+        }
+        E element = slots.get(index);
+        slots.lazySet(index, null);
+        head.lazySet(position + 1);
+        sequences.set(index, position + mask + 1);
+        return element;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
@@ -0,0 +1,214 @@
+package com.rev.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.rev.common.ErrorsCode;
+import com.rev.common.Money;
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dao.AccountDao;
+import com.rev.dto.AccountDto;
+import com.rev.dto.AccountImportFailureDto;
+import com.rev.dto.AccountImportResultDto;
+import com.rev.metrics.LatencyTimer;
+import com.rev.metrics.Metrics;
+import com.rev.repository.JdbcAccountRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.inject.Inject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Creates accounts from an upload of one account per line, NDJSON objects or CSV rows under a header naming the
+ * columns {@code username}, {@code email}, {@code balance} and {@code currencyCode}. The upload is read as a stream and
+ * written in batches of {@code rev.account.import.batch-size} accounts; a row that is invalid or whose email is taken
+ * is reported and skipped without stopping the import.
+ */
+@Slf4j
+public class AccountImportServer {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private static final ObjectReader ACCOUNT_READER = new ObjectMapper().readerFor(AccountDto.class);
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+");
+    private static final String[] CSV_COLUMNS = {"username", "email", "balance", "currencyCode"};
+
+    private final JdbcAccountRepository jdbcAccountRepository;
+    private final Metrics metrics;
+    private final LatencyTimer createAccounts;
+    private final int batchSize;
+    private final int maxReportedFailures;
+
+    @Inject
+    public AccountImportServer(JdbcAccountRepository jdbcAccountRepository, Metrics metrics) {
+        this.jdbcAccountRepository = jdbcAccountRepository;
+        this.metrics = metrics;
+        this.createAccounts = metrics.repositoryTimer("account.createAccounts");
+        this.batchSize = ApplicationProperties.getInt("rev.account.import.batch-size", 1000);
+        this.maxReportedFailures = ApplicationProperties.getInt("rev.account.import.max-reported-failures", 1000);
+    }
+
+    /**
+     * @param csv whether the upload is CSV rather than NDJSON
+     */
+    public AccountImportResultDto importAccounts(InputStream upload, boolean csv) throws IOException, InvalidParameterException {
+        long start = System.nanoTime();
+        Import accountImport = new Import();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(upload, StandardCharsets.UTF_8));
+        Map<String, Integer> csvColumns = null;
+        long line = 0;
+        for (String text = reader.readLine(); text != null; text = reader.readLine()) {
+            line++;
+            if (text.isBlank()) {
+                continue;
+            }
+            if (csv && csvColumns == null) {
+                csvColumns = csvColumns(text);
+                continue;
+            }
+            AccountDao accountDao = csv ? parseCsv(text, csvColumns) : parseNdjson(text);
+            if (accountDao == null) {
+                accountImport.fail(line, null, ErrorsCode.INVALID_PARAMETER);
+            } else {
+                accountImport.add(line, accountDao);
+            }
+        }
+        accountImport.flush();
+        // invalid rows are reported as they are read, rows refused by the database only when their batch is written
+        accountImport.failures.sort(Comparator.comparingLong(AccountImportFailureDto::getLine));
+
+        long elapsedNanos = System.nanoTime() - start;
+        long rows = accountImport.imported + accountImport.failed;
+        metrics.countAccountImport(accountImport.imported, accountImport.failed);
+        log.info("imported {} of {} accounts in {} ms", accountImport.imported, rows, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        return AccountImportResultDto.builder()
+                .imported(accountImport.imported)
+                .failed(accountImport.failed)
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .rowsPerSecond(elapsedNanos == 0 ? rows : rows * TimeUnit.SECONDS.toNanos(1) / elapsedNanos)
+                .failures(accountImport.failures)
+                .build();
+    }
+
+    private static AccountDao parseNdjson(String text) {
+        try {
+            return toAccountDao(ACCOUNT_READER.readValue(text));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Map<String, Integer> csvColumns(String header) throws InvalidParameterException {
+        Map<String, Integer> columns = new HashMap<>();
+        String[] names = header.split(",", -1);
+        for (int i = 0; i < names.length; i++) {
+            columns.put(names[i].trim(), i);
+        }
+        for (String column : CSV_COLUMNS) {
+            if (!columns.containsKey(column)) {
+                throw new InvalidParameterException(ErrorsCode.INVALID_PARAMETER.getMessage());
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Values are taken as they are, quoting is not supported.
+     */
+    private static AccountDao parseCsv(String text, Map<String, Integer> columns) {
+        String[] values = text.split(",", -1);
+        if (values.length != columns.size()) {
+            return null;
+        }
+        try {
+            return toAccountDao(AccountDto.builder()
+                    .username(values[columns.get("username")].trim())
+                    .email(values[columns.get("email")].trim())
+                    .balance(Money.valueOf(values[columns.get("balance")].trim()))
+                    .currencyCode(values[columns.get("currencyCode")].trim())
+                    .build());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return null when the account is not valid
+     */
+    private static AccountDao toAccountDao(AccountDto accountDto) {
+        if (isBlank(accountDto.getUsername()) || accountDto.getEmail() == null || !EMAIL.matcher(accountDto.getEmail()).matches()
+                || isBlank(accountDto.getCurrencyCode()) || accountDto.getBalance() == null) {
+            return null;
+        }
+        long balance = accountDto.getBalance().toMinorUnits(accountDto.getCurrencyCode());
+        if (balance < 0) {
+            return null;
+        }
+        return AccountDao.builder()
+                .username(accountDto.getUsername())
+                .email(accountDto.getEmail())
+                .balance(balance)
+                .currencyCode(accountDto.getCurrencyCode())
+                .build();
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Accounts of the batch being collected and the outcome of the import so far.
+     */
+    private class Import {
+        private List<AccountDao> batch = new ArrayList<>(batchSize);
+        private List<Long> batchLines = new ArrayList<>(batchSize);
+        private final List<AccountImportFailureDto> failures = new ArrayList<>();
+        private long imported;
+        private long failed;
+
+        private void add(long line, AccountDao accountDao) {
+            batch.add(accountDao);
+            batchLines.add(line);
+            if (batch.size() == batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            long start = System.nanoTime();
+            List<ErrorsCode> results = jdbcAccountRepository.createAccounts(batch);
+            createAccounts.record(start);
+            for (int i = 0; i < batch.size(); i++) {
+                if (results.get(i) == null) {
+                    imported++;
+                } else {
+                    fail(batchLines.get(i), batch.get(i).getEmail(), results.get(i));
+                }
+            }
+            batch = new ArrayList<>(batchSize);
+            batchLines = new ArrayList<>(batchSize);
+        }
+
+        private void fail(long line, String email, ErrorsCode errorsCode) {
+            failed++;
+            if (failures.size() < maxReportedFailures) {
+                failures.add(new AccountImportFailureDto(line, email, errorsCode.name()));
+            }
+        }
+    }
+}
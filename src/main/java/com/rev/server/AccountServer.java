@@ -1,27 +1,34 @@
 package com.rev.server;
 
 import com.rev.common.ErrorsCode;
+import com.rev.common.Money;
 import com.rev.common.exception.AccountBalanceUpdateException;
 import com.rev.common.exception.AccountCreationException;
 import com.rev.common.exception.AccountNotExistsException;
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.configuration.ApplicationProperties;
 import com.rev.dao.AccountDao;
 import com.rev.dto.AccountDto;
 import com.rev.repository.AccountRepository;
-import com.rev.repository.AccountRepositoryImpl;
 
 import javax.inject.Inject;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.rev.common.ErrorsCode.ACCOUNT_NOT_EXISTS;
 import static com.rev.common.ErrorsCode.ACCOUNT_UPDATE_BALANCE_FAILED;
+import static com.rev.common.ErrorsCode.BALANCE_STRIPES_NOT_SUPPORTED;
+import static com.rev.common.ErrorsCode.INVALID_PARAMETER;
 
 public class AccountServer {
 
+    private static final int MAX_BALANCE_STRIPES = ApplicationProperties.getInt("rev.account.balance-stripes.max", 64);
+
     private final AccountRepository accountRepository;
 
     @Inject
-    public AccountServer(AccountRepositoryImpl accountRepository) {
+    public AccountServer(AccountRepository accountRepository) {
         this.accountRepository = accountRepository;
     }
 
@@ -40,6 +47,10 @@ public class AccountServer {
                 .collect(Collectors.toList());
     }
 
+    public void forEachAccount(Consumer<AccountDto> consumer) {
+        accountRepository.forEachAccount(accountDao -> consumer.accept(mapAccountDaoToAccountDto(accountDao)));
+    }
+
     public AccountDto findAccountById(Long accountId) throws AccountNotExistsException {
         AccountDao accountDao = accountRepository.findAccountById(accountId);
         validateIfAccountExists(accountDao);
@@ -49,14 +60,30 @@ public class AccountServer {
     public void updateAccountBalance(AccountDto accountDto) throws AccountNotExistsException, AccountBalanceUpdateException {
         AccountDao accountDao = accountRepository.findAccountById(accountDto.getAccountId());
         validateIfAccountExists(accountDao);
-        accountDao.setBalance(accountDto.getBalance());
         try {
+            accountDao.setBalance(accountDto.getBalance().toMinorUnits(accountDao.getCurrencyCode()));
             accountRepository.updateAccountBalance(accountDao);
         } catch (Exception exception) {
             throw new AccountBalanceUpdateException(ACCOUNT_UPDATE_BALANCE_FAILED.getMessage());
         }
     }
 
+    /**
+     * Flags the account as hot, its credits spread over {@code stripes} stripes, or as ordinary again with 0.
+     *
+     * @throws InvalidParameterException also when the balance store does not stripe balances
+     */
+    public void setBalanceStripes(long accountId, Integer stripes) throws AccountNotExistsException, InvalidParameterException {
+        if (!accountRepository.supportsBalanceStripes()) {
+            throw new InvalidParameterException(BALANCE_STRIPES_NOT_SUPPORTED.getMessage());
+        }
+        if (stripes == null || stripes < 0 || stripes > MAX_BALANCE_STRIPES) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+        validateIfAccountExists(accountRepository.findAccountById(accountId));
+        accountRepository.setBalanceStripes(accountId, stripes);
+    }
+
     public void deleteAccount(long accountId) throws AccountNotExistsException {
         AccountDao accountDao = accountRepository.findAccountById(accountId);
         validateIfAccountExists(accountDao);
@@ -74,7 +101,7 @@ public class AccountServer {
                 .email(accountDto.getEmail())
                 .username(accountDto.getUsername())
                 .currencyCode(accountDto.getCurrencyCode())
-                .balance(accountDto.getBalance())
+                .balance(accountDto.getBalance().toMinorUnits(accountDto.getCurrencyCode()))
                 .build();
     }
 
@@ -83,7 +110,7 @@ public class AccountServer {
                 .accountId(accountDao.getAccountId())
                 .username(accountDao.getUsername())
                 .email(accountDao.getEmail())
-                .balance(accountDao.getBalance())
+                .balance(Money.of(accountDao.getBalance(), accountDao.getCurrencyCode()))
                 .currencyCode(accountDao.getCurrencyCode())
                 .build();
     }
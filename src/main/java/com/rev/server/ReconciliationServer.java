@@ -0,0 +1,167 @@
+package com.rev.server;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.rev.common.Money;
+import com.rev.configuration.ApplicationProperties;
+import com.rev.dto.DiscrepancyDto;
+import com.rev.dto.ReconciliationReportDto;
+import com.rev.metrics.Metrics;
+import com.rev.repository.ReconciliationRepository;
+import com.rev.repository.ReconciliationRepository.Discrepancy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Checks that every account balance equals its opening balance plus its successful transfers in minus its successful
+ * transfers out. The account id space is split into ranges of {@code rev.reconciliation.partition-size} ids, reconciled
+ * in parallel on a fork-join pool of {@code rev.reconciliation.parallelism} workers, each holding one pooled connection
+ * while it reads a range. One reconciliation runs at a time; its report stays available until the next one starts.
+ */
+@Slf4j
+@Singleton
+public class ReconciliationServer {
+
+    private final ReconciliationRepository reconciliationRepository;
+    private final int parallelism;
+    private final long partitionSize;
+    private final int maxReportedDiscrepancies;
+    private volatile Run run;
+
+    @Inject
+    public ReconciliationServer(ReconciliationRepository reconciliationRepository, Metrics metrics) {
+        this.reconciliationRepository = reconciliationRepository;
+        this.parallelism = ApplicationProperties.getInt("rev.reconciliation.parallelism", 4);
+        this.partitionSize = ApplicationProperties.getLong("rev.reconciliation.partition-size", 10_000);
+        this.maxReportedDiscrepancies = ApplicationProperties.getInt("rev.reconciliation.max-reported-discrepancies", 1000);
+        metrics.registerGauge("rev_reconciliation_discrepancies", "Accounts whose balance did not match their transactions in the last reconciliation",
+                () -> run == null ? 0 : run.discrepancyCount.get());
+    }
+
+    /**
+     * Starts a reconciliation in the background unless one is running already.
+     *
+     * @return false when one is running already
+     */
+    public synchronized boolean start() {
+        if (run != null && run.status == Status.RUNNING) {
+            return false;
+        }
+        Run newRun = new Run();
+        run = newRun;
+        Thread thread = new Thread(() -> execute(newRun), "reconciliation");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    public ReconciliationReportDto getReport() {
+        Run currentRun = run;
+        if (currentRun == null) {
+            return ReconciliationReportDto.builder()
+                    .status(Status.NOT_STARTED.name())
+                    .discrepancies(List.of())
+                    .build();
+        }
+        return ReconciliationReportDto.builder()
+                .status(currentRun.status.name())
+                .startedAt(currentRun.startedAt.toString())
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis((currentRun.status == Status.RUNNING ? System.nanoTime() : currentRun.finishedNanos)
+                        - currentRun.startNanos))
+                .partitions(currentRun.partitions)
+                .partitionsDone(currentRun.partitionsDone.get())
+                .accountsChecked(currentRun.accountsChecked.get())
+                .discrepancyCount(currentRun.discrepancyCount.get())
+                .discrepancies(currentRun.discrepancies.stream()
+                        .map(discrepancy -> DiscrepancyDto.builder()
+                                .accountId(discrepancy.getAccount().getAccountId())
+                                .currencyCode(discrepancy.getAccount().getCurrencyCode())
+                                .balance(Money.of(discrepancy.getAccount().getBalance(), discrepancy.getAccount().getCurrencyCode()))
+                                .expectedBalance(Money.of(discrepancy.getExpectedBalance(), discrepancy.getAccount().getCurrencyCode()))
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private void execute(Run run) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long[] accountIdRange = reconciliationRepository.getAccountIdRange();
+            if (accountIdRange != null) {
+                run.partitions = (accountIdRange[1] - accountIdRange[0]) / partitionSize + 1;
+                pool.invoke(new ReconcileRange(run, accountIdRange[0], accountIdRange[1]));
+            }
+            run.status = Status.FINISHED;
+            log.info("reconciled {} accounts, {} discrepancies", run.accountsChecked.get(), run.discrepancyCount.get());
+        } catch (Exception exception) {
+            log.info("{}", exception.getMessage());
+            run.status = Status.FAILED;
+        } finally {
+            run.finishedNanos = System.nanoTime();
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits its account id range in halves until a half fits one partition, which is then read in one statement.
+     */
+    private class ReconcileRange extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Run run;
+        private final long fromAccountId;
+        private final long toAccountId;
+
+        private ReconcileRange(Run run, long fromAccountId, long toAccountId) {
+            this.run = run;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+        }
+
+        @Override
+        protected void compute() {
+            if (toAccountId - fromAccountId >= partitionSize) {
+                // split on a partition boundary, so every leaf is one whole partition
+                long partitions = (toAccountId - fromAccountId) / partitionSize + 1;
+                long middle = fromAccountId + partitions / 2 * partitionSize;
+                invokeAll(new ReconcileRange(run, fromAccountId, middle - 1), new ReconcileRange(run, middle, toAccountId));
+                return;
+            }
+            List<Discrepancy> discrepancies = new ArrayList<>();
+            run.accountsChecked.addAndGet(reconciliationRepository.reconcile(fromAccountId, toAccountId, discrepancies));
+            for (Discrepancy discrepancy : discrepancies) {
+                Discrepancy confirmed = reconciliationRepository.reconcile(discrepancy.getAccount().getAccountId());
+                if (confirmed != null && run.discrepancyCount.incrementAndGet() <= maxReportedDiscrepancies) {
+                    run.discrepancies.add(confirmed);
+                }
+            }
+            run.partitionsDone.incrementAndGet();
+        }
+    }
+
+    private enum Status {
+        NOT_STARTED, RUNNING, FINISHED, FAILED
+    }
+
+    private static class Run {
+        private final Instant startedAt = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong partitionsDone = new AtomicLong();
+        private final AtomicLong accountsChecked = new AtomicLong();
+        private final AtomicLong discrepancyCount = new AtomicLong();
+        private final ConcurrentLinkedQueue<Discrepancy> discrepancies = new ConcurrentLinkedQueue<>();
+        private volatile Status status = Status.RUNNING;
+        private volatile long partitions;
+        private volatile long finishedNanos;
+    }
+}
@@ -0,0 +1,88 @@
+package com.rev.server;
+
+import com.rev.common.Money;
+import com.rev.common.exception.AccountNotExistsException;
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.dto.TransactionDto;
+import com.rev.repository.AccountRepository;
+import com.rev.repository.JdbcTransactionRepository;
+
+import javax.inject.Inject;
+import java.sql.Date;
+import java.util.function.Consumer;
+
+import static com.rev.common.ErrorsCode.ACCOUNT_NOT_EXISTS;
+import static com.rev.common.ErrorsCode.INVALID_PARAMETER;
+
+/**
+ * Reads transactions for export in transaction id order straight from a database cursor. The id of the last exported
+ * transaction resumes an interrupted export.
+ */
+public class TransactionExportServer {
+
+    private final JdbcTransactionRepository jdbcTransactionRepository;
+    private final AccountRepository accountRepository;
+
+    @Inject
+    public TransactionExportServer(JdbcTransactionRepository jdbcTransactionRepository, AccountRepository accountRepository) {
+        this.jdbcTransactionRepository = jdbcTransactionRepository;
+        this.accountRepository = accountRepository;
+    }
+
+    /**
+     * Checks the filter before anything is exported.
+     *
+     * @param from first day as {@code yyyy-MM-dd}, null for no lower bound
+     * @param to   last day as {@code yyyy-MM-dd}, null for no upper bound
+     */
+    public Filter filter(Long accountId, String from, String to, Long afterTransactionId)
+            throws InvalidParameterException, AccountNotExistsException {
+        Filter filter = new Filter(accountId, parseDate(from), parseDate(to), afterTransactionId == null ? 0 : afterTransactionId);
+        if (filter.from != null && filter.to != null && filter.from.after(filter.to)) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+        if (accountId != null && accountRepository.findAccountReferenceById(accountId).getAccountId() == 0) {
+            throw new AccountNotExistsException(ACCOUNT_NOT_EXISTS.getMessage());
+        }
+        return filter;
+    }
+
+    public void forEachTransaction(Filter filter, Consumer<TransactionDto> consumer) {
+        jdbcTransactionRepository.forEachTransaction(filter.accountId, filter.from, filter.to, filter.afterTransactionId,
+                transactionDao -> consumer.accept(TransactionDto.builder()
+                        .transactionId(transactionDao.getTransactionId())
+                        .fromAccountId(transactionDao.getFromAccountId())
+                        .toAccountId(transactionDao.getToAccountId())
+                        .amount(Money.of(transactionDao.getAmount(), transactionDao.getCurrencyCode()))
+                        .currencyCode(transactionDao.getCurrencyCode())
+                        .status(transactionDao.getStatus().name())
+                        .date(transactionDao.getDate())
+                        .message(transactionDao.getMessage())
+                        .build()));
+    }
+
+    private static Date parseDate(String date) throws InvalidParameterException {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return Date.valueOf(date);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+    }
+
+    public static final class Filter {
+        private final Long accountId;
+        private final Date from;
+        private final Date to;
+        private final long afterTransactionId;
+
+        private Filter(Long accountId, Date from, Date to, long afterTransactionId) {
+            this.accountId = accountId;
+            this.from = from;
+            this.to = to;
+            this.afterTransactionId = afterTransactionId;
+        }
+    }
+}
@@ -2,66 +2,261 @@ package com.rev.server;
 
 import com.google.inject.Inject;
 import com.rev.common.ErrorsCode;
+import com.rev.common.Money;
+import com.rev.common.TransactionDirection;
 import com.rev.common.TransactionStatus;
 import com.rev.common.exception.AccountNotExistsException;
+import com.rev.common.exception.BalanceOverflowException;
+import com.rev.common.exception.IdempotencyKeyReusedException;
 import com.rev.common.exception.InvalidCurrencyException;
+import com.rev.common.exception.InvalidParameterException;
 import com.rev.common.exception.NotEnoughBalanceException;
+import com.rev.common.exception.ServerBusyException;
+import com.rev.common.exception.TransferFailedException;
+import com.rev.configuration.ApplicationProperties;
 import com.rev.dao.AccountDao;
+import com.rev.dao.DailyRollupDao;
 import com.rev.dao.TransactionDao;
+import com.rev.dto.StatementDayDto;
+import com.rev.dto.StatementDto;
 import com.rev.dto.TransactionDto;
+import com.rev.dto.TransactionResultDto;
+import com.rev.metrics.Metrics;
 import com.rev.repository.AccountRepository;
-import com.rev.repository.AccountRepositoryImpl;
+import com.rev.repository.DailyRollupRepository;
+import com.rev.repository.IdempotencyStore;
 import com.rev.repository.TransactionRepository;
-import com.rev.repository.TransactionRepositoryImpl;
 
 import java.sql.Date;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.rev.common.ErrorsCode.*;
 
 public class TransactionServer {
 
+    private static final int BATCH_MAX_SIZE = ApplicationProperties.getInt("rev.transaction.batch.max-size", 1000);
+    public static final int PAGE_MAX_SIZE = ApplicationProperties.getInt("rev.transaction.page.max-size", 1000);
+
     private final TransactionRepository transactionRepository;
     private final AccountRepository accountRepository;
+    private final IdempotencyStore idempotencyStore;
+    private final DailyRollupRepository dailyRollupRepository;
+    private final Metrics metrics;
 
     @Inject
-    public TransactionServer(TransactionRepositoryImpl transactionRepository, AccountRepositoryImpl accountRepository) {
+    public TransactionServer(TransactionRepository transactionRepository, AccountRepository accountRepository, IdempotencyStore idempotencyStore,
+                             DailyRollupRepository dailyRollupRepository, Metrics metrics) {
         this.transactionRepository = transactionRepository;
         this.accountRepository = accountRepository;
+        this.idempotencyStore = idempotencyStore;
+        this.dailyRollupRepository = dailyRollupRepository;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Like {@link #addTransaction(TransactionDto)}, but a transfer repeated with the same idempotency key is not
+     * executed again: it ends the way the first one did, without touching any account. Reusing the key for a transfer
+     * with other accounts, amount or currency fails with {@link IdempotencyKeyReusedException}.
+     */
+    public void addTransaction(final TransactionDto transactionDto, final String idempotencyKey) throws Exception {
+        if (idempotencyKey == null) {
+            addTransaction(transactionDto);
+            return;
+        }
+        ErrorsCode outcome = idempotencyStore.execute(idempotencyKey, fingerprint(transactionDto), () -> {
+            try {
+                addTransaction(transactionDto);
+                return null;
+            } catch (AccountNotExistsException | InvalidCurrencyException | NotEnoughBalanceException | BalanceOverflowException exception) {
+                return ErrorsCode.fromMessage(exception.getMessage());
+            }
+        });
+        if (outcome == SRC_ACCOUNT_NOT_EXISTS || outcome == DES_ACCOUNT_NOT_EXISTS) {
+            throw new AccountNotExistsException(outcome.getMessage());
+        }
+        if (outcome == INVALID_CURRENCY) {
+            throw new InvalidCurrencyException(outcome.getMessage());
+        }
+        if (outcome == NOT_ENOUGH_BALANCE) {
+            throw new NotEnoughBalanceException(outcome.getMessage());
+        }
+        if (outcome == BALANCE_OVERFLOW) {
+            throw new BalanceOverflowException(outcome.getMessage());
+        }
+    }
+
+    private String fingerprint(TransactionDto transactionDto) {
+        return transactionDto.getFromAccountId() + ":" + transactionDto.getToAccountId() + ":" + toMinorUnits(transactionDto)
+                + ":" + transactionDto.getCurrencyCode();
     }
 
     public void addTransaction(final TransactionDto transactionDto) throws Exception {
 
-        AccountDao accountFrom = getAndValidateAccount(transactionDto.getFromAccountId(), SRC_ACCOUNT_NOT_EXISTS);
-        AccountDao accountTo = getAndValidateAccount(transactionDto.getToAccountId(), DES_ACCOUNT_NOT_EXISTS);
+        AccountDao accountFrom;
+        AccountDao accountTo;
+        try {
+            accountFrom = getAndValidateAccount(transactionDto.getFromAccountId(), SRC_ACCOUNT_NOT_EXISTS);
+            accountTo = getAndValidateAccount(transactionDto.getToAccountId(), DES_ACCOUNT_NOT_EXISTS);
+        } catch (AccountNotExistsException exception) {
+            metrics.countTransfer(TransactionStatus.FAILED, ErrorsCode.fromMessage(exception.getMessage()));
+            throw exception;
+        }
+
+        long amount = toMinorUnits(transactionDto);
+        if (amount <= 0) {
+            metrics.countTransfer(TransactionStatus.FAILED, INVALID_PARAMETER);
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
 
         if (!(accountFrom.getCurrencyCode().equals(transactionDto.getCurrencyCode()) && accountTo.getCurrencyCode().equals(accountFrom.getCurrencyCode()))) {
-            transactionRepository.addTransaction(getTransactionDao(transactionDto, INVALID_CURRENCY.getMessage(), TransactionStatus.FAILED));
+            transactionRepository.addTransaction(getTransactionDao(transactionDto, amount, INVALID_CURRENCY.getMessage(), TransactionStatus.FAILED));
+            metrics.countTransfer(TransactionStatus.FAILED, INVALID_CURRENCY);
             throw new InvalidCurrencyException(INVALID_CURRENCY.getMessage());
         }
 
-        if (!(accountFrom.getBalance().compareTo(transactionDto.getAmount()) >= 0)) {
-            transactionRepository.addTransaction(accountFrom, accountTo, getTransactionDao(transactionDto, NOT_ENOUGH_BALANCE.getMessage(), TransactionStatus.FAILED));
-            throw new NotEnoughBalanceException(NOT_ENOUGH_BALANCE.getMessage());
+        // the balance is only checked by the repository, against the current balance
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, getTransactionDao(transactionDto, amount, "", TransactionStatus.SUCCESS));
+
+        // the ledger engine accepts transfers before their row reaches the database, so no id does not mean failure
+        if (transactionDao.getTransactionId() == null && transactionDao.getStatus() != TransactionStatus.SUCCESS) {
+            transactionRepository.addTransaction(transactionDao);
         }
-        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, getTransactionDao(transactionDto, "", TransactionStatus.SUCCESS));
+        metrics.countTransfer(transactionDao.getStatus(),
+                transactionDao.getStatus() == TransactionStatus.SUCCESS ? null : ErrorsCode.fromMessage(transactionDao.getMessage()));
+        if (transactionDao.getStatus() == TransactionStatus.FAILED) {
+            throw failure(ErrorsCode.fromMessage(transactionDao.getMessage()));
+        }
+    }
+
+    /**
+     * Client errors become the exceptions an idempotent retry replays, anything else is a
+     * {@link TransferFailedException} or {@link ServerBusyException} and is not remembered.
+     */
+    private static Exception failure(ErrorsCode errorsCode) {
+        switch (errorsCode) {
+            case NOT_ENOUGH_BALANCE:
+                return new NotEnoughBalanceException(errorsCode.getMessage());
+            case BALANCE_OVERFLOW:
+                return new BalanceOverflowException(errorsCode.getMessage());
+            case SRC_ACCOUNT_NOT_EXISTS:
+            case DES_ACCOUNT_NOT_EXISTS:
+                return new AccountNotExistsException(errorsCode.getMessage());
+            case SERVER_BUSY:
+                return new ServerBusyException(errorsCode.getMessage());
+            default:
+                return new TransferFailedException(errorsCode.getMessage());
+        }
+    }
 
-        if (transactionDao.getTransactionId() == null) {
-            if (NOT_ENOUGH_BALANCE.getMessage().equals(transactionDao.getMessage())) {
-                transactionDao.setMessage(UNEXPECTED_ERROR.getMessage());
-                transactionDao.setStatus(TransactionStatus.FAILED);
+    /**
+     * Validates all transfers against one bulk account lookup and applies them in chunks of
+     * {@code rev.transaction.batch.max-size}, each chunk in a single database transaction.
+     *
+     * @throws InvalidParameterException when the batch is missing, empty or has a missing transfer
+     */
+    public List<TransactionResultDto> addTransactions(final List<TransactionDto> transactionDtos) throws InvalidParameterException {
+        if (transactionDtos == null || transactionDtos.isEmpty() || transactionDtos.stream().anyMatch(Objects::isNull)) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+        Set<Long> accountIds = new HashSet<>();
+        transactionDtos.forEach(transactionDto -> {
+            accountIds.add(transactionDto.getFromAccountId());
+            accountIds.add(transactionDto.getToAccountId());
+        });
+        Map<Long, AccountDao> accounts = accountRepository.findAccountsByIds(accountIds)
+                .stream()
+                .collect(Collectors.toMap(AccountDao::getAccountId, Function.identity()));
+
+        TransactionResultDto[] results = new TransactionResultDto[transactionDtos.size()];
+        List<Integer> chunkIndexes = new ArrayList<>();
+        List<TransactionDao> chunk = new ArrayList<>();
+        for (int i = 0; i < transactionDtos.size(); i++) {
+            TransactionDto transactionDto = transactionDtos.get(i);
+            AccountDao accountFrom = accounts.get(transactionDto.getFromAccountId());
+            AccountDao accountTo = accounts.get(transactionDto.getToAccountId());
+            if (accountFrom == null) {
+                results[i] = failedResult(SRC_ACCOUNT_NOT_EXISTS);
+                continue;
             }
-            transactionRepository.addTransaction(transactionDao);
+            if (accountTo == null) {
+                results[i] = failedResult(DES_ACCOUNT_NOT_EXISTS);
+                continue;
+            }
+            long amount = toMinorUnits(transactionDto);
+            if (amount <= 0) {
+                results[i] = failedResult(INVALID_PARAMETER);
+                continue;
+            }
+            if (!(accountFrom.getCurrencyCode().equals(transactionDto.getCurrencyCode()) && accountTo.getCurrencyCode().equals(accountFrom.getCurrencyCode()))) {
+                chunk.add(getTransactionDao(transactionDto, amount, INVALID_CURRENCY.getMessage(), TransactionStatus.FAILED));
+            } else {
+                chunk.add(getTransactionDao(transactionDto, amount, "", TransactionStatus.SUCCESS));
+            }
+            chunkIndexes.add(i);
+            if (chunk.size() == BATCH_MAX_SIZE) {
+                flush(chunk, chunkIndexes, results);
+            }
+        }
+        flush(chunk, chunkIndexes, results);
+        return Arrays.asList(results);
+    }
+
+    private void flush(List<TransactionDao> chunk, List<Integer> chunkIndexes, TransactionResultDto[] results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<TransactionDao> transactionDaos = transactionRepository.addTransactions(new ArrayList<>(chunk));
+        for (int i = 0; i < transactionDaos.size(); i++) {
+            TransactionDao transactionDao = transactionDaos.get(i);
+            ErrorsCode errorsCode = transactionDao.getStatus() == TransactionStatus.SUCCESS ? null : ErrorsCode.fromMessage(transactionDao.getMessage());
+            metrics.countTransfer(transactionDao.getStatus(), errorsCode);
+            results[chunkIndexes.get(i)] = TransactionResultDto.builder()
+                    .transactionId(transactionDao.getTransactionId())
+                    .status(transactionDao.getStatus().name())
+                    .errorCode(errorsCode == null ? null : errorsCode.name())
+                    .build();
         }
+        chunk.clear();
+        chunkIndexes.clear();
     }
 
-    private TransactionDao getTransactionDao(TransactionDto transactionDto,  String message, TransactionStatus status) {
+    private TransactionResultDto failedResult(ErrorsCode errorsCode) {
+        metrics.countTransfer(TransactionStatus.FAILED, errorsCode);
+        return TransactionResultDto.builder()
+                .status(TransactionStatus.FAILED.name())
+                .errorCode(errorsCode.name())
+                .build();
+    }
+
+    /**
+     * @return the amount in minor units of the transfer's currency, 0 when it is missing, has more decimal places
+     * than the currency or does not fit a long
+     */
+    private long toMinorUnits(TransactionDto transactionDto) {
+        if (transactionDto.getAmount() == null || transactionDto.getCurrencyCode() == null) {
+            return 0;
+        }
+        try {
+            return transactionDto.getAmount().toMinorUnits(transactionDto.getCurrencyCode());
+        } catch (ArithmeticException e) {
+            return 0;
+        }
+    }
+
+    private TransactionDao getTransactionDao(TransactionDto transactionDto, long amount, String message, TransactionStatus status) {
         return TransactionDao.builder()
                     .fromAccountId(transactionDto.getFromAccountId())
                     .toAccountId(transactionDto.getToAccountId())
-                    .amount(transactionDto.getAmount())
+                    .amount(amount)
                     .currencyCode(transactionDto.getCurrencyCode())
                     .message(message)
                     .date(new Date(Instant.now().toEpochMilli()))
@@ -70,25 +265,34 @@ public class TransactionServer {
     }
 
     private AccountDao getAndValidateAccount(final Long accountId, final ErrorsCode errorsCode) throws AccountNotExistsException {
-        AccountDao accountFrom = accountRepository.findAccountById(accountId);
+        AccountDao accountFrom = accountRepository.findAccountReferenceById(accountId);
         if (accountFrom.getAccountId() == 0) {
             throw new AccountNotExistsException(errorsCode.getMessage());
         }
         return accountFrom;
     }
 
-    public List<TransactionDto> getTransactionsForAccount(final Long accountId) throws AccountNotExistsException {
-        if (accountRepository.findAccountById(accountId).getAccountId() == 0) {
+    /**
+     * @param direction in, out or both, case insensitive
+     * @param limit page size, capped at {@code rev.transaction.page.max-size}
+     */
+    public List<TransactionDto> getTransactionsForAccount(final Long accountId, final Long afterTransactionId, final String direction, final int limit)
+            throws AccountNotExistsException, InvalidParameterException {
+        TransactionDirection transactionDirection = parseDirection(direction);
+        if (limit <= 0) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+        if (accountRepository.findAccountReferenceById(accountId).getAccountId() == 0) {
             throw new AccountNotExistsException(ACCOUNT_NOT_EXISTS.getMessage());
         }
 
-        return transactionRepository.getTransactionsForAccount(accountId)
+        return transactionRepository.getTransactionsForAccount(accountId, afterTransactionId, transactionDirection, Math.min(limit, PAGE_MAX_SIZE))
                 .stream()
                 .map(transactionDao -> TransactionDto.builder()
                                                     .transactionId(transactionDao.getTransactionId())
                                                     .fromAccountId(transactionDao.getFromAccountId())
                                                     .toAccountId(transactionDao.getToAccountId())
-                                                    .amount(transactionDao.getAmount())
+                                                    .amount(Money.of(transactionDao.getAmount(), transactionDao.getCurrencyCode()))
                                                     .currencyCode(transactionDao.getCurrencyCode())
                                                     .status(transactionDao.getStatus().name())
                                                     .date(transactionDao.getDate())
@@ -96,4 +300,60 @@ public class TransactionServer {
                                                     .build())
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Daily totals read from the account's rollups only, one row per day with transfers.
+     *
+     * @param from first day as {@code yyyy-MM-dd}
+     * @param to   last day as {@code yyyy-MM-dd}
+     * @throws InvalidParameterException also when the transaction repository does not maintain the rollups
+     */
+    public StatementDto getStatement(final Long accountId, final String from, final String to)
+            throws AccountNotExistsException, InvalidParameterException {
+        if (!transactionRepository.maintainsDailyRollups()) {
+            throw new InvalidParameterException(STATEMENTS_NOT_SUPPORTED.getMessage());
+        }
+        Date fromDay = parseDay(from);
+        Date toDay = parseDay(to);
+        if (fromDay.after(toDay)) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+        if (accountRepository.findAccountReferenceById(accountId).getAccountId() == 0) {
+            throw new AccountNotExistsException(ACCOUNT_NOT_EXISTS.getMessage());
+        }
+
+        List<DailyRollupDao> rollups = dailyRollupRepository.getRollups(accountId, fromDay, toDay);
+        return StatementDto.builder()
+                .accountId(accountId)
+                .from(fromDay.toString())
+                .to(toDay.toString())
+                .days(rollups.stream()
+                        .map(rollup -> StatementDayDto.builder()
+                                .day(rollup.getDay().toString())
+                                .currencyCode(rollup.getCurrencyCode())
+                                .debitAmount(Money.of(rollup.getDebitAmount(), rollup.getCurrencyCode()))
+                                .debitCount(rollup.getDebitCount())
+                                .creditAmount(Money.of(rollup.getCreditAmount(), rollup.getCurrencyCode()))
+                                .creditCount(rollup.getCreditCount())
+                                .failedCount(rollup.getFailedCount())
+                                .build())
+                        .collect(Collectors.toList()))
+                .build();
+    }
+
+    private Date parseDay(String day) throws InvalidParameterException {
+        try {
+            return Date.valueOf(day);
+        } catch (Exception e) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+    }
+
+    private TransactionDirection parseDirection(String direction) throws InvalidParameterException {
+        try {
+            return TransactionDirection.valueOf(direction.toUpperCase());
+        } catch (Exception e) {
+            throw new InvalidParameterException(INVALID_PARAMETER.getMessage());
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package com.rev.common;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldConvertToMinorUnitsOfCurrency() {
+        // given
+        Money money = Money.valueOf("12.5");
+
+        // when
+        long euroCents = money.toMinorUnits("EUR");
+        long unknownCurrencyCents = money.toMinorUnits("eu");
+
+        // then
+        assertThat(money.getMinorUnits()).isEqualTo(125);
+        assertThat(money.getScale()).isEqualTo(1);
+        assertThat(euroCents).isEqualTo(1250);
+        assertThat(unknownCurrencyCents).isEqualTo(1250);
+        assertThat(Money.valueOf("12.00").toMinorUnits("JPY")).isEqualTo(12);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void shouldRejectMoreDecimalPlacesThanCurrencyHas() {
+        Money.valueOf("12.345").toMinorUnits("EUR");
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void shouldRejectAmountNotFittingLong() {
+        Money.valueOf("92233720368547758.08").toMinorUnits("EUR");
+    }
+
+    @Test
+    public void shouldWriteAndReadJsonNumbers() throws Exception {
+        // given
+        Money money = Money.of(-5, "EUR");
+
+        // when
+        String json = objectMapper.writeValueAsString(new Money[]{money, Money.of(Long.MIN_VALUE, "JPY"), Money.of(1250, "EUR")});
+        Money[] parsed = objectMapper.readValue(json, Money[].class);
+
+        // then
+        assertThat(json).isEqualTo("[-0.05,-9223372036854775808,12.50]");
+        assertThat(parsed).containsOnly(money, Money.of(Long.MIN_VALUE, "JPY"), Money.of(1250, "EUR"));
+        assertThat(objectMapper.readValue("\"6\"", Money.class)).isEqualTo(new Money(6, 0));
+    }
+
+    @Test(expected = JsonMappingException.class)
+    public void shouldRejectAmountInExponentNotation() throws Exception {
+        objectMapper.readValue("1e3", Money.class);
+    }
+}
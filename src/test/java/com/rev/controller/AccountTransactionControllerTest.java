@@ -71,6 +71,29 @@ public class AccountTransactionControllerTest {
         assertThat(response.getBody().asString()).isEqualTo(ACCOUNT_CREATION_FAILED.getMessage());
     }
 
+    @Test
+    public void shouldImportAccountsAndReportFailedRows() {
+        String email = System.nanoTime() + "bulk@test.com";
+        Response response = given()
+                .when()
+                .body("username,email,balance,currencyCode\n"
+                        + "john," + email + ",10.50,EUR\n"
+                        + "john," + email + ",1,EUR\n"
+                        + "john,invalid,1,EUR\n"
+                        + "john,2" + email + ",1,EUR\n")
+                .contentType("text/csv")
+                .post(ACCOUNTS_ENDPOINT + "/bulk");
+        response
+                .then()
+                .assertThat()
+                .statusCode(200);
+
+        assertThat(response.jsonPath().getLong("imported")).isEqualTo(2);
+        assertThat(response.jsonPath().getLong("failed")).isEqualTo(2);
+        assertThat(response.jsonPath().<String>getList("failures.errorCode")).containsExactly(EMAIL_TAKEN.name(), INVALID_PARAMETER.name());
+        assertThat(response.jsonPath().<Integer>getList("failures.line")).containsExactly(3, 4);
+    }
+
     @Test
     public void shouldGetAccount() {
         Response response = given()
@@ -98,7 +121,7 @@ public class AccountTransactionControllerTest {
     public void shouldReturn404WhenGetAccountAndAccountDoesNotExist() {
         Response response = given()
                 .when()
-                .get(ACCOUNTS_ENDPOINT + "/20");
+                .get(ACCOUNTS_ENDPOINT + "/" + Long.MAX_VALUE);
 
         response
                 .then()
@@ -177,7 +200,7 @@ public class AccountTransactionControllerTest {
     @Test
     public void shouldReturn404WhenUpdateAccountAndAccountDoesNotExist() {
 
-        String accountId = "100";
+        String accountId = String.valueOf(Long.MAX_VALUE);
         String updatedAccount = "  {\n" +
                 "        \"accountId\": " + accountId + ",\n" +
                 "        \"username\": \"ola\",\n" +
@@ -203,7 +226,7 @@ public class AccountTransactionControllerTest {
     public void shouldReturn404WhenDeleteAccountAndAccountDoesNotExist() {
         Response response = given()
                 .when()
-                .delete(ACCOUNTS_ENDPOINT + "/20");
+                .delete(ACCOUNTS_ENDPOINT + "/" + Long.MAX_VALUE);
 
         response
                 .then()
@@ -268,6 +291,34 @@ public class AccountTransactionControllerTest {
                 .assertThat()
                 .statusCode(200);
         assertThat(((ArrayList) response3.getBody().jsonPath().get()).size()).isEqualTo(1);
+
+        Response response4 = given()
+                .when()
+                .get(ACCOUNTS_ENDPOINT + "/" + destinationAccountId + "/transaction?direction=in&limit=1");
+        response4
+                .then()
+                .assertThat()
+                .statusCode(200);
+        assertThat(((ArrayList) response4.getBody().jsonPath().get()).size()).isEqualTo(1);
+        assertThat(response4.getHeader("X-Next-Cursor")).isNotNull();
+
+        Response response5 = given()
+                .when()
+                .get(ACCOUNTS_ENDPOINT + "/" + destinationAccountId + "/transaction?direction=in&after=" + response4.getHeader("X-Next-Cursor"));
+        assertThat(((ArrayList) response5.getBody().jsonPath().get()).size()).isEqualTo(0);
+
+        given()
+                .when()
+                .get(ACCOUNTS_ENDPOINT + "/" + destinationAccountId + "/transaction?direction=out")
+                .then()
+                .assertThat()
+                .statusCode(200);
+        given()
+                .when()
+                .get(ACCOUNTS_ENDPOINT + "/" + destinationAccountId + "/transaction?direction=sideways")
+                .then()
+                .assertThat()
+                .statusCode(400);
     }
 
     @Test
@@ -378,6 +429,297 @@ public class AccountTransactionControllerTest {
                 .statusCode(400);
         assertThat(response.getBody().asString()).isEqualTo(INVALID_CURRENCY.getMessage());
     }
+    @Test
+    public void shouldCreateAccountTransactionsInBatch() {
+        Integer sourceAccountId = given()
+                .when()
+                .body(getAccount("testemail21.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+        Integer destinationAccountId = given()
+                .when()
+                .body(getAccount("testemail22.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+
+        String accountTransactions = "[" +
+                "{\"fromAccountId\": " + sourceAccountId + ", \"toAccountId\": " + destinationAccountId + ", \"amount\": \"6\", \"currencyCode\": \"eu\"}," +
+                "{\"fromAccountId\": " + sourceAccountId + ", \"toAccountId\": " + destinationAccountId + ", \"amount\": \"6\", \"currencyCode\": \"eu\"}," +
+                "{\"fromAccountId\": " + sourceAccountId + ", \"toAccountId\": 100000, \"amount\": \"1\", \"currencyCode\": \"eu\"}" +
+                "]";
+
+        Response response = given()
+                .when()
+                .body(accountTransactions)
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT + "/transaction/batch");
+        response
+                .then()
+                .assertThat()
+                .statusCode(200);
+
+        JsonPath jsonPath = response.jsonPath();
+        assertThat(jsonPath.<String>get("[0].status")).isEqualTo("SUCCESS");
+        assertThat(jsonPath.<String>get("[1].status")).isEqualTo("FAILED");
+        assertThat(jsonPath.<String>get("[1].errorCode")).isEqualTo(NOT_ENOUGH_BALANCE.name());
+        assertThat(jsonPath.<String>get("[2].errorCode")).isEqualTo(DES_ACCOUNT_NOT_EXISTS.name());
+
+        given()
+                .when()
+                .get(ACCOUNTS_ENDPOINT + "/" + destinationAccountId)
+                .then()
+                .assertThat()
+                .statusCode(200);
+        assertThat(given().when().get(ACCOUNTS_ENDPOINT + "/" + sourceAccountId).jsonPath().<Float>get("balance")).isEqualTo(4f);
+    }
+
+    @Test
+    public void shouldReturn400ForEmptyOrMissingBatch() {
+        for (String body : new String[]{"[]", "null"}) {
+            given()
+                    .when()
+                    .body(body)
+                    .contentType(ContentType.JSON)
+                    .post(ACCOUNTS_ENDPOINT + "/transaction/batch")
+                    .then()
+                    .assertThat()
+                    .statusCode(400);
+        }
+    }
+
+    @Test
+    public void shouldNotRepeatAccountTransactionWithSameIdempotencyKey() {
+        Integer sourceAccountId = given()
+                .when()
+                .body(getAccount("testemail31.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+        Integer destinationAccountId = given()
+                .when()
+                .body(getAccount("testemail32.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+
+        String accountTransaction = "{\"fromAccountId\": " + sourceAccountId + ", \"toAccountId\": " + destinationAccountId + ", \"amount\": \"6\", \"currencyCode\": \"eu\"}";
+
+        for (int i = 0; i < 2; i++) {
+            given()
+                    .when()
+                    .header("Idempotency-Key", "transfer-" + sourceAccountId)
+                    .body(accountTransaction)
+                    .contentType(ContentType.JSON)
+                    .post(ACCOUNTS_ENDPOINT + "/transaction")
+                    .then()
+                    .assertThat()
+                    .statusCode(201);
+        }
+
+        assertThat(given().when().get(ACCOUNTS_ENDPOINT + "/" + sourceAccountId).jsonPath().<Float>get("balance")).isEqualTo(4f);
+        assertThat(((ArrayList) given().when().get(ACCOUNTS_ENDPOINT + "/" + sourceAccountId + "/transaction").jsonPath().get()).size()).isEqualTo(1);
+
+        given()
+                .when()
+                .header("Idempotency-Key", "transfer-" + sourceAccountId)
+                .body(accountTransaction.replace("\"6\"", "\"2\""))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT + "/transaction")
+                .then()
+                .assertThat()
+                .statusCode(422);
+        assertThat(given().when().get(ACCOUNTS_ENDPOINT + "/" + sourceAccountId).jsonPath().<Float>get("balance")).isEqualTo(4f);
+    }
+
+    @Test
+    public void shouldExportAccountTransactionsAsNdjsonAndResumeAsGzippedCsv() {
+        Integer sourceAccountId = given()
+                .when()
+                .body(getAccount("testemail41.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+        Integer destinationAccountId = given()
+                .when()
+                .body(getAccount("testemail42.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+        for (String amount : new String[]{"2", "3"}) {
+            given()
+                    .when()
+                    .body("{\"fromAccountId\": " + sourceAccountId + ", \"toAccountId\": " + destinationAccountId + ", \"amount\": \"" + amount + "\", \"currencyCode\": \"eu\"}")
+                    .contentType(ContentType.JSON)
+                    .post(ACCOUNTS_ENDPOINT + "/transaction")
+                    .then()
+                    .assertThat()
+                    .statusCode(201);
+        }
+
+        Response ndjson = given()
+                .when()
+                .queryParam("accountId", sourceAccountId)
+                .get("http://localhost:8086/rev/transaction/export");
+        ndjson
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .contentType("application/x-ndjson");
+        String[] lines = ndjson.asString().split("\n");
+        assertThat(lines).hasSize(2);
+        long firstTransactionId = new JsonPath(lines[0]).getLong("transactionId");
+        assertThat(new JsonPath(lines[1]).getFloat("amount")).isEqualTo(3f);
+
+        Response csv = given()
+                .when()
+                .header("Accept-Encoding", "gzip")
+                .queryParam("accountId", sourceAccountId)
+                .queryParam("after", firstTransactionId)
+                .queryParam("format", "csv")
+                .get("http://localhost:8086/rev/transaction/export");
+        csv
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .header("Content-Encoding", "gzip");
+        lines = csv.asString().split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).isEqualTo("transactionId,fromAccountId,toAccountId,amount,currencyCode,date,status,message");
+        assertThat(lines[1]).contains("," + sourceAccountId + "," + destinationAccountId + ",3.00,eu,");
+    }
+
+    @Test
+    public void shouldReturn400WhenExportTransactionsWithInvalidDate() {
+        given()
+                .when()
+                .queryParam("from", "yesterday")
+                .get("http://localhost:8086/rev/transaction/export")
+                .then()
+                .assertThat()
+                .statusCode(400);
+    }
+
+    @Test
+    public void shouldGetStatementFromDailyRollups() {
+        Integer sourceAccountId = given()
+                .when()
+                .body(getAccount("testemail51.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+        Integer destinationAccountId = given()
+                .when()
+                .body(getAccount("testemail52.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+        for (String amount : new String[]{"2", "3", "50"}) {
+            given()
+                    .when()
+                    .body("{\"fromAccountId\": " + sourceAccountId + ", \"toAccountId\": " + destinationAccountId + ", \"amount\": \"" + amount + "\", \"currencyCode\": \"eu\"}")
+                    .contentType(ContentType.JSON)
+                    .post(ACCOUNTS_ENDPOINT + "/transaction");
+        }
+        String today = new java.sql.Date(System.currentTimeMillis()).toString();
+
+        Response response = given()
+                .when()
+                .queryParam("from", today)
+                .queryParam("to", today)
+                .get(ACCOUNTS_ENDPOINT + "/" + sourceAccountId + "/statement");
+        response
+                .then()
+                .assertThat()
+                .statusCode(200);
+
+        JsonPath jsonPath = response.jsonPath();
+        assertThat(jsonPath.<String>get("days[0].day")).isEqualTo(today);
+        assertThat(jsonPath.<Float>get("days[0].debitAmount")).isEqualTo(5f);
+        assertThat(jsonPath.<Integer>get("days[0].debitCount")).isEqualTo(2);
+        assertThat(jsonPath.<Integer>get("days[0].failedCount")).isEqualTo(1);
+        assertThat(given().when().get(ACCOUNTS_ENDPOINT + "/" + destinationAccountId + "/statement?from=" + today + "&to=" + today)
+                .jsonPath().<Float>get("days[0].creditAmount")).isEqualTo(5f);
+    }
+
+    @Test
+    public void shouldReturn400WhenSettingBalanceStripesWithoutStripedBalanceStore() {
+        Integer accountId = given()
+                .when()
+                .body(getAccount("testemail54.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT)
+                .jsonPath().<Integer>get("accountId");
+
+        Response response = given()
+                .when()
+                .queryParam("count", 4)
+                .put(ACCOUNTS_ENDPOINT + "/" + accountId + "/stripes");
+        response
+                .then()
+                .assertThat()
+                .statusCode(400);
+        assertThat(response.getBody().asString()).isEqualTo(BALANCE_STRIPES_NOT_SUPPORTED.getMessage());
+    }
+
+    @Test
+    public void shouldReturn400WhenGetStatementWithoutDays() {
+        given()
+                .when()
+                .get(ACCOUNTS_ENDPOINT + "/1/statement")
+                .then()
+                .assertThat()
+                .statusCode(400);
+    }
+
+    @Test
+    public void shouldReconcileBalancesInBackground() throws Exception {
+        given()
+                .when()
+                .body(getAccount("testemail53.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT);
+
+        Response response = given()
+                .when()
+                .post("http://localhost:8086/rev/admin/reconciliation");
+        assertThat(response.getStatusCode()).isIn(202, 409);
+
+        JsonPath report = given().when().get("http://localhost:8086/rev/admin/reconciliation").jsonPath();
+        for (int i = 0; i < 100 && "RUNNING".equals(report.get("status")); i++) {
+            Thread.sleep(100);
+            report = given().when().get("http://localhost:8086/rev/admin/reconciliation").jsonPath();
+        }
+        assertThat(report.<String>get("status")).isEqualTo("FINISHED");
+        assertThat(report.<Integer>get("accountsChecked")).isGreaterThan(0);
+        assertThat(report.<Integer>get("partitionsDone")).isEqualTo(report.<Integer>get("partitions"));
+    }
+
+    @Test
+    public void shouldExposeRequestLatencyAndCountersAsPrometheusMetrics() {
+        given()
+                .when()
+                .body(getAccount("testemail33.pl"))
+                .contentType(ContentType.JSON)
+                .post(ACCOUNTS_ENDPOINT);
+
+        String metrics = given()
+                .when()
+                .get("http://localhost:8086/rev/metrics")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .extract()
+                .asString();
+
+        assertThat(metrics).contains("rev_http_request_duration_seconds{endpoint=\"create-account\",quantile=\"0.99\"}");
+        assertThat(metrics).contains("rev_repository_call_duration_seconds_count{method=\"account.createAccount\"}");
+        assertThat(metrics).contains("rev_db_connections_active");
+        assertThat(metrics).contains("rev_jetty_threads_busy");
+        assertThat(metrics).contains("rev_account_lock_wait_seconds_total");
+    }
+
     private String getAccount(String email) {
         return "{\n" +
                 "\t\"username\" : \"john\",\n" +
@@ -0,0 +1,146 @@
+package com.rev.controller;
+
+import com.rev.common.exception.AccountNotExistsException;
+import com.rev.metrics.Metrics;
+import com.rev.metrics.PrometheusWriter;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestExecutorTest {
+
+    private final ExecutorService executorService = mock(ExecutorService.class);
+    private final AsyncResponse asyncResponse = mock(AsyncResponse.class);
+    private final Metrics metrics = new Metrics();
+    private final RequestExecutor requestExecutor = new RequestExecutor(executorService, metrics);
+
+    @Test
+    public void shouldResumeWithHandlerResponse() {
+        // given
+        runTasksInline();
+        Response response = Response.ok().build();
+
+        // when
+        requestExecutor.execute(asyncResponse, "get-account", () -> response);
+
+        // then
+        verify(asyncResponse).setTimeout(anyLong(), eq(TimeUnit.MILLISECONDS));
+        verify(asyncResponse).resume(response);
+    }
+
+    @Test
+    public void shouldResumeWithHandlerException() {
+        // given
+        runTasksInline();
+        AccountNotExistsException exception = new AccountNotExistsException("account not exists");
+
+        // when
+        requestExecutor.execute(asyncResponse, "get-account", () -> {
+            throw exception;
+        });
+
+        // then
+        verify(asyncResponse).resume(exception);
+    }
+
+    @Test
+    public void shouldAnswerServiceUnavailableWhenExecutorRejects() {
+        // given
+        doThrow(new RejectedExecutionException("rejected")).when(executorService).execute(any(Runnable.class));
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+
+        // when
+        requestExecutor.execute(asyncResponse, "get-account", () -> Response.ok().build());
+
+        // then
+        verify(asyncResponse).resume(response.capture());
+        assertThat(response.getValue().getStatus()).isEqualTo(503);
+    }
+
+    @Test
+    public void shouldAnswerServiceUnavailableOnTimeout() {
+        // given
+        ArgumentCaptor<TimeoutHandler> timeoutHandler = ArgumentCaptor.forClass(TimeoutHandler.class);
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        requestExecutor.execute(asyncResponse, "get-account", () -> Response.ok().build());
+        verify(asyncResponse).setTimeoutHandler(timeoutHandler.capture());
+
+        // when
+        timeoutHandler.getValue().handleTimeout(asyncResponse);
+
+        // then
+        verify(asyncResponse).resume(response.capture());
+        assertThat(response.getValue().getStatus()).isEqualTo(503);
+    }
+
+    @Test
+    public void shouldNotTimeOutMutations() {
+        // given
+        runTasksInline();
+        Response response = Response.status(201).build();
+
+        // when
+        requestExecutor.executeMutation(asyncResponse, "add-transaction", () -> response);
+
+        // then
+        verify(asyncResponse, never()).setTimeout(anyLong(), any(TimeUnit.class));
+        verify(asyncResponse, never()).setTimeoutHandler(any(TimeoutHandler.class));
+        verify(asyncResponse).resume(response);
+    }
+
+    @Test
+    public void shouldRecordLatencyOfStreamedResponseOnceItIsWritten() throws Exception {
+        // given
+        runTasksInline();
+        when(asyncResponse.resume(any(Response.class))).thenReturn(true);
+        ArgumentCaptor<Response> response = ArgumentCaptor.forClass(Response.class);
+        requestExecutor.execute(asyncResponse, "get-all-accounts", () -> Response.ok()
+                .entity((StreamingOutput) outputStream -> outputStream.write('['))
+                .build());
+        verify(asyncResponse).resume(response.capture());
+        String beforeWritten = scrape();
+
+        // when
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getValue().getEntity()).write(body);
+
+        // then
+        assertThat(body.toString()).isEqualTo("[");
+        assertThat(beforeWritten).contains("rev_http_request_duration_seconds_count{endpoint=\"get-all-accounts\"} 0\n");
+        assertThat(scrape()).contains("rev_http_request_duration_seconds_count{endpoint=\"get-all-accounts\"} 1\n");
+    }
+
+    private String scrape() throws IOException {
+        StringWriter writer = new StringWriter();
+        metrics.write(new PrometheusWriter(writer));
+        return writer.toString();
+    }
+
+    private void runTasksInline() {
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(executorService).execute(any(Runnable.class));
+    }
+}
@@ -0,0 +1,82 @@
+package com.rev.metrics;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MetricsTest {
+
+    private final Metrics metrics = new Metrics();
+
+    @Test
+    public void shouldWriteTimersWithQuantilesSumCountAndMax() throws Exception {
+        // given
+        metrics.requestTimer("get-account").record(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100));
+        metrics.repositoryTimer("account.findAccountById");
+
+        // when
+        String scrape = scrape();
+
+        // then
+        assertThat(scrape).contains("# TYPE rev_http_request_duration_seconds summary\n");
+        assertThat(scrape).contains("rev_http_request_duration_seconds{endpoint=\"get-account\",quantile=\"0.5\"} 0.1");
+        assertThat(scrape).contains("rev_http_request_duration_seconds{endpoint=\"get-account\",quantile=\"0.999\"} 0.1");
+        assertThat(scrape).contains("rev_http_request_duration_seconds_sum{endpoint=\"get-account\"} 0.1");
+        assertThat(scrape).contains("rev_http_request_duration_seconds_count{endpoint=\"get-account\"} 1\n");
+        assertThat(scrape).contains("# TYPE rev_http_request_duration_seconds_max gauge\n");
+        assertThat(scrape).contains("rev_http_request_duration_seconds_max{endpoint=\"get-account\"} 0.1");
+        assertThat(scrape).contains("rev_repository_call_duration_seconds_count{method=\"account.findAccountById\"} 0\n");
+    }
+
+    @Test
+    public void shouldWriteEveryCounterAndGauge() throws Exception {
+        // given
+        metrics.countTransfer(TransactionStatus.SUCCESS, null);
+        metrics.countTransfer(TransactionStatus.FAILED, ErrorsCode.NOT_ENOUGH_BALANCE);
+        metrics.countErrorResponse(ErrorsCode.ACCOUNT_NOT_EXISTS);
+        metrics.countRequestTimeout();
+        metrics.countRejectedRequest();
+        metrics.countAccountImport(5, 2);
+        metrics.registerGauge("rev_pending", "Pending things", () -> 7);
+
+        // when
+        String scrape = scrape();
+
+        // then
+        assertThat(scrape).contains("rev_transfers_total{status=\"SUCCESS\"} 1\n");
+        assertThat(scrape).contains("rev_transfers_total{status=\"FAILED\"} 1\n");
+        assertThat(scrape).contains("rev_transfer_errors_total{code=\"NOT_ENOUGH_BALANCE\"} 1\n");
+        assertThat(scrape).contains("rev_transfer_errors_total{code=\"ACCOUNT_NOT_EXISTS\"} 0\n");
+        assertThat(scrape).contains("rev_error_responses_total{code=\"ACCOUNT_NOT_EXISTS\"} 1\n");
+        assertThat(scrape).contains("rev_request_timeouts_total 1\n");
+        assertThat(scrape).contains("rev_rejected_requests_total 1\n");
+        assertThat(scrape).contains("rev_account_import_rows_total{outcome=\"imported\"} 5\n");
+        assertThat(scrape).contains("rev_account_import_rows_total{outcome=\"failed\"} 2\n");
+        assertThat(scrape).contains("# HELP rev_pending Pending things\n# TYPE rev_pending gauge\nrev_pending 7\n");
+    }
+
+    @Test
+    public void shouldAnnounceEveryFamilyOnce() throws Exception {
+        // given
+        metrics.requestTimer("get-account").record(System.nanoTime());
+        metrics.requestTimer("add-transaction").record(System.nanoTime());
+
+        // when
+        String scrape = scrape();
+
+        // then
+        assertThat(scrape.split("# TYPE rev_http_request_duration_seconds summary\n", -1)).hasSize(2);
+        assertThat(scrape.split("# TYPE rev_transfers_total counter\n", -1)).hasSize(2);
+    }
+
+    private String scrape() throws Exception {
+        StringWriter writer = new StringWriter();
+        metrics.write(new PrometheusWriter(writer));
+        return writer.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.rev.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PrometheusWriterTest {
+
+    private final StringWriter output = new StringWriter();
+    private final PrometheusWriter writer = new PrometheusWriter(output);
+
+    @Test
+    public void shouldWriteFamilyBeforeItsSamples() throws Exception {
+        // when
+        writer.family("rev_transfers_total", "counter", "Processed transfers");
+        writer.sample("rev_transfers_total", 3);
+        writer.sample("rev_transfers_total", "status", "FAILED", 1);
+        writer.sample("rev_latency_seconds", "endpoint", "get-account", "quantile", "0.99", 0.25);
+
+        // then
+        assertThat(output.toString()).isEqualTo("# HELP rev_transfers_total Processed transfers\n"
+                + "# TYPE rev_transfers_total counter\n"
+                + "rev_transfers_total 3\n"
+                + "rev_transfers_total{status=\"FAILED\"} 1\n"
+                + "rev_latency_seconds{endpoint=\"get-account\",quantile=\"0.99\"} 0.25\n");
+    }
+
+    @Test
+    public void shouldEscapeLabelValuesAndHelp() throws Exception {
+        // when
+        writer.family("rev_gauge", "gauge", "a \\ in\ntwo lines");
+        writer.sample("rev_gauge", "path", "C:\\tmp\\\"x\"\nnext", 1);
+
+        // then
+        assertThat(output.toString()).isEqualTo("# HELP rev_gauge a \\\\ in\\ntwo lines\n"
+                + "# TYPE rev_gauge gauge\n"
+                + "rev_gauge{path=\"C:\\\\tmp\\\\\\\"x\\\"\\nnext\"} 1\n");
+    }
+
+    @Test
+    public void shouldFormatValuesPrometheusCanParse() throws Exception {
+        // when
+        writer.sample("whole", -42);
+        writer.sample("fraction", 0.000125);
+        writer.sample("huge", 1e20);
+        writer.sample("positive_infinity", Double.POSITIVE_INFINITY);
+        writer.sample("negative_infinity", Double.NEGATIVE_INFINITY);
+        writer.sample("not_a_number", Double.NaN);
+
+        // then
+        assertThat(output.toString()).isEqualTo("whole -42\n"
+                + "fraction 1.25E-4\n"
+                + "huge 1.0E20\n"
+                + "positive_infinity +Inf\n"
+                + "negative_infinity -Inf\n"
+                + "not_a_number NaN\n");
+    }
+}
@@ -0,0 +1,67 @@
+package com.rev.repository;
+
+import com.rev.dao.AccountDao;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class AccountCacheTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    @Test
+    public void shouldReturnOnlyAccountMetadata() {
+        // given
+        AccountCache accountCache = new AccountCache(10, 60_000);
+        accountCache.put(AccountDao.builder().accountId(1l).currencyCode(CURRENCY_CODE).balance(1000).build());
+
+        // when
+        AccountDao accountDao = accountCache.get(1l);
+
+        // then
+        assertThat(accountDao.getAccountId()).isEqualTo(1l);
+        assertThat(accountDao.getCurrencyCode()).isEqualTo(CURRENCY_CODE);
+        assertThat(accountDao.getBalance()).isEqualTo(0);
+        assertThat(accountCache.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldMissAfterInvalidation() {
+        // given
+        AccountCache accountCache = new AccountCache(10, 60_000);
+        accountCache.put(AccountDao.builder().accountId(1l).currencyCode(CURRENCY_CODE).build());
+
+        // when
+        accountCache.invalidate(1l);
+
+        // then
+        assertThat(accountCache.get(1l)).isNull();
+        assertThat(accountCache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldExpireEntries() {
+        // given
+        AccountCache accountCache = new AccountCache(10, 0);
+        accountCache.put(AccountDao.builder().accountId(1l).currencyCode(CURRENCY_CODE).build());
+
+        // when && then
+        assertThat(accountCache.get(1l)).isNull();
+        assertThat(accountCache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldStayWithinMaxSize() {
+        // given
+        AccountCache accountCache = new AccountCache(10, 60_000);
+
+        // when
+        for (long accountId = 1; accountId <= 100; accountId++) {
+            accountCache.put(AccountDao.builder().accountId(accountId).currencyCode(CURRENCY_CODE).build());
+        }
+
+        // then
+        assertThat(accountCache.size()).isLessThanOrEqualTo(10);
+        assertThat(accountCache.getEvictions()).isGreaterThan(0);
+    }
+}
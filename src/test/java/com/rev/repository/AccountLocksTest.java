@@ -0,0 +1,76 @@
+package com.rev.repository;
+
+import org.junit.Test;
+
+import javax.persistence.LockTimeoutException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class AccountLocksTest {
+
+    @Test
+    public void shouldTimeOutAndReleaseStripesWhenAccountIsLockedByAnotherTransfer() throws Exception {
+        // given
+        AccountLocks accountLocks = new AccountLocks(16, 50);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> holder = executor.submit(() -> {
+            try (AccountLocks.Locked held = accountLocks.lock(List.of(2L))) {
+                locked.countDown();
+                release.await();
+            }
+            return null;
+        });
+        locked.await();
+
+        // when
+        try {
+            accountLocks.lock(List.of(1L, 2L));
+            fail("lock should time out");
+        } catch (LockTimeoutException e) {
+            // expected
+        }
+
+        // then
+        release.countDown();
+        holder.get();
+        executor.shutdown();
+        assertThat(accountLocks.getStripe(accountLocks.stripeIndex(2L)).getTimeouts()).isEqualTo(1);
+        assertThat(accountLocks.getStripe(accountLocks.stripeIndex(2L)).getMaxQueueDepth()).isEqualTo(1);
+        try (AccountLocks.Locked held = accountLocks.lock(List.of(1L, 2L))) {
+            assertThat(accountLocks.getStripe(accountLocks.stripeIndex(2L)).getAcquisitions()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void shouldLockStripeSharedByTwoAccountsOnce() {
+        // given
+        AccountLocks accountLocks = new AccountLocks(4, 50);
+
+        // when
+        try (AccountLocks.Locked held = accountLocks.lock(List.of(5L, 1L, 9L))) {
+            // then
+            assertThat(accountLocks.stripeIndex(1L)).isEqualTo(accountLocks.stripeIndex(5L));
+        }
+        assertThat(accountLocks.getStripe(1).getAcquisitions()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotLockWhenDisabled() {
+        // given
+        AccountLocks accountLocks = new AccountLocks(0, 50);
+
+        // when
+        try (AccountLocks.Locked held = accountLocks.lock(List.of(1L, 2L))) {
+            // then
+            assertThat(accountLocks.getStripeCount()).isEqualTo(0);
+        }
+    }
+}
@@ -1,6 +1,151 @@
 package com.rev.repository;
 
-//TODO: add tests
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
 public class AccountRepositoryImplTest {
 
+    private static final String CURRENCY_CODE = "EUR";
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> implementations() {
+        return List.of(new Object[]{"jpa"}, new Object[]{"jdbc"});
+    }
+
+    @Parameterized.Parameter
+    public String implementation;
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private EntityManager entityManager;
+    private AccountRepository accountRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        AccountCache accountCache = new AccountCache(10, 60_000);
+        accountRepository = "jdbc".equals(implementation)
+                ? new JdbcAccountRepository(new JdbcConnections(entityManagerFactory), accountCache)
+                : new AccountRepositoryImpl(entityManager, accountCache, new ColumnBalanceStore());
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldCreateAndFindAccount() {
+        // given
+        AccountDao accountDao = createAccount("create@rev.com", 1050);
+
+        // when
+        AccountDao foundAccount = accountRepository.findAccountById(accountDao.getAccountId());
+
+        // then
+        assertThat(accountDao.getAccountId()).isGreaterThan(0);
+        assertThat(foundAccount.getAccountId()).isEqualTo(accountDao.getAccountId());
+        assertThat(foundAccount.getUsername()).isEqualTo("john");
+        assertThat(foundAccount.getEmail()).isEqualTo(accountDao.getEmail());
+        assertThat(foundAccount.getBalance()).isEqualTo(1050);
+        assertThat(foundAccount.getCurrencyCode()).isEqualTo(CURRENCY_CODE);
+    }
+
+    @Test
+    public void shouldReturnEmptyAccountWhenAccountNotExists() {
+        // when
+        AccountDao accountDao = accountRepository.findAccountById(Long.MAX_VALUE);
+
+        // then
+        assertThat(accountDao.getAccountId()).isEqualTo(0);
+    }
+
+    @Test(expected = Exception.class)
+    public void shouldRejectAccountWithTakenEmail() {
+        // given
+        AccountDao accountDao = createAccount("taken@rev.com", 0);
+
+        // when
+        accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(accountDao.getEmail())
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    @Test
+    public void shouldFindAccountsByIds() {
+        // given
+        AccountDao first = createAccount("ids1@rev.com", 1);
+        AccountDao second = createAccount("ids2@rev.com", 2);
+        createAccount("ids3@rev.com", 3);
+
+        // when
+        List<AccountDao> accounts = accountRepository.findAccountsByIds(List.of(first.getAccountId(), second.getAccountId(), Long.MAX_VALUE));
+
+        // then
+        assertThat(accounts).hasSize(2);
+        assertThat(accounts.stream().mapToLong(AccountDao::getBalance).sum()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldUpdateAccountBalance() throws Exception {
+        // given
+        AccountDao accountDao = createAccount("update@rev.com", 100);
+        accountDao.setBalance(250);
+
+        // when
+        accountRepository.updateAccountBalance(accountDao);
+
+        // then
+        assertThat(accountRepository.findAccountById(accountDao.getAccountId()).getBalance()).isEqualTo(250);
+    }
+
+    @Test
+    public void shouldDeleteAccount() {
+        // given
+        AccountDao accountDao = createAccount("delete@rev.com", 100);
+
+        // when
+        accountRepository.deleteAccount(accountDao.getAccountId());
+
+        // then
+        assertThat(accountRepository.findAccountById(accountDao.getAccountId()).getAccountId()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldStreamAccountsInIdOrder() {
+        // given
+        AccountDao first = createAccount("stream1@rev.com", 1);
+        AccountDao second = createAccount("stream2@rev.com", 2);
+        List<Long> accountIds = new ArrayList<>();
+
+        // when
+        accountRepository.forEachAccount(accountDao -> accountIds.add(accountDao.getAccountId()));
+
+        // then
+        assertThat(accountIds).contains(first.getAccountId(), second.getAccountId());
+        assertThat(accountIds.indexOf(first.getAccountId())).isLessThan(accountIds.indexOf(second.getAccountId()));
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(implementation + System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
 }
@@ -0,0 +1,116 @@
+package com.rev.repository;
+
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BalanceSnapshotterTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private final BalanceStore balanceStore = new EventSourcedBalanceStore();
+    private EntityManager entityManager;
+    private AccountRepositoryImpl accountRepository;
+    private TransactionRepositoryImpl transactionRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), balanceStore);
+        transactionRepository = new TransactionRepositoryImpl(entityManager, new TransferLockMetrics(), balanceStore);
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldServeBalanceFromSnapshotAndEventsAfterIt() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("snapshot1@rev.com", 1000);
+        AccountDao accountTo = createAccount("snapshot2@rev.com", 0);
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 300));
+
+        // when
+        long snapshotBalance = snapshotBalanceOf(accountFrom);
+        long balance = accountRepository.findAccountById(accountFrom.getAccountId()).getBalance();
+
+        // then
+        assertThat(snapshotBalance).isEqualTo(0);
+        assertThat(balance).isEqualTo(700);
+        assertThat(accountRepository.findAccountById(accountTo.getAccountId()).getBalance()).isEqualTo(300);
+    }
+
+    @Test
+    public void shouldFoldEventsIntoSnapshot() {
+        // given
+        AccountDao accountFrom = createAccount("snapshot3@rev.com", 1000);
+        AccountDao accountTo = createAccount("snapshot4@rev.com", 0);
+        transactionRepository.addTransactions(List.of(transaction(accountFrom, accountTo, 100), transaction(accountFrom, accountTo, 200)));
+        accountRepository.updateAccountBalance(AccountDao.builder().accountId(accountTo.getAccountId()).balance(50).build());
+        BalanceSnapshotter balanceSnapshotter = new BalanceSnapshotter(entityManagerFactory, 1, false);
+
+        // when
+        int snapshotted = balanceSnapshotter.snapshot();
+
+        // then
+        assertThat(snapshotted).isGreaterThanOrEqualTo(2);
+        assertThat(snapshotBalanceOf(accountFrom)).isEqualTo(700);
+        assertThat(snapshotBalanceOf(accountTo)).isEqualTo(50);
+        assertThat(accountRepository.findAccountById(accountFrom.getAccountId()).getBalance()).isEqualTo(700);
+        assertThat(accountRepository.findAccountById(accountTo.getAccountId()).getBalance()).isEqualTo(50);
+        assertThat(balanceSnapshotter.snapshot()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectTransferAboveCurrentBalance() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("snapshot5@rev.com", 100);
+        AccountDao accountTo = createAccount("snapshot6@rev.com", 0);
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 80));
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 30));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(accountRepository.findAccountById(accountFrom.getAccountId()).getBalance()).isEqualTo(20);
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private long snapshotBalanceOf(AccountDao accountDao) {
+        entityManager.clear();
+        return entityManager.find(AccountDao.class, accountDao.getAccountId()).getBalance();
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .message("")
+                .build();
+    }
+}
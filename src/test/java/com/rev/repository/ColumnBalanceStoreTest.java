@@ -0,0 +1,64 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import javax.persistence.EntityManager;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ColumnBalanceStoreTest {
+
+    private final EntityManager entityManager = mock(EntityManager.class);
+    private final ColumnBalanceStore balanceStore = spy(new ColumnBalanceStore());
+
+    @Test
+    public void shouldDebitFirstWhenSourceHasTheLowerAccountId() {
+        // given
+        doReturn(1).when(balanceStore).debit(eq(entityManager), anyLong(), anyLong());
+        doReturn(1).when(balanceStore).credit(eq(entityManager), anyLong(), anyLong());
+
+        // when
+        ErrorsCode errorsCode = balanceStore.transfer(entityManager, 1, 2, 10);
+
+        // then
+        assertThat(errorsCode).isNull();
+        InOrder inOrder = inOrder(balanceStore);
+        inOrder.verify(balanceStore).debit(entityManager, 1, 10);
+        inOrder.verify(balanceStore).credit(entityManager, 2, 10);
+    }
+
+    @Test
+    public void shouldCreditFirstWhenDestinationHasTheLowerAccountId() {
+        // given
+        doReturn(1).when(balanceStore).debit(eq(entityManager), anyLong(), anyLong());
+        doReturn(1).when(balanceStore).credit(eq(entityManager), anyLong(), anyLong());
+
+        // when
+        ErrorsCode errorsCode = balanceStore.transfer(entityManager, 2, 1, 10);
+
+        // then
+        assertThat(errorsCode).isNull();
+        InOrder inOrder = inOrder(balanceStore);
+        inOrder.verify(balanceStore).credit(entityManager, 1, 10);
+        inOrder.verify(balanceStore).debit(entityManager, 2, 10);
+    }
+
+    @Test
+    public void shouldNotCreditAfterFailedDebitOfLowerAccountId() {
+        // given
+        doReturn(0).when(balanceStore).debit(eq(entityManager), anyLong(), anyLong());
+        when(entityManager.find(any(), eq(1L))).thenReturn(null);
+
+        // when
+        ErrorsCode errorsCode = balanceStore.transfer(entityManager, 1, 2, 10);
+
+        // then
+        assertThat(errorsCode).isEqualTo(ErrorsCode.SRC_ACCOUNT_NOT_EXISTS);
+        verify(balanceStore, never()).credit(eq(entityManager), anyLong(), anyLong());
+    }
+}
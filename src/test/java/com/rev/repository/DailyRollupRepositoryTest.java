@@ -0,0 +1,134 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.DailyRollupDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class DailyRollupRepositoryTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+    private static final Date DAY = Date.valueOf("2024-03-01");
+    private static final Date NEXT_DAY = Date.valueOf("2024-03-02");
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private EntityManager entityManager;
+    private AccountRepositoryImpl accountRepository;
+    private TransactionRepositoryImpl transactionRepository;
+    private DailyRollupRepository dailyRollupRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        BalanceStore balanceStore = new ColumnBalanceStore();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), balanceStore);
+        transactionRepository = new TransactionRepositoryImpl(entityManager, new TransferLockMetrics(), balanceStore);
+        dailyRollupRepository = new DailyRollupRepository(entityManager);
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldAddTransfersToDailyRollupsOfBothAccounts() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("rollup1@rev.com", 1000);
+        AccountDao accountTo = createAccount("rollup2@rev.com", 0);
+
+        // when
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 300, DAY));
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 200, DAY));
+        transactionRepository.addTransaction(accountTo, accountFrom, transaction(accountTo, accountFrom, 50, NEXT_DAY));
+        TransactionDao failed = transaction(accountFrom, accountTo, 5000, NEXT_DAY);
+        failed.setStatus(TransactionStatus.FAILED);
+        failed.setMessage(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        transactionRepository.addTransaction(failed);
+
+        // then
+        List<DailyRollupDao> rollups = dailyRollupRepository.getRollups(accountFrom.getAccountId(), DAY, NEXT_DAY);
+        assertThat(rollups).hasSize(2);
+        assertRollup(rollups.get(0), DAY, 500, 2, 0, 0, 0);
+        assertRollup(rollups.get(1), NEXT_DAY, 0, 0, 50, 1, 1);
+        assertRollup(dailyRollupRepository.getRollups(accountTo.getAccountId(), DAY, DAY).get(0), DAY, 0, 0, 500, 2, 0);
+    }
+
+    @Test
+    public void shouldAddBatchToDailyRollupsOncePerAccountAndDay() {
+        // given
+        AccountDao accountFrom = createAccount("rollup3@rev.com", 100);
+        AccountDao accountTo = createAccount("rollup4@rev.com", 0);
+        TransactionDao invalidCurrency = transaction(accountFrom, accountTo, 1, DAY);
+        invalidCurrency.setStatus(TransactionStatus.FAILED);
+
+        // when
+        transactionRepository.addTransactions(List.of(
+                transaction(accountFrom, accountTo, 60, DAY),
+                transaction(accountFrom, accountTo, 60, DAY),
+                invalidCurrency,
+                transaction(accountFrom, accountTo, 40, DAY)));
+
+        // then
+        assertRollup(dailyRollupRepository.getRollups(accountFrom.getAccountId(), DAY, DAY).get(0), DAY, 100, 2, 0, 0, 2);
+        assertRollup(dailyRollupRepository.getRollups(accountTo.getAccountId(), DAY, DAY).get(0), DAY, 0, 0, 100, 2, 0);
+    }
+
+    @Test
+    public void shouldReadOnlyRollupsOfRequestedDays() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("rollup5@rev.com", 100);
+        AccountDao accountTo = createAccount("rollup6@rev.com", 0);
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 10, DAY));
+
+        // when
+        List<DailyRollupDao> rollups = dailyRollupRepository.getRollups(accountFrom.getAccountId(), NEXT_DAY, NEXT_DAY);
+
+        // then
+        assertThat(rollups).isEmpty();
+    }
+
+    private static void assertRollup(DailyRollupDao rollup, Date day, long debitAmount, long debitCount, long creditAmount,
+                                     long creditCount, long failedCount) {
+        assertThat(rollup.getDay()).isEqualTo(day);
+        assertThat(rollup.getCurrencyCode()).isEqualTo(CURRENCY_CODE);
+        assertThat(rollup.getDebitAmount()).isEqualTo(debitAmount);
+        assertThat(rollup.getDebitCount()).isEqualTo(debitCount);
+        assertThat(rollup.getCreditAmount()).isEqualTo(creditAmount);
+        assertThat(rollup.getCreditCount()).isEqualTo(creditCount);
+        assertThat(rollup.getFailedCount()).isEqualTo(failedCount);
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount, Date day) {
+        return TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(day)
+                .message("")
+                .build();
+    }
+}
@@ -0,0 +1,230 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class GroupCommitTransactionRepositoryTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private final TransferLockMetrics transferLockMetrics = new TransferLockMetrics();
+    // holds the committer in the transfer of the gate account until the transfers under test are queued behind it
+    private final CountDownLatch gateEntered = new CountDownLatch(1);
+    private final CountDownLatch gateReleased = new CountDownLatch(1);
+    private EntityManager entityManager;
+    private AccountRepositoryImpl accountRepository;
+    private GroupCommitTransactionRepository groupCommitRepository;
+    private AccountDao gate;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        ColumnBalanceStore balanceStore = new ColumnBalanceStore();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), balanceStore);
+        gate = createAccount("group-gate@rev.com", 100);
+        groupCommitRepository = new GroupCommitTransactionRepository(entityManagerFactory, transferLockMetrics, new ColumnBalanceStore() {
+            @Override
+            public ErrorsCode transfer(EntityManager entityManager, long fromAccountId, long toAccountId, long amount) {
+                if (fromAccountId == gate.getAccountId()) {
+                    gateEntered.countDown();
+                    try {
+                        gateReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.transfer(entityManager, fromAccountId, toAccountId, amount);
+            }
+        }, () -> new TransactionRepositoryImpl(entityManagerFactory.createEntityManager(), new TransferLockMetrics(), balanceStore));
+    }
+
+    @After
+    public void tearDown() {
+        gateReleased.countDown();
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldCommitGroupAndRollBackRejectedTransfersToTheirSavepoints() throws Exception {
+        // given
+        AccountDao payer = createAccount("group1@rev.com", 1000);
+        AccountDao payee = createAccount("group2@rev.com", 0);
+        AccountDao poorPayer = createAccount("group3@rev.com", 50);
+        long groups = groupCommitRepository.getGroups();
+        long groupedTransfers = groupCommitRepository.getGroupedTransfers();
+
+        // when
+        List<TransactionDao> results = transferInOneGroup(List.of(
+                transaction(payer, payee, 300),
+                transaction(poorPayer, payee, 100),
+                transaction(payer, payee, 200),
+                transaction(poorPayer, payer, 50),
+                transaction(payer.getAccountId(), Long.MAX_VALUE, 10)));
+
+        // then
+        assertThat(results.get(0).getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(results.get(1).getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(results.get(1).getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        assertThat(results.get(2).getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(results.get(3).getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(results.get(4).getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(results.get(4).getMessage()).isEqualTo(ErrorsCode.DES_ACCOUNT_NOT_EXISTS.getMessage());
+        results.forEach(result -> assertThat(result.getTransactionId()).isNotNull());
+        assertThat(balanceInDatabase(payer)).isEqualTo(550L);
+        assertThat(balanceInDatabase(payee)).isEqualTo(500L);
+        assertThat(balanceInDatabase(poorPayer)).isEqualTo(0L);
+        assertThat(groupCommitRepository.getGroups() - groups).isEqualTo(2);
+        assertThat(groupCommitRepository.getGroupedTransfers() - groupedTransfers).isEqualTo(1 + 5);
+    }
+
+    @Test
+    public void shouldCommitEveryTransferOnItsOwnWhenGroupFails() throws Exception {
+        // given
+        AccountDao payer = createAccount("group4@rev.com", 1000);
+        AccountDao payee = createAccount("group5@rev.com", 0);
+        AccountDao poorPayer = createAccount("group6@rev.com", 50);
+        TransactionDao poison = transaction(payer, payee, 200);
+        poison.setMessage(new String(new char[300]).replace('\0', 'x'));
+        long groups = groupCommitRepository.getGroups();
+        long groupedTransfers = groupCommitRepository.getGroupedTransfers();
+
+        // when
+        List<TransactionDao> results = transferInOneGroup(List.of(
+                transaction(payer, payee, 300),
+                transaction(poorPayer, payee, 100),
+                poison,
+                transaction(payer, payee, 100)));
+
+        // then
+        assertThat(results.get(0).getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(results.get(1).getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(results.get(1).getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        assertThat(results.get(2).getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(results.get(2).getMessage()).isEqualTo(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+        assertThat(results.get(2).getTransactionId()).isNull();
+        assertThat(results.get(3).getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(balanceInDatabase(payer)).isEqualTo(600L);
+        assertThat(balanceInDatabase(payee)).isEqualTo(400L);
+        assertThat(balanceInDatabase(poorPayer)).isEqualTo(50L);
+        // the gate and every transfer but the poisoned one, each committed as a group of its own
+        assertThat(groupCommitRepository.getGroups() - groups).isEqualTo(1 + 3);
+        assertThat(groupCommitRepository.getGroupedTransfers() - groupedTransfers).isEqualTo(1 + 3);
+    }
+
+    @Test
+    public void shouldRetryTransferWhileAnotherTransactionHoldsItsAccount() throws Exception {
+        // given
+        AccountDao payer = createAccount("group7@rev.com", 1000);
+        AccountDao payee = createAccount("group8@rev.com", 0);
+        EntityManager holder = entityManagerFactory.createEntityManager();
+        holder.getTransaction().begin();
+        holder.createQuery("update account set balance = balance where accountId = ?1")
+                .setParameter(1, payee.getAccountId())
+                .executeUpdate();
+        long lockConflicts = transferLockMetrics.getLockConflicts();
+
+        // when
+        CompletableFuture<TransactionDao> result = CompletableFuture.supplyAsync(
+                () -> groupCommitRepository.addTransaction(payer, payee, transaction(payer, payee, 300)));
+        while (transferLockMetrics.getLockConflicts() == lockConflicts && !result.isDone()) {
+            Thread.sleep(5);
+        }
+        holder.getTransaction().commit();
+        holder.close();
+
+        // then
+        TransactionDao transferred = result.get();
+        assertThat(transferred.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(transferred.getTransactionId()).isNotNull();
+        assertThat(transferLockMetrics.getRetries()).isGreaterThan(0);
+        assertThat(balanceInDatabase(payer)).isEqualTo(700L);
+        assertThat(balanceInDatabase(payee)).isEqualTo(300L);
+    }
+
+    /**
+     * Submits the transfers from threads of their own while the committer is held in the gate transfer, so they are
+     * all queued when it takes its next group.
+     */
+    private List<TransactionDao> transferInOneGroup(List<TransactionDao> transactionDaos) throws InterruptedException {
+        AccountDao gateTarget = createAccount("group-gate-target@rev.com", 0);
+        Thread gateThread = new Thread(() -> groupCommitRepository.addTransaction(gate, gateTarget, transaction(gate, gateTarget, 1)));
+        gateThread.start();
+        gateEntered.await();
+
+        AtomicReferenceArray<TransactionDao> results = new AtomicReferenceArray<>(transactionDaos.size());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < transactionDaos.size(); i++) {
+            int index = i;
+            TransactionDao transactionDao = transactionDaos.get(i);
+            AccountDao accountFrom = AccountDao.builder().accountId(transactionDao.getFromAccountId()).build();
+            AccountDao accountTo = AccountDao.builder().accountId(transactionDao.getToAccountId()).build();
+            Thread thread = new Thread(() -> results.set(index, groupCommitRepository.addTransaction(accountFrom, accountTo, transactionDao)));
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(5);
+            }
+        }
+        gateReleased.countDown();
+
+        gateThread.join();
+        List<TransactionDao> transferred = new ArrayList<>();
+        for (int i = 0; i < threads.size(); i++) {
+            threads.get(i).join();
+            transferred.add(results.get(i));
+        }
+        return transferred;
+    }
+
+    private Long balanceInDatabase(AccountDao accountDao) {
+        entityManager.clear();
+        return (Long) entityManager.createQuery("select balance from account where accountId = ?1")
+                .setParameter(1, accountDao.getAccountId())
+                .getSingleResult();
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount) {
+        return transaction(accountFrom.getAccountId(), accountTo.getAccountId(), amount);
+    }
+
+    private static TransactionDao transaction(long fromAccountId, long toAccountId, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(fromAccountId)
+                .toAccountId(toAccountId)
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(Date.valueOf("2024-03-01"))
+                .message("")
+                .build();
+    }
+}
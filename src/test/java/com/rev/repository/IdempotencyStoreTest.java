@@ -0,0 +1,138 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.exception.IdempotencyKeyReusedException;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class IdempotencyStoreTest {
+
+    private static final String IDEMPOTENCY_KEY = "key";
+    private static final String FINGERPRINT = "1:2:100:EUR";
+
+    @Test
+    public void shouldReturnFirstOutcomeWithoutExecutingAgain() throws Exception {
+        // given
+        IdempotencyStore idempotencyStore = new IdempotencyStore(null, 10, 60_000, false);
+        AtomicInteger executions = new AtomicInteger();
+        idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> {
+            executions.incrementAndGet();
+            return ErrorsCode.NOT_ENOUGH_BALANCE;
+        });
+
+        // when
+        ErrorsCode outcome = idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> {
+            executions.incrementAndGet();
+            return null;
+        });
+
+        // then
+        assertThat(outcome).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE);
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(idempotencyStore.getReplays()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectKeyReusedForDifferentRequest() throws Exception {
+        // given
+        IdempotencyStore idempotencyStore = new IdempotencyStore(null, 10, 60_000, false);
+        AtomicInteger executions = new AtomicInteger();
+        idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> {
+            executions.incrementAndGet();
+            return null;
+        });
+
+        // when
+        try {
+            idempotencyStore.execute(IDEMPOTENCY_KEY, "1:2:999:EUR", () -> {
+                executions.incrementAndGet();
+                return null;
+            });
+            fail();
+        } catch (IdempotencyKeyReusedException expected) {
+        }
+
+        // then
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(idempotencyStore.getReplays()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCollapseConcurrentDuplicates() throws Exception {
+        // given
+        IdempotencyStore idempotencyStore = new IdempotencyStore(null, 10, 60_000, false);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ErrorsCode> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> {
+                    executions.incrementAndGet();
+                    started.countDown();
+                    release.await();
+                    return null;
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        started.await();
+
+        // when
+        CompletableFuture<ErrorsCode> duplicate = CompletableFuture.supplyAsync(() -> {
+            try {
+                return idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> {
+                    executions.incrementAndGet();
+                    return ErrorsCode.UNEXPECTED_ERROR;
+                });
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        release.countDown();
+
+        // then
+        assertThat(first.get()).isNull();
+        assertThat(duplicate.get()).isNull();
+        assertThat(executions.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldExecuteAgainAfterException() throws Exception {
+        // given
+        IdempotencyStore idempotencyStore = new IdempotencyStore(null, 10, 60_000, false);
+        try {
+            idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> {
+                throw new IllegalStateException("database down");
+            });
+        } catch (IllegalStateException expected) {
+        }
+
+        // when
+        ErrorsCode outcome = idempotencyStore.execute(IDEMPOTENCY_KEY, FINGERPRINT, () -> null);
+
+        // then
+        assertThat(outcome).isNull();
+        assertThat(idempotencyStore.getReplays()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldStayWithinMaxSize() throws Exception {
+        // given
+        IdempotencyStore idempotencyStore = new IdempotencyStore(null, 10, 60_000, false);
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            idempotencyStore.execute(IDEMPOTENCY_KEY + i, FINGERPRINT, () -> null);
+        }
+
+        // then
+        assertThat(idempotencyStore.size()).isLessThanOrEqualTo(11);
+    }
+}
@@ -0,0 +1,46 @@
+package com.rev.repository;
+
+import com.rev.configuration.GuiceInjectorProvider;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.PreparedStatement;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class JdbcConnectionsTest {
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+
+    @Test
+    public void shouldReuseStatementOfPhysicalConnection() throws Exception {
+        // given
+        JdbcConnections jdbcConnections = new JdbcConnections(entityManagerFactory, 2);
+
+        // when
+        boolean sameStatement = jdbcConnections.inTransaction(connection ->
+                jdbcConnections.prepare(connection, "select 1") == jdbcConnections.prepare(connection, "select 1"));
+
+        // then
+        assertThat(sameStatement).isTrue();
+        assertThat(jdbcConnections.getHits()).isEqualTo(1);
+        assertThat(jdbcConnections.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCloseLeastRecentlyUsedStatementWhenCacheIsFull() throws Exception {
+        // given
+        JdbcConnections jdbcConnections = new JdbcConnections(entityManagerFactory, 2);
+
+        // when
+        PreparedStatement evicted = jdbcConnections.inTransaction(connection -> {
+            PreparedStatement first = jdbcConnections.prepare(connection, "select 1");
+            jdbcConnections.prepare(connection, "select 2");
+            jdbcConnections.prepare(connection, "select 3");
+            return first;
+        });
+
+        // then
+        assertThat(evicted.isClosed()).isTrue();
+    }
+}
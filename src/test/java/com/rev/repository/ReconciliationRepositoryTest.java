@@ -0,0 +1,121 @@
+package com.rev.repository;
+
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import com.rev.repository.ReconciliationRepository.Discrepancy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ReconciliationRepositoryTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private EntityManager entityManager;
+    private AccountRepositoryImpl accountRepository;
+    private TransactionRepositoryImpl transactionRepository;
+    private ReconciliationRepository reconciliationRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        BalanceStore balanceStore = new ColumnBalanceStore();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), balanceStore);
+        transactionRepository = new TransactionRepositoryImpl(entityManager, new TransferLockMetrics(), balanceStore);
+        reconciliationRepository = new ReconciliationRepository(new JdbcConnections(entityManagerFactory), balanceStore);
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldFindNoDiscrepancyAfterTransfersAndBalanceUpdates() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("reconcile1@rev.com", 1000);
+        AccountDao accountTo = createAccount("reconcile2@rev.com", 0);
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 300));
+        transactionRepository.addTransaction(accountTo, accountFrom, transaction(accountTo, accountFrom, 100));
+        accountRepository.updateAccountBalance(AccountDao.builder()
+                .accountId(accountTo.getAccountId())
+                .balance(5000)
+                .build());
+
+        // when
+        List<Discrepancy> discrepancies = new ArrayList<>();
+        int accounts = reconciliationRepository.reconcile(accountFrom.getAccountId(), accountTo.getAccountId(), discrepancies);
+
+        // then
+        assertThat(accounts).isEqualTo(2);
+        assertThat(discrepancies).isEmpty();
+    }
+
+    @Test
+    public void shouldFindBalanceChangedWithoutTransaction() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("reconcile3@rev.com", 1000);
+        AccountDao accountTo = createAccount("reconcile4@rev.com", 0);
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 300));
+        entityManager.getTransaction().begin();
+        entityManager.createQuery("update account set balance = balance + 25 where accountId = ?1")
+                .setParameter(1, accountTo.getAccountId())
+                .executeUpdate();
+        entityManager.getTransaction().commit();
+
+        // when
+        Discrepancy discrepancy = reconciliationRepository.reconcile(accountTo.getAccountId());
+
+        // then
+        assertThat(discrepancy).isNotNull();
+        assertThat(discrepancy.getAccount().getAccountId()).isEqualTo(accountTo.getAccountId());
+        assertThat(discrepancy.getAccount().getBalance()).isEqualTo(325L);
+        assertThat(discrepancy.getExpectedBalance()).isEqualTo(300L);
+        assertThat(reconciliationRepository.reconcile(accountFrom.getAccountId())).isNull();
+    }
+
+    @Test
+    public void shouldReturnAccountIdRange() {
+        // given
+        AccountDao account = createAccount("reconcile5@rev.com", 0);
+
+        // when
+        long[] accountIdRange = reconciliationRepository.getAccountIdRange();
+
+        // then
+        assertThat(accountIdRange[0]).isLessThanOrEqualTo(account.getAccountId());
+        assertThat(accountIdRange[1]).isGreaterThanOrEqualTo(account.getAccountId());
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(Date.valueOf("2024-03-01"))
+                .message("")
+                .build();
+    }
+}
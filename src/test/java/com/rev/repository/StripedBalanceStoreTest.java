@@ -0,0 +1,240 @@
+package com.rev.repository;
+
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class StripedBalanceStoreTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private final StripedBalanceStore balanceStore = new StripedBalanceStore();
+    private EntityManager entityManager;
+    private AccountRepositoryImpl accountRepository;
+    private TransactionRepositoryImpl transactionRepository;
+    private ReconciliationRepository reconciliationRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), balanceStore);
+        transactionRepository = new TransactionRepositoryImpl(entityManager, new TransferLockMetrics(), balanceStore);
+        reconciliationRepository = new ReconciliationRepository(new JdbcConnections(entityManagerFactory), balanceStore);
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldCreditHotAccountStripesAndReadTheirSum() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped1@rev.com", 0);
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 4);
+        List<AccountDao> payers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            payers.add(createAccount("striped-payer" + i + "@rev.com", 1000));
+        }
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(payers.size());
+        List<Future<List<TransactionDao>>> transfers = new ArrayList<>();
+        for (AccountDao payer : payers) {
+            transfers.add(executor.submit(() -> {
+                EntityManager threadEntityManager = entityManagerFactory.createEntityManager();
+                TransactionRepositoryImpl threadRepository = new TransactionRepositoryImpl(threadEntityManager, new TransferLockMetrics(), balanceStore);
+                List<TransactionDao> results = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    results.add(threadRepository.addTransaction(payer, merchant, transaction(payer, merchant, 10)));
+                }
+                threadEntityManager.close();
+                return results;
+            }));
+        }
+        List<TransactionDao> results = new ArrayList<>();
+        for (Future<List<TransactionDao>> transfer : transfers) {
+            results.addAll(transfer.get());
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(results).hasSize(40);
+        for (TransactionDao result : results) {
+            assertThat(result.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        }
+        assertThat(accountRepository.findAccountById(merchant.getAccountId()).getBalance()).isEqualTo(400L);
+        assertThat(accountRowBalance(merchant)).isEqualTo(0L);
+        assertThat(stripeBalances(merchant)).hasSize(4);
+        assertThat(reconciliationRepository.reconcile(merchant.getAccountId())).isNull();
+    }
+
+    @Test
+    public void shouldSweepStripesIntoAccountRowWhenDebitNeedsThem() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped2@rev.com", 50);
+        AccountDao payer = createAccount("striped3@rev.com", 1000);
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 2);
+        transactionRepository.addTransaction(payer, merchant, transaction(payer, merchant, 300));
+
+        // when
+        TransactionDao payout = transactionRepository.addTransaction(merchant, payer, transaction(merchant, payer, 200));
+
+        // then
+        assertThat(payout.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(accountRowBalance(merchant)).isEqualTo(150L);
+        assertThat(stripeBalances(merchant)).containsOnly(0L);
+        assertThat(accountRepository.findAccountById(merchant.getAccountId()).getBalance()).isEqualTo(150L);
+        assertThat(reconciliationRepository.reconcile(merchant.getAccountId())).isNull();
+    }
+
+    @Test
+    public void shouldSweepStripesOfHotAccountsInBatch() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped4@rev.com", 0);
+        AccountDao payer = createAccount("striped5@rev.com", 1000);
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 2);
+        transactionRepository.addTransaction(payer, merchant, transaction(payer, merchant, 300));
+
+        // when
+        List<TransactionDao> batch = transactionRepository.addTransactions(List.of(
+                transaction(merchant, payer, 250),
+                transaction(payer, merchant, 100)));
+
+        // then
+        assertThat(batch.get(0).getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(accountRepository.findAccountById(merchant.getAccountId()).getBalance()).isEqualTo(150L);
+        assertThat(reconciliationRepository.reconcile(merchant.getAccountId())).isNull();
+    }
+
+    @Test
+    public void shouldFoldStripesBackWhenAccountIsNoLongerHot() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped6@rev.com", 0);
+        AccountDao payer = createAccount("striped7@rev.com", 1000);
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 3);
+        transactionRepository.addTransaction(payer, merchant, transaction(payer, merchant, 70));
+
+        // when
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 0);
+        transactionRepository.addTransaction(payer, merchant, transaction(payer, merchant, 5));
+
+        // then
+        assertThat(stripeBalances(merchant)).isEmpty();
+        assertThat(accountRowBalance(merchant)).isEqualTo(75L);
+        assertThat(accountRepository.findAccountById(merchant.getAccountId()).getBalance()).isEqualTo(75L);
+    }
+
+    @Test
+    public void shouldSetBalanceOfHotAccount() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped8@rev.com", 0);
+        AccountDao payer = createAccount("striped9@rev.com", 1000);
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 2);
+        transactionRepository.addTransaction(payer, merchant, transaction(payer, merchant, 40));
+
+        // when
+        accountRepository.updateAccountBalance(AccountDao.builder()
+                .accountId(merchant.getAccountId())
+                .balance(500)
+                .build());
+
+        // then
+        assertThat(accountRepository.findAccountById(merchant.getAccountId()).getBalance()).isEqualTo(500L);
+        assertThat(reconciliationRepository.reconcile(merchant.getAccountId())).isNull();
+    }
+
+    @Test
+    public void shouldKeepAccountOrdinaryWhenSettingItsStripesRollsBack() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped12@rev.com", 0);
+        assertThat(balanceStore.spreadsCredits(entityManager, merchant.getAccountId())).isFalse();
+
+        // when
+        entityManager.getTransaction().begin();
+        balanceStore.setBalanceStripes(entityManager, merchant.getAccountId(), 2);
+        entityManager.getTransaction().rollback();
+
+        // then
+        assertThat(balanceStore.spreadsCredits(entityManager, merchant.getAccountId())).isFalse();
+        assertThat(stripeBalances(merchant)).isEmpty();
+    }
+
+    @Test
+    public void shouldNotLockHotAccountWhenTransferringIntoIt() throws Exception {
+        // given
+        AccountDao merchant = createAccount("striped10@rev.com", 0);
+        AccountDao payer = createAccount("striped11@rev.com", 1000);
+        accountRepository.setBalanceStripes(merchant.getAccountId(), 2);
+        AccountLocks accountLocks = new AccountLocks(256, 100);
+        AccountLocks.Stripe payerStripe = accountLocks.getStripe(accountLocks.stripeIndex(payer.getAccountId()));
+        AccountLocks.Stripe merchantStripe = accountLocks.getStripe(accountLocks.stripeIndex(merchant.getAccountId()));
+        assertThat(payerStripe).isNotSameAs(merchantStripe);
+        TransactionRepositoryImpl lockingRepository = new TransactionRepositoryImpl(entityManager, new TransferLockMetrics(), balanceStore, accountLocks);
+
+        // when
+        TransactionDao result;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (AccountLocks.Locked merchantLocked = accountLocks.lock(List.of(merchant.getAccountId()))) {
+            result = executor.submit(() -> lockingRepository.addTransaction(payer, merchant, transaction(payer, merchant, 10))).get();
+        }
+        executor.shutdown();
+
+        // then
+        assertThat(result.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(payerStripe.getAcquisitions()).isEqualTo(1L);
+        assertThat(merchantStripe.getAcquisitions()).isEqualTo(1L);
+        assertThat(merchantStripe.getTimeouts()).isEqualTo(0L);
+        assertThat(accountRepository.findAccountById(merchant.getAccountId()).getBalance()).isEqualTo(10L);
+    }
+
+    private long accountRowBalance(AccountDao accountDao) {
+        return (Long) entityManager.createQuery("select balance from account where accountId = ?1")
+                .setParameter(1, accountDao.getAccountId())
+                .getSingleResult();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Long> stripeBalances(AccountDao accountDao) {
+        return entityManager.createQuery("select balance from account_balance_stripe where accountId = ?1 order by stripe")
+                .setParameter(1, accountDao.getAccountId())
+                .getResultList();
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(Date.valueOf("2024-03-01"))
+                .message("")
+                .build();
+    }
+}
@@ -0,0 +1,153 @@
+package com.rev.repository;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PessimisticLockException;
+import java.sql.Date;
+import java.sql.SQLException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class TransactionRepositoryImplRetryTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private final BalanceStore balanceStore = mock(BalanceStore.class);
+    private final TransferLockMetrics transferLockMetrics = new TransferLockMetrics();
+    private EntityManager entityManager;
+    private AccountRepository accountRepository;
+    private TransactionRepositoryImpl transactionRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), new ColumnBalanceStore());
+        transactionRepository = new TransactionRepositoryImpl(entityManager, transferLockMetrics, balanceStore);
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldRetryTransferAfterLockConflict() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("retry1@rev.com");
+        AccountDao accountTo = createAccount("retry2@rev.com");
+        when(balanceStore.transfer(any(), anyLong(), anyLong(), anyLong()))
+                .thenThrow(new PessimisticLockException())
+                .thenReturn(null);
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(transactionDao.getTransactionId()).isNotNull();
+        verify(balanceStore, times(2)).transfer(any(), anyLong(), anyLong(), anyLong());
+        assertThat(transferLockMetrics.getLockConflicts()).isEqualTo(1);
+        assertThat(transferLockMetrics.getRetries()).isEqualTo(1);
+        assertThat(transferLockMetrics.getExhaustedRetries()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFailTransferOnceRetriesAreExhausted() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("exhausted1@rev.com");
+        AccountDao accountTo = createAccount("exhausted2@rev.com");
+        when(balanceStore.transfer(any(), anyLong(), anyLong(), anyLong())).thenThrow(new PessimisticLockException());
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(transactionDao.getMessage()).isEqualTo(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+        assertThat(transactionDao.getTransactionId()).isNull();
+        verify(balanceStore, times(MAX_ATTEMPTS)).transfer(any(), anyLong(), anyLong(), anyLong());
+        assertThat(transferLockMetrics.getRetries()).isEqualTo(MAX_ATTEMPTS - 1);
+        assertThat(transferLockMetrics.getExhaustedRetries()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotRetryOtherFailures() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("other1@rev.com");
+        AccountDao accountTo = createAccount("other2@rev.com");
+        when(balanceStore.transfer(any(), anyLong(), anyLong(), anyLong())).thenThrow(new IllegalStateException("broken"));
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        verify(balanceStore, times(1)).transfer(any(), anyLong(), anyLong(), anyLong());
+        assertThat(transferLockMetrics.getLockConflicts()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRecognizeLockConflictsBySqlState() {
+        // given
+        Exception deadlock = new RuntimeException(new SQLException("deadlock", "40001"));
+        Exception constraint = new RuntimeException(new SQLException("duplicate", "23505"));
+
+        // when
+        boolean deadlockRetried = TransactionRepositoryImpl.retryAfterLockConflict(transferLockMetrics, deadlock, 1);
+        boolean constraintRetried = TransactionRepositoryImpl.retryAfterLockConflict(transferLockMetrics, constraint, 1);
+
+        // then
+        assertThat(deadlockRetried).isTrue();
+        assertThat(constraintRetried).isFalse();
+    }
+
+    @Test
+    public void shouldDoubleBackoffUpToTheMaximumWithoutOverflowing() {
+        // when
+        long first = TransactionRepositoryImpl.backoffMillis(1);
+        long second = TransactionRepositoryImpl.backoffMillis(2);
+        long late = TransactionRepositoryImpl.backoffMillis(100);
+        long last = TransactionRepositoryImpl.backoffMillis(Integer.MAX_VALUE);
+
+        // then
+        assertThat(first).isEqualTo(5);
+        assertThat(second).isEqualTo(10);
+        assertThat(late).isEqualTo(200);
+        assertThat(last).isEqualTo(200);
+    }
+
+    private AccountDao createAccount(String email) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(1000)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo) {
+        return TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(10)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(new Date(System.currentTimeMillis()))
+                .message("")
+                .build();
+    }
+}
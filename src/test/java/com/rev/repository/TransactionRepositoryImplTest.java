@@ -1,6 +1,280 @@
 package com.rev.repository;
 
-//TODO: add tests
-class TransactionRepositoryImplTest {
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionDirection;
+import com.rev.common.TransactionStatus;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 
-}
\ No newline at end of file
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class TransactionRepositoryImplTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<Object[]> implementations() {
+        return List.of(new Object[]{"jpa"}, new Object[]{"jdbc"});
+    }
+
+    @Parameterized.Parameter
+    public String implementation;
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private final AccountLocks accountLocks = new AccountLocks(256, 1000);
+    private EntityManager entityManager;
+    private AccountRepository accountRepository;
+    private TransactionRepository transactionRepository;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+        accountRepository = new AccountRepositoryImpl(entityManager, new AccountCache(10, 60_000), new ColumnBalanceStore());
+        transactionRepository = transactionRepository(entityManager);
+    }
+
+    @After
+    public void tearDown() {
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldTransferBetweenAccounts() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("transfer1@rev.com", 1000);
+        AccountDao accountTo = createAccount("transfer2@rev.com", 0);
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 300));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(transactionDao.getTransactionId()).isNotNull();
+        assertThat(balanceOf(accountFrom)).isEqualTo(700);
+        assertThat(balanceOf(accountTo)).isEqualTo(300);
+    }
+
+    @Test
+    public void shouldTakeAccountLocksOfTransfersAndBatches() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("locks1@rev.com", 1000);
+        AccountDao accountTo = createAccount("locks2@rev.com", 0);
+        AccountLocks.Stripe fromStripe = accountLocks.getStripe(accountLocks.stripeIndex(accountFrom.getAccountId()));
+        AccountLocks.Stripe toStripe = accountLocks.getStripe(accountLocks.stripeIndex(accountTo.getAccountId()));
+        assertThat(fromStripe).isNotSameAs(toStripe);
+
+        // when
+        transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 300));
+        transactionRepository.addTransactions(List.of(transaction(accountFrom, accountTo, 100)));
+
+        // then
+        assertThat(fromStripe.getAcquisitions()).isEqualTo(2L);
+        assertThat(toStripe.getAcquisitions()).isEqualTo(2L);
+        assertThat(balanceInDatabase(accountTo)).isEqualTo(400);
+    }
+
+    @Test
+    public void shouldRejectTransferAboveBalance() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("above1@rev.com", 100);
+        AccountDao accountTo = createAccount("above2@rev.com", 0);
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 101));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(transactionDao.getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        assertThat(balanceOf(accountFrom)).isEqualTo(100);
+        assertThat(balanceOf(accountTo)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectDebitWhenBalanceDroppedSinceAccountWasRead() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("guard1@rev.com", 100);
+        AccountDao accountTo = createAccount("guard2@rev.com", 0);
+        assertThat(balanceOf(accountFrom)).isEqualTo(100);
+        EntityManager otherEntityManager = entityManagerFactory.createEntityManager();
+        try {
+            transactionRepository(otherEntityManager).addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 80));
+        } finally {
+            otherEntityManager.close();
+        }
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 50));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(transactionDao.getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        assertThat(balanceInDatabase(accountFrom)).isEqualTo(20);
+        assertThat(balanceInDatabase(accountTo)).isEqualTo(80);
+    }
+
+    @Test
+    public void shouldNotOverdrawWithConcurrentDebits() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("concurrent1@rev.com", 100);
+        AccountDao accountTo = createAccount("concurrent2@rev.com", 0);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        List<Future<TransactionDao>> futures = new ArrayList<>();
+
+        // when
+        try {
+            for (int i = 0; i < 2; i++) {
+                futures.add(executorService.submit(() -> {
+                    EntityManager threadEntityManager = entityManagerFactory.createEntityManager();
+                    try {
+                        TransactionRepository threadRepository = transactionRepository(threadEntityManager);
+                        start.await();
+                        return threadRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 60));
+                    } finally {
+                        threadEntityManager.close();
+                    }
+                }));
+            }
+            start.countDown();
+            List<TransactionDao> transactionDaos = new ArrayList<>();
+            for (Future<TransactionDao> future : futures) {
+                transactionDaos.add(future.get(30, TimeUnit.SECONDS));
+            }
+
+            // then
+            assertThat(transactionDaos.stream().map(TransactionDao::getStatus).collect(Collectors.toList()))
+                    .containsOnly(TransactionStatus.SUCCESS, TransactionStatus.FAILED);
+            assertThat(transactionDaos.stream().filter(transactionDao -> transactionDao.getStatus() == TransactionStatus.FAILED)
+                    .map(TransactionDao::getMessage).collect(Collectors.toList()))
+                    .containsExactly(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+            assertThat(balanceInDatabase(accountFrom)).isEqualTo(40);
+            assertThat(balanceInDatabase(accountTo)).isEqualTo(60);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRejectTransferToMissingAccount() throws Exception {
+        // given
+        AccountDao accountFrom = createAccount("missing@rev.com", 100);
+        AccountDao accountTo = AccountDao.builder().accountId(Long.MAX_VALUE).build();
+
+        // when
+        TransactionDao transactionDao = transactionRepository.addTransaction(accountFrom, accountTo, transaction(accountFrom, accountTo, 10));
+
+        // then
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(transactionDao.getMessage()).isEqualTo(ErrorsCode.DES_ACCOUNT_NOT_EXISTS.getMessage());
+        assertThat(balanceOf(accountFrom)).isEqualTo(100);
+    }
+
+    @Test
+    public void shouldKeepOutcomeOfEveryTransferInBatch() {
+        // given
+        AccountDao accountFrom = createAccount("batch1@rev.com", 100);
+        AccountDao accountTo = createAccount("batch2@rev.com", 0);
+        TransactionDao failedBefore = transaction(accountFrom, accountTo, 1);
+        failedBefore.setStatus(TransactionStatus.FAILED);
+
+        // when
+        List<TransactionDao> transactionDaos = transactionRepository.addTransactions(List.of(
+                transaction(accountFrom, accountTo, 60),
+                transaction(accountFrom, accountTo, 60),
+                failedBefore,
+                transaction(accountTo, accountFrom, 10)));
+
+        // then
+        assertThat(transactionDaos.stream().map(TransactionDao::getStatus).collect(Collectors.toList()))
+                .containsExactly(TransactionStatus.SUCCESS, TransactionStatus.FAILED, TransactionStatus.FAILED, TransactionStatus.SUCCESS);
+        assertThat(transactionDaos.get(1).getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        assertThat(transactionDaos.stream().allMatch(transactionDao -> transactionDao.getTransactionId() != null)).isTrue();
+        assertThat(balanceOf(accountFrom)).isEqualTo(50);
+        assertThat(balanceOf(accountTo)).isEqualTo(50);
+    }
+
+    @Test
+    public void shouldPageAccountHistoryByDirection() throws Exception {
+        // given
+        AccountDao account = createAccount("history1@rev.com", 100);
+        AccountDao other = createAccount("history2@rev.com", 100);
+        TransactionDao first = transactionRepository.addTransaction(account, other, transaction(account, other, 1));
+        TransactionDao second = transactionRepository.addTransaction(other, account, transaction(other, account, 2));
+        TransactionDao third = transactionRepository.addTransaction(account, other, transaction(account, other, 3));
+
+        // when
+        List<TransactionDao> both = transactionRepository.getTransactionsForAccount(account.getAccountId(), null, TransactionDirection.BOTH, 2);
+        List<TransactionDao> nextPage = transactionRepository.getTransactionsForAccount(account.getAccountId(), both.get(1).getTransactionId(), TransactionDirection.BOTH, 2);
+        List<TransactionDao> incoming = transactionRepository.getTransactionsForAccount(account.getAccountId(), null, TransactionDirection.IN, 10);
+
+        // then
+        assertThat(ids(both)).containsExactly(first.getTransactionId(), second.getTransactionId());
+        assertThat(ids(nextPage)).containsExactly(third.getTransactionId());
+        assertThat(ids(incoming)).containsExactly(second.getTransactionId());
+        assertThat(incoming.get(0).getAmount()).isEqualTo(2);
+        assertThat(incoming.get(0).getCurrencyCode()).isEqualTo(CURRENCY_CODE);
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        return accountRepository.createAccount(AccountDao.builder()
+                .username("john")
+                .email(implementation + System.nanoTime() + email)
+                .balance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build());
+    }
+
+    private long balanceOf(AccountDao accountDao) {
+        return accountRepository.findAccountById(accountDao.getAccountId()).getBalance();
+    }
+
+    private long balanceInDatabase(AccountDao accountDao) {
+        EntityManager readEntityManager = entityManagerFactory.createEntityManager();
+        try {
+            return readEntityManager.find(AccountDao.class, accountDao.getAccountId()).getBalance();
+        } finally {
+            readEntityManager.close();
+        }
+    }
+
+    private TransactionRepository transactionRepository(EntityManager entityManager) {
+        return "jdbc".equals(implementation)
+                ? new JdbcTransactionRepository(new JdbcConnections(entityManagerFactory), new TransferLockMetrics(), accountLocks)
+                : new TransactionRepositoryImpl(entityManager, new TransferLockMetrics(), new ColumnBalanceStore(), accountLocks);
+    }
+
+    private static List<Long> ids(List<TransactionDao> transactionDaos) {
+        return transactionDaos.stream().map(TransactionDao::getTransactionId).collect(Collectors.toList());
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(accountFrom.getAccountId())
+                .toAccountId(accountTo.getAccountId())
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(new Date(System.currentTimeMillis()))
+                .message("")
+                .build();
+    }
+}
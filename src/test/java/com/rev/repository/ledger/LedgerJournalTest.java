@@ -0,0 +1,142 @@
+package com.rev.repository.ledger;
+
+import com.rev.common.TransactionStatus;
+import com.rev.dao.TransactionDao;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LedgerJournalTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final String CURRENCY_CODE = "EUR";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldReadAppendedRecordsAfterSequence() throws Exception {
+        // given
+        Path directory = folder.getRoot().toPath();
+        LedgerJournal journal = new LedgerJournal(directory, SEGMENT_SIZE, LedgerJournal.FsyncPolicy.RECORD, 10);
+        journal.open(0);
+        journal.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 150, TransactionStatus.SUCCESS, ""));
+        journal.append(LedgerJournal.RECORD, transaction(2l, 3l, 700, TransactionStatus.FAILED, "not compatible currency"));
+
+        // when
+        List<TransactionDao> records = new ArrayList<>();
+        List<Byte> kinds = new ArrayList<>();
+        long lastSequence = LedgerJournal.read(directory, 1, (sequence, kind, transactionDao) -> {
+            kinds.add(kind);
+            records.add(transactionDao);
+        });
+
+        // then
+        assertThat(lastSequence).isEqualTo(2);
+        assertThat(records).hasSize(1);
+        assertThat(kinds).containsOnly(LedgerJournal.RECORD);
+        TransactionDao transactionDao = records.get(0);
+        assertThat(transactionDao.getFromAccountId()).isEqualTo(2l);
+        assertThat(transactionDao.getToAccountId()).isEqualTo(3l);
+        assertThat(transactionDao.getAmount()).isEqualTo(700);
+        assertThat(transactionDao.getCurrencyCode()).isEqualTo(CURRENCY_CODE);
+        assertThat(transactionDao.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(transactionDao.getMessage()).isEqualTo("not compatible currency");
+    }
+
+    @Test
+    public void shouldRollSegmentsAndContinueSequenceAfterReopen() throws Exception {
+        // given
+        Path directory = folder.getRoot().toPath();
+        LedgerJournal journal = new LedgerJournal(directory, SEGMENT_SIZE, LedgerJournal.FsyncPolicy.GROUP, 10);
+        journal.open(0);
+        for (int i = 0; i < 50; i++) {
+            journal.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 100, TransactionStatus.SUCCESS, ""));
+        }
+        journal.force();
+
+        // when
+        LedgerJournal reopened = new LedgerJournal(directory, SEGMENT_SIZE, LedgerJournal.FsyncPolicy.GROUP, 10);
+        reopened.open(0);
+        long sequence = reopened.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 100, TransactionStatus.SUCCESS, ""));
+
+        // then
+        assertThat(LedgerJournal.segmentPaths(directory).size()).isGreaterThan(1);
+        assertThat(sequence).isEqualTo(51);
+        assertThat(LedgerJournal.read(directory, 0, (s, kind, transactionDao) -> {
+        })).isEqualTo(51);
+    }
+
+    @Test
+    public void shouldDropTornRecordAtTail() throws Exception {
+        // given
+        Path directory = folder.getRoot().toPath();
+        LedgerJournal journal = new LedgerJournal(directory, SEGMENT_SIZE, LedgerJournal.FsyncPolicy.RECORD, 10);
+        journal.open(0);
+        journal.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 100, TransactionStatus.SUCCESS, ""));
+        journal.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 200, TransactionStatus.SUCCESS, ""));
+        Path segment = LedgerJournal.segmentPaths(directory).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // corrupt the last byte of the second record's payload
+            long secondRecordEnd = 2 * recordLength(file);
+            file.seek(secondRecordEnd - 1);
+            file.write(0x7f);
+        }
+
+        // when
+        List<TransactionDao> records = new ArrayList<>();
+        long lastSequence = LedgerJournal.read(directory, 0, (sequence, kind, transactionDao) -> records.add(transactionDao));
+
+        // then
+        assertThat(lastSequence).isEqualTo(1);
+        assertThat(records).hasSize(1);
+    }
+
+    @Test
+    public void shouldDeleteProjectedSegmentsWhenRolling() throws Exception {
+        // given
+        Path directory = folder.getRoot().toPath();
+        LedgerJournal journal = new LedgerJournal(directory, SEGMENT_SIZE, LedgerJournal.FsyncPolicy.INTERVAL, 10);
+        journal.open(0);
+        long lastSequence = 0;
+        for (int i = 0; i < 50; i++) {
+            lastSequence = journal.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 100, TransactionStatus.SUCCESS, ""));
+        }
+        int segments = LedgerJournal.segmentPaths(directory).size();
+
+        // when
+        journal.markProjected(lastSequence);
+        for (int i = 0; i < 50; i++) {
+            journal.append(LedgerJournal.TRANSFER, transaction(1l, 2l, 100, TransactionStatus.SUCCESS, ""));
+        }
+
+        // then
+        assertThat(LedgerJournal.segmentPaths(directory).size()).isLessThan(2 * segments);
+        assertThat(LedgerJournal.read(directory, lastSequence, (sequence, kind, transactionDao) -> {
+        })).isEqualTo(lastSequence + 50);
+    }
+
+    private static long recordLength(RandomAccessFile file) throws Exception {
+        file.seek(0);
+        return 8 + file.readInt();
+    }
+
+    private static TransactionDao transaction(long fromAccountId, long toAccountId, long amount, TransactionStatus status, String message) {
+        return TransactionDao.builder()
+                .fromAccountId(fromAccountId)
+                .toAccountId(toAccountId)
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .date(new java.sql.Date(0))
+                .status(status)
+                .message(message)
+                .build();
+    }
+}
@@ -0,0 +1,316 @@
+package com.rev.repository.ledger;
+
+import com.rev.common.ErrorsCode;
+import com.rev.common.TransactionStatus;
+import com.rev.common.exception.ServerBusyException;
+import com.rev.configuration.GuiceInjectorProvider;
+import com.rev.dao.AccountDao;
+import com.rev.dao.TransactionDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class LedgerTransactionEngineTest {
+
+    private static final String CURRENCY_CODE = "EUR";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final EntityManagerFactory entityManagerFactory = GuiceInjectorProvider.getGuiceInjector().getInstance(EntityManagerFactory.class);
+    private final List<LedgerTransactionEngine> engines = new ArrayList<>();
+    private EntityManager entityManager;
+
+    @Before
+    public void setUp() {
+        entityManager = entityManagerFactory.createEntityManager();
+    }
+
+    @After
+    public void tearDown() {
+        engines.forEach(LedgerTransactionEngine::stop);
+        entityManager.close();
+    }
+
+    @Test
+    public void shouldDebitAndCreditAccountsAndProjectThemToDatabase() throws Exception {
+        // given
+        LedgerTransactionEngine engine = startEngine(2);
+        AccountDao accountFrom = createAccount("ledger1@rev.com", 1000);
+        AccountDao accountTo = createAccount("ledger2@rev.com", 0);
+
+        // when
+        TransactionDao first = engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transaction(accountFrom, accountTo, 300)).join();
+        TransactionDao second = engine.transfer(accountTo.getAccountId(), accountFrom.getAccountId(), transaction(accountTo, accountFrom, 100)).join();
+
+        // then
+        assertThat(first.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(second.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        awaitBalance(accountFrom, 800);
+        awaitBalance(accountTo, 200);
+        assertThat(transactionCount(accountFrom)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRejectTransferExceedingBalanceHeldByPartition() throws Exception {
+        // given
+        LedgerTransactionEngine engine = startEngine(2);
+        AccountDao accountFrom = createAccount("ledger3@rev.com", 100);
+        AccountDao accountTo = createAccount("ledger4@rev.com", 0);
+        engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transaction(accountFrom, accountTo, 60)).join();
+
+        // when
+        TransactionDao rejected = engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transaction(accountFrom, accountTo, 60)).join();
+
+        // then
+        assertThat(rejected.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(rejected.getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+        awaitBalance(accountFrom, 40);
+        awaitBalance(accountTo, 60);
+    }
+
+    @Test
+    public void shouldSetBalanceAndDeleteAccountThroughOwningPartition() throws Exception {
+        // given
+        LedgerTransactionEngine engine = startEngine(2);
+        AccountDao accountFrom = createAccount("ledger5@rev.com", 1000);
+        AccountDao accountTo = createAccount("ledger6@rev.com", 0);
+        engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transaction(accountFrom, accountTo, 100)).join();
+
+        // when
+        assertThat(engine.setBalance(accountFrom.getAccountId(), 5000).join()).isTrue();
+        TransactionDao afterUpdate = engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transaction(accountFrom, accountTo, 4000)).join();
+        assertThat(engine.deleteAccount(accountTo.getAccountId()).join()).isTrue();
+        TransactionDao afterDelete = engine.transfer(accountTo.getAccountId(), accountFrom.getAccountId(), transaction(accountTo, accountFrom, 10)).join();
+
+        // then
+        assertThat(afterUpdate.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        assertThat(afterDelete.getMessage()).isEqualTo(ErrorsCode.SRC_ACCOUNT_NOT_EXISTS.getMessage());
+        assertThat(engine.setBalance(accountTo.getAccountId(), 1).join()).isFalse();
+        awaitBalance(accountFrom, 1000);
+        awaitDeleted(accountTo);
+    }
+
+    @Test
+    public void shouldKeepBalancesOfColdDestinationsInLineWithDatabase() throws Exception {
+        // given
+        LedgerTransactionEngine engine = startEngine(4);
+        List<AccountDao> sources = new ArrayList<>();
+        List<AccountDao> destinations = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            sources.add(createAccount("ledger-source" + i + "@rev.com", 1_000_000));
+        }
+        for (int i = 0; i < 20; i++) {
+            destinations.add(createAccount("ledger-cold" + i + "@rev.com", 100));
+        }
+        AccountDao sink = createAccount("ledger-sink@rev.com", 0);
+
+        // when
+        List<CompletableFuture<TransactionDao>> results = new ArrayList<>();
+        for (int round = 0; round < 10; round++) {
+            for (AccountDao destination : destinations) {
+                for (AccountDao source : sources) {
+                    results.add(engine.transfer(source.getAccountId(), destination.getAccountId(), transaction(source, destination, 1 + round)));
+                }
+            }
+            results.forEach(CompletableFuture::join);
+        }
+
+        // then
+        results.forEach(result -> assertThat(result.join().getStatus()).isEqualTo(TransactionStatus.SUCCESS));
+        for (AccountDao destination : destinations) {
+            awaitBalance(destination, 100 + 4 * 55);
+        }
+        for (AccountDao destination : destinations) {
+            TransactionDao overdraft = engine.transfer(destination.getAccountId(), sink.getAccountId(), transaction(destination, sink, 321)).join();
+            TransactionDao everything = engine.transfer(destination.getAccountId(), sink.getAccountId(), transaction(destination, sink, 320)).join();
+            assertThat(overdraft.getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
+            assertThat(everything.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        }
+        awaitBalance(sink, 20 * 320);
+    }
+
+    @Test
+    public void shouldRefundSourceWhenDestinationOnOtherPartitionIsGone() throws Exception {
+        // given
+        LedgerTransactionEngine engine = startEngine(2);
+        AccountDao accountFrom = createAccount("ledger7@rev.com", 500);
+        AccountDao accountTo = createAccount("ledger8@rev.com", 0);
+        while (LedgerTransactionEngine.partitionOf(accountTo.getAccountId(), 2) == LedgerTransactionEngine.partitionOf(accountFrom.getAccountId(), 2)) {
+            accountTo = createAccount("ledger8@rev.com", 0);
+        }
+        assertThat(engine.deleteAccount(accountTo.getAccountId()).join()).isTrue();
+
+        // when
+        TransactionDao lost = engine.transfer(accountFrom.getAccountId(), accountTo.getAccountId(), transaction(accountFrom, accountTo, 500)).join();
+
+        // then
+        assertThat(lost.getStatus()).isEqualTo(TransactionStatus.FAILED);
+        assertThat(lost.getMessage()).isEqualTo(ErrorsCode.DES_ACCOUNT_NOT_EXISTS.getMessage());
+        AccountDao accountBack = createAccount("ledger9@rev.com", 0);
+        TransactionDao refunded = engine.transfer(accountFrom.getAccountId(), accountBack.getAccountId(), transaction(accountFrom, accountBack, 500)).join();
+        assertThat(refunded.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+        awaitBalance(accountBack, 500);
+        awaitBalance(accountFrom, 0);
+    }
+
+    @Test
+    public void shouldFailSubmitWhenRingStaysFull() {
+        // given
+        LedgerTransactionEngine engine = new LedgerTransactionEngine(entityManagerFactory, 1, 4, 16);
+        for (int i = 0; i < 4; i++) {
+            engine.transfer(1, 2, transaction(1, 2, 1));
+        }
+
+        // when
+        try {
+            engine.transfer(1, 2, transaction(1, 2, 1));
+            fail("transfer should not wait for room forever");
+        } catch (ServerBusyException e) {
+            // then
+            assertThat(e.getMessage()).isEqualTo(ErrorsCode.SERVER_BUSY.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldAcknowledgeAppliedTransfersAndStopPartitionWhenJournalFailsToForce() throws Exception {
+        // given
+        LedgerJournal journal = new LedgerJournal(folder.getRoot().toPath(), 1024, LedgerJournal.FsyncPolicy.GROUP, 10) {
+            @Override
+            void force() {
+                throw new UncheckedIOException(new IOException("disk gone"));
+            }
+        };
+        journal.open(0);
+        LedgerPartition partition = new LedgerPartition(0, 64, entityManagerFactory, new LedgerProjector(entityManagerFactory, 64, 16, null), journal);
+        partition.setPartitions(new LedgerPartition[]{partition});
+        AccountDao accountFrom = createAccount("ledger12@rev.com", 1000);
+        AccountDao accountTo = createAccount("ledger13@rev.com", 0);
+        CompletableFuture<TransactionDao> applied = partition.submit(accountFrom.getAccountId(), accountTo.getAccountId(),
+                transaction(accountFrom, accountTo, 300));
+        Thread thread = new Thread(partition);
+        thread.setDaemon(true);
+        thread.start();
+
+        try {
+            // when
+            TransactionDao first = applied.get(5, TimeUnit.SECONDS);
+            CompletableFuture<TransactionDao> second = partition.submit(accountFrom.getAccountId(), accountTo.getAccountId(),
+                    transaction(accountFrom, accountTo, 300));
+
+            // then
+            assertThat(first.getStatus()).isEqualTo(TransactionStatus.SUCCESS);
+            try {
+                second.get(5, TimeUnit.SECONDS);
+                fail("partition should not take transfers after its journal failed to force");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            }
+        } finally {
+            thread.interrupt();
+        }
+    }
+
+    @Test
+    public void shouldDeadLetterProjectionDatabaseKeepsRejecting() {
+        // given
+        LedgerProjector projector = new LedgerProjector(entityManagerFactory, 16, 16, null);
+        TransactionDao first = transaction(1, 2, 10);
+        TransactionDao poison = transaction(1, 2, 20);
+        poison.setMessage(new String(new char[300]).replace('\0', 'x'));
+        TransactionDao last = transaction(1, 2, 30);
+
+        // when
+        projector.project(entityManager, new ArrayList<>(List.of(
+                LedgerProjection.transaction(first, 0, 0),
+                LedgerProjection.transaction(poison, 0, 0),
+                LedgerProjection.transaction(last, 0, 0))));
+
+        // then
+        assertThat(projector.getDeadLetters()).isEqualTo(1);
+        assertThat(first.getTransactionId()).isNotNull();
+        assertThat(last.getTransactionId()).isNotNull();
+        assertThat(poison.getTransactionId()).isNull();
+    }
+
+    private LedgerTransactionEngine startEngine(int partitions) {
+        LedgerTransactionEngine engine = new LedgerTransactionEngine(entityManagerFactory, partitions, 64, 16);
+        engine.start();
+        engines.add(engine);
+        return engine;
+    }
+
+    private void awaitBalance(AccountDao accountDao, long balance) throws InterruptedException {
+        for (int i = 0; i < 100 && balanceInDatabase(accountDao) != balance; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(balanceInDatabase(accountDao)).isEqualTo(balance);
+    }
+
+    private void awaitDeleted(AccountDao accountDao) throws InterruptedException {
+        for (int i = 0; i < 100 && balanceInDatabase(accountDao) != null; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(balanceInDatabase(accountDao)).isNull();
+    }
+
+    private Long balanceInDatabase(AccountDao accountDao) {
+        List<?> balances = entityManager.createQuery("select balance from account where accountId = ?1")
+                .setParameter(1, accountDao.getAccountId())
+                .getResultList();
+        return balances.isEmpty() ? null : (Long) balances.get(0);
+    }
+
+    private long transactionCount(AccountDao accountDao) {
+        return (Long) entityManager.createQuery("select count(t) from transaction t where t.fromAccountId = ?1 or t.toAccountId = ?1")
+                .setParameter(1, accountDao.getAccountId())
+                .getSingleResult();
+    }
+
+    private AccountDao createAccount(String email, long balance) {
+        AccountDao accountDao = AccountDao.builder()
+                .username("john")
+                .email(System.nanoTime() + email)
+                .balance(balance)
+                .openingBalance(balance)
+                .currencyCode(CURRENCY_CODE)
+                .build();
+        entityManager.getTransaction().begin();
+        entityManager.persist(accountDao);
+        entityManager.getTransaction().commit();
+        entityManager.clear();
+        return accountDao;
+    }
+
+    private static TransactionDao transaction(AccountDao accountFrom, AccountDao accountTo, long amount) {
+        return transaction(accountFrom.getAccountId(), accountTo.getAccountId(), amount);
+    }
+
+    private static TransactionDao transaction(long fromAccountId, long toAccountId, long amount) {
+        return TransactionDao.builder()
+                .fromAccountId(fromAccountId)
+                .toAccountId(toAccountId)
+                .amount(amount)
+                .currencyCode(CURRENCY_CODE)
+                .status(TransactionStatus.SUCCESS)
+                .date(Date.valueOf("2024-03-01"))
+                .message("")
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.rev.repository.ledger;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class RingBufferTest {
+
+    @Test
+    public void shouldReturnNullWhenEmpty() {
+        // given
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+
+        // when && then
+        assertThat(ringBuffer.poll()).isNull();
+        assertThat(ringBuffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldRejectOfferWhenFull() {
+        // given
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertThat(ringBuffer.offer(i)).isTrue();
+        }
+
+        // when
+        boolean offered = ringBuffer.offer(4);
+
+        // then
+        assertThat(offered).isFalse();
+        assertThat(ringBuffer.poll()).isEqualTo(0);
+        assertThat(ringBuffer.offer(4)).isTrue();
+    }
+
+    @Test
+    public void shouldRoundCapacityUpToPowerOfTwo() {
+        // given
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(5);
+
+        // when
+        int offered = 0;
+        while (ringBuffer.offer(offered)) {
+            offered++;
+        }
+
+        // then
+        assertThat(offered).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldKeepOrderAcrossWraparound() {
+        // given
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(4);
+        int next = 0;
+        int expected = 0;
+
+        // when && then
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertThat(ringBuffer.offer(next++)).isTrue();
+            }
+            for (int i = 0; i < 3; i++) {
+                assertThat(ringBuffer.poll()).isEqualTo(expected++);
+            }
+        }
+        assertThat(ringBuffer.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldDeliverEveryElementOfConcurrentProducers() throws Exception {
+        // given
+        RingBuffer<Integer> ringBuffer = new RingBuffer<>(16);
+        int producers = 4;
+        int perProducer = 10_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ringBuffer.offer(producer * perProducer + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        // when
+        long sum = 0;
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        for (int polled = 0; polled < producers * perProducer; ) {
+            Integer element = ringBuffer.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            // every producer's elements arrive in the order it offered them
+            assertThat(element % perProducer).isGreaterThan(lastOfProducer[element / perProducer]);
+            lastOfProducer[element / perProducer] = element % perProducer;
+            sum += element;
+            polled++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // then
+        long total = (long) producers * perProducer;
+        assertThat(sum).isEqualTo(total * (total - 1) / 2);
+        assertThat(ringBuffer.poll()).isNull();
+    }
+}
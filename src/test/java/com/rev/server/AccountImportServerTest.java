@@ -0,0 +1,98 @@
+package com.rev.server;
+
+import com.rev.common.exception.InvalidParameterException;
+import com.rev.dao.AccountDao;
+import com.rev.dto.AccountImportFailureDto;
+import com.rev.dto.AccountImportResultDto;
+import com.rev.metrics.Metrics;
+import com.rev.repository.JdbcAccountRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.rev.common.ErrorsCode.EMAIL_TAKEN;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AccountImportServerTest {
+
+    @Mock
+    private JdbcAccountRepository jdbcAccountRepository;
+
+    private AccountImportServer accountImportServer;
+
+    @Before
+    public void setUp() {
+        accountImportServer = new AccountImportServer(jdbcAccountRepository, new Metrics());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldImportNdjsonAndReportFailedRows() throws Exception {
+        // given
+        given(jdbcAccountRepository.createAccounts(anyList())).willReturn(Arrays.asList(null, EMAIL_TAKEN));
+        InputStream upload = upload("{\"username\":\"anna\",\"email\":\"anna@rev.com\",\"balance\":10.5,\"currencyCode\":\"EUR\"}\n"
+                + "{\"username\":\"bob\",\"email\":\"no-email\",\"balance\":1,\"currencyCode\":\"EUR\"}\n"
+                + "\n"
+                + "{\"username\":\"carl\",\"email\":\"anna@rev.com\",\"balance\":0,\"currencyCode\":\"EUR\"}\n");
+
+        // when
+        AccountImportResultDto result = accountImportServer.importAccounts(upload, false);
+
+        // then
+        ArgumentCaptor<List<AccountDao>> accounts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcAccountRepository).createAccounts(accounts.capture());
+        assertThat(accounts.getValue()).hasSize(2);
+        assertThat(accounts.getValue().get(0).getBalance()).isEqualTo(1050);
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getFailed()).isEqualTo(2);
+        assertThat(result.getFailures()).containsExactly(
+                new AccountImportFailureDto(2, null, "INVALID_PARAMETER"),
+                new AccountImportFailureDto(4, "anna@rev.com", "EMAIL_TAKEN"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldImportCsvWithColumnsInAnyOrder() throws Exception {
+        // given
+        given(jdbcAccountRepository.createAccounts(anyList())).willReturn(Arrays.asList(null, null));
+        InputStream upload = upload("email,currencyCode,username,balance\n"
+                + "anna@rev.com,EUR,anna,1.25\n"
+                + "bob@rev.com,EUR,bob,-1\n"
+                + "carl@rev.com,JPY,carl,7\n");
+
+        // when
+        AccountImportResultDto result = accountImportServer.importAccounts(upload, true);
+
+        // then
+        ArgumentCaptor<List<AccountDao>> accounts = ArgumentCaptor.forClass(List.class);
+        verify(jdbcAccountRepository).createAccounts(accounts.capture());
+        assertThat(accounts.getValue().get(0).getUsername()).isEqualTo("anna");
+        assertThat(accounts.getValue().get(0).getBalance()).isEqualTo(125);
+        assertThat(accounts.getValue().get(1).getBalance()).isEqualTo(7);
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getFailures()).containsExactly(new AccountImportFailureDto(3, null, "INVALID_PARAMETER"));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldRejectCsvWithoutRequiredColumn() throws Exception {
+        // when
+        accountImportServer.importAccounts(upload("username,email,balance\nanna,anna@rev.com,1\n"), true);
+    }
+
+    private static InputStream upload(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
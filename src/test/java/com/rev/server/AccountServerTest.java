@@ -1,8 +1,10 @@
 package com.rev.server;
 
+import com.rev.common.Money;
 import com.rev.common.exception.AccountBalanceUpdateException;
 import com.rev.common.exception.AccountCreationException;
 import com.rev.common.exception.AccountNotExistsException;
+import com.rev.common.exception.InvalidParameterException;
 import com.rev.dao.AccountDao;
 import com.rev.dto.AccountDto;
 import com.rev.repository.AccountRepositoryImpl;
@@ -13,8 +15,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static com.rev.common.ErrorsCode.*;
 import static org.fest.assertions.Assertions.assertThat;
@@ -36,7 +39,8 @@ public class AccountServerTest {
     private static final String EMAIL = "test@email.com";
     private static final String CURRENCY_CODE = "EUR";
     private static final long ACCOUNT_ID = 1l;
-    private static final BigDecimal BALANCE = new BigDecimal(10);
+    private static final Money BALANCE = Money.of(1000, CURRENCY_CODE);
+    private static final long BALANCE_MINOR_UNITS = 1000;
 
     @Test
     public void shouldCreateAccountSuccessfully() throws AccountCreationException {
@@ -75,9 +79,9 @@ public class AccountServerTest {
     public void shouldGetAllAccounts() {
         // given
         given(accountRepository.getAllAccounts()).willReturn(List.of(
-                AccountDao.builder().accountId(1l).build(),
-                AccountDao.builder().accountId(2l).build(),
-                AccountDao.builder().accountId(3l).build()));
+                AccountDao.builder().accountId(1l).currencyCode(CURRENCY_CODE).balance(BALANCE_MINOR_UNITS).build(),
+                AccountDao.builder().accountId(2l).currencyCode(CURRENCY_CODE).balance(BALANCE_MINOR_UNITS).build(),
+                AccountDao.builder().accountId(3l).currencyCode(CURRENCY_CODE).balance(BALANCE_MINOR_UNITS).build()));
 
         // when
         List<AccountDto> accountList = accountServer.getAllAccounts();
@@ -85,9 +89,29 @@ public class AccountServerTest {
         // then
         assertThat(accountList).hasSize(3);
         assertThat(accountList).contains(
-                AccountDto.builder().accountId(1l).build(),
-                AccountDto.builder().accountId(2l).build(),
-                AccountDto.builder().accountId(3l).build());
+                AccountDto.builder().accountId(1l).currencyCode(CURRENCY_CODE).balance(BALANCE).build(),
+                AccountDto.builder().accountId(2l).currencyCode(CURRENCY_CODE).balance(BALANCE).build(),
+                AccountDto.builder().accountId(3l).currencyCode(CURRENCY_CODE).balance(BALANCE).build());
+    }
+
+    @Test
+    public void shouldPassEveryAccountToConsumer() {
+        // given
+        doAnswer(invocation -> {
+            Consumer<AccountDao> consumer = invocation.getArgument(0);
+            consumer.accept(AccountDao.builder().accountId(1l).currencyCode(CURRENCY_CODE).balance(BALANCE_MINOR_UNITS).build());
+            consumer.accept(AccountDao.builder().accountId(2l).currencyCode(CURRENCY_CODE).balance(BALANCE_MINOR_UNITS).build());
+            return null;
+        }).when(accountRepository).forEachAccount(any());
+        List<AccountDto> accountList = new ArrayList<>();
+
+        // when
+        accountServer.forEachAccount(accountList::add);
+
+        // then
+        assertThat(accountList).containsExactly(
+                AccountDto.builder().accountId(1l).currencyCode(CURRENCY_CODE).balance(BALANCE).build(),
+                AccountDto.builder().accountId(2l).currencyCode(CURRENCY_CODE).balance(BALANCE).build());
     }
 
     @Test
@@ -159,13 +183,13 @@ public class AccountServerTest {
         given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(accountDao);
         AccountDto accountDto = createAccountDto();
         accountDto.setAccountId(ACCOUNT_ID);
-        accountDto.setBalance(new BigDecimal(10));
+        accountDto.setBalance(Money.valueOf("10"));
 
         // when
         accountServer.updateAccountBalance(accountDto);
 
         // then
-        accountDao.setBalance(new BigDecimal(10));
+        accountDao.setBalance(BALANCE_MINOR_UNITS);
         verify(accountRepository).updateAccountBalance(accountDao);
         verify(accountRepository).findAccountById(ACCOUNT_ID);
     }
@@ -178,7 +202,7 @@ public class AccountServerTest {
         doThrow(new RuntimeException()).when(accountRepository).updateAccountBalance(accountDao);
         AccountDto accountDto = createAccountDto();
         accountDto.setAccountId(ACCOUNT_ID);
-        accountDto.setBalance(new BigDecimal(10));
+        accountDto.setBalance(Money.valueOf("10"));
 
         // when && then
         try {
@@ -187,12 +211,56 @@ public class AccountServerTest {
         } catch (Exception e) {
             assertThat(e).isInstanceOf(AccountBalanceUpdateException.class);
             assertThat(e.getMessage()).isEqualTo(ACCOUNT_UPDATE_BALANCE_FAILED.getMessage());
-            accountDao.setBalance(new BigDecimal(10));
+            accountDao.setBalance(BALANCE_MINOR_UNITS);
             verify(accountRepository).updateAccountBalance(accountDao);
             verify(accountRepository).findAccountById(ACCOUNT_ID);
         }
     }
 
+    @Test
+    public void shouldThrowInvalidParameterWhenSettingTooManyBalanceStripes() throws Exception {
+        // given
+        given(accountRepository.supportsBalanceStripes()).willReturn(true);
+
+        // when && then
+        try {
+            accountServer.setBalanceStripes(ACCOUNT_ID, 100_000);
+            Assert.fail();
+        } catch (InvalidParameterException e) {
+            assertThat(e.getMessage()).isEqualTo(INVALID_PARAMETER.getMessage());
+            verify(accountRepository, never()).setBalanceStripes(anyLong(), anyInt());
+        }
+    }
+
+    @Test
+    public void shouldSetBalanceStripesOfExistingAccount() throws Exception {
+        // given
+        given(accountRepository.supportsBalanceStripes()).willReturn(true);
+        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(createAccountDao());
+
+        // when
+        accountServer.setBalanceStripes(ACCOUNT_ID, 8);
+
+        // then
+        verify(accountRepository).setBalanceStripes(ACCOUNT_ID, 8);
+    }
+
+    @Test
+    public void shouldThrowInvalidParameterWhenBalanceStoreDoesNotStripeBalances() throws Exception {
+        // given
+        given(accountRepository.supportsBalanceStripes()).willReturn(false);
+
+        // when && then
+        try {
+            accountServer.setBalanceStripes(ACCOUNT_ID, 8);
+            Assert.fail();
+        } catch (InvalidParameterException e) {
+            assertThat(e.getMessage()).isEqualTo(BALANCE_STRIPES_NOT_SUPPORTED.getMessage());
+            verify(accountRepository, never()).findAccountById(anyLong());
+            verify(accountRepository, never()).setBalanceStripes(anyLong(), anyInt());
+        }
+    }
+
     private AccountDto createAccountDto() {
         return AccountDto.builder()
                 .username(USERNAME)
@@ -205,7 +273,7 @@ public class AccountServerTest {
     private AccountDao createAccountDao() {
         return AccountDao.builder()
                 .accountId(ACCOUNT_ID)
-                .balance(BALANCE)
+                .balance(BALANCE_MINOR_UNITS)
                 .currencyCode(CURRENCY_CODE)
                 .email(EMAIL)
                 .username(USERNAME)
@@ -2,14 +2,23 @@ package com.rev.server;
 
 
 import com.rev.common.ErrorsCode;
+import com.rev.common.Money;
+import com.rev.common.TransactionDirection;
 import com.rev.common.TransactionStatus;
 import com.rev.common.exception.AccountNotExistsException;
+import com.rev.common.exception.BalanceOverflowException;
 import com.rev.common.exception.InvalidCurrencyException;
+import com.rev.common.exception.InvalidParameterException;
 import com.rev.common.exception.NotEnoughBalanceException;
+import com.rev.common.exception.TransferFailedException;
 import com.rev.dao.AccountDao;
 import com.rev.dao.TransactionDao;
 import com.rev.dto.TransactionDto;
+import com.rev.dto.TransactionResultDto;
+import com.rev.metrics.Metrics;
 import com.rev.repository.AccountRepositoryImpl;
+import com.rev.repository.DailyRollupRepository;
+import com.rev.repository.IdempotencyStore;
 import com.rev.repository.TransactionRepositoryImpl;
 import org.junit.Assert;
 import org.junit.Test;
@@ -19,15 +28,17 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
-import java.math.BigDecimal;
 import java.sql.Date;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
 
+import static com.rev.common.ErrorsCode.BALANCE_OVERFLOW;
 import static com.rev.common.ErrorsCode.DES_ACCOUNT_NOT_EXISTS;
 import static com.rev.common.ErrorsCode.NOT_ENOUGH_BALANCE;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -45,20 +56,30 @@ public class TransactionServerTest {
     @Mock
     private TransactionRepositoryImpl transactionRepository;
 
+    @Mock
+    private IdempotencyStore idempotencyStore;
+
+    @Mock
+    private DailyRollupRepository dailyRollupRepository;
+
+    @Mock
+    private Metrics metrics;
+
     private static final long ACCOUNT_ID = 1l;
     private static final String CURRENCY_CODE = "EUR";
 
     @Test
-    public void shouldReturnAllTransactionForGivenAccount() throws AccountNotExistsException {
+    public void shouldReturnAllTransactionForGivenAccount() throws Exception {
         // given
         Date date = new Date(Instant.now().toEpochMilli());
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(AccountDao.builder().accountId(ACCOUNT_ID).build());
-        given(transactionRepository.getTransactionsForAccount(ACCOUNT_ID)).willReturn(
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(AccountDao.builder().accountId(ACCOUNT_ID).build());
+        given(transactionRepository.getTransactionsForAccount(ACCOUNT_ID, null, TransactionDirection.BOTH, 100)).willReturn(
                 List.of(TransactionDao.builder()
                                 .transactionId(1l)
                                 .fromAccountId(ACCOUNT_ID)
                                 .toAccountId(3l)
                                 .date(date)
+                                .amount(150)
                                 .message("ok")
                                 .status(TransactionStatus.SUCCESS)
                                 .currencyCode(CURRENCY_CODE)
@@ -68,12 +89,13 @@ public class TransactionServerTest {
                                 .fromAccountId(ACCOUNT_ID)
                                 .toAccountId(2l)
                                 .date(date)
+                                .amount(2)
                                 .message("failed")
                                 .status(TransactionStatus.FAILED)
                                 .currencyCode(CURRENCY_CODE)
                                 .build()));
         // when
-        List<TransactionDto> transactionList = transactionServer.getTransactionsForAccount(ACCOUNT_ID);
+        List<TransactionDto> transactionList = transactionServer.getTransactionsForAccount(ACCOUNT_ID, null, "both", 100);
 
         // then
         assertThat(transactionList).hasSize(2);
@@ -81,6 +103,7 @@ public class TransactionServerTest {
                         .transactionId(1l)
                         .fromAccountId(ACCOUNT_ID)
                         .toAccountId(3l)
+                        .amount(Money.valueOf("1.50"))
                         .message("ok")
                         .currencyCode(CURRENCY_CODE)
                         .status(TransactionStatus.SUCCESS.name())
@@ -90,6 +113,7 @@ public class TransactionServerTest {
                         .transactionId(2l)
                         .fromAccountId(ACCOUNT_ID)
                         .toAccountId(2l)
+                        .amount(Money.valueOf("0.02"))
                         .message("failed")
                         .currencyCode(CURRENCY_CODE)
                         .status(TransactionStatus.FAILED.name())
@@ -101,20 +125,33 @@ public class TransactionServerTest {
     public void shouldThrowAccountNotExistExceptionWhenGettingAllTransactionForGivenAccountAndAccountDoesNotExist() {
 
         // giben
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(new AccountDao());
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(new AccountDao());
         // when && then
         try {
-            transactionServer.getTransactionsForAccount(ACCOUNT_ID);
+            transactionServer.getTransactionsForAccount(ACCOUNT_ID, null, "both", 100);
             Assert.fail();
         } catch (Exception e) {
             assertThat(e).isInstanceOf(AccountNotExistsException.class);
             assertThat(e.getMessage()).isEqualTo(ErrorsCode.ACCOUNT_NOT_EXISTS.getMessage());
-            verify(accountRepository).findAccountById(ACCOUNT_ID);
-            verify(transactionRepository, never()).getTransactionsForAccount(ArgumentMatchers.anyLong());
+            verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+            verify(transactionRepository, never()).getTransactionsForAccount(ArgumentMatchers.anyLong(), any(), any(), ArgumentMatchers.anyInt());
             verify(transactionRepository, never()).addTransaction(any(TransactionDao.class));
         }
     }
 
+    @Test
+    public void shouldThrowInvalidParameterExceptionWhenGettingTransactionsWithUnknownDirection() {
+        // when && then
+        try {
+            transactionServer.getTransactionsForAccount(ACCOUNT_ID, null, "sideways", 100);
+            Assert.fail();
+        } catch (Exception e) {
+            assertThat(e).isInstanceOf(InvalidParameterException.class);
+            assertThat(e.getMessage()).isEqualTo(ErrorsCode.INVALID_PARAMETER.getMessage());
+            verify(transactionRepository, never()).getTransactionsForAccount(ArgumentMatchers.anyLong(), any(), any(), ArgumentMatchers.anyInt());
+        }
+    }
+
     @Test
     public void shouldAddTransaction() throws Exception {
         // given
@@ -122,30 +159,30 @@ public class TransactionServerTest {
                 .fromAccountId(ACCOUNT_ID)
                 .toAccountId(2l)
                 .currencyCode(CURRENCY_CODE)
-                .amount(new BigDecimal(2))
+                .amount(Money.valueOf("2"))
                 .build();
 
         AccountDao sourceAccountDao = AccountDao.builder()
                 .accountId(ACCOUNT_ID)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(10))
+                .balance(1000)
                 .build();
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(sourceAccountDao);
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(sourceAccountDao);
 
         AccountDao destinationAccountDao = AccountDao.builder()
                 .accountId(2l)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(2))
+                .balance(200)
                 .build();
-        given(accountRepository.findAccountById(2l)).willReturn(destinationAccountDao);
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(destinationAccountDao);
         given(transactionRepository.addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class))).willReturn(new TransactionDao());
 
         // when
         transactionServer.addTransaction(transactionDto);
 
         // then
-        verify(accountRepository).findAccountById(ACCOUNT_ID);
-        verify(accountRepository).findAccountById(2l);
+        verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+        verify(accountRepository).findAccountReferenceById(2l);
         verify(transactionRepository).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
     }
 
@@ -155,7 +192,7 @@ public class TransactionServerTest {
         TransactionDto transactionDto = TransactionDto.builder()
                 .fromAccountId(ACCOUNT_ID)
                 .build();
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(new AccountDao());
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(new AccountDao());
 
         // when && then
         try {
@@ -164,8 +201,8 @@ public class TransactionServerTest {
         } catch (Exception e) {
             assertThat(e).isInstanceOf(AccountNotExistsException.class);
             assertThat(e.getMessage()).isEqualTo(ErrorsCode.SRC_ACCOUNT_NOT_EXISTS.getMessage());
-            verify(accountRepository).findAccountById(ACCOUNT_ID);
-            verify(accountRepository, never()).findAccountById(2l);
+            verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+            verify(accountRepository, never()).findAccountReferenceById(2l);
             verify(transactionRepository, never()).addTransaction(any(TransactionDao.class));
             verify(transactionRepository, never()).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
         }
@@ -178,8 +215,8 @@ public class TransactionServerTest {
                 .fromAccountId(ACCOUNT_ID)
                 .toAccountId(2l)
                 .build();
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(AccountDao.builder().accountId(ACCOUNT_ID).build());
-        given(accountRepository.findAccountById(2l)).willReturn(new AccountDao());
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(AccountDao.builder().accountId(ACCOUNT_ID).build());
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(new AccountDao());
 
         // when && then
         try {
@@ -188,8 +225,8 @@ public class TransactionServerTest {
         } catch (Exception e) {
             assertThat(e).isInstanceOf(AccountNotExistsException.class);
             assertThat(e.getMessage()).isEqualTo(DES_ACCOUNT_NOT_EXISTS.getMessage());
-            verify(accountRepository).findAccountById(ACCOUNT_ID);
-            verify(accountRepository).findAccountById(2l);
+            verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+            verify(accountRepository).findAccountReferenceById(2l);
             verify(transactionRepository, never()).addTransaction(any(TransactionDao.class));
             verify(transactionRepository, never()).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
         }
@@ -202,22 +239,22 @@ public class TransactionServerTest {
                 .fromAccountId(ACCOUNT_ID)
                 .toAccountId(2l)
                 .currencyCode("USD")
-                .amount(new BigDecimal(2))
+                .amount(Money.valueOf("2"))
                 .build();
 
         AccountDao sourceAccountDao = AccountDao.builder()
                 .accountId(ACCOUNT_ID)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(10))
+                .balance(1000)
                 .build();
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(sourceAccountDao);
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(sourceAccountDao);
 
         AccountDao destinationAccountDao = AccountDao.builder()
                 .accountId(2l)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(2))
+                .balance(200)
                 .build();
-        given(accountRepository.findAccountById(2l)).willReturn(destinationAccountDao);
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(destinationAccountDao);
 
         // when && then
         try {
@@ -227,8 +264,8 @@ public class TransactionServerTest {
             // then
             assertThat(e).isInstanceOf(InvalidCurrencyException.class);
             assertThat(e.getMessage()).isEqualTo(ErrorsCode.INVALID_CURRENCY.getMessage());
-            verify(accountRepository).findAccountById(ACCOUNT_ID);
-            verify(accountRepository).findAccountById(2l);
+            verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+            verify(accountRepository).findAccountReferenceById(2l);
             verify(transactionRepository).addTransaction(any(TransactionDao.class));
             verify(transactionRepository, never()).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
         }
@@ -241,22 +278,28 @@ public class TransactionServerTest {
                 .fromAccountId(ACCOUNT_ID)
                 .toAccountId(2l)
                 .currencyCode(CURRENCY_CODE)
-                .amount(new BigDecimal(2))
+                .amount(Money.valueOf("2"))
                 .build();
 
         AccountDao sourceAccountDao = AccountDao.builder()
                 .accountId(ACCOUNT_ID)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(1))
+                .balance(100)
                 .build();
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(sourceAccountDao);
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(sourceAccountDao);
 
         AccountDao destinationAccountDao = AccountDao.builder()
                 .accountId(2l)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(2))
+                .balance(200)
                 .build();
-        given(accountRepository.findAccountById(2l)).willReturn(destinationAccountDao);
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(destinationAccountDao);
+        given(transactionRepository.addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class)))
+                .willReturn(TransactionDao.builder()
+                        .transactionId(3l)
+                        .status(TransactionStatus.FAILED)
+                        .message(NOT_ENOUGH_BALANCE.getMessage())
+                        .build());
 
         // when && then
         try {
@@ -266,8 +309,8 @@ public class TransactionServerTest {
             // then
             assertThat(e).isInstanceOf(NotEnoughBalanceException.class);
             assertThat(e.getMessage()).isEqualTo(ErrorsCode.NOT_ENOUGH_BALANCE.getMessage());
-            verify(accountRepository).findAccountById(ACCOUNT_ID);
-            verify(accountRepository).findAccountById(2l);
+            verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+            verify(accountRepository).findAccountReferenceById(2l);
             verify(transactionRepository, never()).addTransaction(any(TransactionDao.class));
             verify(transactionRepository).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
         }
@@ -280,22 +323,22 @@ public class TransactionServerTest {
                 .fromAccountId(ACCOUNT_ID)
                 .toAccountId(4l)
                 .currencyCode(CURRENCY_CODE)
-                .amount(new BigDecimal(2))
+                .amount(Money.valueOf("2"))
                 .build();
 
         AccountDao sourceAccountDao = AccountDao.builder()
                 .accountId(ACCOUNT_ID)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(6))
+                .balance(600)
                 .build();
-        given(accountRepository.findAccountById(ACCOUNT_ID)).willReturn(sourceAccountDao);
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(sourceAccountDao);
 
         AccountDao destinationAccountDao = AccountDao.builder()
                 .accountId(4l)
                 .currencyCode(CURRENCY_CODE)
-                .balance(new BigDecimal(2))
+                .balance(200)
                 .build();
-        given(accountRepository.findAccountById(4l)).willReturn(destinationAccountDao);
+        given(accountRepository.findAccountReferenceById(4l)).willReturn(destinationAccountDao);
         given(transactionRepository.addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class)))
                 .willReturn(TransactionDao.builder().message(NOT_ENOUGH_BALANCE.getMessage()).build());
 
@@ -303,9 +346,233 @@ public class TransactionServerTest {
         transactionServer.addTransaction(transactionDto);
 
         // then
-        verify(accountRepository).findAccountById(ACCOUNT_ID);
-        verify(accountRepository).findAccountById(4l);
+        verify(accountRepository).findAccountReferenceById(ACCOUNT_ID);
+        verify(accountRepository).findAccountReferenceById(4l);
         verify(transactionRepository).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
         verify(transactionRepository).addTransaction(any(TransactionDao.class));
     }
+
+    @Test
+    public void shouldThrowWhenTransferFailedUnexpectedly() throws Exception {
+        // given
+        TransactionDto transactionDto = TransactionDto.builder()
+                .fromAccountId(ACCOUNT_ID)
+                .toAccountId(2l)
+                .currencyCode(CURRENCY_CODE)
+                .amount(Money.valueOf("2"))
+                .build();
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(AccountDao.builder()
+                .accountId(ACCOUNT_ID)
+                .currencyCode(CURRENCY_CODE)
+                .balance(1000)
+                .build());
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(AccountDao.builder()
+                .accountId(2l)
+                .currencyCode(CURRENCY_CODE)
+                .balance(200)
+                .build());
+        given(transactionRepository.addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class)))
+                .willReturn(TransactionDao.builder()
+                        .status(TransactionStatus.FAILED)
+                        .message(ErrorsCode.UNEXPECTED_ERROR.getMessage())
+                        .build());
+
+        // when
+        try {
+            transactionServer.addTransaction(transactionDto);
+            Assert.fail();
+        } catch (TransferFailedException e) {
+            // then
+            assertThat(e.getMessage()).isEqualTo(ErrorsCode.UNEXPECTED_ERROR.getMessage());
+            verify(transactionRepository).addTransaction(any(TransactionDao.class));
+        }
+    }
+
+    @Test
+    public void shouldNotAddFailedTransactionWhenTransferAcceptedBeforeBeingStored() throws Exception {
+        // given
+        TransactionDto transactionDto = TransactionDto.builder()
+                .fromAccountId(ACCOUNT_ID)
+                .toAccountId(2l)
+                .currencyCode(CURRENCY_CODE)
+                .amount(Money.valueOf("2"))
+                .build();
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(AccountDao.builder()
+                .accountId(ACCOUNT_ID)
+                .currencyCode(CURRENCY_CODE)
+                .balance(1000)
+                .build());
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(AccountDao.builder()
+                .accountId(2l)
+                .currencyCode(CURRENCY_CODE)
+                .balance(200)
+                .build());
+        given(transactionRepository.addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class)))
+                .willReturn(TransactionDao.builder().status(TransactionStatus.SUCCESS).build());
+
+        // when
+        transactionServer.addTransaction(transactionDto);
+
+        // then
+        verify(transactionRepository).addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class));
+        verify(transactionRepository, never()).addTransaction(any(TransactionDao.class));
+    }
+
+    @Test
+    public void shouldAddTransactionsInBatchAndReturnStatusPerItem() throws Exception {
+        // given
+        List<TransactionDto> transactionDtos = List.of(
+                TransactionDto.builder().fromAccountId(ACCOUNT_ID).toAccountId(2l).currencyCode(CURRENCY_CODE).amount(Money.valueOf("2")).build(),
+                TransactionDto.builder().fromAccountId(ACCOUNT_ID).toAccountId(5l).currencyCode(CURRENCY_CODE).amount(Money.valueOf("2")).build(),
+                TransactionDto.builder().fromAccountId(ACCOUNT_ID).toAccountId(2l).currencyCode("USD").amount(Money.valueOf("2")).build());
+        given(accountRepository.findAccountsByIds(any())).willReturn(List.of(
+                AccountDao.builder().accountId(ACCOUNT_ID).currencyCode(CURRENCY_CODE).balance(1000).build(),
+                AccountDao.builder().accountId(2l).currencyCode(CURRENCY_CODE).balance(200).build()));
+        given(transactionRepository.addTransactions(ArgumentMatchers.anyList())).willAnswer(invocation -> {
+            List<TransactionDao> transactionDaos = invocation.getArgument(0);
+            transactionDaos.get(0).setTransactionId(7l);
+            return transactionDaos;
+        });
+
+        // when
+        List<TransactionResultDto> results = transactionServer.addTransactions(transactionDtos);
+
+        // then
+        verify(accountRepository, never()).findAccountById(ArgumentMatchers.anyLong());
+        verify(transactionRepository).addTransactions(ArgumentMatchers.anyList());
+        assertThat(results).containsExactly(
+                TransactionResultDto.builder().transactionId(7l).status(TransactionStatus.SUCCESS.name()).build(),
+                TransactionResultDto.builder().status(TransactionStatus.FAILED.name()).errorCode(DES_ACCOUNT_NOT_EXISTS.name()).build(),
+                TransactionResultDto.builder().status(TransactionStatus.FAILED.name()).errorCode(ErrorsCode.INVALID_CURRENCY.name()).build());
+    }
+
+    @Test
+    public void shouldRejectMissingOrEmptyBatch() {
+        for (List<TransactionDto> transactionDtos : Arrays.asList(null, List.<TransactionDto>of(), Arrays.asList((TransactionDto) null))) {
+            // when
+            try {
+                transactionServer.addTransactions(transactionDtos);
+                Assert.fail("batch should be rejected");
+            } catch (InvalidParameterException e) {
+                // then
+                assertThat(e.getMessage()).isEqualTo(ErrorsCode.INVALID_PARAMETER.getMessage());
+            }
+        }
+        verify(accountRepository, never()).findAccountsByIds(any());
+        verify(transactionRepository, never()).addTransactions(ArgumentMatchers.anyList());
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void shouldRejectAmountWithMoreDecimalPlacesThanCurrency() throws Exception {
+        // given
+        TransactionDto transactionDto = TransactionDto.builder()
+                .fromAccountId(ACCOUNT_ID)
+                .toAccountId(2l)
+                .amount(Money.valueOf("2.005"))
+                .currencyCode(CURRENCY_CODE)
+                .build();
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(AccountDao.builder().accountId(ACCOUNT_ID).currencyCode(CURRENCY_CODE).build());
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(AccountDao.builder().accountId(2l).currencyCode(CURRENCY_CODE).build());
+
+        // when
+        try {
+            transactionServer.addTransaction(transactionDto);
+        } finally {
+            // then
+            verify(transactionRepository, never()).addTransaction(any(), any(), any());
+        }
+    }
+
+    @Test(expected = NotEnoughBalanceException.class)
+    public void shouldReplayOutcomeOfTransactionWithSameIdempotencyKey() throws Exception {
+        // given
+        TransactionDto transactionDto = TransactionDto.builder()
+                .fromAccountId(ACCOUNT_ID)
+                .toAccountId(2l)
+                .amount(Money.valueOf("10"))
+                .currencyCode(CURRENCY_CODE)
+                .build();
+        given(idempotencyStore.execute(ArgumentMatchers.eq("key"), ArgumentMatchers.eq(ACCOUNT_ID + ":2:1000:" + CURRENCY_CODE), any())).willReturn(NOT_ENOUGH_BALANCE);
+
+        // when
+        try {
+            transactionServer.addTransaction(transactionDto, "key");
+        } finally {
+            // then
+            verify(transactionRepository, never()).addTransaction(any(), any(), any());
+            verify(accountRepository, never()).findAccountReferenceById(any());
+        }
+    }
+
+    @Test
+    public void shouldThrowWhenTransferWouldOverflowDestinationBalance() throws Exception {
+        // given
+        TransactionDto transactionDto = TransactionDto.builder()
+                .fromAccountId(ACCOUNT_ID)
+                .toAccountId(2l)
+                .currencyCode(CURRENCY_CODE)
+                .amount(Money.valueOf("2"))
+                .build();
+        given(accountRepository.findAccountReferenceById(ACCOUNT_ID)).willReturn(AccountDao.builder()
+                .accountId(ACCOUNT_ID)
+                .currencyCode(CURRENCY_CODE)
+                .balance(1000)
+                .build());
+        given(accountRepository.findAccountReferenceById(2l)).willReturn(AccountDao.builder()
+                .accountId(2l)
+                .currencyCode(CURRENCY_CODE)
+                .balance(Long.MAX_VALUE)
+                .build());
+        given(transactionRepository.addTransaction(any(AccountDao.class), any(AccountDao.class), any(TransactionDao.class)))
+                .willReturn(TransactionDao.builder()
+                        .status(TransactionStatus.FAILED)
+                        .message(ErrorsCode.BALANCE_OVERFLOW.getMessage())
+                        .build());
+
+        // when
+        try {
+            transactionServer.addTransaction(transactionDto);
+            Assert.fail();
+        } catch (BalanceOverflowException e) {
+            // then
+            assertThat(e.getMessage()).isEqualTo(ErrorsCode.BALANCE_OVERFLOW.getMessage());
+            verify(transactionRepository).addTransaction(any(TransactionDao.class));
+        }
+    }
+
+    @Test(expected = BalanceOverflowException.class)
+    public void shouldReplayBalanceOverflowOfTransactionWithSameIdempotencyKey() throws Exception {
+        // given
+        TransactionDto transactionDto = TransactionDto.builder()
+                .fromAccountId(ACCOUNT_ID)
+                .toAccountId(2l)
+                .amount(Money.valueOf("10"))
+                .currencyCode(CURRENCY_CODE)
+                .build();
+        given(idempotencyStore.execute(ArgumentMatchers.eq("key"), ArgumentMatchers.eq(ACCOUNT_ID + ":2:1000:" + CURRENCY_CODE), any())).willReturn(BALANCE_OVERFLOW);
+
+        // when
+        try {
+            transactionServer.addTransaction(transactionDto, "key");
+        } finally {
+            // then
+            verify(transactionRepository, never()).addTransaction(any(), any(), any());
+        }
+    }
+
+    @Test
+    public void shouldRejectStatementWhenRepositoryDoesNotMaintainRollups() throws Exception {
+        // given
+        given(transactionRepository.maintainsDailyRollups()).willReturn(false);
+
+        // when
+        try {
+            transactionServer.getStatement(ACCOUNT_ID, "2024-03-01", "2024-03-31");
+            Assert.fail();
+        } catch (InvalidParameterException e) {
+            // then
+            assertThat(e.getMessage()).isEqualTo(ErrorsCode.STATEMENTS_NOT_SUPPORTED.getMessage());
+            verify(dailyRollupRepository, never()).getRollups(anyLong(), any(), any());
+        }
+    }
 }